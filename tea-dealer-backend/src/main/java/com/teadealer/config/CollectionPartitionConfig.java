@@ -0,0 +1,51 @@
+package com.teadealer.config;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.hibernate.mapping.ForeignKey;
+import org.hibernate.mapping.Table;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * With collection partitioning enabled, stops Hibernate's schema update from adding the collections
+ * foreign keys back: MySQL does not allow them on a partitioned table, and CollectionPartitionService
+ * drops them when it converts the table. Without partitioning the constraints stay.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.collections.partitioning.enabled", havingValue = "true")
+public class CollectionPartitionConfig {
+
+    private static final String TABLE = "collections";
+
+    @Bean
+    public HibernatePropertiesCustomizer collectionForeignKeysDisabled() {
+        IntegratorProvider provider = () -> List.of(new Integrator() {
+            @Override
+            public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory,
+                                  SessionFactoryServiceRegistry serviceRegistry) {
+                // Runs before the schema update, which skips keys whose creation is disabled
+                for (Table table : metadata.collectTableMappings()) {
+                    if (TABLE.equalsIgnoreCase(table.getName())) {
+                        for (Iterator<ForeignKey> keys = table.getForeignKeyIterator(); keys.hasNext(); ) {
+                            keys.next().disableCreation();
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+            }
+        });
+        return properties -> properties.put("hibernate.integrator_provider", provider);
+    }
+}
@@ -3,12 +3,17 @@ package com.teadealer.controller;
 import com.teadealer.model.AppSettings;
 import com.teadealer.service.AppSettingsService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/settings")
@@ -41,8 +46,28 @@ public class AppSettingsController {
         return ResponseEntity.notFound().build();
     }
 
+    // Image settings; URLs come from the settings values and change with the content
+    @GetMapping("/blobs/{key}")
+    public ResponseEntity<?> getSettingBlob(@PathVariable String key,
+                                            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return appSettingsService.getBlob(key)
+                .map(blob -> {
+                    String etag = "\"" + blob.getEtag() + "\"";
+                    CacheControl cacheControl = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic();
+                    if (etag.equals(ifNoneMatch)) {
+                        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+                    }
+                    return ResponseEntity.ok()
+                            .eTag(etag)
+                            .cacheControl(cacheControl)
+                            .contentType(MediaType.parseMediaType(blob.getContentType()))
+                            .body((Object) blob.getContent());
+                })
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     @PostMapping
-    public ResponseEntity<AppSettings> saveSetting(@RequestBody Map<String, String> request) {
+    public ResponseEntity<?> saveSetting(@RequestBody Map<String, String> request) {
         String key = request.get("key");
         String value = request.get("value");
 
@@ -50,8 +75,12 @@ public class AppSettingsController {
             return ResponseEntity.badRequest().build();
         }
 
-        AppSettings saved = appSettingsService.saveSetting(key, value);
-        return ResponseEntity.ok(saved);
+        try {
+            AppSettings saved = appSettingsService.saveSetting(key, value);
+            return ResponseEntity.ok(saved);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
 
     @DeleteMapping("/{key}")
@@ -0,0 +1,33 @@
+package com.teadealer.controller;
+
+import com.teadealer.service.ArchiveService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/archive")
+public class ArchiveController {
+
+    @Autowired
+    private ArchiveService archiveService;
+
+    @GetMapping
+    public ResponseEntity<?> getArchiveStatus() {
+        return ResponseEntity.ok(Map.of(
+                "archivedYears", archiveService.getArchivedYears(),
+                "lastArchivableYear", archiveService.getLastArchivableYear()));
+    }
+
+    // Moves the year's collections, deductions and invoices out of the database into archive files
+    @PostMapping("/{year}")
+    public ResponseEntity<?> archiveYear(@PathVariable Integer year) {
+        try {
+            return ResponseEntity.ok(archiveService.archiveYear(year));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+}
@@ -1,14 +1,19 @@
 package com.teadealer.controller;
 
+import com.teadealer.dto.KeysetPage;
 import com.teadealer.model.Collection;
 import com.teadealer.model.Customer;
 import com.teadealer.model.TeaGrade;
+import com.teadealer.service.CollectionPartitionService;
 import com.teadealer.service.CollectionService;
+import com.teadealer.service.CollectionStreamService;
 import com.teadealer.service.CustomerService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -23,6 +28,12 @@ public class CollectionController {
 
     @Autowired
     private CustomerService customerService;
+
+    @Autowired
+    private CollectionStreamService collectionStreamService;
+
+    @Autowired
+    private CollectionPartitionService collectionPartitionService;
     
     @GetMapping("/date/{date}")
     public ResponseEntity<List<Collection>> getCollectionsByDate(
@@ -30,6 +41,13 @@ public class CollectionController {
         return ResponseEntity.ok(collectionService.getCollectionsByDate(date));
     }
 
+    // Live upsert/delete deltas for one collection date, so the daily grid stays in sync without re-fetching
+    @GetMapping(value = "/stream/{date}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamCollectionsByDate(
+            @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        return collectionStreamService.subscribe(date);
+    }
+
     @GetMapping("/date-range")
     public ResponseEntity<List<Collection>> getCollectionsByDateRange(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
@@ -37,16 +55,74 @@ public class CollectionController {
         return ResponseEntity.ok(collectionService.getCollectionsByDateRange(startDate, endDate));
     }
 
+    @GetMapping("/date-range/page")
+    public ResponseEntity<?> getCollectionPageByDateRange(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        try {
+            KeysetPage<Collection> page = collectionService.getCollectionPageByDateRange(startDate, endDate, cursor, size);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Per-month, per-grade supply totals, e.g. /summary/yearly?customerIds=1,2&fromYear=2025&toYear=2026
+    @GetMapping("/summary/yearly")
+    public ResponseEntity<?> getYearlySupplySummary(
+            @RequestParam(required = false) List<Long> customerIds,
+            @RequestParam Integer fromYear,
+            @RequestParam(required = false) Integer toYear) {
+        try {
+            int lastYear = toYear != null ? toYear : fromYear;
+            return ResponseEntity.ok(collectionService.getYearlySupplySummary(customerIds, fromYear, lastYear));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Monthly partitions of the collections table with estimated row counts (empty when not partitioned)
+    @GetMapping("/partitions")
+    public ResponseEntity<List<Map<String, Object>>> getPartitions() {
+        return ResponseEntity.ok(collectionPartitionService.getPartitions());
+    }
+
     @GetMapping("/customer/{customerId}")
     public ResponseEntity<List<Collection>> getCollectionsByCustomer(@PathVariable Long customerId) {
         return ResponseEntity.ok(collectionService.getCollectionsByCustomer(customerId));
     }
 
+    @GetMapping("/customer/{customerId}/page")
+    public ResponseEntity<?> getCollectionPageByCustomer(
+            @PathVariable Long customerId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        try {
+            return ResponseEntity.ok(collectionService.getCollectionPageByCustomer(customerId, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @GetMapping("/book-number/{bookNumber}")
     public ResponseEntity<List<Collection>> getCollectionsByBookNumber(@PathVariable String bookNumber) {
         return ResponseEntity.ok(collectionService.getCollectionsByBookNumber(bookNumber));
     }
 
+    @GetMapping("/book-number/{bookNumber}/page")
+    public ResponseEntity<?> getCollectionPageByBookNumber(
+            @PathVariable String bookNumber,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        try {
+            return ResponseEntity.ok(collectionService.getCollectionPageByBookNumber(bookNumber, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @GetMapping("/book-number/{bookNumber}/date-range")
     public ResponseEntity<List<Collection>> getCollectionsByBookNumberAndDateRange(
             @PathVariable String bookNumber,
@@ -103,8 +179,12 @@ public class CollectionController {
     }
     
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteCollection(@PathVariable Long id) {
-        collectionService.deleteCollection(id);
-        return ResponseEntity.noContent().build();
+    public ResponseEntity<?> deleteCollection(@PathVariable Long id) {
+        try {
+            collectionService.deleteCollection(id);
+            return ResponseEntity.noContent().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
 }
\ No newline at end of file
@@ -11,6 +11,9 @@ import java.util.List;
 @RestController
 @RequestMapping("/api/customers")
 public class CustomerController {
+
+    // Enough for any picker; larger requests are capped rather than rejected
+    private static final int MAX_SEARCH_RESULTS = 200;
     
     @Autowired
     private CustomerService customerService;
@@ -40,8 +43,9 @@ public class CustomerController {
     }
     
     @GetMapping("/search")
-    public ResponseEntity<List<Customer>> searchCustomers(@RequestParam String name) {
-        return ResponseEntity.ok(customerService.searchCustomers(name));
+    public ResponseEntity<List<Customer>> searchCustomers(@RequestParam("name") String query,
+                                                          @RequestParam(defaultValue = "50") int limit) {
+        return ResponseEntity.ok(customerService.searchCustomers(query, Math.max(1, Math.min(limit, MAX_SEARCH_RESULTS))));
     }
     
     @PostMapping
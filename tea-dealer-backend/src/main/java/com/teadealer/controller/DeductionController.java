@@ -1,25 +1,27 @@
 package com.teadealer.controller;
 
-import com.teadealer.model.Collection;
+import com.teadealer.dto.DeductionBatchRequest;
+import com.teadealer.dto.SupplyTotals;
 import com.teadealer.model.Customer;
 import com.teadealer.model.Deduction;
 import com.teadealer.model.Invoice;
-import com.teadealer.model.MonthlyRate;
-import com.teadealer.model.TeaGrade;
 import com.teadealer.repository.InvoiceRepository;
 import com.teadealer.service.AppSettingsService;
-import com.teadealer.service.CollectionService;
+import com.teadealer.service.SettingKey;
 import com.teadealer.service.CustomerService;
 import com.teadealer.service.DeductionService;
-import com.teadealer.service.MonthlyRateService;
+import com.teadealer.service.InvoiceService;
+import com.teadealer.service.SupplyCalculator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -28,15 +30,6 @@ import java.util.Optional;
 @RequestMapping("/api/deductions")
 public class DeductionController {
 
-    private static final String AUTO_ARREARS_SETTING_KEY = "auto_arrears_carry_forward";
-    private static final String DEDUCTION_ROUNDING_MODE_KEY = "deduction_rounding_mode";
-
-    // Deduction rounding modes
-    private static final String ROUNDING_MODE_HALF_UP = "half_up";
-    private static final String ROUNDING_MODE_INCLUDE_DECIMALS = "include_decimals";
-    private static final String ROUNDING_MODE_CEILING = "ceiling";
-    private static final String ROUNDING_MODE_FLOOR = "floor";
-
     @Autowired
     private DeductionService deductionService;
 
@@ -44,13 +37,13 @@ public class DeductionController {
     private CustomerService customerService;
 
     @Autowired
-    private CollectionService collectionService;
+    private SupplyCalculator supplyCalculator;
 
     @Autowired
-    private MonthlyRateService monthlyRateService;
+    private InvoiceRepository invoiceRepository;
 
     @Autowired
-    private InvoiceRepository invoiceRepository;
+    private InvoiceService invoiceService;
 
     @Autowired
     private AppSettingsService appSettingsService;
@@ -95,8 +88,7 @@ public class DeductionController {
         Map<String, Object> result = new HashMap<>();
 
         // Check if auto-arrears feature is enabled
-        String autoArrearsSetting = appSettingsService.getSettingValue(AUTO_ARREARS_SETTING_KEY);
-        boolean autoArrearsEnabled = "true".equalsIgnoreCase(autoArrearsSetting);
+        boolean autoArrearsEnabled = appSettingsService.get(SettingKey.AUTO_ARREARS_CARRY_FORWARD);
 
         result.put("autoArrearsEnabled", autoArrearsEnabled);
         result.put("autoArrearsAmount", BigDecimal.ZERO);
@@ -133,95 +125,81 @@ public class DeductionController {
         return ResponseEntity.ok(result);
     }
 
+    // Auto-arrears of every customer for a period from one query: customerId -> amount,
+    // listing only customers whose previous month ended with negative net pay
+    @GetMapping("/auto-arrears/period/{year}/{month}")
+    public ResponseEntity<Map<String, Object>> getAutoArrearsForPeriod(
+            @PathVariable Integer year,
+            @PathVariable Integer month) {
+        try {
+            YearMonth previous = YearMonth.of(year, month).minusMonths(1);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("autoArrearsEnabled", invoiceService.isAutoArrearsEnabled());
+            result.put("previousYear", previous.getYear());
+            result.put("previousMonth", previous.getMonthValue());
+            result.put("arrears", invoiceService.getAutoArrearsForPeriod(year, month));
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @GetMapping("/calculate/{customerId}/{year}/{month}")
-    public ResponseEntity<Map<String, Object>> calculateMonthlyTotals(
+    public ResponseEntity<?> calculateMonthlyTotals(
             @PathVariable Long customerId,
             @PathVariable Integer year,
             @PathVariable Integer month) {
         try {
             Customer customer = customerService.getCustomerById(customerId)
                     .orElseThrow(() -> new RuntimeException("Customer not found"));
+            return ResponseEntity.ok(supplyCalculator.calculate(customer, year, month));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
 
-            // Get monthly rate
-            MonthlyRate monthlyRate = monthlyRateService.getRateByYearAndMonth(year, month)
-                    .orElse(new MonthlyRate());
-
-            // Get collections for the month
-            LocalDate startDate = LocalDate.of(year, month, 1);
-            LocalDate endDate = startDate.withDayOfMonth(startDate.lengthOfMonth());
-
-            List<Collection> collections = collectionService.getCollectionsByBookNumberAndDateRange(
-                    customer.getBookNumber(), startDate, endDate);
-
-            // Calculate grade totals
-            BigDecimal grade1Total = BigDecimal.ZERO;
-            BigDecimal grade2Total = BigDecimal.ZERO;
-
-            for (Collection col : collections) {
-                if (col.getGrade() == TeaGrade.GRADE_1) {
-                    grade1Total = grade1Total.add(col.getWeightKg() != null ? col.getWeightKg() : BigDecimal.ZERO);
-                } else if (col.getGrade() == TeaGrade.GRADE_2) {
-                    grade2Total = grade2Total.add(col.getWeightKg() != null ? col.getWeightKg() : BigDecimal.ZERO);
-                }
+    // Same totals as /calculate/{customerId}/{year}/{month} for every customer, from one grouped
+    // collection query and a single rate/settings lookup. Period-wide values are returned once.
+    @GetMapping("/calculate/period/{year}/{month}")
+    public ResponseEntity<Map<String, Object>> calculatePeriodTotals(
+            @PathVariable Integer year,
+            @PathVariable Integer month) {
+        try {
+            Map<Long, SupplyTotals> calculated = supplyCalculator.calculatePeriod(
+                    customerService.getAllCustomers(), year, month);
+
+            List<Map<String, Object>> customers = new ArrayList<>();
+            SupplyTotals periodValues = null;
+            for (Map.Entry<Long, SupplyTotals> calculatedEntry : calculated.entrySet()) {
+                SupplyTotals totals = calculatedEntry.getValue();
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("customerId", calculatedEntry.getKey());
+                entry.put("grade1Kg", totals.getGrade1Kg());
+                entry.put("grade2Kg", totals.getGrade2Kg());
+                entry.put("totalKg", totals.getTotalKg());
+                entry.put("grade1DeductionKg", totals.getGrade1DeductionKg());
+                entry.put("grade2DeductionKg", totals.getGrade2DeductionKg());
+                entry.put("supplyDeductionKg", totals.getSupplyDeductionKg());
+                entry.put("payableKg", totals.getPayableKg());
+                entry.put("grade1Amount", totals.getGrade1Amount());
+                entry.put("grade2Amount", totals.getGrade2Amount());
+                entry.put("totalAmount", totals.getTotalAmount());
+                entry.put("transportDeduction", totals.getTransportDeduction());
+                entry.put("transportExempt", totals.getTransportExempt());
+                customers.add(entry);
+                periodValues = totals;
             }
 
-            // Calculate total kg
-            BigDecimal totalKg = grade1Total.add(grade2Total);
-
-            // Get supply deduction percentage (default 4% if not set)
-            BigDecimal supplyDeductionPercentage = monthlyRate.getSupplyDeductionPercentage() != null ?
-                    monthlyRate.getSupplyDeductionPercentage() : new BigDecimal("4.00");
-
-            // Calculate supply deduction in kg with configurable rounding
-            BigDecimal rawSupplyDeductionKg = totalKg.multiply(supplyDeductionPercentage)
-                    .divide(BigDecimal.valueOf(100), 4, RoundingMode.HALF_UP);
-            BigDecimal supplyDeductionKg = applyDeductionRounding(rawSupplyDeductionKg);
-
-            // Calculate payable kg (after deduction)
-            BigDecimal payableKg = totalKg.subtract(supplyDeductionKg);
-
-            // Calculate amounts based on payable kg (proportionally reduced from each grade)
-            // Use the actual rounded deduction to calculate the reduction ratio
-            BigDecimal grade1Rate = monthlyRate.getGrade1Rate() != null ? monthlyRate.getGrade1Rate() : BigDecimal.ZERO;
-            BigDecimal grade2Rate = monthlyRate.getGrade2Rate() != null ? monthlyRate.getGrade2Rate() : BigDecimal.ZERO;
-
-            BigDecimal reductionMultiplier = totalKg.compareTo(BigDecimal.ZERO) > 0
-                    ? payableKg.divide(totalKg, 6, RoundingMode.HALF_UP)
-                    : BigDecimal.ONE;
-
-            BigDecimal payableGrade1Kg = grade1Total.multiply(reductionMultiplier).setScale(2, RoundingMode.HALF_UP);
-            BigDecimal payableGrade2Kg = grade2Total.multiply(reductionMultiplier).setScale(2, RoundingMode.HALF_UP);
-
-            BigDecimal grade1Amount = payableGrade1Kg.multiply(grade1Rate).setScale(2, RoundingMode.HALF_UP);
-            BigDecimal grade2Amount = payableGrade2Kg.multiply(grade2Rate).setScale(2, RoundingMode.HALF_UP);
-            BigDecimal totalAmount = grade1Amount.add(grade2Amount);
-
-            // Calculate transport deduction (per kg based on payable kg)
-            // Skip transport deduction if customer is transport exempt
-            BigDecimal transportRatePerKg = monthlyRate.getTransportRatePerKg() != null ?
-                    monthlyRate.getTransportRatePerKg() : BigDecimal.ZERO;
-            Boolean isTransportExempt = customer.getTransportExempt() != null && customer.getTransportExempt();
-            BigDecimal transportDeduction = isTransportExempt ? BigDecimal.ZERO :
-                    payableKg.multiply(transportRatePerKg).setScale(2, RoundingMode.HALF_UP);
-
-            Map<String, Object> result = new HashMap<>();
-            result.put("grade1Kg", grade1Total);
-            result.put("grade2Kg", grade2Total);
-            result.put("totalKg", totalKg);
-            result.put("supplyDeductionPercentage", supplyDeductionPercentage);
-            result.put("supplyDeductionKg", supplyDeductionKg);
-            result.put("payableKg", payableKg);
-            result.put("grade1Rate", grade1Rate);
-            result.put("grade2Rate", grade2Rate);
-            result.put("grade1Amount", grade1Amount);
-            result.put("grade2Amount", grade2Amount);
-            result.put("totalAmount", totalAmount);
-            result.put("transportRatePerKg", transportRatePerKg);
-            result.put("transportDeduction", transportDeduction);
-            result.put("transportExempt", isTransportExempt);
-            result.put("stampFee", monthlyRate.getStampFee() != null ? monthlyRate.getStampFee() : BigDecimal.ZERO);
-            result.put("teaPacketPrice", monthlyRate.getTeaPacketPrice() != null ? monthlyRate.getTeaPacketPrice() : BigDecimal.ZERO);
-
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("year", year);
+            result.put("month", month);
+            result.put("supplyDeductionPercentage", periodValues != null ? periodValues.getSupplyDeductionPercentage() : null);
+            result.put("grade1Rate", periodValues != null ? periodValues.getGrade1Rate() : null);
+            result.put("grade2Rate", periodValues != null ? periodValues.getGrade2Rate() : null);
+            result.put("transportRatePerKg", periodValues != null ? periodValues.getTransportRatePerKg() : null);
+            result.put("stampFee", periodValues != null ? periodValues.getStampFee() : null);
+            result.put("teaPacketPrice", periodValues != null ? periodValues.getTeaPacketPrice() : null);
+            result.put("customers", customers);
             return ResponseEntity.ok(result);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
@@ -312,31 +290,31 @@ public class DeductionController {
         }
     }
 
-    @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteDeduction(@PathVariable Long id) {
-        deductionService.deleteDeduction(id);
-        return ResponseEntity.noContent().build();
+    // Month-end entry for many growers at once; see DeductionService.saveDeductionsBatch
+    @PostMapping("/batch")
+    public ResponseEntity<?> saveDeductionsBatch(@RequestBody DeductionBatchRequest request) {
+        try {
+            return ResponseEntity.ok(deductionService.saveDeductionsBatch(request));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
 
-    /**
-     * Apply rounding to supply deduction kg based on the configured rounding mode.
-     */
-    private BigDecimal applyDeductionRounding(BigDecimal value) {
-        String roundingMode = appSettingsService.getSettingValue(DEDUCTION_ROUNDING_MODE_KEY);
-        if (roundingMode == null) {
-            roundingMode = ROUNDING_MODE_HALF_UP; // Default
+    // Fertilizer and tea packet deductions for every customer, priced from the supply ledgers
+    @PostMapping("/populate-from-supplies/{year}/{month}")
+    public ResponseEntity<?> populateFromSupplies(
+            @PathVariable Integer year,
+            @PathVariable Integer month) {
+        try {
+            return ResponseEntity.ok(deductionService.populateFromSupplies(year, month));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
+    }
 
-        switch (roundingMode) {
-            case ROUNDING_MODE_INCLUDE_DECIMALS:
-                return value.setScale(2, RoundingMode.HALF_UP);
-            case ROUNDING_MODE_CEILING:
-                return value.setScale(0, RoundingMode.CEILING);
-            case ROUNDING_MODE_FLOOR:
-                return value.setScale(0, RoundingMode.FLOOR);
-            case ROUNDING_MODE_HALF_UP:
-            default:
-                return value.setScale(0, RoundingMode.HALF_UP);
-        }
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> deleteDeduction(@PathVariable Long id) {
+        deductionService.deleteDeduction(id);
+        return ResponseEntity.noContent().build();
     }
 }
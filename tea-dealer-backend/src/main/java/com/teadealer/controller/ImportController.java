@@ -0,0 +1,46 @@
+package com.teadealer.controller;
+
+import com.teadealer.dto.ImportJob;
+import com.teadealer.service.CsvImportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/import")
+public class ImportController {
+
+    @Autowired
+    private CsvImportService csvImportService;
+
+    @PostMapping("/collections")
+    public ResponseEntity<?> importCollections(@RequestParam("file") MultipartFile file) {
+        try {
+            ImportJob job = csvImportService.startCollectionImport(file);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/customers")
+    public ResponseEntity<?> importCustomers(@RequestParam("file") MultipartFile file) {
+        try {
+            ImportJob job = csvImportService.startCustomerImport(file);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<ImportJob> getJob(@PathVariable String id) {
+        return csvImportService.getJob(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
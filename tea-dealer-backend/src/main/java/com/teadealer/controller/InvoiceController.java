@@ -115,6 +115,19 @@ public class InvoiceController {
         }
     }
 
+    // Regenerates a period and every later month whose arrears change as a result
+    @PostMapping("/cascade/{year}/{month}")
+    public ResponseEntity<?> cascadeRegenerate(
+            @PathVariable Integer year,
+            @PathVariable Integer month,
+            @RequestParam(required = false) Long customerId) {
+        try {
+            return ResponseEntity.ok(invoiceService.cascadeRegenerate(customerId, year, month));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @PutMapping("/{id}/status")
     public ResponseEntity<?> updateInvoiceStatus(
             @PathVariable Long id,
@@ -55,6 +55,12 @@ public class MonthlyRateController {
                 );
             }
 
+            if (rateData.get("fertilizerPricePerKg") != null) {
+                rate.setFertilizerPricePerKg(
+                    java.math.BigDecimal.valueOf(Double.valueOf(rateData.get("fertilizerPricePerKg").toString()))
+                );
+            }
+
             if (rateData.get("supplyDeductionPercentage") != null) {
                 rate.setSupplyDeductionPercentage(
                     java.math.BigDecimal.valueOf(Double.valueOf(rateData.get("supplyDeductionPercentage").toString()))
@@ -106,6 +112,12 @@ public class MonthlyRateController {
                 );
             }
 
+            if (rateData.get("fertilizerPricePerKg") != null) {
+                rate.setFertilizerPricePerKg(
+                    java.math.BigDecimal.valueOf(Double.valueOf(rateData.get("fertilizerPricePerKg").toString()))
+                );
+            }
+
             if (rateData.get("supplyDeductionPercentage") != null) {
                 rate.setSupplyDeductionPercentage(
                     java.math.BigDecimal.valueOf(Double.valueOf(rateData.get("supplyDeductionPercentage").toString()))
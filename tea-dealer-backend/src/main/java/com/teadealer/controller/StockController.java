@@ -0,0 +1,66 @@
+package com.teadealer.controller;
+
+import com.teadealer.dto.StockAvailability;
+import com.teadealer.dto.StockMovementReport;
+import com.teadealer.service.StockAvailabilityCache;
+import com.teadealer.service.StockLedgerService;
+import com.teadealer.service.StockReportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/stock")
+public class StockController {
+
+    @Autowired
+    private StockLedgerService stockLedgerService;
+
+    @Autowired
+    private StockAvailabilityCache availabilityCache;
+
+    @Autowired
+    private StockReportService stockReportService;
+
+    @GetMapping("/availability/{year}/{month}")
+    public ResponseEntity<StockAvailability> getAvailability(@PathVariable Integer year, @PathVariable Integer month) {
+        return ResponseEntity.ok(stockLedgerService.getAvailability(year, month));
+    }
+
+    @GetMapping("/availability/cache-stats")
+    public ResponseEntity<Map<String, Object>> getAvailabilityCacheStats() {
+        return ResponseEntity.ok(availabilityCache.getStats());
+    }
+
+    // Opening, received, supplied and closing per type / size for every month of the year
+    @GetMapping("/report/{year}")
+    public ResponseEntity<?> getMovementReport(@PathVariable Integer year) {
+        try {
+            return ResponseEntity.ok(stockReportService.getMovementReport(year));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/report/{year}/csv")
+    public ResponseEntity<?> downloadMovementReportCsv(@PathVariable Integer year) {
+        try {
+            StockMovementReport report = stockReportService.getMovementReport(year);
+            byte[] csv = stockReportService.toCsv(report).getBytes(StandardCharsets.UTF_8);
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(new MediaType("text", "csv", StandardCharsets.UTF_8));
+            headers.setContentDispositionFormData("attachment", String.format("stock_movements_%d.csv", year));
+
+            return new ResponseEntity<>(csv, headers, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+}
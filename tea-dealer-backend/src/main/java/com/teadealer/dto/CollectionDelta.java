@@ -0,0 +1,58 @@
+package com.teadealer.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.teadealer.model.Collection;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Compact change notification for one customer-grade cell of the daily collection grid,
+ * pushed to clients subscribed to the collection date's event stream.
+ * {@code reload} carries only the date and tells clients to re-fetch the whole day
+ * (sent after bulk imports, where per-row deltas would flood the stream).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CollectionDelta {
+
+    public static final String UPSERT = "upsert";
+    public static final String DELETE = "delete";
+    public static final String RELOAD = "reload";
+
+    private String type;
+    private LocalDate date;
+    private Long id;
+    private Long customerId;
+    private String bookNumber;
+    private String grade;
+    private BigDecimal weightKg;
+
+    public static CollectionDelta upsert(Collection collection) {
+        return of(UPSERT, collection);
+    }
+
+    public static CollectionDelta delete(Collection collection) {
+        CollectionDelta delta = of(DELETE, collection);
+        delta.setWeightKg(null);
+        return delta;
+    }
+
+    public static CollectionDelta reload(LocalDate date) {
+        CollectionDelta delta = new CollectionDelta();
+        delta.setType(RELOAD);
+        delta.setDate(date);
+        return delta;
+    }
+
+    private static CollectionDelta of(String type, Collection collection) {
+        Long customerId = collection.getCustomer() != null ? collection.getCustomer().getId() : null;
+        return new CollectionDelta(type, collection.getCollectionDate(), collection.getId(), customerId,
+                collection.getBookNumber(), collection.getGrade().name(), collection.getWeightKg());
+    }
+}
@@ -0,0 +1,46 @@
+package com.teadealer.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deductions of many customers for one period, saved in a single request.
+ * Each entry names its customer by customerId or bookNumber; the other fields mean the same as
+ * in a single POST /api/deductions (absent amounts are cleared, absent monthTotalAmount and
+ * advanceEntries keep their stored value).
+ */
+@Data
+public class DeductionBatchRequest {
+
+    private Integer year;
+    private Integer month;
+    private List<Entry> deductions = new ArrayList<>();
+
+    @Data
+    public static class Entry {
+        private Long customerId;
+        private String bookNumber;
+        private BigDecimal monthTotalAmount;
+        private BigDecimal lastMonthArrears;
+        private BigDecimal advanceAmount;
+        private String advanceEntries;
+        private BigDecimal loanAmount;
+        private LocalDate loanDate;
+        private BigDecimal fertilizer1Amount;
+        private LocalDate fertilizer1Date;
+        private BigDecimal fertilizer2Amount;
+        private LocalDate fertilizer2Date;
+        private Integer teaPacketsCount;
+        private BigDecimal teaPacketsTotal;
+        private BigDecimal agrochemicalsAmount;
+        private LocalDate agrochemicalsDate;
+        private BigDecimal transportDeduction;
+        private BigDecimal stampFee;
+        private BigDecimal otherDeductions;
+        private String otherDeductionsNote;
+    }
+}
@@ -0,0 +1,43 @@
+package com.teadealer.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a batch deduction save: one result per submitted entry, in request order.
+ */
+@Data
+public class DeductionBatchResult {
+
+    public enum Status { SAVED, FAILED }
+
+    private Integer year;
+    private Integer month;
+    private int saved;
+    private int failed;
+    private List<Row> rows = new ArrayList<>();
+
+    // Request-level notes, e.g. a ledger skipped because its price is not set for the period
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<String> warnings = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Row {
+        private int index;
+        private Long customerId;
+        private String bookNumber;
+        private Status status;
+        private BigDecimal totalDeductions;
+        private BigDecimal netAmount;
+        private String error;
+    }
+}
@@ -0,0 +1,102 @@
+package com.teadealer.dto;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Progress and per-row error report of a server-side CSV import.
+ * Written by the import worker thread and polled by clients, so counters are atomic
+ * and the error list is synchronized.
+ */
+public class ImportJob {
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    // Keep the report bounded for badly broken files; failedRows still counts every failure
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private final String id;
+    private final String type;
+    private final String fileName;
+    private final LocalDateTime createdAt = LocalDateTime.now();
+    private volatile Status status = Status.QUEUED;
+    private volatile String message;
+    private volatile LocalDateTime finishedAt;
+    private final AtomicInteger rowsRead = new AtomicInteger();
+    private final AtomicInteger rowsImported = new AtomicInteger();
+    private final AtomicInteger rowsFailed = new AtomicInteger();
+    private final List<RowError> errors = Collections.synchronizedList(new ArrayList<>());
+
+    public ImportJob(String id, String type, String fileName) {
+        this.id = id;
+        this.type = type;
+        this.fileName = fileName;
+    }
+
+    public void rowRead() {
+        rowsRead.incrementAndGet();
+    }
+
+    public void rowsImported(int count) {
+        rowsImported.addAndGet(count);
+    }
+
+    public void rowFailed(long rowNumber, String error) {
+        rowsFailed.incrementAndGet();
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(new RowError(rowNumber, error));
+        }
+    }
+
+    public void start() {
+        status = Status.RUNNING;
+    }
+
+    public void complete() {
+        status = Status.COMPLETED;
+        finishedAt = LocalDateTime.now();
+    }
+
+    public void fail(String message) {
+        this.message = message;
+        status = Status.FAILED;
+        finishedAt = LocalDateTime.now();
+    }
+
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    public String getId() { return id; }
+    public String getType() { return type; }
+    public String getFileName() { return fileName; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public Status getStatus() { return status; }
+    public String getMessage() { return message; }
+    public LocalDateTime getFinishedAt() { return finishedAt; }
+    public int getRowsRead() { return rowsRead.get(); }
+    public int getRowsImported() { return rowsImported.get(); }
+    public int getRowsFailed() { return rowsFailed.get(); }
+
+    public List<RowError> getErrors() {
+        synchronized (errors) {
+            return new ArrayList<>(errors);
+        }
+    }
+
+    public static class RowError {
+        private final long row;
+        private final String error;
+
+        public RowError(long row, String error) {
+            this.row = row;
+            this.error = error;
+        }
+
+        public long getRow() { return row; }
+        public String getError() { return error; }
+    }
+}
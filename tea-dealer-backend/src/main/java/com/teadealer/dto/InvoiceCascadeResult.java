@@ -0,0 +1,32 @@
+package com.teadealer.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What an invoice cascade did, one step per month walked: how many invoices were regenerated
+ * and for which customers the net amount changed (and therefore drove the next month).
+ */
+@Data
+public class InvoiceCascadeResult {
+
+    private Long customerId;
+    private Integer startYear;
+    private Integer startMonth;
+    private int regenerated;
+    private List<Step> steps = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Step {
+        private Integer year;
+        private Integer month;
+        private int regenerated;
+        private List<Long> changedCustomerIds;
+    }
+}
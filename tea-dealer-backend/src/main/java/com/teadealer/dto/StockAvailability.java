@@ -0,0 +1,51 @@
+package com.teadealer.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stock available in a month for every fertilizer type / bag size and tea packet type / packet
+ * weight. Sizes configured on a type are always listed (0 when nothing is in stock); sizes that
+ * only exist in stock or supply history are listed after them.
+ */
+@Data
+public class StockAvailability {
+    private Integer year;
+    private Integer month;
+    private List<Fertilizer> fertilizer = new ArrayList<>();
+    private List<TeaPackets> teaPackets = new ArrayList<>();
+
+    @Data
+    public static class Fertilizer {
+        private Long typeId;
+        private String typeName;
+        private Boolean active;
+        private BigDecimal availableKg = BigDecimal.ZERO;
+        private List<BagSize> bagSizes = new ArrayList<>();
+    }
+
+    @Data
+    public static class BagSize {
+        private BigDecimal bagSizeKg;
+        private Integer availableBags = 0;
+        private BigDecimal availableKg = BigDecimal.ZERO;
+    }
+
+    @Data
+    public static class TeaPackets {
+        private Long typeId;
+        private String typeName;
+        private Boolean active;
+        private Integer availablePackets = 0;
+        private List<PacketWeight> packetWeights = new ArrayList<>();
+    }
+
+    @Data
+    public static class PacketWeight {
+        private BigDecimal packetWeightGrams;
+        private Integer availablePackets = 0;
+    }
+}
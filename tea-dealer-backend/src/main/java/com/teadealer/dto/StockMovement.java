@@ -0,0 +1,29 @@
+package com.teadealer.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * Published whenever a stock balance changes: a stock addition, supply, or deletion of either for
+ * one fertilizer bag size or tea packet weight in a month. Availability cached for that key from
+ * this month on is stale once the change commits. A movement with no kind stands for every key
+ * (sent after the ledgers are rebuilt).
+ */
+@Data
+@AllArgsConstructor
+public class StockMovement {
+
+    public static final String FERTILIZER = "fertilizer";
+    public static final String TEA_PACKETS = "teaPackets";
+
+    private String kind;
+    private Long typeId;
+    private BigDecimal size;
+    private Integer period;
+
+    public static StockMovement all() {
+        return new StockMovement(null, null, null, null);
+    }
+}
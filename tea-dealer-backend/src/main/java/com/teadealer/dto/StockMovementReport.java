@@ -0,0 +1,39 @@
+package com.teadealer.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Month-by-month stock movement for a year: one row per fertilizer type / bag size and tea packet
+ * type / packet weight per month, from January to December. Every key with stock at the start of
+ * the year or any movement during it is listed; months without movement carry the balance forward.
+ */
+@Data
+public class StockMovementReport {
+    private Integer year;
+    private List<Row> rows = new ArrayList<>();
+
+    @Data
+    public static class Row {
+        // StockMovement.FERTILIZER or StockMovement.TEA_PACKETS
+        private String kind;
+        private Long typeId;
+        private String typeName;
+        // Bag size in kg or packet weight in grams; 0 for supplies recorded without one
+        private BigDecimal size;
+        private Integer month;
+        // Bags for fertilizer, packets for tea packets
+        private Integer opening;
+        private Integer received;
+        private Integer supplied;
+        private Integer closing;
+        // Fertilizer only
+        private BigDecimal openingKg;
+        private BigDecimal receivedKg;
+        private BigDecimal suppliedKg;
+        private BigDecimal closingKg;
+    }
+}
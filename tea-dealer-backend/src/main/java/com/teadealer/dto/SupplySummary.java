@@ -0,0 +1,36 @@
+package com.teadealer.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collected weight of one customer over a year range: one entry per year and one per month
+ * that had collections, each split by grade. Months without collections are omitted.
+ */
+@Data
+public class SupplySummary {
+    private Long customerId;
+    private String bookNumber;
+    private String growerNameEnglish;
+    private List<Totals> years = new ArrayList<>();
+    private List<Totals> months = new ArrayList<>();
+
+    @Data
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Totals {
+        private Integer year;
+        private Integer month;
+        private BigDecimal grade1Kg = BigDecimal.ZERO;
+        private BigDecimal grade2Kg = BigDecimal.ZERO;
+        private BigDecimal totalKg = BigDecimal.ZERO;
+
+        public Totals(Integer year, Integer month) {
+            this.year = year;
+            this.month = month;
+        }
+    }
+}
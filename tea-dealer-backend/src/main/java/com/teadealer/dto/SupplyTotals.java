@@ -0,0 +1,31 @@
+package com.teadealer.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * Supply figures of one customer for one period, as used by both the deduction preview and
+ * invoice generation. The supply deduction is applied per grade, so net kg and amounts are exact.
+ */
+@Data
+public class SupplyTotals {
+    private BigDecimal grade1Kg;
+    private BigDecimal grade2Kg;
+    private BigDecimal totalKg;
+    private BigDecimal supplyDeductionPercentage;
+    private BigDecimal grade1DeductionKg;
+    private BigDecimal grade2DeductionKg;
+    private BigDecimal supplyDeductionKg;
+    private BigDecimal payableKg;
+    private BigDecimal grade1Rate;
+    private BigDecimal grade2Rate;
+    private BigDecimal grade1Amount;
+    private BigDecimal grade2Amount;
+    private BigDecimal totalAmount;
+    private BigDecimal transportRatePerKg;
+    private BigDecimal transportDeduction;
+    private Boolean transportExempt;
+    private BigDecimal stampFee;
+    private BigDecimal teaPacketPrice;
+}
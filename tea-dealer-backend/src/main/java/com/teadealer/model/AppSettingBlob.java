@@ -0,0 +1,42 @@
+package com.teadealer.model;
+
+import javax.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * Binary content of a large setting (invoice template image, login background). The app_settings
+ * row of such a setting only holds a reference to it, so listing settings stays small; the
+ * content is served by GET /api/settings/blobs/{key} with its hash as ETag.
+ */
+@Entity
+@Table(name = "app_setting_blobs")
+@Data
+public class AppSettingBlob {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "setting_key", unique = true, nullable = false)
+    private String settingKey;
+
+    @Column(name = "content_type", nullable = false, length = 100)
+    private String contentType;
+
+    @Lob
+    @Column(name = "content", columnDefinition = "LONGBLOB", nullable = false)
+    private byte[] content;
+
+    // MD5 of the content, hex
+    @Column(name = "etag", nullable = false, length = 32)
+    private String etag;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    public void updateTimestamp() {
+        this.updatedAt = LocalDateTime.now();
+    }
+}
@@ -5,7 +5,8 @@ import lombok.Data;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "app_settings")
+@Table(name = "app_settings",
+    indexes = @Index(name = "idx_app_settings_sync_version", columnList = "sync_version"))
 @Data
 public class AppSettings {
     @Id
@@ -19,6 +20,10 @@ public class AppSettings {
     @Column(name = "setting_value", columnDefinition = "LONGTEXT")
     private String settingValue;
 
+    // Value of the settings version counter when the row was last written (null before it existed)
+    @Column(name = "sync_version")
+    private Long syncVersion;
+
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
@@ -0,0 +1,21 @@
+package com.teadealer.model;
+
+import javax.persistence.*;
+import lombok.Data;
+
+/**
+ * Single-row counter bumped by every settings change. Backend instances poll it to find out
+ * whether their in-memory settings are stale; the changed rows carry the counter value in
+ * {@link AppSettings#getSyncVersion()}.
+ */
+@Entity
+@Table(name = "app_settings_version")
+@Data
+public class AppSettingsVersion {
+    // Always 1
+    @Id
+    private Long id;
+
+    @Column(name = "settings_version", nullable = false)
+    private Long settingsVersion = 0L;
+}
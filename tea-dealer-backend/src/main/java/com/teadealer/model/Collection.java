@@ -8,7 +8,12 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "collections",
-    uniqueConstraints = @UniqueConstraint(columnNames = {"book_number", "collection_date", "grade"}))
+    uniqueConstraints = @UniqueConstraint(columnNames = {"book_number", "collection_date", "grade"}),
+    indexes = {
+        @Index(name = "idx_collection_date", columnList = "collection_date"),
+        @Index(name = "idx_collection_customer_date", columnList = "customer_id, collection_date"),
+        @Index(name = "idx_collection_book_date", columnList = "book_number, collection_date")
+    })
 @Data
 public class Collection {
     @Id
@@ -18,6 +23,8 @@ public class Collection {
     @Column(name = "book_number", nullable = false)
     private String bookNumber;
 
+    // The foreign key is dropped when collections are partitioned (see CollectionPartitionConfig);
+    // CustomerService refuses to delete customers that still have collections either way.
     @ManyToOne
     @JoinColumn(name = "customer_id", nullable = false)
     private Customer customer;
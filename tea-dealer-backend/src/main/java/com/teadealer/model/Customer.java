@@ -5,7 +5,8 @@ import lombok.Data;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "customers")
+@Table(name = "customers",
+    indexes = @Index(name = "idx_customer_route", columnList = "route"))
 @Data
 public class Customer {
     @Id
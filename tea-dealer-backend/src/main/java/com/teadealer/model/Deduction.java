@@ -8,7 +8,11 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "deductions",
-    uniqueConstraints = @UniqueConstraint(columnNames = {"customer_id", "year", "month"}))
+    uniqueConstraints = @UniqueConstraint(columnNames = {"customer_id", "year", "month"}),
+    indexes = {
+        @Index(name = "idx_deduction_period", columnList = "year, month"),
+        @Index(name = "idx_deduction_book_period", columnList = "book_number, year, month")
+    })
 @Data
 public class Deduction {
     @Id
@@ -128,7 +132,8 @@ public class Deduction {
         calculateTotals();
     }
 
-    private void calculateTotals() {
+    // Also called by the batch save, which writes rows with JDBC and bypasses the JPA callbacks
+    public void calculateTotals() {
         BigDecimal total = BigDecimal.ZERO;
 
         if (lastMonthArrears != null) total = total.add(lastMonthArrears);
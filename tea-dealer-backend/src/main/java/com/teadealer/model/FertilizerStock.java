@@ -7,7 +7,8 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "fertilizer_stock",
-    uniqueConstraints = @UniqueConstraint(columnNames = {"fertilizer_type_id", "year", "month", "bag_size_kg"}))
+    uniqueConstraints = @UniqueConstraint(columnNames = {"fertilizer_type_id", "year", "month", "bag_size_kg"}),
+    indexes = @Index(name = "idx_fertilizer_stock_period", columnList = "year, month"))
 @Data
 public class FertilizerStock {
     @Id
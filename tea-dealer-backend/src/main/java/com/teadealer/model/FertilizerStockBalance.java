@@ -0,0 +1,52 @@
+package com.teadealer.model;
+
+import javax.persistence.*;
+import lombok.Data;
+import java.math.BigDecimal;
+
+/**
+ * Monthly fertilizer stock movement and closing balance per (type, bag size).
+ * Derived from fertilizer_stock and fertilizer_supply and kept current by StockLedgerService;
+ * the closing balance of the latest row at or before a month is the stock available in that month.
+ */
+@Entity
+@Table(name = "fertilizer_stock_balances",
+    uniqueConstraints = @UniqueConstraint(name = "uk_fertilizer_balance_type_size_period",
+        columnNames = {"fertilizer_type_id", "bag_size_kg", "period"}),
+    indexes = @Index(name = "idx_fertilizer_balance_period", columnList = "period"))
+@Data
+public class FertilizerStockBalance {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "fertilizer_type_id", nullable = false)
+    private Long fertilizerTypeId;
+
+    // 0 for stock or supplies recorded without a bag size
+    @Column(name = "bag_size_kg", precision = 10, scale = 2, nullable = false)
+    private BigDecimal bagSizeKg;
+
+    // yyyymm
+    @Column(name = "period", nullable = false)
+    private Integer period;
+
+    @Column(name = "added_kg", precision = 12, scale = 2, nullable = false)
+    private BigDecimal addedKg = BigDecimal.ZERO;
+
+    @Column(name = "supplied_kg", precision = 12, scale = 2, nullable = false)
+    private BigDecimal suppliedKg = BigDecimal.ZERO;
+
+    @Column(name = "added_bags", nullable = false)
+    private Integer addedBags = 0;
+
+    @Column(name = "supplied_bags", nullable = false)
+    private Integer suppliedBags = 0;
+
+    // Stock left at the end of the month: everything added minus everything supplied up to and including it
+    @Column(name = "closing_kg", precision = 12, scale = 2, nullable = false)
+    private BigDecimal closingKg = BigDecimal.ZERO;
+
+    @Column(name = "closing_bags", nullable = false)
+    private Integer closingBags = 0;
+}
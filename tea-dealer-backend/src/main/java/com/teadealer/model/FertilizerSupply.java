@@ -7,7 +7,13 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "fertilizer_supply")
+@Table(name = "fertilizer_supply",
+    indexes = {
+        @Index(name = "idx_fertilizer_supply_date", columnList = "supply_date"),
+        @Index(name = "idx_fertilizer_supply_customer_date", columnList = "customer_id, supply_date"),
+        @Index(name = "idx_fertilizer_supply_type_date", columnList = "fertilizer_type_id, supply_date"),
+        @Index(name = "idx_fertilizer_supply_type_size_date", columnList = "fertilizer_type_id, bag_size_kg, supply_date")
+    })
 @Data
 public class FertilizerSupply {
     @Id
@@ -5,7 +5,8 @@ import lombok.Data;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "fertilizer_types")
+@Table(name = "fertilizer_types",
+    indexes = @Index(name = "idx_fertilizer_type_active_name", columnList = "active, name"))
 @Data
 public class FertilizerType {
     @Id
@@ -7,7 +7,11 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "invoices",
-    uniqueConstraints = @UniqueConstraint(columnNames = {"customer_id", "year", "month"}))
+    uniqueConstraints = @UniqueConstraint(columnNames = {"customer_id", "year", "month"}),
+    indexes = {
+        @Index(name = "idx_invoice_period_status", columnList = "year, month, status"),
+        @Index(name = "idx_invoice_book_period", columnList = "book_number, year, month")
+    })
 @Data
 public class Invoice {
     @Id
@@ -23,6 +23,9 @@ public class MonthlyRate {
     @Column(name = "tea_packet_price", precision = 10, scale = 2)
     private BigDecimal teaPacketPrice;
 
+    @Column(name = "fertilizer_price_per_kg", precision = 10, scale = 2)
+    private BigDecimal fertilizerPricePerKg; // Charged per kg of fertilizer supplied (auto-populated deductions)
+
     @Column(name = "supply_deduction_percentage", precision = 5, scale = 2)
     private BigDecimal supplyDeductionPercentage; // Default 4% - deducted from total kg before calculating amount
 
@@ -0,0 +1,32 @@
+package com.teadealer.model;
+
+import javax.persistence.*;
+import lombok.Data;
+
+/**
+ * Change counters for the inputs of SupplyCalculator: one row per (period, customer) bumped when the
+ * customer's collections for the month change, and one per period (customer 0) bumped by bulk
+ * imports and monthly rate changes. Every backend instance compares its cached totals against these
+ * rows, so a change made on one instance is seen by all of them as soon as it commits.
+ */
+@Entity
+@Table(name = "supply_input_versions",
+    uniqueConstraints = @UniqueConstraint(name = "uk_supply_input_version_period_customer",
+        columnNames = {"period", "customer_id"}))
+@Data
+public class SupplyInputVersion {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // yyyymm
+    @Column(name = "period", nullable = false)
+    private Integer period;
+
+    // 0 for the period-wide counter
+    @Column(name = "customer_id", nullable = false)
+    private Long customerId;
+
+    @Column(name = "version", nullable = false)
+    private Long version;
+}
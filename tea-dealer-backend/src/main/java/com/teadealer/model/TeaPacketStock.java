@@ -7,7 +7,8 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "tea_packet_stock",
-    uniqueConstraints = @UniqueConstraint(columnNames = {"year", "month", "tea_packet_type_id", "packet_weight_grams"}))
+    uniqueConstraints = @UniqueConstraint(columnNames = {"year", "month", "tea_packet_type_id", "packet_weight_grams"}),
+    indexes = @Index(name = "idx_tea_packet_stock_type_weight_period", columnList = "tea_packet_type_id, packet_weight_grams, year, month"))
 @Data
 public class TeaPacketStock {
     @Id
@@ -0,0 +1,49 @@
+package com.teadealer.model;
+
+import javax.persistence.*;
+import lombok.Data;
+import java.math.BigDecimal;
+
+/**
+ * Monthly tea packet stock movement and closing balance per (type, packet weight).
+ * Derived from tea_packet_stock and tea_packet_supply and kept current by StockLedgerService;
+ * the closing balance of the latest row at or before a month is the stock available in that month.
+ */
+@Entity
+@Table(name = "tea_packet_stock_balances",
+    uniqueConstraints = @UniqueConstraint(name = "uk_tea_packet_balance_type_weight_period",
+        columnNames = {"tea_packet_type_id", "packet_weight_grams", "period"}),
+    indexes = @Index(name = "idx_tea_packet_balance_period", columnList = "period"))
+@Data
+public class TeaPacketStockBalance {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // 0 for supplies recorded without a packet type
+    @Column(name = "tea_packet_type_id", nullable = false)
+    private Long teaPacketTypeId;
+
+    // 0 for supplies recorded without a packet weight
+    @Column(name = "packet_weight_grams", precision = 10, scale = 2, nullable = false)
+    private BigDecimal packetWeightGrams;
+
+    // yyyymm
+    @Column(name = "period", nullable = false)
+    private Integer period;
+
+    @Column(name = "packets_added", nullable = false)
+    private Integer packetsAdded = 0;
+
+    @Column(name = "packets_supplied", nullable = false)
+    private Integer packetsSupplied = 0;
+
+    // Packets left at the end of the month: everything added minus everything supplied up to and including it
+    @Column(name = "closing_packets", nullable = false)
+    private Integer closingPackets = 0;
+
+    // Everything added up to and including the month. Null only on rows written before the column
+    // existed; StockLedgerService rebuilds the ledger at startup when it finds one
+    @Column(name = "received_packets")
+    private Integer receivedPackets = 0;
+}
@@ -7,7 +7,12 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "tea_packet_supply")
+@Table(name = "tea_packet_supply",
+    indexes = {
+        @Index(name = "idx_tea_packet_supply_date", columnList = "supply_date"),
+        @Index(name = "idx_tea_packet_supply_customer_date", columnList = "customer_id, supply_date"),
+        @Index(name = "idx_tea_packet_supply_type_weight_date", columnList = "tea_packet_type_id, packet_weight_grams, supply_date")
+    })
 @Data
 public class TeaPacketSupply {
     @Id
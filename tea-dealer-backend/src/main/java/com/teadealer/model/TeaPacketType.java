@@ -5,7 +5,8 @@ import lombok.Data;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "tea_packet_types")
+@Table(name = "tea_packet_types",
+    indexes = @Index(name = "idx_tea_packet_type_active_name", columnList = "active, name"))
 @Data
 public class TeaPacketType {
     @Id
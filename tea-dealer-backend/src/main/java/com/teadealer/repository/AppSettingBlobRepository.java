@@ -0,0 +1,10 @@
+package com.teadealer.repository;
+
+import com.teadealer.model.AppSettingBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Optional;
+
+public interface AppSettingBlobRepository extends JpaRepository<AppSettingBlob, Long> {
+    Optional<AppSettingBlob> findBySettingKey(String settingKey);
+}
@@ -2,8 +2,16 @@ package com.teadealer.repository;
 
 import com.teadealer.model.AppSettings;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
 import java.util.Optional;
 
 public interface AppSettingsRepository extends JpaRepository<AppSettings, Long> {
     Optional<AppSettings> findBySettingKey(String settingKey);
+
+    List<AppSettings> findBySyncVersionGreaterThan(Long syncVersion);
+
+    @Query("SELECT s.settingKey FROM AppSettings s")
+    List<String> findAllKeys();
 }
@@ -0,0 +1,22 @@
+package com.teadealer.repository;
+
+import com.teadealer.model.AppSettingsVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+public interface AppSettingsVersionRepository extends JpaRepository<AppSettingsVersion, Long> {
+    @Query("SELECT v.settingsVersion FROM AppSettingsVersion v WHERE v.id = 1")
+    Long findCurrentVersion();
+
+    // Creates the counter row; a no-op when another instance already has
+    @Modifying
+    @Query(value = "INSERT INTO app_settings_version (id, settings_version) VALUES (1, 0)"
+            + " ON DUPLICATE KEY UPDATE id = id", nativeQuery = true)
+    int createIfMissing();
+
+    // Holds the row lock until commit, so concurrent settings writes on any node commit in version order
+    @Modifying
+    @Query("UPDATE AppSettingsVersion v SET v.settingsVersion = v.settingsVersion + 1 WHERE v.id = 1")
+    int bump();
+}
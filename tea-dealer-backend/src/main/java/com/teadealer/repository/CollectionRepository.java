@@ -2,7 +2,10 @@ package com.teadealer.repository;
 
 import com.teadealer.model.Collection;
 import com.teadealer.model.TeaGrade;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
@@ -13,7 +16,10 @@ import java.util.Optional;
 public interface CollectionRepository extends JpaRepository<Collection, Long> {
     List<Collection> findByCollectionDate(LocalDate date);
     List<Collection> findByCollectionDateBetween(LocalDate startDate, LocalDate endDate);
-    List<Collection> findByCustomerId(Long customerId);
+    // Spelled out: the derived query outer-joins customers and scans collections instead of using the customer index
+    @Query("SELECT c FROM Collection c WHERE c.customer.id = :customerId")
+    List<Collection> findByCustomerId(@Param("customerId") Long customerId);
+    boolean existsByCustomerId(Long customerId);
     Optional<Collection> findByCustomerIdAndCollectionDate(Long customerId, LocalDate date);
     Optional<Collection> findByCustomerIdAndCollectionDateAndGrade(Long customerId, LocalDate date, TeaGrade grade);
     List<Collection> findByCustomerIdAndCollectionDateBetween(Long customerId, LocalDate startDate, LocalDate endDate);
@@ -23,4 +29,52 @@ public interface CollectionRepository extends JpaRepository<Collection, Long> {
     Optional<Collection> findByBookNumberAndCollectionDate(String bookNumber, LocalDate date);
     Optional<Collection> findByBookNumberAndCollectionDateAndGrade(String bookNumber, LocalDate date, TeaGrade grade);
     List<Collection> findByBookNumberAndCollectionDateBetween(String bookNumber, LocalDate startDate, LocalDate endDate);
-}
\ No newline at end of file
+
+    // Keyset pages ordered by (collectionDate, id). The first page uses the derived methods;
+    // later pages start strictly after the (date, id) of the previous page's last row.
+    @Query("SELECT c FROM Collection c WHERE c.customer.id = :customerId ORDER BY c.collectionDate ASC, c.id ASC")
+    List<Collection> findByCustomerIdOrderByCollectionDateAscIdAsc(@Param("customerId") Long customerId, Pageable pageable);
+
+    @Query("SELECT c FROM Collection c WHERE c.customer.id = :customerId AND c.collectionDate >= :afterDate"
+            + " AND (c.collectionDate > :afterDate OR c.id > :afterId) ORDER BY c.collectionDate ASC, c.id ASC")
+    List<Collection> findCustomerPageAfter(@Param("customerId") Long customerId, @Param("afterDate") LocalDate afterDate,
+                                           @Param("afterId") Long afterId, Pageable pageable);
+
+    List<Collection> findByBookNumberOrderByCollectionDateAscIdAsc(String bookNumber, Pageable pageable);
+
+    @Query("SELECT c FROM Collection c WHERE c.bookNumber = :bookNumber AND c.collectionDate >= :afterDate"
+            + " AND (c.collectionDate > :afterDate OR c.id > :afterId) ORDER BY c.collectionDate ASC, c.id ASC")
+    List<Collection> findBookNumberPageAfter(@Param("bookNumber") String bookNumber, @Param("afterDate") LocalDate afterDate,
+                                             @Param("afterId") Long afterId, Pageable pageable);
+
+    List<Collection> findByCollectionDateBetweenOrderByCollectionDateAscIdAsc(LocalDate startDate, LocalDate endDate, Pageable pageable);
+
+    @Query("SELECT c FROM Collection c WHERE c.collectionDate >= :afterDate AND c.collectionDate <= :endDate"
+            + " AND (c.collectionDate > :afterDate OR c.id > :afterId) ORDER BY c.collectionDate ASC, c.id ASC")
+    List<Collection> findDateRangePageAfter(@Param("afterDate") LocalDate afterDate, @Param("afterId") Long afterId,
+                                            @Param("endDate") LocalDate endDate, Pageable pageable);
+
+    // Monthly per-grade totals: one grouped pass over the customer/date index range instead of loading every row
+    @Query("SELECT c.customer.id, YEAR(c.collectionDate), MONTH(c.collectionDate), c.grade, SUM(c.weightKg)"
+            + " FROM Collection c WHERE c.customer.id IN :customerIds"
+            + " AND c.collectionDate >= :startDate AND c.collectionDate < :endDate"
+            + " GROUP BY c.customer.id, YEAR(c.collectionDate), MONTH(c.collectionDate), c.grade")
+    List<Object[]> sumMonthlyWeightByCustomers(@Param("customerIds") List<Long> customerIds,
+                                               @Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
+    @Query("SELECT c.customer.id, YEAR(c.collectionDate), MONTH(c.collectionDate), c.grade, SUM(c.weightKg)"
+            + " FROM Collection c WHERE c.collectionDate >= :startDate AND c.collectionDate < :endDate"
+            + " GROUP BY c.customer.id, YEAR(c.collectionDate), MONTH(c.collectionDate), c.grade")
+    List<Object[]> sumMonthlyWeight(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
+    // Per-book, per-grade weight for one period (deduction previews for all customers at once)
+    @Query("SELECT c.bookNumber, c.grade, SUM(c.weightKg) FROM Collection c"
+            + " WHERE c.collectionDate >= :startDate AND c.collectionDate < :endDate GROUP BY c.bookNumber, c.grade")
+    List<Object[]> sumWeightByBookNumberAndGrade(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
+    // Per-grade weight of one book for a period (a single customer's supply totals)
+    @Query("SELECT c.grade, SUM(c.weightKg) FROM Collection c WHERE c.bookNumber = :bookNumber"
+            + " AND c.collectionDate >= :startDate AND c.collectionDate < :endDate GROUP BY c.grade")
+    List<Object[]> sumWeightByGradeForBookNumber(@Param("bookNumber") String bookNumber,
+                                                 @Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+}
@@ -2,8 +2,10 @@ package com.teadealer.repository;
 
 import com.teadealer.model.Customer;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -11,7 +13,15 @@ import java.util.Optional;
 public interface CustomerRepository extends JpaRepository<Customer, Long> {
     Optional<Customer> findByBookNumber(String bookNumber);
 
+    List<Customer> findByBookNumberIn(Collection<String> bookNumbers);
+
     List<Customer> findByRoute(String route);
 
-    List<Customer> findByGrowerNameEnglishContainingIgnoreCase(String name);
+    // [bookNumber, id] pairs, for validating imports without loading full customer rows
+    @Query("SELECT c.bookNumber, c.id FROM Customer c")
+    List<Object[]> findAllBookNumbersAndIds();
+
+    // One [count, latest updatedAt] row; changes whenever a customer is added, edited or deleted
+    @Query("SELECT COUNT(c), MAX(c.updatedAt) FROM Customer c")
+    List<Object[]> findCountAndLastUpdate();
 }
\ No newline at end of file
@@ -2,8 +2,11 @@ package com.teadealer.repository;
 
 import com.teadealer.model.Deduction;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -11,8 +14,11 @@ import java.util.Optional;
 public interface DeductionRepository extends JpaRepository<Deduction, Long> {
     Optional<Deduction> findByCustomerIdAndYearAndMonth(Long customerId, Integer year, Integer month);
     Optional<Deduction> findByBookNumberAndYearAndMonth(String bookNumber, Integer year, Integer month);
-    List<Deduction> findByCustomerId(Long customerId);
+    // Spelled out: the derived query outer-joins customers and scans deductions instead of using the customer index
+    @Query("SELECT d FROM Deduction d WHERE d.customer.id = :customerId")
+    List<Deduction> findByCustomerId(@Param("customerId") Long customerId);
     List<Deduction> findByBookNumber(String bookNumber);
     List<Deduction> findByYearAndMonth(Integer year, Integer month);
     List<Deduction> findByYear(Integer year);
+    List<Deduction> findByYearAndMonthAndCustomerIdIn(Integer year, Integer month, Collection<Long> customerIds);
 }
@@ -0,0 +1,84 @@
+package com.teadealer.repository;
+
+import com.teadealer.model.FertilizerStockBalance;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface FertilizerStockBalanceRepository extends JpaRepository<FertilizerStockBalance, Long> {
+    boolean existsByFertilizerTypeIdAndBagSizeKgAndPeriod(Long fertilizerTypeId, BigDecimal bagSizeKg, Integer period);
+
+    Optional<FertilizerStockBalance> findFirstByFertilizerTypeIdAndBagSizeKgAndPeriodLessThanEqualOrderByPeriodDesc(
+            Long fertilizerTypeId, BigDecimal bagSizeKg, Integer period);
+
+    // The row a new month carries its balance from, locked until the month is opened
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<FertilizerStockBalance> findFirstByFertilizerTypeIdAndBagSizeKgAndPeriodLessThanOrderByPeriodDesc(
+            Long fertilizerTypeId, BigDecimal bagSizeKg, Integer period);
+
+    // Latest row at or before the period for every bag size of a type
+    @Query("SELECT b FROM FertilizerStockBalance b WHERE b.fertilizerTypeId = :typeId AND b.period = ("
+            + "SELECT MAX(b2.period) FROM FertilizerStockBalance b2 WHERE b2.fertilizerTypeId = b.fertilizerTypeId"
+            + " AND b2.bagSizeKg = b.bagSizeKg AND b2.period <= :period)")
+    List<FertilizerStockBalance> findLatestByType(@Param("typeId") Long typeId, @Param("period") Integer period);
+
+    // Latest row at or before the period for every (type, bag size)
+    @Query("SELECT b FROM FertilizerStockBalance b WHERE b.period <= :period AND b.period = ("
+            + "SELECT MAX(b2.period) FROM FertilizerStockBalance b2 WHERE b2.fertilizerTypeId = b.fertilizerTypeId"
+            + " AND b2.bagSizeKg = b.bagSizeKg AND b2.period <= :period)")
+    List<FertilizerStockBalance> findLatest(@Param("period") Integer period);
+
+    // Every row in a range of months, ordered per (type, bag size) for the movement report
+    List<FertilizerStockBalance> findByPeriodBetweenOrderByFertilizerTypeIdAscBagSizeKgAscPeriodAsc(
+            Integer fromPeriod, Integer toPeriod);
+
+    // Opens a month with the closing balance carried over; a no-op when the month already exists
+    @Modifying
+    @Query(value = "INSERT INTO fertilizer_stock_balances (fertilizer_type_id, bag_size_kg, period, added_kg, supplied_kg,"
+            + " added_bags, supplied_bags, closing_kg, closing_bags) VALUES (:typeId, :bagSizeKg, :period, 0, 0, 0, 0, :closingKg, :closingBags)"
+            + " ON DUPLICATE KEY UPDATE period = period", nativeQuery = true)
+    int openPeriod(@Param("typeId") Long typeId, @Param("bagSizeKg") BigDecimal bagSizeKg, @Param("period") Integer period,
+                   @Param("closingKg") BigDecimal closingKg, @Param("closingBags") Integer closingBags);
+
+    @Modifying
+    @Query("UPDATE FertilizerStockBalance b SET b.addedKg = b.addedKg + :addedKg, b.suppliedKg = b.suppliedKg + :suppliedKg,"
+            + " b.addedBags = b.addedBags + :addedBags, b.suppliedBags = b.suppliedBags + :suppliedBags"
+            + " WHERE b.fertilizerTypeId = :typeId AND b.bagSizeKg = :bagSizeKg AND b.period = :period")
+    int addMovement(@Param("typeId") Long typeId, @Param("bagSizeKg") BigDecimal bagSizeKg, @Param("period") Integer period,
+                    @Param("addedKg") BigDecimal addedKg, @Param("suppliedKg") BigDecimal suppliedKg,
+                    @Param("addedBags") Integer addedBags, @Param("suppliedBags") Integer suppliedBags);
+
+    // Guarded decrement: only applies while the month still has the bags, so concurrent supplies cannot overdraw it
+    @Modifying
+    @Query("UPDATE FertilizerStockBalance b SET b.suppliedKg = b.suppliedKg + :kg, b.suppliedBags = b.suppliedBags + :bags,"
+            + " b.closingKg = b.closingKg - :kg, b.closingBags = b.closingBags - :bags"
+            + " WHERE b.fertilizerTypeId = :typeId AND b.bagSizeKg = :bagSizeKg AND b.period = :period AND b.closingBags >= :bags")
+    int reserve(@Param("typeId") Long typeId, @Param("bagSizeKg") BigDecimal bagSizeKg, @Param("period") Integer period,
+                @Param("kg") BigDecimal kg, @Param("bags") Integer bags);
+
+    // Carries a reservation into later months, skipping any month that would go negative
+    @Modifying
+    @Query("UPDATE FertilizerStockBalance b SET b.closingKg = b.closingKg - :kg, b.closingBags = b.closingBags - :bags"
+            + " WHERE b.fertilizerTypeId = :typeId AND b.bagSizeKg = :bagSizeKg AND b.period > :period AND b.closingBags >= :bags")
+    int reserveAfter(@Param("typeId") Long typeId, @Param("bagSizeKg") BigDecimal bagSizeKg, @Param("period") Integer period,
+                     @Param("kg") BigDecimal kg, @Param("bags") Integer bags);
+
+    long countByFertilizerTypeIdAndBagSizeKgAndPeriodGreaterThan(Long fertilizerTypeId, BigDecimal bagSizeKg, Integer period);
+
+    // A movement in one month changes the closing balance of that month and every later one
+    @Modifying
+    @Query("UPDATE FertilizerStockBalance b SET b.closingKg = b.closingKg + :kg, b.closingBags = b.closingBags + :bags"
+            + " WHERE b.fertilizerTypeId = :typeId AND b.bagSizeKg = :bagSizeKg AND b.period >= :period")
+    int shiftClosing(@Param("typeId") Long typeId, @Param("bagSizeKg") BigDecimal bagSizeKg, @Param("period") Integer period,
+                     @Param("kg") BigDecimal kg, @Param("bags") Integer bags);
+}
@@ -18,11 +18,12 @@ public interface FertilizerStockRepository extends JpaRepository<FertilizerStock
 
     Optional<FertilizerStock> findByFertilizerTypeIdAndYearAndMonthAndBagSizeKg(Long fertilizerTypeId, Integer year, Integer month, BigDecimal bagSizeKg);
 
-    List<FertilizerStock> findByFertilizerTypeIdOrderByYearDescMonthDesc(Long fertilizerTypeId);
-
-    @Query("SELECT COALESCE(SUM(fs.stockAddedKg), 0) FROM FertilizerStock fs WHERE fs.fertilizerType.id = :typeId AND (fs.year < :year OR (fs.year = :year AND fs.month <= :month))")
-    BigDecimal getTotalStockUpToMonth(@Param("typeId") Long typeId, @Param("year") Integer year, @Param("month") Integer month);
-
-    @Query("SELECT COALESCE(SUM(fs.bagsAdded), 0) FROM FertilizerStock fs WHERE fs.fertilizerType.id = :typeId AND fs.bagSizeKg = :bagSizeKg AND (fs.year < :year OR (fs.year = :year AND fs.month <= :month))")
-    Integer getTotalBagsUpToMonth(@Param("typeId") Long typeId, @Param("bagSizeKg") BigDecimal bagSizeKg, @Param("year") Integer year, @Param("month") Integer month);
+    // Spelled out: the derived query outer-joins fertilizer_types and scans fertilizer_stock instead of using the type index
+    @Query("SELECT s FROM FertilizerStock s WHERE s.fertilizerType.id = :fertilizerTypeId ORDER BY s.year DESC, s.month DESC")
+    List<FertilizerStock> findByFertilizerTypeIdOrderByYearDescMonthDesc(@Param("fertilizerTypeId") Long fertilizerTypeId);
+
+    // [typeId, bagSizeKg, year, month, kg added, bags added] for the stock ledger backfill
+    @Query("SELECT fs.fertilizerType.id, fs.bagSizeKg, fs.year, fs.month, SUM(fs.stockAddedKg), SUM(fs.bagsAdded)"
+            + " FROM FertilizerStock fs GROUP BY fs.fertilizerType.id, fs.bagSizeKg, fs.year, fs.month")
+    List<Object[]> sumByTypeSizeAndPeriod();
 }
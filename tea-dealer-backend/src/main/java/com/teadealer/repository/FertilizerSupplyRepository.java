@@ -12,21 +12,30 @@ import java.util.List;
 
 @Repository
 public interface FertilizerSupplyRepository extends JpaRepository<FertilizerSupply, Long> {
-    List<FertilizerSupply> findByCustomerIdOrderBySupplyDateDesc(Long customerId);
+    // Spelled out: the derived queries outer-join the customer or type and scan fertilizer_supply instead of using its indexes
+    @Query("SELECT s FROM FertilizerSupply s WHERE s.customer.id = :customerId ORDER BY s.supplyDate DESC")
+    List<FertilizerSupply> findByCustomerIdOrderBySupplyDateDesc(@Param("customerId") Long customerId);
 
-    List<FertilizerSupply> findByFertilizerTypeIdOrderBySupplyDateDesc(Long fertilizerTypeId);
+    @Query("SELECT s FROM FertilizerSupply s WHERE s.fertilizerType.id = :fertilizerTypeId ORDER BY s.supplyDate DESC")
+    List<FertilizerSupply> findByFertilizerTypeIdOrderBySupplyDateDesc(@Param("fertilizerTypeId") Long fertilizerTypeId);
 
     List<FertilizerSupply> findBySupplyDateBetweenOrderBySupplyDateDesc(LocalDate startDate, LocalDate endDate);
 
-    @Query("SELECT fs FROM FertilizerSupply fs WHERE YEAR(fs.supplyDate) = :year AND MONTH(fs.supplyDate) = :month ORDER BY fs.supplyDate DESC, fs.customer.bookNumber ASC")
-    List<FertilizerSupply> findByYearAndMonth(@Param("year") Integer year, @Param("month") Integer month);
-
-    @Query("SELECT COALESCE(SUM(fs.quantityKg), 0) FROM FertilizerSupply fs WHERE fs.fertilizerType.id = :typeId AND (YEAR(fs.supplyDate) < :year OR (YEAR(fs.supplyDate) = :year AND MONTH(fs.supplyDate) <= :month))")
-    BigDecimal getTotalSuppliedUpToMonth(@Param("typeId") Long typeId, @Param("year") Integer year, @Param("month") Integer month);
+    // Date filters are half-open ranges [startDate, endDate) so they can use the supply_date indexes
+    @Query("SELECT fs FROM FertilizerSupply fs WHERE fs.supplyDate >= :startDate AND fs.supplyDate < :endDate"
+            + " ORDER BY fs.supplyDate DESC, fs.customer.bookNumber ASC")
+    List<FertilizerSupply> findByPeriod(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
 
     @Query("SELECT COALESCE(SUM(fs.quantityKg), 0) FROM FertilizerSupply fs WHERE fs.customer.id = :customerId AND fs.fertilizerType.id = :typeId")
     BigDecimal getTotalSuppliedToCustomer(@Param("customerId") Long customerId, @Param("typeId") Long typeId);
 
-    @Query("SELECT COALESCE(SUM(fs.bagsCount), 0) FROM FertilizerSupply fs WHERE fs.fertilizerType.id = :typeId AND fs.bagSizeKg = :bagSizeKg AND (YEAR(fs.supplyDate) < :year OR (YEAR(fs.supplyDate) = :year AND MONTH(fs.supplyDate) <= :month))")
-    Integer getTotalBagsSuppliedUpToMonth(@Param("typeId") Long typeId, @Param("bagSizeKg") BigDecimal bagSizeKg, @Param("year") Integer year, @Param("month") Integer month);
+    // [customerId, total kg, last supply date] per customer for [startDate, endDate) (auto-populated deductions)
+    @Query("SELECT fs.customer.id, SUM(fs.quantityKg), MAX(fs.supplyDate) FROM FertilizerSupply fs"
+            + " WHERE fs.supplyDate >= :startDate AND fs.supplyDate < :endDate GROUP BY fs.customer.id")
+    List<Object[]> sumQuantityByCustomer(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
+    // [typeId, bagSizeKg, year, month, kg supplied, bags supplied] for the stock ledger backfill
+    @Query("SELECT fs.fertilizerType.id, fs.bagSizeKg, YEAR(fs.supplyDate), MONTH(fs.supplyDate), SUM(fs.quantityKg), SUM(fs.bagsCount)"
+            + " FROM FertilizerSupply fs GROUP BY fs.fertilizerType.id, fs.bagSizeKg, YEAR(fs.supplyDate), MONTH(fs.supplyDate)")
+    List<Object[]> sumByTypeSizeAndMonth();
 }
@@ -2,6 +2,8 @@ package com.teadealer.repository;
 
 import com.teadealer.model.Invoice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -16,7 +18,9 @@ public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
 
     List<Invoice> findByYearAndMonth(Integer year, Integer month);
 
-    List<Invoice> findByCustomerId(Long customerId);
+    // Spelled out: the derived query outer-joins customers and scans invoices instead of using the customer index
+    @Query("SELECT i FROM Invoice i WHERE i.customer.id = :customerId")
+    List<Invoice> findByCustomerId(@Param("customerId") Long customerId);
 
     List<Invoice> findByBookNumber(String bookNumber);
 
@@ -29,4 +33,8 @@ public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
     boolean existsByCustomerIdAndYearAndMonth(Long customerId, Integer year, Integer month);
 
     long countByYearAndMonth(Integer year, Integer month);
+
+    // [customerId, netAmount] of the period's invoices that ended negative (arrears for the next month)
+    @Query("SELECT i.customer.id, i.netAmount FROM Invoice i WHERE i.year = :year AND i.month = :month AND i.netAmount < 0")
+    List<Object[]> findNegativeNetAmountsByPeriod(@Param("year") Integer year, @Param("month") Integer month);
 }
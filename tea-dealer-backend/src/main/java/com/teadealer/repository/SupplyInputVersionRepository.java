@@ -0,0 +1,28 @@
+package com.teadealer.repository;
+
+import com.teadealer.model.SupplyInputVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface SupplyInputVersionRepository extends JpaRepository<SupplyInputVersion, Long> {
+
+    // customerId, version for the given counters of a period
+    @Query("SELECT v.customerId, v.version FROM SupplyInputVersion v WHERE v.period = :period AND v.customerId IN :customerIds")
+    List<Object[]> findVersions(@Param("period") Integer period, @Param("customerIds") Collection<Long> customerIds);
+
+    // customerId, version for every counter of a period
+    @Query("SELECT v.customerId, v.version FROM SupplyInputVersion v WHERE v.period = :period")
+    List<Object[]> findVersionsByPeriod(@Param("period") Integer period);
+
+    @Modifying
+    @Query(value = "INSERT INTO supply_input_versions (period, customer_id, version) VALUES (:period, :customerId, 1)"
+            + " ON DUPLICATE KEY UPDATE version = version + 1", nativeQuery = true)
+    int bump(@Param("period") Integer period, @Param("customerId") Long customerId);
+}
@@ -0,0 +1,78 @@
+package com.teadealer.repository;
+
+import com.teadealer.model.TeaPacketStockBalance;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface TeaPacketStockBalanceRepository extends JpaRepository<TeaPacketStockBalance, Long> {
+    boolean existsByTeaPacketTypeIdAndPacketWeightGramsAndPeriod(Long teaPacketTypeId, BigDecimal packetWeightGrams, Integer period);
+
+    Optional<TeaPacketStockBalance> findFirstByTeaPacketTypeIdAndPacketWeightGramsAndPeriodLessThanEqualOrderByPeriodDesc(
+            Long teaPacketTypeId, BigDecimal packetWeightGrams, Integer period);
+
+    // The row a new month carries its balance from, locked until the month is opened
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<TeaPacketStockBalance> findFirstByTeaPacketTypeIdAndPacketWeightGramsAndPeriodLessThanOrderByPeriodDesc(
+            Long teaPacketTypeId, BigDecimal packetWeightGrams, Integer period);
+
+    // Latest row at or before the period for every (type, weight)
+    @Query("SELECT b FROM TeaPacketStockBalance b WHERE b.period <= :period AND b.period = ("
+            + "SELECT MAX(b2.period) FROM TeaPacketStockBalance b2 WHERE b2.teaPacketTypeId = b.teaPacketTypeId"
+            + " AND b2.packetWeightGrams = b.packetWeightGrams AND b2.period <= :period)")
+    List<TeaPacketStockBalance> findLatest(@Param("period") Integer period);
+
+    // Every row in a range of months, ordered per (type, weight) for the movement report
+    List<TeaPacketStockBalance> findByPeriodBetweenOrderByTeaPacketTypeIdAscPacketWeightGramsAscPeriodAsc(
+            Integer fromPeriod, Integer toPeriod);
+
+    // Opens a month with the closing balance and received total carried over; a no-op when the month already exists
+    @Modifying
+    @Query(value = "INSERT INTO tea_packet_stock_balances (tea_packet_type_id, packet_weight_grams, period, packets_added,"
+            + " packets_supplied, closing_packets, received_packets) VALUES (:typeId, :weight, :period, 0, 0, :closingPackets,"
+            + " :receivedPackets) ON DUPLICATE KEY UPDATE period = period", nativeQuery = true)
+    int openPeriod(@Param("typeId") Long typeId, @Param("weight") BigDecimal packetWeightGrams, @Param("period") Integer period,
+                   @Param("closingPackets") Integer closingPackets, @Param("receivedPackets") Integer receivedPackets);
+
+    @Modifying
+    @Query("UPDATE TeaPacketStockBalance b SET b.packetsAdded = b.packetsAdded + :added, b.packetsSupplied = b.packetsSupplied + :supplied"
+            + " WHERE b.teaPacketTypeId = :typeId AND b.packetWeightGrams = :weight AND b.period = :period")
+    int addMovement(@Param("typeId") Long typeId, @Param("weight") BigDecimal packetWeightGrams, @Param("period") Integer period,
+                    @Param("added") Integer added, @Param("supplied") Integer supplied);
+
+    // Guarded decrement: only applies while the month still has the packets, so concurrent supplies cannot overdraw it
+    @Modifying
+    @Query("UPDATE TeaPacketStockBalance b SET b.packetsSupplied = b.packetsSupplied + :packets, b.closingPackets = b.closingPackets - :packets"
+            + " WHERE b.teaPacketTypeId = :typeId AND b.packetWeightGrams = :weight AND b.period = :period AND b.closingPackets >= :packets")
+    int reserve(@Param("typeId") Long typeId, @Param("weight") BigDecimal packetWeightGrams, @Param("period") Integer period,
+                @Param("packets") Integer packets);
+
+    // Carries a reservation into later months, skipping any month that would go negative
+    @Modifying
+    @Query("UPDATE TeaPacketStockBalance b SET b.closingPackets = b.closingPackets - :packets"
+            + " WHERE b.teaPacketTypeId = :typeId AND b.packetWeightGrams = :weight AND b.period > :period AND b.closingPackets >= :packets")
+    int reserveAfter(@Param("typeId") Long typeId, @Param("weight") BigDecimal packetWeightGrams, @Param("period") Integer period,
+                     @Param("packets") Integer packets);
+
+    long countByTeaPacketTypeIdAndPacketWeightGramsAndPeriodGreaterThan(Long teaPacketTypeId, BigDecimal packetWeightGrams, Integer period);
+
+    // A movement in one month changes the closing balance and received total of that month and every later one
+    @Modifying
+    @Query("UPDATE TeaPacketStockBalance b SET b.closingPackets = b.closingPackets + :packets,"
+            + " b.receivedPackets = b.receivedPackets + :received"
+            + " WHERE b.teaPacketTypeId = :typeId AND b.packetWeightGrams = :weight AND b.period >= :period")
+    int shiftClosing(@Param("typeId") Long typeId, @Param("weight") BigDecimal packetWeightGrams, @Param("period") Integer period,
+                     @Param("packets") Integer packets, @Param("received") Integer received);
+
+    boolean existsByReceivedPacketsIsNull();
+}
@@ -17,12 +17,8 @@ public interface TeaPacketStockRepository extends JpaRepository<TeaPacketStock,
 
     List<TeaPacketStock> findByYearAndMonth(Integer year, Integer month);
 
-    @Query("SELECT COALESCE(SUM(ts.packetsAdded), 0) FROM TeaPacketStock ts WHERE (ts.year < :year OR (ts.year = :year AND ts.month <= :month))")
-    Integer getTotalStockUpToMonth(@Param("year") Integer year, @Param("month") Integer month);
-
-    @Query("SELECT COALESCE(SUM(ts.packetsAdded), 0) FROM TeaPacketStock ts WHERE ts.teaPacketType.id = :typeId AND (ts.year < :year OR (ts.year = :year AND ts.month <= :month))")
-    Integer getTotalStockByTypeUpToMonth(@Param("typeId") Long typeId, @Param("year") Integer year, @Param("month") Integer month);
-
-    @Query("SELECT COALESCE(SUM(ts.packetsAdded), 0) FROM TeaPacketStock ts WHERE ts.teaPacketType.id = :typeId AND ts.packetWeightGrams = :packetWeightGrams AND (ts.year < :year OR (ts.year = :year AND ts.month <= :month))")
-    Integer getTotalPacketsByTypeAndWeightUpToMonth(@Param("typeId") Long typeId, @Param("packetWeightGrams") java.math.BigDecimal packetWeightGrams, @Param("year") Integer year, @Param("month") Integer month);
+    // [typeId, packetWeightGrams, year, month, packets added] for the stock ledger backfill
+    @Query("SELECT ts.teaPacketType.id, ts.packetWeightGrams, ts.year, ts.month, SUM(ts.packetsAdded)"
+            + " FROM TeaPacketStock ts GROUP BY ts.teaPacketType.id, ts.packetWeightGrams, ts.year, ts.month")
+    List<Object[]> sumByTypeWeightAndPeriod();
 }
@@ -6,21 +6,33 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @Repository
 public interface TeaPacketSupplyRepository extends JpaRepository<TeaPacketSupply, Long> {
-    List<TeaPacketSupply> findByCustomerIdOrderBySupplyDateDesc(Long customerId);
+    // Spelled out: the derived query outer-joins customers and scans tea_packet_supply instead of using the customer index
+    @Query("SELECT s FROM TeaPacketSupply s WHERE s.customer.id = :customerId ORDER BY s.supplyDate DESC")
+    List<TeaPacketSupply> findByCustomerIdOrderBySupplyDateDesc(@Param("customerId") Long customerId);
 
-    @Query("SELECT ts FROM TeaPacketSupply ts WHERE YEAR(ts.supplyDate) = :year AND MONTH(ts.supplyDate) = :month ORDER BY ts.supplyDate DESC, ts.customer.bookNumber ASC")
-    List<TeaPacketSupply> findByYearAndMonth(@Param("year") Integer year, @Param("month") Integer month);
+    // Date filters are half-open ranges [startDate, endDate) so they can use the supply_date indexes
+    @Query("SELECT ts FROM TeaPacketSupply ts WHERE ts.supplyDate >= :startDate AND ts.supplyDate < :endDate"
+            + " ORDER BY ts.supplyDate DESC, ts.customer.bookNumber ASC")
+    List<TeaPacketSupply> findByPeriod(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
 
-    @Query("SELECT COALESCE(SUM(ts.packetsCount), 0) FROM TeaPacketSupply ts WHERE (YEAR(ts.supplyDate) < :year OR (YEAR(ts.supplyDate) = :year AND MONTH(ts.supplyDate) <= :month))")
-    Integer getTotalSuppliedUpToMonth(@Param("year") Integer year, @Param("month") Integer month);
+    @Query("SELECT COALESCE(SUM(ts.packetsCount), 0) FROM TeaPacketSupply ts WHERE ts.customer.id = :customerId"
+            + " AND ts.supplyDate >= :startDate AND ts.supplyDate < :endDate")
+    Integer getTotalSuppliedToCustomerInPeriod(@Param("customerId") Long customerId,
+                                               @Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
 
-    @Query("SELECT COALESCE(SUM(ts.packetsCount), 0) FROM TeaPacketSupply ts WHERE ts.customer.id = :customerId AND YEAR(ts.supplyDate) = :year AND MONTH(ts.supplyDate) = :month")
-    Integer getTotalSuppliedToCustomerInMonth(@Param("customerId") Long customerId, @Param("year") Integer year, @Param("month") Integer month);
+    // [customerId, packets] per customer for [startDate, endDate) (auto-populated deductions)
+    @Query("SELECT ts.customer.id, SUM(ts.packetsCount) FROM TeaPacketSupply ts"
+            + " WHERE ts.supplyDate >= :startDate AND ts.supplyDate < :endDate GROUP BY ts.customer.id")
+    List<Object[]> sumPacketsByCustomer(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
 
-    @Query("SELECT COALESCE(SUM(ts.packetsCount), 0) FROM TeaPacketSupply ts WHERE ts.teaPacketType.id = :typeId AND ts.packetWeightGrams = :packetWeightGrams AND (YEAR(ts.supplyDate) < :year OR (YEAR(ts.supplyDate) = :year AND MONTH(ts.supplyDate) <= :month))")
-    Integer getTotalSuppliedByTypeAndWeightUpToMonth(@Param("typeId") Long typeId, @Param("packetWeightGrams") java.math.BigDecimal packetWeightGrams, @Param("year") Integer year, @Param("month") Integer month);
+    // [typeId or null, packetWeightGrams, year, month, packets supplied] for the stock ledger backfill
+    @Query("SELECT t.id, ts.packetWeightGrams, YEAR(ts.supplyDate), MONTH(ts.supplyDate), SUM(ts.packetsCount)"
+            + " FROM TeaPacketSupply ts LEFT JOIN ts.teaPacketType t"
+            + " GROUP BY t.id, ts.packetWeightGrams, YEAR(ts.supplyDate), MONTH(ts.supplyDate)")
+    List<Object[]> sumByTypeWeightAndMonth();
 }
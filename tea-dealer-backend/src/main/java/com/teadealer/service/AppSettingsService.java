@@ -1,19 +1,136 @@
 package com.teadealer.service;
 
+import com.teadealer.model.AppSettingBlob;
 import com.teadealer.model.AppSettings;
+import com.teadealer.model.AppSettingsVersion;
+import com.teadealer.repository.AppSettingBlobRepository;
 import com.teadealer.repository.AppSettingsRepository;
+import com.teadealer.repository.AppSettingsVersionRepository;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.DigestUtils;
 
+import java.util.Base64;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Application settings, with every value held in memory so that {@link #getSettingValue} (called
+ * many times per invoice and per PDF) is a map lookup instead of a query. The map is loaded on
+ * startup, or on first use if that comes earlier, and writes go to the database first and then to
+ * the map. Writes are serialised so the map always ends up with the value the database kept.
+ *
+ * {@link #getVersion()} increases with every change, for caches built from settings values.
+ *
+ * With several backend instances, each write also bumps the shared counter in
+ * {@link AppSettingsVersion} and stamps the row with the new value. Every instance polls the
+ * counter (one primary key lookup) and, when it has moved, reloads just the rows stamped after the
+ * value it last saw, so a change made on one node reaches the others within a poll interval.
+ *
+ * Image settings ({@link #BLOB_KEYS}) are saved as data URLs but stored in {@link AppSettingBlob};
+ * their settings value becomes a versioned reference to GET /api/settings/blobs/{key}, which is
+ * what the settings endpoints return. Saving that reference back leaves the image unchanged.
+ *
+ * Settings declared in {@link SettingKey} are validated on save and parsed once per value;
+ * {@link #get(SettingKey)} returns the parsed object.
+ */
+@Slf4j
 @Service
 public class AppSettingsService {
 
+    public static final Set<String> BLOB_KEYS = Set.of("invoice_template_image", "login_background");
+
+    // Relative to the API base, so the frontend can resolve it against whichever host it talks to
+    private static final String BLOB_PATH = "/settings/blobs/";
+
     @Autowired
     private AppSettingsRepository appSettingsRepository;
 
+    @Autowired
+    private AppSettingsVersionRepository versionRepository;
+
+    @Autowired
+    private AppSettingBlobRepository blobRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // Settings with a null value are left out, which reads the same as a missing setting
+    private volatile Map<String, String> values;
+    private final AtomicLong version = new AtomicLong();
+    // Shared counter value this instance has caught up with
+    private volatile long syncedVersion;
+    // Blob content by key; only used while it matches the reference in values
+    private final Map<String, AppSettingBlob> blobs = new ConcurrentHashMap<>();
+    // Parsed values of SettingKey settings, each with the raw value (by identity) it came from
+    private final Map<String, Parsed> parsed = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        reload();
+        moveInlineBlobs();
+    }
+
+    public synchronized void reload() {
+        // Read before the rows: anything committed later is picked up by the next poll
+        long current = currentSharedVersion();
+        Map<String, String> loaded = new ConcurrentHashMap<>();
+        for (AppSettings setting : appSettingsRepository.findAll()) {
+            if (setting.getSettingValue() != null) {
+                loaded.put(setting.getSettingKey(), setting.getSettingValue());
+            }
+        }
+        values = loaded;
+        for (SettingKey<?> setting : SettingKey.all()) {
+            parse(setting, loaded.get(setting.getKey()));
+        }
+        syncedVersion = current;
+        version.incrementAndGet();
+    }
+
+    /**
+     * Picks up settings changed on other instances. The shared counter is bumped and the row
+     * stamped in one transaction holding the counter's row lock, so once the counter shows N,
+     * every change up to N is committed and visible.
+     */
+    @Scheduled(fixedDelayString = "${app.settings.sync-interval-ms:5000}")
+    public void syncFromDatabase() {
+        if (values == null) {
+            return;
+        }
+        Long current = versionRepository.findCurrentVersion();
+        if (current == null || current == syncedVersion) {
+            return;
+        }
+        synchronized (this) {
+            Map<String, String> map = values;
+            List<AppSettings> changed = appSettingsRepository.findBySyncVersionGreaterThan(syncedVersion);
+            for (AppSettings setting : changed) {
+                if (setting.getSettingValue() != null) {
+                    map.put(setting.getSettingKey(), setting.getSettingValue());
+                } else {
+                    map.remove(setting.getSettingKey());
+                }
+                SettingKey.forKey(setting.getSettingKey()).ifPresent(key -> parse(key, setting.getSettingValue()));
+            }
+            // Deleted rows leave no stamp behind; drop whatever key no longer exists
+            map.keySet().retainAll(new HashSet<>(appSettingsRepository.findAllKeys()));
+            log.debug("Settings version {} -> {}: reloaded {} changed setting(s)", syncedVersion, current, changed.size());
+            syncedVersion = current;
+            version.incrementAndGet();
+        }
+    }
+
     public List<AppSettings> getAllSettings() {
         return appSettingsRepository.findAll();
     }
@@ -23,21 +140,188 @@ public class AppSettingsService {
     }
 
     public String getSettingValue(String key) {
-        return appSettingsRepository.findBySettingKey(key)
-                .map(AppSettings::getSettingValue)
-                .orElse(null);
+        return values().get(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(SettingKey<T> setting) {
+        String raw = values().get(setting.getKey());
+        Parsed cached = parsed.get(setting.getKey());
+        // Same string instance as when it was parsed, so the value has not changed since
+        if (cached == null || cached.raw != raw) {
+            cached = parse(setting, raw);
+        }
+        return (T) cached.value;
+    }
+
+    public long getVersion() {
+        return version.get();
     }
 
-    public AppSettings saveSetting(String key, String value) {
-        AppSettings setting = appSettingsRepository.findBySettingKey(key)
-                .orElse(new AppSettings());
-        setting.setSettingKey(key);
-        setting.setSettingValue(value);
-        return appSettingsRepository.save(setting);
+    public Optional<AppSettingBlob> getBlob(String key) {
+        String reference = values().get(key);
+        if (reference == null || !reference.startsWith(BLOB_PATH)) {
+            return Optional.empty();
+        }
+        AppSettingBlob cached = blobs.get(key);
+        if (cached != null && reference.equals(blobReference(cached))) {
+            return Optional.of(cached);
+        }
+        Optional<AppSettingBlob> loaded = blobRepository.findBySettingKey(key);
+        loaded.ifPresent(blob -> blobs.put(key, blob));
+        return loaded;
     }
 
-    public void deleteSetting(String key) {
-        appSettingsRepository.findBySettingKey(key)
-                .ifPresent(appSettingsRepository::delete);
+    public synchronized AppSettings saveSetting(String key, String value) {
+        Map<String, String> map = values();
+        boolean blobKey = BLOB_KEYS.contains(key);
+        String current = map.get(key);
+        if (blobKey && value != null && current != null && current.startsWith(BLOB_PATH) && value.endsWith(current)) {
+            // The reference handed out by the settings endpoints, sent back with the rest of a form
+            return appSettingsRepository.findBySettingKey(key)
+                    .orElseThrow(() -> new RuntimeException("Setting not found"));
+        }
+        SettingKey.forKey(key).ifPresent(setting -> setting.parse(value));
+        AppSettingBlob decoded = blobKey && value != null && !value.isEmpty() ? decodeBlob(key, value) : null;
+        String stored = decoded != null ? blobReference(decoded) : value;
+        AppSettings saved = transactionTemplate.execute(status -> {
+            if (blobKey) {
+                Optional<AppSettingBlob> existing = blobRepository.findBySettingKey(key);
+                if (decoded != null) {
+                    AppSettingBlob blob = existing.orElse(decoded);
+                    blob.setContentType(decoded.getContentType());
+                    blob.setContent(decoded.getContent());
+                    blob.setEtag(decoded.getEtag());
+                    blobs.put(key, blobRepository.save(blob));
+                } else {
+                    existing.ifPresent(blobRepository::delete);
+                }
+            }
+            AppSettings setting = appSettingsRepository.findBySettingKey(key)
+                    .orElse(new AppSettings());
+            setting.setSettingKey(key);
+            setting.setSettingValue(stored);
+            setting.setSyncVersion(bumpSharedVersion());
+            return appSettingsRepository.save(setting);
+        });
+        if (stored != null) {
+            map.put(key, stored);
+        } else {
+            map.remove(key);
+        }
+        SettingKey.forKey(key).ifPresent(setting -> parse(setting, stored));
+        version.incrementAndGet();
+        return saved;
+    }
+
+    public synchronized void deleteSetting(String key) {
+        Map<String, String> map = values();
+        transactionTemplate.executeWithoutResult(status -> {
+            if (BLOB_KEYS.contains(key)) {
+                blobRepository.findBySettingKey(key).ifPresent(blobRepository::delete);
+            }
+            appSettingsRepository.findBySettingKey(key)
+                    .ifPresent(setting -> {
+                        bumpSharedVersion();
+                        appSettingsRepository.delete(setting);
+                    });
+        });
+        map.remove(key);
+        blobs.remove(key);
+        SettingKey.forKey(key).ifPresent(setting -> parse(setting, null));
+        version.incrementAndGet();
+    }
+
+    // Image settings saved before blob storage existed still hold their base64 content inline
+    private void moveInlineBlobs() {
+        for (String key : BLOB_KEYS) {
+            String value = values().get(key);
+            if (value != null && !value.isEmpty() && !value.startsWith(BLOB_PATH)) {
+                saveSetting(key, value);
+                log.info("Moved setting {} to blob storage", key);
+            }
+        }
+    }
+
+    // Accepts a base64 data URL ("data:image/png;base64,...") or bare base64
+    private static AppSettingBlob decodeBlob(String key, String value) {
+        String contentType = "application/octet-stream";
+        String data = value;
+        if (value.startsWith("data:")) {
+            int comma = value.indexOf(',');
+            if (comma < 0 || !value.substring(0, comma).endsWith(";base64")) {
+                throw new IllegalArgumentException("Setting " + key + " must be a base64 data URL");
+            }
+            String mediaType = value.substring(5, value.indexOf(';'));
+            if (!mediaType.isEmpty()) {
+                contentType = mediaType;
+            }
+            data = value.substring(comma + 1);
+        }
+        AppSettingBlob blob = new AppSettingBlob();
+        blob.setSettingKey(key);
+        blob.setContentType(contentType);
+        try {
+            blob.setContent(Base64.getMimeDecoder().decode(data));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Setting " + key + " must be a base64 data URL");
+        }
+        blob.setEtag(DigestUtils.md5DigestAsHex(blob.getContent()));
+        return blob;
+    }
+
+    // Stored values that fail to parse (saved before validation existed) read as the default
+    private Parsed parse(SettingKey<?> setting, String raw) {
+        Object value;
+        try {
+            value = setting.parse(raw);
+        } catch (IllegalArgumentException e) {
+            log.warn("{}; using the default", e.getMessage());
+            value = setting.getDefaultValue();
+        }
+        Parsed result = new Parsed(raw, value);
+        parsed.put(setting.getKey(), result);
+        return result;
+    }
+
+    private static String blobReference(AppSettingBlob blob) {
+        return BLOB_PATH + blob.getSettingKey() + "?v=" + blob.getEtag();
+    }
+
+    private Map<String, String> values() {
+        Map<String, String> current = values;
+        if (current == null) {
+            reload();
+            current = values;
+        }
+        return current;
+    }
+
+    private long bumpSharedVersion() {
+        if (versionRepository.bump() == 0) {
+            versionRepository.createIfMissing();
+            versionRepository.bump();
+        }
+        return versionRepository.findCurrentVersion();
+    }
+
+    // Creates the counter row on first use
+    private long currentSharedVersion() {
+        Long current = versionRepository.findCurrentVersion();
+        if (current == null) {
+            transactionTemplate.executeWithoutResult(status -> versionRepository.createIfMissing());
+            current = versionRepository.findCurrentVersion();
+        }
+        return current;
+    }
+
+    private static final class Parsed {
+        private final String raw;
+        private final Object value;
+
+        private Parsed(String raw, Object value) {
+            this.raw = raw;
+            this.value = value;
+        }
     }
 }
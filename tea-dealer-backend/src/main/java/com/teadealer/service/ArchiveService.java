@@ -0,0 +1,543 @@
+package com.teadealer.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.teadealer.model.Collection;
+import com.teadealer.model.Customer;
+import com.teadealer.model.Deduction;
+import com.teadealer.model.Invoice;
+import com.teadealer.model.TeaGrade;
+import com.teadealer.service.ColumnarArchiveFile.ColumnType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Moves closed years of collections, deductions and invoices out of MySQL into one
+ * {@link ColumnarArchiveFile} per table and year ({@code <table>-<year>.tdca} under app.archive.dir),
+ * and reads them back for the history endpoints.
+ *
+ * A year is closed once it is at least two years old. Archiving runs in one transaction: the year's
+ * rows are locked, written to a temporary file that is read back and compared value by value, then
+ * deleted. The files are only renamed into place, and the archived-year cache dropped, after that
+ * transaction commits, so no reader sees a year both in MySQL and in the archive. Archived years are
+ * read-only; the save paths for collections, deductions and invoices refuse them, and customers with
+ * archived rows cannot be deleted.
+ */
+@Slf4j
+@Service
+public class ArchiveService {
+
+    private static final int OPEN_YEARS = 2;
+    private static final String EXTENSION = ".tdca";
+    private static final String COLLECTIONS = "collections";
+    private static final String DEDUCTIONS = "deductions";
+    private static final String INVOICES = "invoices";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.archive.dir:./archive}")
+    private String archiveDir;
+
+    private final Map<Path, ColumnarArchiveFile> openFiles = new ConcurrentHashMap<>();
+
+    // Consulted on every collection save and import row, so the directory is listed once and
+    // refreshed only when archiveYear() publishes a year
+    private volatile List<Integer> archivedYears;
+
+    // ============ Archiving ============
+
+    public int getLastArchivableYear() {
+        return LocalDate.now().getYear() - OPEN_YEARS;
+    }
+
+    public synchronized Map<String, Object> archiveYear(int year) {
+        if (year > getLastArchivableYear()) {
+            throw new RuntimeException("Only years up to " + getLastArchivableYear() + " can be archived");
+        }
+        if (isArchived(year)) {
+            throw new RuntimeException("Year " + year + " is already archived");
+        }
+        try {
+            Files.createDirectories(directory());
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot create archive directory " + directory(), e);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("year", year);
+        transactionTemplate.executeWithoutResult(status -> {
+            // Temporary file -> published path, renamed once the deletes are committed
+            Map<Path, Path> written = new LinkedHashMap<>();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(written);
+                }
+
+                @Override
+                public void afterCompletion(int completion) {
+                    // After a rollback the rows are still in MySQL; the temporary files are dropped
+                    if (completion != STATUS_COMMITTED) {
+                        written.keySet().forEach(ArchiveService::deleteQuietly);
+                    }
+                }
+            });
+            Object[] dateRange = {Date.valueOf(LocalDate.of(year, 1, 1)), Date.valueOf(LocalDate.of(year + 1, 1, 1))};
+            archiveTable(COLLECTIONS, "collection_date >= ? AND collection_date < ?", dateRange, year, written, result);
+            archiveTable(DEDUCTIONS, "year = ?", new Object[]{year}, year, written, result);
+            archiveTable(INVOICES, "year = ?", new Object[]{year}, year, written, result);
+        });
+        log.info("Archived {}: {}", year, result);
+        return result;
+    }
+
+    private void publish(Map<Path, Path> written) {
+        for (Map.Entry<Path, Path> file : written.entrySet()) {
+            try {
+                Files.move(file.getKey(), file.getValue(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                // The rows are already deleted; the temporary file is the only copy and must be renamed by hand
+                log.error("Could not publish archive file {} as {}; rename it manually", file.getKey(), file.getValue(), e);
+            }
+            openFiles.remove(file.getValue());
+        }
+        archivedYears = null;
+    }
+
+    private void archiveTable(String table, String where, Object[] params, int year, Map<Path, Path> written,
+                              Map<String, Object> result) {
+        List<String> names = new ArrayList<>();
+        List<ColumnType> types = new ArrayList<>();
+        List<Object[]> rows = new ArrayList<>();
+        // FOR UPDATE also locks the range against new inserts until the delete below commits
+        jdbcTemplate.query("SELECT * FROM " + table + " WHERE " + where + " ORDER BY id FOR UPDATE", rs -> {
+            ResultSetMetaData meta = rs.getMetaData();
+            if (names.isEmpty()) {
+                for (int i = 1; i <= meta.getColumnCount(); i++) {
+                    names.add(meta.getColumnLabel(i).toLowerCase());
+                    types.add(columnType(meta.getColumnType(i)));
+                }
+            }
+            Object[] row = new Object[names.size()];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = readValue(rs, i + 1, meta.getColumnType(i + 1));
+            }
+            rows.add(row);
+        }, params);
+
+        Path target = file(table, year);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        written.put(temp, target);
+        try {
+            ColumnarArchiveFile.write(temp, names, types, rows);
+            verify(ColumnarArchiveFile.open(temp), names, types, rows);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to archive " + table + " for " + year, e);
+        }
+
+        int deleted = jdbcTemplate.update("DELETE FROM " + table + " WHERE " + where, params);
+        if (deleted != rows.size()) {
+            throw new RuntimeException("Archived " + rows.size() + " " + table + " rows but deleted " + deleted);
+        }
+        result.put(table, rows.size());
+    }
+
+    // Reads every column back and compares it with what was selected, before anything is deleted
+    private static void verify(ColumnarArchiveFile file, List<String> names, List<ColumnType> types, List<Object[]> rows)
+            throws IOException {
+        if (file.getRowCount() != rows.size() || !file.getColumnNames().equals(names)) {
+            throw new IOException("Header mismatch after writing " + file.getPath());
+        }
+        for (int col = 0; col < names.size(); col++) {
+            Object[] values = file.readColumn(names.get(col));
+            for (int row = 0; row < rows.size(); row++) {
+                Object expected = rows.get(row)[col];
+                if (expected != null && types.get(col) == ColumnType.STRING) {
+                    expected = expected.toString();
+                }
+                if (!Objects.equals(expected, values[row])) {
+                    throw new IOException("Value mismatch in " + file.getPath() + " at row " + row + ", column "
+                            + names.get(col) + ": wrote " + expected + ", read " + values[row]);
+                }
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // best effort; a leftover .tmp file is never read
+        }
+    }
+
+    private static ColumnType columnType(int sqlType) {
+        switch (sqlType) {
+            case Types.BIGINT:
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return ColumnType.LONG;
+            case Types.DATE:
+                return ColumnType.DATE;
+            default:
+                return ColumnType.STRING;
+        }
+    }
+
+    private static Object readValue(ResultSet rs, int index, int sqlType) throws SQLException {
+        Object value;
+        switch (columnType(sqlType)) {
+            case LONG:
+                value = rs.getLong(index);
+                break;
+            case DATE:
+                Date date = rs.getDate(index);
+                value = date != null ? date.toLocalDate() : null;
+                break;
+            default:
+                if (sqlType == Types.TIMESTAMP) {
+                    Timestamp ts = rs.getTimestamp(index);
+                    value = ts != null ? ts.toLocalDateTime().toString() : null;
+                } else if (sqlType == Types.DECIMAL || sqlType == Types.NUMERIC) {
+                    BigDecimal decimal = rs.getBigDecimal(index);
+                    value = decimal != null ? decimal.toPlainString() : null;
+                } else {
+                    value = rs.getString(index);
+                }
+        }
+        return rs.wasNull() ? null : value;
+    }
+
+    // ============ Reading ============
+
+    public List<Integer> getArchivedYears() {
+        List<Integer> years = archivedYears;
+        if (years == null) {
+            years = listArchivedYears();
+            archivedYears = years;
+        }
+        return years;
+    }
+
+    public boolean isArchived(int year) {
+        return getArchivedYears().contains(year);
+    }
+
+    /** Whether any archived collection, deduction or invoice belongs to the customer. */
+    public boolean hasCustomer(Long customerId) {
+        for (int year : getArchivedYears()) {
+            for (String table : Arrays.asList(COLLECTIONS, DEDUCTIONS, INVOICES)) {
+                ColumnarArchiveFile file = openFile(table, year);
+                if (file == null || file.getRowCount() == 0) {
+                    continue;
+                }
+                try {
+                    if (Arrays.asList(file.readColumn("customer_id")).contains(customerId)) {
+                        return true;
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException("Cannot read archive file " + file.getPath(), e);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Whether the collection with this id has been moved to the archive. */
+    public boolean hasCollection(Long id) {
+        for (int year : getArchivedYears()) {
+            ColumnarArchiveFile file = openFile(COLLECTIONS, year);
+            if (file == null || file.getRowCount() == 0) {
+                continue;
+            }
+            try {
+                if (Arrays.asList(file.readColumn("id")).contains(id)) {
+                    return true;
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot read archive file " + file.getPath(), e);
+            }
+        }
+        return false;
+    }
+
+    /** Archived collections matching every non-null filter, oldest year first. */
+    public List<Collection> findCollections(Long customerId, String bookNumber, LocalDate startDate, LocalDate endDate) {
+        Map<String, Predicate<Object>> filters = new LinkedHashMap<>();
+        if (customerId != null) {
+            filters.put("customer_id", customerId::equals);
+        }
+        if (bookNumber != null) {
+            filters.put("book_number", bookNumber::equals);
+        }
+        if (startDate != null || endDate != null) {
+            filters.put("collection_date", value -> inRange((LocalDate) value, startDate, endDate));
+        }
+        List<Collection> result = new ArrayList<>();
+        for (int year : yearsBetween(startDate, endDate)) {
+            for (Map<String, Object> row : readRows(COLLECTIONS, year, filters)) {
+                result.add(toEntity(row, Collection.class, Collection::setCustomer));
+            }
+        }
+        attachCustomers(result, Collection::getCustomer, Collection::setCustomer);
+        return result;
+    }
+
+    public List<Deduction> findDeductions(Long customerId, String bookNumber, Integer year, Integer month) {
+        List<Deduction> result = new ArrayList<>();
+        for (int archivedYear : getArchivedYears()) {
+            if (year != null && archivedYear != year) {
+                continue;
+            }
+            for (Map<String, Object> row : readRows(DEDUCTIONS, archivedYear, periodFilters(customerId, bookNumber, month))) {
+                result.add(toEntity(row, Deduction.class, Deduction::setCustomer));
+            }
+        }
+        attachCustomers(result, Deduction::getCustomer, Deduction::setCustomer);
+        return result;
+    }
+
+    public List<Invoice> findInvoices(Long customerId, Integer year, Integer month) {
+        List<Invoice> result = new ArrayList<>();
+        for (int archivedYear : getArchivedYears()) {
+            if (year != null && archivedYear != year) {
+                continue;
+            }
+            for (Map<String, Object> row : readRows(INVOICES, archivedYear, periodFilters(customerId, null, month))) {
+                result.add(toEntity(row, Invoice.class, Invoice::setCustomer));
+            }
+        }
+        attachCustomers(result, Invoice::getCustomer, Invoice::setCustomer);
+        return result;
+    }
+
+    /**
+     * Archived monthly per-grade weight totals in the same row shape as
+     * CollectionRepository.sumMonthlyWeight: customerId, year, month, grade, weight.
+     */
+    public List<Object[]> sumMonthlyWeight(List<Long> customerIds, LocalDate startDate, LocalDate endDate) {
+        Map<String, Object[]> totals = new LinkedHashMap<>();
+        for (int year : yearsBetween(startDate, endDate.minusDays(1))) {
+            ColumnarArchiveFile file = openFile(COLLECTIONS, year);
+            if (file == null || file.getRowCount() == 0) {
+                continue;
+            }
+            try {
+                Object[] customers = file.readColumn("customer_id");
+                Object[] dates = file.readColumn("collection_date");
+                Object[] grades = file.readColumn("grade");
+                Object[] weights = file.readColumn("weight_kg");
+                for (int row = 0; row < file.getRowCount(); row++) {
+                    LocalDate date = (LocalDate) dates[row];
+                    if (date.isBefore(startDate) || !date.isBefore(endDate)
+                            || (customerIds != null && !customerIds.isEmpty() && !customerIds.contains(customers[row]))) {
+                        continue;
+                    }
+                    Object customerId = customers[row];
+                    String grade = (String) grades[row];
+                    String key = customerId + ":" + date.getYear() + ":" + date.getMonthValue() + ":" + grade;
+                    Object[] total = totals.computeIfAbsent(key, k -> new Object[]{
+                            customerId, date.getYear(), date.getMonthValue(), TeaGrade.valueOf(grade), BigDecimal.ZERO});
+                    total[4] = ((BigDecimal) total[4]).add(BigDecimal.valueOf((Long) weights[row]));
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot read archive file " + file.getPath(), e);
+            }
+        }
+        return new ArrayList<>(totals.values());
+    }
+
+    private Map<String, Predicate<Object>> periodFilters(Long customerId, String bookNumber, Integer month) {
+        Map<String, Predicate<Object>> filters = new LinkedHashMap<>();
+        if (customerId != null) {
+            filters.put("customer_id", customerId::equals);
+        }
+        if (bookNumber != null) {
+            filters.put("book_number", bookNumber::equals);
+        }
+        if (month != null) {
+            filters.put("month", value -> value != null && ((Long) value).intValue() == month);
+        }
+        return filters;
+    }
+
+    // Filters are evaluated column by column; the remaining columns are only inflated when a row matches
+    private List<Map<String, Object>> readRows(String table, int year, Map<String, Predicate<Object>> filters) {
+        ColumnarArchiveFile file = openFile(table, year);
+        if (file == null || file.getRowCount() == 0) {
+            return new ArrayList<>();
+        }
+        try {
+            boolean[] matches = new boolean[file.getRowCount()];
+            Arrays.fill(matches, true);
+            for (Map.Entry<String, Predicate<Object>> filter : filters.entrySet()) {
+                Object[] values = file.readColumn(filter.getKey());
+                for (int row = 0; row < matches.length; row++) {
+                    matches[row] = matches[row] && filter.getValue().test(values[row]);
+                }
+            }
+            List<Integer> rows = new ArrayList<>();
+            for (int row = 0; row < matches.length; row++) {
+                if (matches[row]) {
+                    rows.add(row);
+                }
+            }
+            if (rows.isEmpty()) {
+                return new ArrayList<>();
+            }
+            List<Map<String, Object>> result = new ArrayList<>();
+            for (int i = 0; i < rows.size(); i++) {
+                result.add(new HashMap<>());
+            }
+            for (String column : file.getColumnNames()) {
+                Object[] values = file.readColumn(column);
+                for (int i = 0; i < rows.size(); i++) {
+                    result.get(i).put(column, values[rows.get(i)]);
+                }
+            }
+            return result;
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read archive file " + file.getPath(), e);
+        }
+    }
+
+    private <T> T toEntity(Map<String, Object> row, Class<T> type, BiConsumer<T, Customer> customerSetter) {
+        Map<String, Object> properties = new HashMap<>();
+        for (Map.Entry<String, Object> column : row.entrySet()) {
+            properties.put(toPropertyName(column.getKey()), column.getValue());
+        }
+        // customer_id becomes an id-only Customer, replaced by the loaded entity in attachCustomers
+        Object customerId = properties.remove("customerId");
+        T entity = objectMapper.convertValue(properties, type);
+        if (customerId != null) {
+            Customer customer = new Customer();
+            customer.setId((Long) customerId);
+            customerSetter.accept(entity, customer);
+        }
+        return entity;
+    }
+
+    private <T> void attachCustomers(List<T> entities, Function<T, Customer> getter, BiConsumer<T, Customer> setter) {
+        List<Long> ids = entities.stream().map(getter).filter(Objects::nonNull).map(Customer::getId)
+                .distinct().collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            return;
+        }
+        Map<Long, Customer> customers = customerService.getCustomersById(ids).stream()
+                .collect(Collectors.toMap(Customer::getId, c -> c));
+        for (T entity : entities) {
+            Customer placeholder = getter.apply(entity);
+            if (placeholder != null && customers.containsKey(placeholder.getId())) {
+                setter.accept(entity, customers.get(placeholder.getId()));
+            }
+        }
+    }
+
+    private List<Integer> yearsBetween(LocalDate startDate, LocalDate endDate) {
+        return getArchivedYears().stream()
+                .filter(year -> startDate == null || year >= startDate.getYear())
+                .filter(year -> endDate == null || year <= endDate.getYear())
+                .collect(Collectors.toList());
+    }
+
+    private static boolean inRange(LocalDate date, LocalDate startDate, LocalDate endDate) {
+        return date != null && (startDate == null || !date.isBefore(startDate)) && (endDate == null || !date.isAfter(endDate));
+    }
+
+    private static String toPropertyName(String column) {
+        StringBuilder name = new StringBuilder();
+        boolean upper = false;
+        for (char c : column.toCharArray()) {
+            if (c == '_') {
+                upper = true;
+            } else {
+                name.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return name.toString();
+    }
+
+    private ColumnarArchiveFile openFile(String table, int year) {
+        Path path = file(table, year);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        return openFiles.computeIfAbsent(path, p -> {
+            try {
+                return ColumnarArchiveFile.open(p);
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot open archive file " + p, e);
+            }
+        });
+    }
+
+    private List<Integer> listArchivedYears() {
+        if (!Files.isDirectory(directory())) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> files = Files.list(directory())) {
+            return Collections.unmodifiableList(files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(COLLECTIONS + "-") && name.endsWith(EXTENSION))
+                    .map(name -> Integer.valueOf(name.substring(COLLECTIONS.length() + 1, name.length() - EXTENSION.length())))
+                    .sorted()
+                    .collect(Collectors.toList()));
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot list archive directory " + directory(), e);
+        }
+    }
+
+    private Path directory() {
+        return Paths.get(archiveDir);
+    }
+
+    private Path file(String table, int year) {
+        return directory().resolve(table + "-" + year + EXTENSION);
+    }
+}
@@ -0,0 +1,155 @@
+package com.teadealer.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Monthly RANGE COLUMNS partitioning of the collections table (MySQL only, opt-in).
+ *
+ * Every month gets its own partition {@code pYYYYMM}; a trailing {@code pmax} partition catches
+ * anything beyond the last pre-created month. Queries that filter on a collection_date range
+ * (findByCollectionDateBetween, findByBookNumberAndCollectionDateBetween, the keyset pages and
+ * the supply summary) are pruned to the months they touch, so their cost follows the size of a
+ * month rather than the whole history.
+ *
+ * MySQL requires the partition column in every unique key and does not allow foreign keys on
+ * partitioned tables, so the first conversion widens the primary key to (id, collection_date)
+ * and drops the customer foreign key (CollectionPartitionConfig keeps the schema update from
+ * adding it back while partitioning is enabled). The conversion rewrites the table once; run it in a
+ * maintenance window on large databases. After that a daily job keeps
+ * {@code app.collections.partitioning.months-ahead} empty partitions ready by splitting pmax,
+ * which is instant while pmax is empty.
+ */
+@Slf4j
+@Service
+public class CollectionPartitionService {
+
+    private static final String TABLE = "collections";
+    private static final String OVERFLOW_PARTITION = "pmax";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.collections.partitioning.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.collections.partitioning.months-ahead:3}")
+    private int monthsAhead;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        if (enabled) {
+            ensurePartitions();
+        }
+    }
+
+    @Scheduled(cron = "${app.collections.partitioning.cron:0 30 2 * * *}")
+    public void scheduledMaintenance() {
+        if (enabled) {
+            ensurePartitions();
+        }
+    }
+
+    public synchronized void ensurePartitions() {
+        if (!isMySql()) {
+            log.warn("Collection partitioning is only supported on MySQL; skipping");
+            return;
+        }
+        YearMonth lastMonth = YearMonth.now().plusMonths(monthsAhead);
+        List<String> partitions = getPartitionNames();
+        if (partitions.isEmpty()) {
+            convertToPartitioned(lastMonth);
+        } else {
+            addMonthsUpTo(partitions, lastMonth);
+        }
+    }
+
+    public List<Map<String, Object>> getPartitions() {
+        return jdbcTemplate.queryForList(
+                "SELECT PARTITION_NAME AS name, PARTITION_DESCRIPTION AS lessThan, TABLE_ROWS AS estimatedRows"
+                        + " FROM information_schema.PARTITIONS WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?"
+                        + " AND PARTITION_NAME IS NOT NULL ORDER BY PARTITION_ORDINAL_POSITION", TABLE);
+    }
+
+    private void convertToPartitioned(YearMonth lastMonth) {
+        Date minDate = jdbcTemplate.queryForObject("SELECT MIN(collection_date) FROM " + TABLE, Date.class);
+        YearMonth firstMonth = minDate != null ? YearMonth.from(minDate.toLocalDate()) : YearMonth.now();
+        if (firstMonth.isAfter(lastMonth)) {
+            firstMonth = lastMonth;
+        }
+
+        log.info("Partitioning {} by month from {} to {}", TABLE, firstMonth, lastMonth);
+        for (String foreignKey : jdbcTemplate.queryForList(
+                "SELECT CONSTRAINT_NAME FROM information_schema.TABLE_CONSTRAINTS WHERE TABLE_SCHEMA = DATABASE()"
+                        + " AND TABLE_NAME = ? AND CONSTRAINT_TYPE = 'FOREIGN KEY'", String.class, TABLE)) {
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " DROP FOREIGN KEY " + foreignKey);
+        }
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " DROP PRIMARY KEY, ADD PRIMARY KEY (id, collection_date)");
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " " + partitionByClause(firstMonth, lastMonth));
+    }
+
+    private void addMonthsUpTo(List<String> partitions, YearMonth lastMonth) {
+        YearMonth lastExisting = null;
+        for (String name : partitions) {
+            if (!OVERFLOW_PARTITION.equals(name)) {
+                lastExisting = YearMonth.of(Integer.parseInt(name.substring(1, 5)), Integer.parseInt(name.substring(5, 7)));
+            }
+        }
+        if (lastExisting == null || !lastExisting.isBefore(lastMonth)) {
+            return;
+        }
+        List<String> added = new ArrayList<>();
+        for (YearMonth month = lastExisting.plusMonths(1); !month.isAfter(lastMonth); month = month.plusMonths(1)) {
+            added.add(partitionDefinition(month));
+        }
+        added.add(overflowDefinition());
+        log.info("Adding collection partitions up to {}", lastMonth);
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " REORGANIZE PARTITION " + OVERFLOW_PARTITION
+                + " INTO (" + String.join(", ", added) + ")");
+    }
+
+    private List<String> getPartitionNames() {
+        return jdbcTemplate.queryForList(
+                "SELECT PARTITION_NAME FROM information_schema.PARTITIONS WHERE TABLE_SCHEMA = DATABASE()"
+                        + " AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL ORDER BY PARTITION_ORDINAL_POSITION",
+                String.class, TABLE);
+    }
+
+    private boolean isMySql() {
+        String product = jdbcTemplate.execute(
+                (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+        return product != null && product.toLowerCase().contains("mysql");
+    }
+
+    static String partitionByClause(YearMonth firstMonth, YearMonth lastMonth) {
+        List<String> definitions = new ArrayList<>();
+        for (YearMonth month = firstMonth; !month.isAfter(lastMonth); month = month.plusMonths(1)) {
+            definitions.add(partitionDefinition(month));
+        }
+        definitions.add(overflowDefinition());
+        return "PARTITION BY RANGE COLUMNS (collection_date) (" + String.join(", ", definitions) + ")";
+    }
+
+    private static String partitionDefinition(YearMonth month) {
+        LocalDate upperBound = month.plusMonths(1).atDay(1);
+        return String.format("PARTITION p%04d%02d VALUES LESS THAN ('%s')", month.getYear(), month.getMonthValue(), upperBound);
+    }
+
+    private static String overflowDefinition() {
+        return "PARTITION " + OVERFLOW_PARTITION + " VALUES LESS THAN (MAXVALUE)";
+    }
+}
@@ -1,31 +1,69 @@
 package com.teadealer.service;
 
+import com.teadealer.dto.CollectionDelta;
+import com.teadealer.dto.KeysetPage;
+import com.teadealer.dto.SupplySummary;
 import com.teadealer.model.Collection;
+import com.teadealer.model.Customer;
 import com.teadealer.model.TeaGrade;
 import com.teadealer.repository.CollectionRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
 public class CollectionService {
 
+    private static final Comparator<Collection> KEYSET_ORDER =
+            Comparator.comparing(Collection::getCollectionDate).thenComparing(Collection::getId);
+
     @Autowired
     private CollectionRepository collectionRepository;
 
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ArchiveService archiveService;
+
+    @Value("${app.collections.page-size.default:100}")
+    private int defaultPageSize;
+
+    @Value("${app.collections.page-size.max:1000}")
+    private int maxPageSize;
+
     public List<Collection> getCollectionsByDate(LocalDate date) {
-        return collectionRepository.findByCollectionDate(date);
+        return withArchived(archiveService.findCollections(null, null, date, date),
+                collectionRepository.findByCollectionDate(date));
     }
 
     public List<Collection> getCollectionsByDateRange(LocalDate startDate, LocalDate endDate) {
-        return collectionRepository.findByCollectionDateBetween(startDate, endDate);
+        return withArchived(archiveService.findCollections(null, null, startDate, endDate),
+                collectionRepository.findByCollectionDateBetween(startDate, endDate));
     }
 
     public List<Collection> getCollectionsByCustomer(Long customerId) {
-        return collectionRepository.findByCustomerId(customerId);
+        return withArchived(archiveService.findCollections(customerId, null, null, null),
+                collectionRepository.findByCustomerId(customerId));
     }
 
     public Optional<Collection> getCollectionByCustomerAndDate(Long customerId, LocalDate date) {
@@ -37,16 +75,30 @@ public class CollectionService {
     }
 
     public Collection saveCollection(Collection collection) {
-        return collectionRepository.save(collection);
+        if (collection.getCollectionDate() != null && archiveService.isArchived(collection.getCollectionDate().getYear())) {
+            throw new IllegalArgumentException("Collections for " + collection.getCollectionDate().getYear()
+                    + " are archived and cannot be changed");
+        }
+        Collection saved = collectionRepository.save(collection);
+        eventPublisher.publishEvent(CollectionDelta.upsert(saved));
+        return saved;
     }
 
     public void deleteCollection(Long id) {
+        // Load first so the delete delta can name the date and customer-grade cell that was cleared
+        Optional<Collection> existing = collectionRepository.findById(id);
+        if (existing.isPresent() ? archiveService.isArchived(existing.get().getCollectionDate().getYear())
+                : archiveService.hasCollection(id)) {
+            throw new IllegalArgumentException("Collection " + id + " is archived and cannot be deleted");
+        }
         collectionRepository.deleteById(id);
+        existing.ifPresent(collection -> eventPublisher.publishEvent(CollectionDelta.delete(collection)));
     }
 
     // Book number-based methods
     public List<Collection> getCollectionsByBookNumber(String bookNumber) {
-        return collectionRepository.findByBookNumber(bookNumber);
+        return withArchived(archiveService.findCollections(null, bookNumber, null, null),
+                collectionRepository.findByBookNumber(bookNumber));
     }
 
     public Optional<Collection> getCollectionByBookNumberAndDate(String bookNumber, LocalDate date) {
@@ -58,10 +110,232 @@ public class CollectionService {
     }
 
     public List<Collection> getCollectionsByBookNumberAndDateRange(String bookNumber, LocalDate startDate, LocalDate endDate) {
-        return collectionRepository.findByBookNumberAndCollectionDateBetween(bookNumber, startDate, endDate);
+        return withArchived(archiveService.findCollections(null, bookNumber, startDate, endDate),
+                collectionRepository.findByBookNumberAndCollectionDateBetween(bookNumber, startDate, endDate));
     }
 
     public List<Collection> getCollectionsByCustomerIdAndDateRange(Long customerId, LocalDate startDate, LocalDate endDate) {
-        return collectionRepository.findByCustomerIdAndCollectionDateBetween(customerId, startDate, endDate);
+        return withArchived(archiveService.findCollections(customerId, null, startDate, endDate),
+                collectionRepository.findByCustomerIdAndCollectionDateBetween(customerId, startDate, endDate));
+    }
+
+    // Keyset pagination on (collectionDate, id): every page is a bounded index range scan,
+    // so deep pages cost the same as the first one. Archived rows keep their ids and are merged
+    // into the same order; only archived years on or after the cursor's date are read.
+    public KeysetPage<Collection> getCollectionPageByCustomer(Long customerId, String cursor, Integer size) {
+        int pageSize = resolvePageSize(size);
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+        if (cursor == null || cursor.isEmpty()) {
+            return toPage(merge(archiveService.findCollections(customerId, null, null, null), null,
+                    collectionRepository.findByCustomerIdOrderByCollectionDateAscIdAsc(customerId, limit)), pageSize);
+        }
+        Cursor after = decodeCursor(cursor);
+        return toPage(merge(archiveService.findCollections(customerId, null, after.date, null), after,
+                collectionRepository.findCustomerPageAfter(customerId, after.date, after.id, limit)), pageSize);
+    }
+
+    public KeysetPage<Collection> getCollectionPageByBookNumber(String bookNumber, String cursor, Integer size) {
+        int pageSize = resolvePageSize(size);
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+        if (cursor == null || cursor.isEmpty()) {
+            return toPage(merge(archiveService.findCollections(null, bookNumber, null, null), null,
+                    collectionRepository.findByBookNumberOrderByCollectionDateAscIdAsc(bookNumber, limit)), pageSize);
+        }
+        Cursor after = decodeCursor(cursor);
+        return toPage(merge(archiveService.findCollections(null, bookNumber, after.date, null), after,
+                collectionRepository.findBookNumberPageAfter(bookNumber, after.date, after.id, limit)), pageSize);
+    }
+
+    public KeysetPage<Collection> getCollectionPageByDateRange(LocalDate startDate, LocalDate endDate, String cursor, Integer size) {
+        int pageSize = resolvePageSize(size);
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+        if (cursor == null || cursor.isEmpty()) {
+            return toPage(merge(archiveService.findCollections(null, null, startDate, endDate), null,
+                    collectionRepository.findByCollectionDateBetweenOrderByCollectionDateAscIdAsc(startDate, endDate, limit)), pageSize);
+        }
+        Cursor after = decodeCursor(cursor);
+        if (after.date.isBefore(startDate)) {
+            throw new IllegalArgumentException("Cursor is outside the requested date range");
+        }
+        return toPage(merge(archiveService.findCollections(null, null, after.date, endDate), after,
+                collectionRepository.findDateRangePageAfter(after.date, after.id, endDate, limit)), pageSize);
+    }
+
+    // Per-month, per-grade totals for the given customers (all customers when empty) over whole years.
+    // Computed by a single GROUP BY, so the response is at most 12 months x 2 grades per customer-year.
+    public List<SupplySummary> getYearlySupplySummary(List<Long> customerIds, int fromYear, int toYear) {
+        if (fromYear > toYear) {
+            throw new IllegalArgumentException("fromYear must not be after toYear");
+        }
+        LocalDate startDate = LocalDate.of(fromYear, 1, 1);
+        LocalDate endDate = LocalDate.of(toYear + 1, 1, 1);
+        boolean allCustomers = customerIds == null || customerIds.isEmpty();
+        List<Object[]> rows = new ArrayList<>(allCustomers
+                ? collectionRepository.sumMonthlyWeight(startDate, endDate)
+                : collectionRepository.sumMonthlyWeightByCustomers(customerIds, startDate, endDate));
+        rows.addAll(archiveService.sumMonthlyWeight(customerIds, startDate, endDate));
+
+        Map<Long, SupplySummary> summaries = new LinkedHashMap<>();
+        Iterable<Customer> customers = allCustomers
+                ? customerService.getAllCustomers()
+                : customerService.getCustomersById(customerIds);
+        for (Customer customer : customers) {
+            SupplySummary summary = new SupplySummary();
+            summary.setCustomerId(customer.getId());
+            summary.setBookNumber(customer.getBookNumber());
+            summary.setGrowerNameEnglish(customer.getGrowerNameEnglish());
+            summaries.put(customer.getId(), summary);
+        }
+
+        Map<String, SupplySummary.Totals> totalsByKey = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            Long customerId = (Long) row[0];
+            int year = ((Number) row[1]).intValue();
+            int month = ((Number) row[2]).intValue();
+            TeaGrade grade = (TeaGrade) row[3];
+            BigDecimal weight = row[4] != null ? new BigDecimal(row[4].toString()) : BigDecimal.ZERO;
+
+            SupplySummary summary = summaries.get(customerId);
+            if (summary == null) {
+                continue;
+            }
+            SupplySummary.Totals yearTotals = totalsByKey.computeIfAbsent(customerId + ":" + year, k -> {
+                SupplySummary.Totals totals = new SupplySummary.Totals(year, null);
+                summary.getYears().add(totals);
+                return totals;
+            });
+            SupplySummary.Totals monthTotals = totalsByKey.computeIfAbsent(customerId + ":" + year + ":" + month, k -> {
+                SupplySummary.Totals totals = new SupplySummary.Totals(year, month);
+                summary.getMonths().add(totals);
+                return totals;
+            });
+            addWeight(yearTotals, grade, weight);
+            addWeight(monthTotals, grade, weight);
+        }
+
+        List<SupplySummary> result = new ArrayList<>();
+        for (SupplySummary summary : summaries.values()) {
+            // For the all-customers view, skip customers with nothing in range to keep the response small
+            if (allCustomers && summary.getMonths().isEmpty()) {
+                continue;
+            }
+            summary.getYears().sort(Comparator.comparing(SupplySummary.Totals::getYear));
+            summary.getMonths().sort(Comparator.comparing(SupplySummary.Totals::getYear)
+                    .thenComparing(SupplySummary.Totals::getMonth));
+            result.add(summary);
+        }
+        return result;
+    }
+
+    // Grade 1 and Grade 2 weight per book number for [startDate, endDate), from one grouped query
+    public Map<String, BigDecimal[]> getGradeTotalsByBookNumber(LocalDate startDate, LocalDate endDate) {
+        Map<String, BigDecimal[]> totals = new HashMap<>();
+        for (Object[] row : collectionRepository.sumWeightByBookNumberAndGrade(startDate, endDate)) {
+            BigDecimal weight = row[2] != null ? new BigDecimal(row[2].toString()) : BigDecimal.ZERO;
+            addGradeTotal(totals, (String) row[0], (TeaGrade) row[1], weight);
+        }
+        for (Collection collection : archiveService.findCollections(null, null, startDate, endDate.minusDays(1))) {
+            addGradeTotal(totals, collection.getBookNumber(), collection.getGrade(), collection.getWeightKg());
+        }
+        return totals;
+    }
+
+    // [grade1Kg, grade2Kg] of one book for [startDate, endDate), archived years included
+    public BigDecimal[] getGradeTotals(String bookNumber, LocalDate startDate, LocalDate endDate) {
+        Map<String, BigDecimal[]> totals = new HashMap<>();
+        for (Object[] row : collectionRepository.sumWeightByGradeForBookNumber(bookNumber, startDate, endDate)) {
+            BigDecimal weight = row[1] != null ? new BigDecimal(row[1].toString()) : BigDecimal.ZERO;
+            addGradeTotal(totals, bookNumber, (TeaGrade) row[0], weight);
+        }
+        for (Collection collection : archiveService.findCollections(null, bookNumber, startDate, endDate.minusDays(1))) {
+            addGradeTotal(totals, bookNumber, collection.getGrade(), collection.getWeightKg());
+        }
+        return totals.getOrDefault(bookNumber, new BigDecimal[]{BigDecimal.ZERO, BigDecimal.ZERO});
+    }
+
+    private static void addGradeTotal(Map<String, BigDecimal[]> totals, String bookNumber, TeaGrade grade, BigDecimal weight) {
+        BigDecimal[] bookTotals = totals.computeIfAbsent(bookNumber, k -> new BigDecimal[]{BigDecimal.ZERO, BigDecimal.ZERO});
+        int index = grade == TeaGrade.GRADE_1 ? 0 : 1;
+        bookTotals[index] = bookTotals[index].add(weight != null ? weight : BigDecimal.ZERO);
+    }
+
+    // Archived years are older than anything live, so they go first
+    private static List<Collection> withArchived(List<Collection> archived, List<Collection> live) {
+        if (archived.isEmpty()) {
+            return live;
+        }
+        List<Collection> merged = new ArrayList<>(archived);
+        merged.addAll(live);
+        return merged;
+    }
+
+    // Archived rows past the cursor and the live page, in keyset order; toPage cuts the result to size
+    private static List<Collection> merge(List<Collection> archived, Cursor after, List<Collection> live) {
+        if (archived.isEmpty()) {
+            return live;
+        }
+        List<Collection> merged = new ArrayList<>(live);
+        for (Collection collection : archived) {
+            if (after == null || after.date.isBefore(collection.getCollectionDate())
+                    || (after.date.equals(collection.getCollectionDate()) && after.id < collection.getId())) {
+                merged.add(collection);
+            }
+        }
+        merged.sort(KEYSET_ORDER);
+        return merged;
+    }
+
+    private static void addWeight(SupplySummary.Totals totals, TeaGrade grade, BigDecimal weight) {
+        if (grade == TeaGrade.GRADE_1) {
+            totals.setGrade1Kg(totals.getGrade1Kg().add(weight));
+        } else {
+            totals.setGrade2Kg(totals.getGrade2Kg().add(weight));
+        }
+        totals.setTotalKg(totals.getTotalKg().add(weight));
+    }
+
+    private int resolvePageSize(Integer size) {
+        if (size == null) {
+            return defaultPageSize;
+        }
+        if (size < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        return Math.min(size, maxPageSize);
+    }
+
+    // Rows are fetched with one extra element; its presence means there is a next page
+    private KeysetPage<Collection> toPage(List<Collection> rows, int pageSize) {
+        if (rows.size() <= pageSize) {
+            return new KeysetPage<>(rows, null, rows.size());
+        }
+        List<Collection> items = rows.subList(0, pageSize);
+        Collection last = items.get(pageSize - 1);
+        return new KeysetPage<>(items, encodeCursor(last.getCollectionDate(), last.getId()), pageSize);
+    }
+
+    private static String encodeCursor(LocalDate date, Long id) {
+        String raw = date + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Cursor decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.indexOf(':');
+            return new Cursor(LocalDate.parse(raw.substring(0, sep)), Long.valueOf(raw.substring(sep + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException | StringIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    private static class Cursor {
+        private final LocalDate date;
+        private final Long id;
+
+        private Cursor(LocalDate date, Long id) {
+            this.date = date;
+            this.id = id;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,109 @@
+package com.teadealer.service;
+
+import com.teadealer.dto.CollectionDelta;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Per-date Server-Sent Event streams for the daily collection grid.
+ *
+ * CollectionService publishes a {@link CollectionDelta} for every save and delete; it is delivered
+ * here only after the surrounding transaction commits (or immediately when there is none), so
+ * clients never see a change that was rolled back. Sending happens on a separate thread so a slow
+ * client cannot hold up the request that saved the collection.
+ */
+@Service
+public class CollectionStreamService {
+
+    private static final String EVENT_NAME = "collection";
+
+    @Value("${app.collections.stream.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    private final Map<LocalDate, Set<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+
+    private final ExecutorService sender = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "collection-stream");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SseEmitter subscribe(LocalDate date) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        subscribers.compute(date, (d, emitters) -> {
+            Set<SseEmitter> set = emitters != null ? emitters : new CopyOnWriteArraySet<>();
+            set.add(emitter);
+            return set;
+        });
+        emitter.onCompletion(() -> remove(date, emitter));
+        emitter.onTimeout(() -> remove(date, emitter));
+        emitter.onError(e -> remove(date, emitter));
+        try {
+            // Flushes the response headers so the client's EventSource reports the stream as open
+            emitter.send(SseEmitter.event().comment("subscribed " + date));
+        } catch (IOException e) {
+            remove(date, emitter);
+        }
+        return emitter;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCollectionDelta(CollectionDelta delta) {
+        Set<SseEmitter> emitters = subscribers.get(delta.getDate());
+        if (emitters == null || emitters.isEmpty()) {
+            return;
+        }
+        sender.execute(() -> {
+            for (SseEmitter emitter : emitters) {
+                send(delta.getDate(), emitter, SseEmitter.event().name(EVENT_NAME).data(delta, MediaType.APPLICATION_JSON));
+            }
+        });
+    }
+
+    // Keeps idle connections from being closed by proxies and detects clients that went away
+    @Scheduled(fixedDelayString = "${app.collections.stream.heartbeat-ms:25000}")
+    public void heartbeat() {
+        subscribers.forEach((date, emitters) -> sender.execute(() -> {
+            for (SseEmitter emitter : emitters) {
+                send(date, emitter, SseEmitter.event().comment("ping"));
+            }
+        }));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+        subscribers.values().forEach(emitters -> emitters.forEach(SseEmitter::complete));
+        subscribers.clear();
+    }
+
+    private void send(LocalDate date, SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+        } catch (IOException | IllegalStateException e) {
+            // Client disconnected or the emitter already completed
+            remove(date, emitter);
+        }
+    }
+
+    private void remove(LocalDate date, SseEmitter emitter) {
+        subscribers.computeIfPresent(date, (d, emitters) -> {
+            emitters.remove(emitter);
+            return emitters.isEmpty() ? null : emitters;
+        });
+    }
+}
@@ -0,0 +1,267 @@
+package com.teadealer.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Read-only columnar table file used for archived years.
+ *
+ * Layout: a header (magic, version, row count, column directory) followed by one Deflate-compressed
+ * block per column. Integer and date columns are stored as zig-zag varint deltas, which shrink ids,
+ * dates and weights to a byte or two before compression; text columns are length-prefixed UTF-8.
+ * The file is memory-mapped and a column is only inflated when it is read, so a filter on
+ * customer_id touches that one column until matching rows are known.
+ */
+public final class ColumnarArchiveFile {
+
+    public enum ColumnType { LONG, DATE, STRING }
+
+    private static final int MAGIC = 0x54444341; // "TDCA"
+    private static final int VERSION = 1;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int rowCount;
+    private final Map<String, ColumnEntry> columns = new LinkedHashMap<>();
+
+    private ColumnarArchiveFile(Path path) throws IOException {
+        this.path = path;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer header = buffer.duplicate();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Not an archive file: " + path);
+        }
+        this.rowCount = header.getInt();
+        int columnCount = header.getInt();
+        for (int i = 0; i < columnCount; i++) {
+            byte[] name = new byte[header.getShort()];
+            header.get(name);
+            ColumnType type = ColumnType.values()[header.get()];
+            columns.put(new String(name, StandardCharsets.UTF_8),
+                    new ColumnEntry(type, header.getInt(), header.getInt(), header.getInt()));
+        }
+    }
+
+    public static ColumnarArchiveFile open(Path path) throws IOException {
+        return new ColumnarArchiveFile(path);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public List<String> getColumnNames() {
+        return new ArrayList<>(columns.keySet());
+    }
+
+    public boolean hasColumn(String name) {
+        return columns.containsKey(name);
+    }
+
+    /**
+     * Decodes one column: Long for LONG, LocalDate for DATE, String for STRING; null where the
+     * source value was NULL.
+     */
+    public Object[] readColumn(String name) throws IOException {
+        ColumnEntry entry = columns.get(name);
+        if (entry == null) {
+            throw new IOException("No column '" + name + "' in " + path);
+        }
+        ByteBuffer raw = inflate(entry);
+        Object[] values = new Object[rowCount];
+        if (entry.type == ColumnType.STRING) {
+            for (int row = 0; row < rowCount; row++) {
+                int length = (int) readVarLong(raw);
+                if (length > 0) {
+                    byte[] bytes = new byte[length - 1];
+                    raw.get(bytes);
+                    values[row] = new String(bytes, StandardCharsets.UTF_8);
+                }
+            }
+        } else {
+            long previous = 0;
+            for (int row = 0; row < rowCount; row++) {
+                if (raw.get() == 0) {
+                    continue;
+                }
+                previous += zigZagDecode(readVarLong(raw));
+                values[row] = entry.type == ColumnType.DATE ? LocalDate.ofEpochDay(previous) : (Object) previous;
+            }
+        }
+        return values;
+    }
+
+    private ByteBuffer inflate(ColumnEntry entry) throws IOException {
+        ByteBuffer compressed = buffer.duplicate();
+        compressed.position(entry.offset).limit(entry.offset + entry.compressedLength);
+        byte[] out = new byte[entry.rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int read = 0;
+            while (read < out.length && !inflater.finished()) {
+                read += inflater.inflate(out, read, out.length - read);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt column block in " + path, e);
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(out);
+    }
+
+    /**
+     * Writes rows (one Object[] per row, values in column order) to {@code path}. LONG values must be
+     * Numbers, DATE values LocalDates, STRING values are written with toString().
+     */
+    public static void write(Path path, List<String> names, List<ColumnType> types, List<Object[]> rows) throws IOException {
+        List<byte[]> blocks = new ArrayList<>();
+        List<Integer> rawLengths = new ArrayList<>();
+        for (int col = 0; col < names.size(); col++) {
+            byte[] raw = encodeColumn(types.get(col), rows, col);
+            rawLengths.add(raw.length);
+            blocks.add(deflate(raw));
+        }
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.writeInt(rows.size());
+        header.writeInt(names.size());
+        int headerLength = 16;
+        for (String name : names) {
+            headerLength += 2 + name.getBytes(StandardCharsets.UTF_8).length + 1 + 12;
+        }
+        int offset = headerLength;
+        for (int col = 0; col < names.size(); col++) {
+            byte[] name = names.get(col).getBytes(StandardCharsets.UTF_8);
+            header.writeShort(name.length);
+            header.write(name);
+            header.writeByte(types.get(col).ordinal());
+            header.writeInt(offset);
+            header.writeInt(blocks.get(col).length);
+            header.writeInt(rawLengths.get(col));
+            offset += blocks.get(col).length;
+        }
+
+        try (OutputStream out = Files.newOutputStream(path)) {
+            headerBytes.writeTo(out);
+            for (byte[] block : blocks) {
+                out.write(block);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    private static byte[] encodeColumn(ColumnType type, List<Object[]> rows, int col) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (type == ColumnType.STRING) {
+            for (Object[] row : rows) {
+                if (row[col] == null) {
+                    writeVarLong(out, 0);
+                } else {
+                    byte[] bytes = row[col].toString().getBytes(StandardCharsets.UTF_8);
+                    writeVarLong(out, bytes.length + 1L);
+                    out.write(bytes);
+                }
+            }
+        } else {
+            long previous = 0;
+            for (Object[] row : rows) {
+                if (row[col] == null) {
+                    out.write(0);
+                    continue;
+                }
+                long value = type == ColumnType.DATE ? ((LocalDate) row[col]).toEpochDay() : ((Number) row[col]).longValue();
+                out.write(1);
+                writeVarLong(out, zigZagEncode(value - previous));
+                previous = value;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long zigZagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long zigZagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class ColumnEntry {
+        private final ColumnType type;
+        private final int offset;
+        private final int compressedLength;
+        private final int rawLength;
+
+        private ColumnEntry(ColumnType type, int offset, int compressedLength, int rawLength) {
+            this.type = type;
+            this.offset = offset;
+            this.compressedLength = compressedLength;
+            this.rawLength = rawLength;
+        }
+    }
+}
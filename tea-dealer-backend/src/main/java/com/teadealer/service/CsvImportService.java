@@ -0,0 +1,396 @@
+package com.teadealer.service;
+
+import com.teadealer.dto.CollectionDelta;
+import com.teadealer.dto.ImportJob;
+import com.teadealer.model.TeaGrade;
+import com.teadealer.repository.CustomerRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Server-side CSV import for collections and customers.
+ *
+ * The upload is spooled to a temp file and parsed line by line on a single worker thread, so the
+ * file is never held in memory. Rows are validated against the customer book numbers loaded once
+ * per job and written with JDBC batch statements, one transaction per chunk. A failing chunk is
+ * rolled back and reported row by row; the rest of the file still imports.
+ */
+@Service
+public class CsvImportService {
+
+    private static final String TYPE_COLLECTIONS = "collections";
+    private static final String TYPE_CUSTOMERS = "customers";
+    private static final double DEFAULT_RATE_PER_KG = 180.0;
+
+    // Upsert on the (book_number, collection_date, grade) unique key, same as CollectionController.saveCollection
+    private static final String UPSERT_COLLECTION_SQL =
+            "INSERT INTO collections (book_number, customer_id, collection_date, grade, weight_kg, rate_per_kg,"
+                    + " total_amount, notes, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
+                    + " ON DUPLICATE KEY UPDATE customer_id = VALUES(customer_id), weight_kg = VALUES(weight_kg),"
+                    + " rate_per_kg = VALUES(rate_per_kg), total_amount = VALUES(total_amount),"
+                    + " notes = COALESCE(VALUES(notes), notes), updated_at = VALUES(updated_at)";
+
+    private static final String INSERT_CUSTOMER_SQL =
+            "INSERT INTO customers (book_number, grower_name_sinhala, grower_name_english, address, nic, land_name,"
+                    + " contact_number, route, transport_exempt, created_at, updated_at)"
+                    + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ArchiveService archiveService;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Value("${app.import.chunk-size:500}")
+    private int chunkSize;
+
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    // One import at a time: imports are bulk writes and should not compete with each other
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "csv-import");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ImportJob startCollectionImport(MultipartFile file) throws IOException {
+        return submit(TYPE_COLLECTIONS, file);
+    }
+
+    public ImportJob startCustomerImport(MultipartFile file) throws IOException {
+        return submit(TYPE_CUSTOMERS, file);
+    }
+
+    public Optional<ImportJob> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    private ImportJob submit(String type, MultipartFile file) throws IOException {
+        if (file == null || file.isEmpty()) {
+            throw new IllegalArgumentException("CSV file is empty");
+        }
+        evictFinishedJobs();
+
+        // The request's multipart part is deleted when the request ends, so hand the worker its own copy
+        Path spooled = Files.createTempFile("import-" + type + "-", ".csv");
+        file.transferTo(spooled);
+
+        ImportJob job = new ImportJob(UUID.randomUUID().toString(), type, file.getOriginalFilename());
+        jobs.put(job.getId(), job);
+        worker.submit(() -> run(job, spooled));
+        return job;
+    }
+
+    private void run(ImportJob job, Path file) {
+        job.start();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (TYPE_COLLECTIONS.equals(job.getType())) {
+                importCollections(job, reader);
+            } else {
+                importCustomers(job, reader);
+                // Rows went in through JDBC; show them now rather than at the next directory check
+                customerService.reload();
+            }
+            job.complete();
+        } catch (Exception e) {
+            job.fail(e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    // ============ Collections ============
+
+    private void importCollections(ImportJob job, BufferedReader reader) throws IOException {
+        Map<String, Long> customerIds = loadCustomerIds();
+        HeaderIndex header = readHeader(reader);
+        int bookCol = header.require("book");
+        int dateCol = header.require("date");
+        int weightCol = header.require("weight");
+        int gradeCol = header.find("grade");
+        int rateCol = header.find("perkg");
+        int notesCol = header.find("note");
+
+        List<Object[]> chunk = new ArrayList<>(chunkSize);
+        List<Long> chunkRows = new ArrayList<>(chunkSize);
+        Set<LocalDate> touchedDates = new TreeSet<>();
+        String line;
+        long rowNumber = 1;
+        while ((line = reader.readLine()) != null) {
+            rowNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            job.rowRead();
+            List<String> values = parseCsvLine(line);
+            try {
+                String bookNumber = value(values, bookCol);
+                Long customerId = customerIds.get(bookNumber);
+                if (customerId == null) {
+                    throw new IllegalArgumentException("Unknown book number '" + bookNumber + "'");
+                }
+                LocalDate date = LocalDate.parse(value(values, dateCol));
+                if (archiveService.isArchived(date.getYear())) {
+                    throw new IllegalArgumentException("Collections for " + date.getYear() + " are archived");
+                }
+                TeaGrade grade = parseGrade(value(values, gradeCol));
+                long weightKg = Math.round(Double.parseDouble(value(values, weightCol)));
+                if (weightKg < 0) {
+                    throw new IllegalArgumentException("Weight cannot be negative");
+                }
+                String rateValue = value(values, rateCol);
+                BigDecimal ratePerKg = BigDecimal.valueOf(rateValue.isEmpty() ? DEFAULT_RATE_PER_KG : Double.parseDouble(rateValue));
+                BigDecimal weight = BigDecimal.valueOf(weightKg);
+                String notes = value(values, notesCol);
+                Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+
+                chunk.add(new Object[]{bookNumber, customerId, Date.valueOf(date), grade.name(), weightKg, ratePerKg,
+                        weight.multiply(ratePerKg), notes.isEmpty() ? null : notes, now, now});
+                chunkRows.add(rowNumber);
+                touchedDates.add(date);
+            } catch (DateTimeParseException e) {
+                job.rowFailed(rowNumber, "Invalid date, expected YYYY-MM-DD");
+            } catch (NumberFormatException e) {
+                job.rowFailed(rowNumber, "Invalid number");
+            } catch (IllegalArgumentException e) {
+                job.rowFailed(rowNumber, e.getMessage());
+            }
+
+            if (chunk.size() >= chunkSize) {
+                flush(job, UPSERT_COLLECTION_SQL, chunk, chunkRows);
+            }
+        }
+        flush(job, UPSERT_COLLECTION_SQL, chunk, chunkRows);
+
+        // One reload per day instead of a delta per row, so open grids re-fetch once
+        touchedDates.forEach(date -> eventPublisher.publishEvent(CollectionDelta.reload(date)));
+    }
+
+    // ============ Customers ============
+
+    private void importCustomers(ImportJob job, BufferedReader reader) throws IOException {
+        Map<String, Long> existing = loadCustomerIds();
+        HeaderIndex header = readHeader(reader);
+        int bookCol = header.require("book");
+        int englishCol = header.require("english");
+        int routeCol = header.require("route");
+        int sinhalaCol = header.find("sinhala");
+        int addressCol = header.find("address");
+        int nicCol = header.find("nic");
+        int landCol = header.find("land");
+        int contactCol = header.find("contact", "phone");
+
+        List<Object[]> chunk = new ArrayList<>(chunkSize);
+        List<Long> chunkRows = new ArrayList<>(chunkSize);
+        String line;
+        long rowNumber = 1;
+        while ((line = reader.readLine()) != null) {
+            rowNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            job.rowRead();
+            List<String> values = parseCsvLine(line);
+            String bookNumber = value(values, bookCol);
+            String englishName = value(values, englishCol);
+            String route = value(values, routeCol);
+            if (bookNumber.isEmpty() || englishName.isEmpty() || route.isEmpty()) {
+                job.rowFailed(rowNumber, "Missing required fields (BookNumber, GrowerNameEnglish, or Route)");
+            } else if (existing.containsKey(bookNumber)) {
+                job.rowFailed(rowNumber, "Book number '" + bookNumber + "' already exists");
+            } else {
+                // Reserve the book number so a duplicate later in the same file is reported, not inserted
+                existing.put(bookNumber, -1L);
+                Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+                chunk.add(new Object[]{bookNumber, value(values, sinhalaCol), englishName,
+                        nullIfEmpty(value(values, addressCol)), nullIfEmpty(value(values, nicCol)),
+                        nullIfEmpty(value(values, landCol)), nullIfEmpty(value(values, contactCol)),
+                        route, false, now, now});
+                chunkRows.add(rowNumber);
+            }
+
+            if (chunk.size() >= chunkSize) {
+                flush(job, INSERT_CUSTOMER_SQL, chunk, chunkRows);
+            }
+        }
+        flush(job, INSERT_CUSTOMER_SQL, chunk, chunkRows);
+    }
+
+    // ============ Helpers ============
+
+    private void flush(ImportJob job, String sql, List<Object[]> chunk, List<Long> chunkRows) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(sql, chunk));
+            job.rowsImported(chunk.size());
+        } catch (RuntimeException e) {
+            String reason = "Chunk rolled back: " + NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+            for (Long row : chunkRows) {
+                job.rowFailed(row, reason);
+            }
+        }
+        chunk.clear();
+        chunkRows.clear();
+    }
+
+    private Map<String, Long> loadCustomerIds() {
+        Map<String, Long> ids = new HashMap<>();
+        for (Object[] row : customerRepository.findAllBookNumbersAndIds()) {
+            ids.put((String) row[0], (Long) row[1]);
+        }
+        return ids;
+    }
+
+    private HeaderIndex readHeader(BufferedReader reader) throws IOException {
+        String headerLine = reader.readLine();
+        if (headerLine == null) {
+            throw new IllegalArgumentException("CSV file is empty");
+        }
+        // Strip a UTF-8 BOM left by spreadsheet exports
+        if (headerLine.startsWith("\uFEFF")) {
+            headerLine = headerLine.substring(1);
+        }
+        List<String> headers = new ArrayList<>();
+        for (String h : parseCsvLine(headerLine)) {
+            headers.add(h.toLowerCase());
+        }
+        return new HeaderIndex(headers);
+    }
+
+    private static TeaGrade parseGrade(String value) {
+        if (value.isEmpty()) {
+            return TeaGrade.GRADE_2;
+        }
+        String normalized = value.toUpperCase().replace(' ', '_');
+        if (normalized.equals("1") || normalized.equals("GRADE_1")) {
+            return TeaGrade.GRADE_1;
+        }
+        if (normalized.equals("2") || normalized.equals("GRADE_2")) {
+            return TeaGrade.GRADE_2;
+        }
+        throw new IllegalArgumentException("Unknown grade '" + value + "'");
+    }
+
+    private static String value(List<String> values, int index) {
+        return index >= 0 && index < values.size() ? values.get(index) : "";
+    }
+
+    private static String nullIfEmpty(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Splits one CSV line, honouring quoted fields with embedded commas and doubled quotes.
+     * Same rules as the browser-side parser in useCSVImport.jsx.
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> result = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inQuotes = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (inQuotes && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else {
+                    inQuotes = !inQuotes;
+                }
+            } else if (c == ',' && !inQuotes) {
+                result.add(current.toString().trim());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        result.add(current.toString().trim());
+        return result;
+    }
+
+    private void evictFinishedJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minusHours(1);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(cutoff));
+    }
+
+    // Columns are matched by substring, like the browser import ("BookNumber", "Book No" -> "book").
+    // Headers are compared without spaces, underscores and dashes, so "Rate Per Kg" matches "perkg".
+    private static class HeaderIndex {
+        private final List<String> headers = new ArrayList<>();
+
+        private HeaderIndex(List<String> rawHeaders) {
+            for (String header : rawHeaders) {
+                headers.add(header.replaceAll("[\\s_-]", ""));
+            }
+        }
+
+        private int find(String... fragments) {
+            for (int i = 0; i < headers.size(); i++) {
+                for (String fragment : fragments) {
+                    if (headers.get(i).contains(fragment)) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        private int require(String fragment) {
+            int index = find(fragment);
+            if (index < 0) {
+                throw new IllegalArgumentException("Missing required column containing '" + fragment + "'");
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.teadealer.service;
+
+import com.teadealer.model.Customer;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * As-you-type customer search over English name, Sinhala name, book number and NIC, kept in
+ * memory by {@link CustomerService} alongside its directory and updated with it.
+ *
+ * Every field is split into words, lower-cased and NFC-normalised (Sinhala vowel signs are kept,
+ * joiners dropped), and each word is indexed in a sorted term map for exact and prefix matches
+ * and by its bigrams for typo-tolerant ones. Each query word has to match some word of the
+ * customer: exactly, as a prefix, or as a prefix within one edit (two for words of eight or more
+ * characters; none for words under four characters or with digits). Customers are ranked by the
+ * sum of their best match per query word, with book number and NIC matches weighted above names.
+ */
+final class CustomerSearchIndex {
+
+    // Score per matched query word, before the field weight
+    private static final int EXACT = 100;
+    private static final int PREFIX = 60;
+    private static final int TYPO = 40;
+    private static final int TYPO_PENALTY = 10;
+
+    // Field weights, in percent
+    private static final int NAME = 100;
+    private static final int NIC = 120;
+    private static final int BOOK_NUMBER = 130;
+
+    // Once a query word leaves this few customers, the remaining words are checked against their terms
+    private static final int SCAN_LIMIT = 500;
+
+    private static final Comparator<Map.Entry<Long, Integer>> BY_SCORE =
+            Map.Entry.<Long, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey());
+
+    // Term -> customer id -> best field weight the term has for that customer
+    private final NavigableMap<String, Map<Long, Integer>> terms = new ConcurrentSkipListMap<>();
+    // Bigram (the first with a leading '^') -> terms containing it
+    private final Map<String, Set<String>> bigrams = new ConcurrentHashMap<>();
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    synchronized void add(Customer customer) {
+        remove(customer.getId());
+        Map<String, Integer> customerTerms = new HashMap<>();
+        addTerms(customerTerms, words(customer.getGrowerNameEnglish()), NAME);
+        addTerms(customerTerms, words(customer.getGrowerNameSinhala()), NAME);
+        addTerms(customerTerms, codeTerms(customer.getBookNumber()), BOOK_NUMBER);
+        addTerms(customerTerms, codeTerms(customer.getNic()), NIC);
+        for (Map.Entry<String, Integer> term : customerTerms.entrySet()) {
+            Map<Long, Integer> postings = terms.get(term.getKey());
+            if (postings == null) {
+                postings = new ConcurrentHashMap<>();
+                for (String bigram : bigrams(term.getKey())) {
+                    bigrams.computeIfAbsent(bigram, b -> ConcurrentHashMap.newKeySet()).add(term.getKey());
+                }
+                terms.put(term.getKey(), postings);
+            }
+            postings.put(customer.getId(), term.getValue());
+        }
+        entries.put(customer.getId(), new Entry(customer, customerTerms));
+    }
+
+    synchronized void remove(Long id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) {
+            return;
+        }
+        for (String term : entry.terms.keySet()) {
+            Map<Long, Integer> postings = terms.get(term);
+            if (postings == null) {
+                continue;
+            }
+            postings.remove(id);
+            if (postings.isEmpty()) {
+                terms.remove(term);
+                for (String bigram : bigrams(term)) {
+                    Set<String> bigramTerms = bigrams.get(bigram);
+                    if (bigramTerms != null) {
+                        bigramTerms.remove(term);
+                        if (bigramTerms.isEmpty()) {
+                            bigrams.remove(bigram);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** Up to {@code limit} customers matching every word of the query, best first. */
+    List<Customer> search(String query, int limit) {
+        List<String> queryWords = words(query);
+        if (queryWords.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        Map<Long, Integer> scores = score(queryWords);
+        // "TB-0042" or "90123 4567V" typed with separators: also try it as one book number or NIC
+        if (queryWords.size() > 1) {
+            score(List.of(String.join("", queryWords))).forEach((id, compact) -> scores.merge(id, compact, Math::max));
+        }
+        // Keep the best `limit` without sorting every match of a one-letter query
+        PriorityQueue<Map.Entry<Long, Integer>> top = new PriorityQueue<>(Math.min(limit, scores.size()) + 1, BY_SCORE.reversed());
+        for (Map.Entry<Long, Integer> match : scores.entrySet()) {
+            top.add(match);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+        List<Map.Entry<Long, Integer>> ranked = new ArrayList<>(top);
+        ranked.sort(BY_SCORE);
+        List<Customer> customers = new ArrayList<>(ranked.size());
+        for (Map.Entry<Long, Integer> match : ranked) {
+            Entry entry = entries.get(match.getKey());
+            if (entry != null) {
+                customers.add(entry.customer);
+            }
+        }
+        return customers;
+    }
+
+    // Sum of each customer's best match per word, for customers matching all of them
+    private Map<Long, Integer> score(List<String> queryWords) {
+        // Longest first: usually the most selective, leaving few customers to check the rest against
+        List<String> ordered = new ArrayList<>(queryWords);
+        ordered.sort(Comparator.comparingInt(String::length).reversed());
+        Map<Long, Integer> totals = null;
+        for (String word : ordered) {
+            if (totals == null) {
+                totals = match(word);
+            } else {
+                Map<Long, Integer> matches = totals.size() <= SCAN_LIMIT ? matchWithin(word, totals.keySet()) : match(word);
+                totals.keySet().retainAll(matches.keySet());
+                for (Map.Entry<Long, Integer> total : totals.entrySet()) {
+                    total.setValue(total.getValue() + matches.get(total.getKey()));
+                }
+            }
+            if (totals.isEmpty()) {
+                break;
+            }
+        }
+        return totals;
+    }
+
+    private Map<Long, Integer> match(String word) {
+        Map<Long, Integer> best = new HashMap<>();
+        for (Map.Entry<String, Map<Long, Integer>> term : terms.tailMap(word, true).entrySet()) {
+            if (!term.getKey().startsWith(word)) {
+                break;
+            }
+            collect(best, term.getValue(), termScore(word, term.getKey(), 0));
+        }
+        int maxEdits = maxEdits(word);
+        if (maxEdits > 0) {
+            for (String term : typoCandidates(word, maxEdits)) {
+                Map<Long, Integer> postings = terms.get(term);
+                int score = term.startsWith(word) ? 0 : termScore(word, term, maxEdits);
+                if (score > 0 && postings != null) {
+                    collect(best, postings, score);
+                }
+            }
+        }
+        return best;
+    }
+
+    // Same result as match(word) restricted to the given customers, by checking their own terms
+    private Map<Long, Integer> matchWithin(String word, Set<Long> ids) {
+        int maxEdits = maxEdits(word);
+        Map<Long, Integer> best = new HashMap<>();
+        for (Long id : ids) {
+            Entry entry = entries.get(id);
+            if (entry == null) {
+                continue;
+            }
+            for (Map.Entry<String, Integer> term : entry.terms.entrySet()) {
+                int score = termScore(word, term.getKey(), maxEdits);
+                if (score > 0) {
+                    best.merge(id, score * term.getValue() / 100, Math::max);
+                }
+            }
+        }
+        return best;
+    }
+
+    // 0 when the term does not match the word
+    private static int termScore(String word, String term, int maxEdits) {
+        if (term.startsWith(word)) {
+            // A prefix covering more of the term ranks closer to an exact match
+            return term.length() == word.length() ? EXACT : PREFIX + (EXACT - PREFIX - 1) * word.length() / term.length();
+        }
+        if (maxEdits == 0 || term.length() < word.length() - maxEdits) {
+            return 0;
+        }
+        int edits = prefixDistance(word, term, maxEdits);
+        return edits <= maxEdits ? TYPO - TYPO_PENALTY * edits : 0;
+    }
+
+    // Book numbers and NICs are looked up as typed: one character off is another customer's
+    private static int maxEdits(String word) {
+        if (word.chars().anyMatch(Character::isDigit)) {
+            return 0;
+        }
+        return word.length() >= 8 ? 2 : word.length() >= 4 ? 1 : 0;
+    }
+
+    private static void collect(Map<Long, Integer> best, Map<Long, Integer> postings, int score) {
+        for (Map.Entry<Long, Integer> posting : postings.entrySet()) {
+            best.merge(posting.getKey(), score * posting.getValue() / 100, Math::max);
+        }
+    }
+
+    // One edit changes at most two bigrams, so a term within maxEdits shares all but 2 * maxEdits of them
+    private List<String> typoCandidates(String word, int maxEdits) {
+        Set<String> wordBigrams = bigrams(word);
+        int required = Math.max(1, wordBigrams.size() - 2 * maxEdits);
+        Map<String, Integer> shared = new HashMap<>();
+        for (String bigram : wordBigrams) {
+            Set<String> bigramTerms = bigrams.get(bigram);
+            if (bigramTerms != null) {
+                for (String term : bigramTerms) {
+                    shared.merge(term, 1, Integer::sum);
+                }
+            }
+        }
+        List<String> candidates = new ArrayList<>();
+        for (Map.Entry<String, Integer> term : shared.entrySet()) {
+            if (term.getValue() >= required && term.getKey().length() >= word.length() - maxEdits) {
+                candidates.add(term.getKey());
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Fewest edits (insert, delete, substitute, swap adjacent) turning the word into some prefix of
+     * the term, or {@code maxEdits + 1} when that is more than maxEdits.
+     */
+    static int prefixDistance(String word, String term, int maxEdits) {
+        int m = word.length();
+        int n = Math.min(term.length(), m + maxEdits);
+        int[] previous2 = new int[n + 1];
+        int[] previous = new int[n + 1];
+        int[] current = new int[n + 1];
+        for (int j = 0; j <= n; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= m; i++) {
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= n; j++) {
+                int cost = word.charAt(i - 1) == term.charAt(j - 1) ? 0 : 1;
+                int d = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && word.charAt(i - 1) == term.charAt(j - 2) && word.charAt(i - 2) == term.charAt(j - 1)) {
+                    d = Math.min(d, previous2[j - 2] + 1);
+                }
+                current[j] = d;
+                rowMin = Math.min(rowMin, d);
+            }
+            if (rowMin > maxEdits) {
+                return maxEdits + 1;
+            }
+            int[] recycled = previous2;
+            previous2 = previous;
+            previous = current;
+            current = recycled;
+        }
+        int best = maxEdits + 1;
+        for (int j = Math.max(0, m - maxEdits); j <= n; j++) {
+            best = Math.min(best, previous[j]);
+        }
+        return best;
+    }
+
+    private static void addTerms(Map<String, Integer> customerTerms, List<String> words, int weight) {
+        for (String word : words) {
+            customerTerms.merge(word, weight, Math::max);
+        }
+    }
+
+    /** Lower-cased, NFC-normalised words of letters, digits and combining marks. */
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        // Zero-width joiners only select a Sinhala glyph form; typed queries often leave them out
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFC)
+                .replace("\u200C", "").replace("\u200D", "").toLowerCase(Locale.ROOT);
+        for (String word : normalized.split("[^\\p{L}\\p{N}\\p{M}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    // A book number or NIC as one term without separators, plus its digits so "42" finds "TB-0042"
+    private static List<String> codeTerms(String code) {
+        Set<String> codeTerms = new LinkedHashSet<>();
+        String compact = String.join("", words(code));
+        if (compact.isEmpty()) {
+            return new ArrayList<>();
+        }
+        codeTerms.add(compact);
+        for (String digits : compact.split("[^0-9]+")) {
+            if (!digits.isEmpty() && digits.length() < compact.length()) {
+                codeTerms.add(digits);
+                String trimmed = digits.replaceFirst("^0+(?=.)", "");
+                codeTerms.add(trimmed);
+            }
+        }
+        return new ArrayList<>(codeTerms);
+    }
+
+    private static Set<String> bigrams(String term) {
+        Set<String> result = new HashSet<>();
+        String padded = "^" + term;
+        for (int i = 0; i + 2 <= padded.length(); i++) {
+            result.add(padded.substring(i, i + 2));
+        }
+        return result;
+    }
+
+    private static final class Entry {
+        private final Customer customer;
+        // Term -> field weight
+        private final Map<String, Integer> terms;
+
+        private Entry(Customer customer, Map<String, Integer> terms) {
+            this.customer = customer;
+            this.terms = terms;
+        }
+    }
+}
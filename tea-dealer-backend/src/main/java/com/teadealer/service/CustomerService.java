@@ -1,44 +1,179 @@
 package com.teadealer.service;
 
 import com.teadealer.model.Customer;
+import com.teadealer.repository.CollectionRepository;
 import com.teadealer.repository.CustomerRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
+/**
+ * Customers, served from an in-memory directory indexed by id, book number and route. The table
+ * is small but read on nearly every request (collection, deduction, supply and invoice saves, and
+ * every grid), so reads are map lookups. The directory is loaded on startup, or on first use if
+ * that comes earlier, and create, update and delete write to the database first and then to the
+ * directory.
+ *
+ * Rows written around this service (the CSV customer import, another backend instance) are caught
+ * by a periodic check of the table's row count and latest update time, which reloads the directory
+ * when either has moved.
+ *
+ * Until that check runs, a lookup by id or book number that misses the directory falls back to
+ * the database and adds what it finds.
+ *
+ * The directory also keeps a {@link CustomerSearchIndex}, updated with it, for {@link #searchCustomers}.
+ *
+ * Callers get their own copy of every customer, so setting fields on one, or handing it to JPA
+ * with an entity being saved, never changes what other requests read.
+ */
+@Slf4j
 @Service
 public class CustomerService {
 
     @Autowired
     private CustomerRepository customerRepository;
 
+    @Autowired
+    private CollectionRepository collectionRepository;
+
+    // Lazy: ArchiveService reads customers from this service
+    @Lazy
+    @Autowired
+    private ArchiveService archiveService;
+
+    private volatile Directory directory;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        reload();
+    }
+
+    public synchronized void reload() {
+        // Read before the rows: anything committed later changes it again and is picked up by the next check
+        List<Object> fingerprint = fingerprint();
+        Directory loaded = new Directory();
+        for (Customer customer : customerRepository.findAll()) {
+            loaded.put(customer);
+        }
+        loaded.fingerprint = fingerprint;
+        directory = loaded;
+    }
+
+    @Scheduled(fixedDelayString = "${app.customers.sync-interval-ms:10000}")
+    public void syncFromDatabase() {
+        Directory current = directory;
+        if (current == null || fingerprint().equals(current.fingerprint)) {
+            return;
+        }
+        log.debug("Customer table changed outside this instance; reloading the customer directory");
+        reload();
+    }
+
     public List<Customer> getAllCustomers() {
-        return customerRepository.findAll();
+        return copiesOf(directory().byId.values());
     }
 
     public Optional<Customer> getCustomerById(Long id) {
-        return customerRepository.findById(id);
+        if (id == null) {
+            return Optional.empty();
+        }
+        Customer customer = directory().byId.get(id);
+        if (customer == null) {
+            customer = customerRepository.findById(id).map(this::remember).orElse(null);
+        }
+        return Optional.ofNullable(customer).map(CustomerService::copyOf);
     }
 
     public Optional<Customer> getCustomerByBookNumber(String bookNumber) {
-        return customerRepository.findByBookNumber(bookNumber);
+        if (bookNumber == null) {
+            return Optional.empty();
+        }
+        Customer customer = directory().byBookNumber.get(bookNumber);
+        if (customer == null) {
+            customer = customerRepository.findByBookNumber(bookNumber).map(this::remember).orElse(null);
+        }
+        return Optional.ofNullable(customer).map(CustomerService::copyOf);
     }
 
     public List<Customer> getCustomersByRoute(String route) {
-        return customerRepository.findByRoute(route);
+        if (route == null) {
+            return new ArrayList<>();
+        }
+        Map<Long, Customer> customers = directory().byRoute.get(route);
+        return customers == null ? new ArrayList<>() : copiesOf(customers.values());
+    }
+
+    /** The customers with the given ids, skipping ids that do not exist. */
+    public List<Customer> getCustomersById(Collection<Long> ids) {
+        Map<Long, Customer> byId = directory().byId;
+        List<Customer> customers = new ArrayList<>(ids.size());
+        List<Long> missing = new ArrayList<>();
+        ids.stream().filter(Objects::nonNull).distinct().forEach(id -> {
+            Customer customer = byId.get(id);
+            if (customer != null) {
+                customers.add(customer);
+            } else {
+                missing.add(id);
+            }
+        });
+        if (!missing.isEmpty()) {
+            customerRepository.findAllById(missing).forEach(customer -> customers.add(remember(customer)));
+        }
+        return copiesOf(customers);
+    }
+
+    /** The customers with the given book numbers, skipping book numbers that do not exist. */
+    public List<Customer> getCustomersByBookNumber(Collection<String> bookNumbers) {
+        Map<String, Customer> byBookNumber = directory().byBookNumber;
+        List<Customer> customers = new ArrayList<>(bookNumbers.size());
+        List<String> missing = new ArrayList<>();
+        bookNumbers.stream().filter(Objects::nonNull).distinct().forEach(bookNumber -> {
+            Customer customer = byBookNumber.get(bookNumber);
+            if (customer != null) {
+                customers.add(customer);
+            } else {
+                missing.add(bookNumber);
+            }
+        });
+        if (!missing.isEmpty()) {
+            customerRepository.findByBookNumberIn(missing).forEach(customer -> customers.add(remember(customer)));
+        }
+        return copiesOf(customers);
     }
 
-    public List<Customer> searchCustomers(String name) {
-        return customerRepository.findByGrowerNameEnglishContainingIgnoreCase(name);
+    /** Ranked, typo-tolerant matches on name (English or Sinhala), book number or NIC; see {@link CustomerSearchIndex}. */
+    public List<Customer> searchCustomers(String query, int limit) {
+        return copiesOf(directory().search.search(query, limit));
     }
 
-    public Customer createCustomer(Customer customer) {
-        return customerRepository.save(customer);
+    public synchronized Customer createCustomer(Customer customer) {
+        Directory current = directory();
+        List<Object> before = fingerprint();
+        Customer saved = customerRepository.save(customer);
+        current.put(copyOf(saved));
+        written(current, before);
+        return saved;
     }
 
-    public Customer updateCustomer(Long id, Customer customerDetails) {
+    public synchronized Customer updateCustomer(Long id, Customer customerDetails) {
+        Directory current = directory();
+        List<Object> before = fingerprint();
+        // Loaded fresh rather than taken from the directory, whose instance other requests may be reading
         Customer customer = customerRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Customer not found with id: " + id));
 
@@ -52,10 +187,105 @@ public class CustomerService {
         customer.setRoute(customerDetails.getRoute());
         customer.setTransportExempt(customerDetails.getTransportExempt() != null ? customerDetails.getTransportExempt() : false);
 
-        return customerRepository.save(customer);
+        Customer saved = customerRepository.save(customer);
+        current.remove(id);
+        current.put(copyOf(saved));
+        written(current, before);
+        return saved;
     }
 
-    public void deleteCustomer(Long id) {
+    public synchronized void deleteCustomer(Long id) {
+        Directory current = directory();
+        if (collectionRepository.existsByCustomerId(id)) {
+            throw new RuntimeException("Customer has collections and cannot be deleted");
+        }
+        // Archived rows have no foreign key to stop the delete
+        if (archiveService.hasCustomer(id)) {
+            throw new RuntimeException("Customer has archived history and cannot be deleted");
+        }
+        List<Object> before = fingerprint();
         customerRepository.deleteById(id);
+        current.remove(id);
+        written(current, before);
+    }
+
+    private Directory directory() {
+        Directory current = directory;
+        if (current == null) {
+            reload();
+            current = directory;
+        }
+        return current;
+    }
+
+    // A row the directory did not have yet (written elsewhere since the last check)
+    private synchronized Customer remember(Customer customer) {
+        Directory current = directory();
+        Customer known = current.byId.get(customer.getId());
+        if (known != null) {
+            return known;
+        }
+        current.put(customer);
+        return customer;
+    }
+
+    private static Customer copyOf(Customer customer) {
+        Customer copy = new Customer();
+        BeanUtils.copyProperties(customer, copy);
+        return copy;
+    }
+
+    private static List<Customer> copiesOf(Collection<Customer> customers) {
+        List<Customer> copies = new ArrayList<>(customers.size());
+        for (Customer customer : customers) {
+            copies.add(copyOf(customer));
+        }
+        return copies;
+    }
+
+    // If nothing else changed the table since the last check, this write is already in the directory
+    private void written(Directory current, List<Object> before) {
+        if (before.equals(current.fingerprint)) {
+            current.fingerprint = fingerprint();
+        }
+    }
+
+    private List<Object> fingerprint() {
+        Object[] row = customerRepository.findCountAndLastUpdate().get(0);
+        return List.of(row[0], Objects.toString(row[1]));
+    }
+
+    private static final class Directory {
+        // By id order, as the grids list them
+        private final NavigableMap<Long, Customer> byId = new ConcurrentSkipListMap<>();
+        private final Map<String, Customer> byBookNumber = new ConcurrentHashMap<>();
+        private final Map<String, NavigableMap<Long, Customer>> byRoute = new ConcurrentHashMap<>();
+        private final CustomerSearchIndex search = new CustomerSearchIndex();
+        // Row count and latest update time the directory was loaded at
+        private volatile List<Object> fingerprint;
+
+        private void put(Customer customer) {
+            byId.put(customer.getId(), customer);
+            byBookNumber.put(customer.getBookNumber(), customer);
+            if (customer.getRoute() != null) {
+                byRoute.computeIfAbsent(customer.getRoute(), r -> new ConcurrentSkipListMap<>()).put(customer.getId(), customer);
+            }
+            search.add(customer);
+        }
+
+        private void remove(Long id) {
+            Customer customer = byId.remove(id);
+            if (customer == null) {
+                return;
+            }
+            byBookNumber.remove(customer.getBookNumber(), customer);
+            search.remove(id);
+            if (customer.getRoute() != null) {
+                Map<Long, Customer> route = byRoute.get(customer.getRoute());
+                if (route != null) {
+                    route.remove(id);
+                }
+            }
+        }
     }
-}
\ No newline at end of file
+}
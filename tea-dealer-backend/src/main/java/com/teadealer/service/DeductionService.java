@@ -1,12 +1,36 @@
 package com.teadealer.service;
 
+import com.teadealer.dto.DeductionBatchRequest;
+import com.teadealer.dto.DeductionBatchResult;
+import com.teadealer.model.Customer;
 import com.teadealer.model.Deduction;
+import com.teadealer.model.MonthlyRate;
 import com.teadealer.repository.DeductionRepository;
+import com.teadealer.repository.FertilizerSupplyRepository;
+import com.teadealer.repository.MonthlyRateRepository;
+import com.teadealer.repository.TeaPacketSupplyRepository;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class DeductionService {
@@ -14,35 +38,377 @@ public class DeductionService {
     @Autowired
     private DeductionRepository deductionRepository;
 
+    @Autowired
+    private ArchiveService archiveService;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private FertilizerSupplyRepository fertilizerSupplyRepository;
+
+    @Autowired
+    private TeaPacketSupplyRepository teaPacketSupplyRepository;
+
+    @Autowired
+    private MonthlyRateRepository monthlyRateRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // Keyed on the (customer_id, year, month) unique constraint; created_at is only written on insert
+    private static final String UPSERT_DEDUCTION_SQL =
+            "INSERT INTO deductions (customer_id, book_number, year, month, month_total_amount, last_month_arrears,"
+                    + " advance_amount, advance_entries, loan_amount, loan_date, fertilizer1_amount, fertilizer1_date,"
+                    + " fertilizer2_amount, fertilizer2_date, tea_packets_count, tea_packets_total, agrochemicals_amount,"
+                    + " agrochemicals_date, transport_deduction, stamp_fee, other_deductions, other_deductions_note,"
+                    + " total_deductions, net_amount, created_at, updated_at)"
+                    + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
+                    + " ON DUPLICATE KEY UPDATE book_number = VALUES(book_number),"
+                    + " month_total_amount = VALUES(month_total_amount), last_month_arrears = VALUES(last_month_arrears),"
+                    + " advance_amount = VALUES(advance_amount), advance_entries = VALUES(advance_entries),"
+                    + " loan_amount = VALUES(loan_amount), loan_date = VALUES(loan_date),"
+                    + " fertilizer1_amount = VALUES(fertilizer1_amount), fertilizer1_date = VALUES(fertilizer1_date),"
+                    + " fertilizer2_amount = VALUES(fertilizer2_amount), fertilizer2_date = VALUES(fertilizer2_date),"
+                    + " tea_packets_count = VALUES(tea_packets_count), tea_packets_total = VALUES(tea_packets_total),"
+                    + " agrochemicals_amount = VALUES(agrochemicals_amount), agrochemicals_date = VALUES(agrochemicals_date),"
+                    + " transport_deduction = VALUES(transport_deduction), stamp_fee = VALUES(stamp_fee),"
+                    + " other_deductions = VALUES(other_deductions), other_deductions_note = VALUES(other_deductions_note),"
+                    + " total_deductions = VALUES(total_deductions), net_amount = VALUES(net_amount),"
+                    + " updated_at = VALUES(updated_at)";
+
     public Optional<Deduction> getDeductionByCustomerAndPeriod(Long customerId, Integer year, Integer month) {
-        return deductionRepository.findByCustomerIdAndYearAndMonth(customerId, year, month);
+        return deductionRepository.findByCustomerIdAndYearAndMonth(customerId, year, month)
+                .or(() -> archiveService.findDeductions(customerId, null, year, month).stream().findFirst());
     }
 
     public Optional<Deduction> getDeductionByBookNumberAndPeriod(String bookNumber, Integer year, Integer month) {
-        return deductionRepository.findByBookNumberAndYearAndMonth(bookNumber, year, month);
+        return deductionRepository.findByBookNumberAndYearAndMonth(bookNumber, year, month)
+                .or(() -> archiveService.findDeductions(null, bookNumber, year, month).stream().findFirst());
     }
 
     public List<Deduction> getDeductionsByCustomer(Long customerId) {
-        return deductionRepository.findByCustomerId(customerId);
+        return withArchived(archiveService.findDeductions(customerId, null, null, null),
+                deductionRepository.findByCustomerId(customerId));
     }
 
     public List<Deduction> getDeductionsByBookNumber(String bookNumber) {
-        return deductionRepository.findByBookNumber(bookNumber);
+        return withArchived(archiveService.findDeductions(null, bookNumber, null, null),
+                deductionRepository.findByBookNumber(bookNumber));
     }
 
     public List<Deduction> getDeductionsByPeriod(Integer year, Integer month) {
+        if (archiveService.isArchived(year)) {
+            return archiveService.findDeductions(null, null, year, month);
+        }
         return deductionRepository.findByYearAndMonth(year, month);
     }
 
     public List<Deduction> getDeductionsByYear(Integer year) {
+        if (archiveService.isArchived(year)) {
+            return archiveService.findDeductions(null, null, year, null);
+        }
         return deductionRepository.findByYear(year);
     }
 
     public Deduction saveDeduction(Deduction deduction) {
+        if (deduction.getYear() != null && archiveService.isArchived(deduction.getYear())) {
+            throw new RuntimeException("Deductions for " + deduction.getYear() + " are archived and cannot be changed");
+        }
         return deductionRepository.save(deduction);
     }
 
+    /**
+     * Saves the deductions of many customers for one period. Customers and existing deductions are
+     * looked up with one query each, and all valid entries are upserted in a single JDBC batch and
+     * transaction. Invalid entries are reported per row and skipped; if the batch itself fails,
+     * every entry in it is reported as failed and nothing is saved.
+     */
+    public DeductionBatchResult saveDeductionsBatch(DeductionBatchRequest request) {
+        Integer year = request.getYear();
+        Integer month = request.getMonth();
+        if (year == null || month == null || month < 1 || month > 12) {
+            throw new RuntimeException("A valid year and month are required");
+        }
+        if (archiveService.isArchived(year)) {
+            throw new RuntimeException("Deductions for " + year + " are archived and cannot be changed");
+        }
+        List<DeductionBatchRequest.Entry> entries = request.getDeductions() != null ? request.getDeductions() : List.of();
+
+        Map<Long, Customer> customersById = new HashMap<>();
+        Map<String, Customer> customersByBook = new HashMap<>();
+        Set<Long> ids = new HashSet<>();
+        Set<String> bookNumbers = new HashSet<>();
+        for (DeductionBatchRequest.Entry entry : entries) {
+            if (entry != null && entry.getCustomerId() != null) {
+                ids.add(entry.getCustomerId());
+            } else if (entry != null && entry.getBookNumber() != null) {
+                bookNumbers.add(entry.getBookNumber());
+            }
+        }
+        List<Customer> customers = new ArrayList<>(customerService.getCustomersById(ids));
+        customers.addAll(customerService.getCustomersByBookNumber(bookNumbers));
+        for (Customer customer : customers) {
+            customersById.put(customer.getId(), customer);
+            customersByBook.put(customer.getBookNumber(), customer);
+        }
+        Map<Long, Deduction> existing = new HashMap<>();
+        if (!customersById.isEmpty()) {
+            for (Deduction deduction : deductionRepository.findByYearAndMonthAndCustomerIdIn(year, month, customersById.keySet())) {
+                existing.put(deduction.getCustomer().getId(), detachedCopy(deduction));
+            }
+        }
+
+        DeductionBatchResult result = new DeductionBatchResult();
+        result.setYear(year);
+        result.setMonth(month);
+        Map<Long, Integer> seen = new HashMap<>();
+        List<DeductionBatchResult.Row> batchRows = new ArrayList<>();
+        List<Object[]> batch = new ArrayList<>();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (int i = 0; i < entries.size(); i++) {
+            DeductionBatchRequest.Entry entry = entries.get(i);
+            DeductionBatchResult.Row row = new DeductionBatchResult.Row();
+            row.setIndex(i);
+            result.getRows().add(row);
+            try {
+                if (entry == null || (entry.getCustomerId() == null && entry.getBookNumber() == null)) {
+                    throw new IllegalArgumentException("customerId or bookNumber is required");
+                }
+                row.setCustomerId(entry.getCustomerId());
+                row.setBookNumber(entry.getBookNumber());
+                Customer customer = entry.getCustomerId() != null
+                        ? customersById.get(entry.getCustomerId()) : customersByBook.get(entry.getBookNumber());
+                if (customer == null) {
+                    throw new IllegalArgumentException("Customer not found");
+                }
+                if (entry.getBookNumber() != null && !entry.getBookNumber().equals(customer.getBookNumber())) {
+                    throw new IllegalArgumentException("Book number " + entry.getBookNumber()
+                            + " does not belong to customer " + customer.getId());
+                }
+                Integer previous = seen.putIfAbsent(customer.getId(), i);
+                if (previous != null) {
+                    throw new IllegalArgumentException("Duplicate entry for this customer (first at row " + previous + ")");
+                }
+                validateAmounts(entry);
+
+                Deduction deduction = applyEntry(existing.getOrDefault(customer.getId(), new Deduction()), entry);
+                deduction.setCustomer(customer);
+                deduction.setBookNumber(customer.getBookNumber());
+                deduction.setYear(year);
+                deduction.setMonth(month);
+                deduction.calculateTotals();
+
+                row.setCustomerId(customer.getId());
+                row.setBookNumber(customer.getBookNumber());
+                row.setTotalDeductions(deduction.getTotalDeductions());
+                row.setNetAmount(deduction.getNetAmount());
+                batchRows.add(row);
+                batch.add(toUpsertParameters(deduction, now));
+            } catch (IllegalArgumentException e) {
+                row.setStatus(DeductionBatchResult.Status.FAILED);
+                row.setError(e.getMessage());
+            }
+        }
+
+        executeBatch(result, batchRows, batch);
+        return result;
+    }
+
+    /**
+     * Fills the fertilizer (slot 1) and tea packet fields of every customer's deduction for a period
+     * from the supply ledgers: one grouped query per ledger, priced with the period's
+     * fertilizerPricePerKg and teaPacketPrice, then one batch upsert. Other deduction fields are
+     * kept. Customers without supplies in the period are not touched; a ledger whose price is not
+     * set for the period is skipped with a warning.
+     */
+    public DeductionBatchResult populateFromSupplies(Integer year, Integer month) {
+        if (archiveService.isArchived(year)) {
+            throw new RuntimeException("Deductions for " + year + " are archived and cannot be changed");
+        }
+        YearMonth period = YearMonth.of(year, month);
+        LocalDate startDate = period.atDay(1);
+        LocalDate endDate = period.plusMonths(1).atDay(1);
+        MonthlyRate rate = monthlyRateRepository.findByYearAndMonth(year, month).orElse(new MonthlyRate());
+
+        DeductionBatchResult result = new DeductionBatchResult();
+        result.setYear(year);
+        result.setMonth(month);
+        Map<Long, Object[]> fertilizer = new HashMap<>();
+        if (rate.getFertilizerPricePerKg() != null) {
+            for (Object[] row : fertilizerSupplyRepository.sumQuantityByCustomer(startDate, endDate)) {
+                fertilizer.put((Long) row[0], row);
+            }
+        } else {
+            result.getWarnings().add("Fertilizer price per kg is not set for " + period + "; fertilizer skipped");
+        }
+        Map<Long, Long> teaPackets = new HashMap<>();
+        if (rate.getTeaPacketPrice() != null) {
+            for (Object[] row : teaPacketSupplyRepository.sumPacketsByCustomer(startDate, endDate)) {
+                teaPackets.put((Long) row[0], ((Number) row[1]).longValue());
+            }
+        } else {
+            result.getWarnings().add("Tea packet price is not set for " + period + "; tea packets skipped");
+        }
+
+        Set<Long> customerIds = new HashSet<>(fertilizer.keySet());
+        customerIds.addAll(teaPackets.keySet());
+        if (customerIds.isEmpty()) {
+            return result;
+        }
+        Map<Long, Deduction> existing = new HashMap<>();
+        for (Deduction deduction : deductionRepository.findByYearAndMonthAndCustomerIdIn(year, month, customerIds)) {
+            existing.put(deduction.getCustomer().getId(), detachedCopy(deduction));
+        }
+
+        List<DeductionBatchResult.Row> batchRows = new ArrayList<>();
+        List<Object[]> batch = new ArrayList<>();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        int index = 0;
+        for (Customer customer : customerService.getCustomersById(customerIds)) {
+            Deduction deduction = existing.getOrDefault(customer.getId(), new Deduction());
+            deduction.setCustomer(customer);
+            deduction.setBookNumber(customer.getBookNumber());
+            deduction.setYear(year);
+            deduction.setMonth(month);
+            Object[] supplied = fertilizer.get(customer.getId());
+            if (supplied != null) {
+                BigDecimal quantityKg = (BigDecimal) supplied[1];
+                deduction.setFertilizer1Amount(quantityKg.multiply(rate.getFertilizerPricePerKg()).setScale(2, RoundingMode.HALF_UP));
+                deduction.setFertilizer1Date((LocalDate) supplied[2]);
+            }
+            Long packets = teaPackets.get(customer.getId());
+            if (packets != null) {
+                deduction.setTeaPacketsCount(packets.intValue());
+                deduction.setTeaPacketsTotal(rate.getTeaPacketPrice().multiply(BigDecimal.valueOf(packets)).setScale(2, RoundingMode.HALF_UP));
+            }
+            deduction.calculateTotals();
+
+            DeductionBatchResult.Row row = new DeductionBatchResult.Row();
+            row.setIndex(index++);
+            row.setCustomerId(customer.getId());
+            row.setBookNumber(customer.getBookNumber());
+            row.setTotalDeductions(deduction.getTotalDeductions());
+            row.setNetAmount(deduction.getNetAmount());
+            result.getRows().add(row);
+            batchRows.add(row);
+            batch.add(toUpsertParameters(deduction, now));
+        }
+        executeBatch(result, batchRows, batch);
+        return result;
+    }
+
     public void deleteDeduction(Long id) {
         deductionRepository.deleteById(id);
     }
+
+    // Archived years are older than anything live, so they go first
+    private static List<Deduction> withArchived(List<Deduction> archived, List<Deduction> live) {
+        if (archived.isEmpty()) {
+            return live;
+        }
+        List<Deduction> merged = new ArrayList<>(archived);
+        merged.addAll(live);
+        return merged;
+    }
+
+    // Runs the upsert batch in one transaction and fills in per-row status and the result counts
+    private void executeBatch(DeductionBatchResult result, List<DeductionBatchResult.Row> batchRows, List<Object[]> batch) {
+        if (!batch.isEmpty()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(UPSERT_DEDUCTION_SQL, batch));
+                batchRows.forEach(row -> row.setStatus(DeductionBatchResult.Status.SAVED));
+            } catch (RuntimeException e) {
+                String reason = "Batch rolled back: " + NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+                for (DeductionBatchResult.Row row : batchRows) {
+                    row.setStatus(DeductionBatchResult.Status.FAILED);
+                    row.setError(reason);
+                    row.setTotalDeductions(null);
+                    row.setNetAmount(null);
+                }
+            }
+        }
+
+        for (DeductionBatchResult.Row row : result.getRows()) {
+            if (row.getStatus() == DeductionBatchResult.Status.SAVED) {
+                result.setSaved(result.getSaved() + 1);
+            } else {
+                result.setFailed(result.getFailed() + 1);
+            }
+        }
+    }
+
+    // The batch paths edit loaded rows and write them with JDBC; editing the managed entity itself
+    // would let Hibernate flush the same change again when the batch transaction commits
+    private static Deduction detachedCopy(Deduction deduction) {
+        Deduction copy = new Deduction();
+        BeanUtils.copyProperties(deduction, copy);
+        return copy;
+    }
+
+    // Same field semantics as the single save in DeductionController
+    private static Deduction applyEntry(Deduction deduction, DeductionBatchRequest.Entry entry) {
+        if (entry.getMonthTotalAmount() != null) {
+            deduction.setMonthTotalAmount(entry.getMonthTotalAmount());
+        }
+        if (entry.getAdvanceEntries() != null) {
+            deduction.setAdvanceEntries(entry.getAdvanceEntries());
+        }
+        deduction.setLastMonthArrears(entry.getLastMonthArrears());
+        deduction.setAdvanceAmount(entry.getAdvanceAmount());
+        deduction.setLoanAmount(entry.getLoanAmount());
+        deduction.setLoanDate(entry.getLoanDate());
+        deduction.setFertilizer1Amount(entry.getFertilizer1Amount());
+        deduction.setFertilizer1Date(entry.getFertilizer1Date());
+        deduction.setFertilizer2Amount(entry.getFertilizer2Amount());
+        deduction.setFertilizer2Date(entry.getFertilizer2Date());
+        deduction.setTeaPacketsCount(entry.getTeaPacketsCount());
+        deduction.setTeaPacketsTotal(entry.getTeaPacketsTotal());
+        deduction.setAgrochemicalsAmount(entry.getAgrochemicalsAmount());
+        deduction.setAgrochemicalsDate(entry.getAgrochemicalsDate());
+        deduction.setTransportDeduction(entry.getTransportDeduction());
+        deduction.setStampFee(entry.getStampFee());
+        deduction.setOtherDeductions(entry.getOtherDeductions());
+        deduction.setOtherDeductionsNote(entry.getOtherDeductionsNote());
+        return deduction;
+    }
+
+    private static void validateAmounts(DeductionBatchRequest.Entry entry) {
+        Map<String, BigDecimal> amounts = new LinkedHashMap<>();
+        amounts.put("monthTotalAmount", entry.getMonthTotalAmount());
+        amounts.put("lastMonthArrears", entry.getLastMonthArrears());
+        amounts.put("advanceAmount", entry.getAdvanceAmount());
+        amounts.put("loanAmount", entry.getLoanAmount());
+        amounts.put("fertilizer1Amount", entry.getFertilizer1Amount());
+        amounts.put("fertilizer2Amount", entry.getFertilizer2Amount());
+        amounts.put("teaPacketsTotal", entry.getTeaPacketsTotal());
+        amounts.put("agrochemicalsAmount", entry.getAgrochemicalsAmount());
+        amounts.put("transportDeduction", entry.getTransportDeduction());
+        amounts.put("stampFee", entry.getStampFee());
+        amounts.put("otherDeductions", entry.getOtherDeductions());
+        for (Map.Entry<String, BigDecimal> amount : amounts.entrySet()) {
+            if (amount.getValue() != null && amount.getValue().signum() < 0) {
+                throw new IllegalArgumentException(amount.getKey() + " cannot be negative");
+            }
+        }
+        if (entry.getTeaPacketsCount() != null && entry.getTeaPacketsCount() < 0) {
+            throw new IllegalArgumentException("teaPacketsCount cannot be negative");
+        }
+    }
+
+    private static Object[] toUpsertParameters(Deduction d, Timestamp now) {
+        return new Object[]{d.getCustomer().getId(), d.getBookNumber(), d.getYear(), d.getMonth(),
+                d.getMonthTotalAmount(), d.getLastMonthArrears(), d.getAdvanceAmount(), d.getAdvanceEntries(),
+                d.getLoanAmount(), toSqlDate(d.getLoanDate()), d.getFertilizer1Amount(), toSqlDate(d.getFertilizer1Date()),
+                d.getFertilizer2Amount(), toSqlDate(d.getFertilizer2Date()), d.getTeaPacketsCount(), d.getTeaPacketsTotal(),
+                d.getAgrochemicalsAmount(), toSqlDate(d.getAgrochemicalsDate()), d.getTransportDeduction(), d.getStampFee(),
+                d.getOtherDeductions(), d.getOtherDeductionsNote(), d.getTotalDeductions(), d.getNetAmount(), now, now};
+    }
+
+    private static Date toSqlDate(LocalDate date) {
+        return date != null ? Date.valueOf(date) : null;
+    }
 }
@@ -13,6 +13,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.List;
 import java.util.Optional;
 
@@ -31,6 +32,9 @@ public class FertilizerService {
     @Autowired
     private CustomerService customerService;
 
+    @Autowired
+    private StockLedgerService stockLedgerService;
+
     // ============ Fertilizer Type Methods ============
 
     public List<FertilizerType> getAllFertilizerTypes() {
@@ -102,29 +106,34 @@ public class FertilizerService {
             stock.setNotes(notes);
         }
 
+        stockLedgerService.applyFertilizer(typeId, bagSizeKg, StockLedgerService.period(year, month),
+                bagSizeKg.multiply(BigDecimal.valueOf(bagsCount)), BigDecimal.ZERO, bagsCount, 0);
         return stockRepository.save(stock);
     }
 
     public BigDecimal getAvailableStock(Long typeId, Integer year, Integer month) {
-        BigDecimal totalStock = stockRepository.getTotalStockUpToMonth(typeId, year, month);
-        BigDecimal totalSupplied = supplyRepository.getTotalSuppliedUpToMonth(typeId, year, month);
-        return totalStock.subtract(totalSupplied);
+        return stockLedgerService.getFertilizerAvailableKg(typeId, year, month);
     }
 
+    @Transactional
     public void deleteStock(Long id) {
-        stockRepository.deleteById(id);
+        FertilizerStock stock = stockRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Fertilizer stock not found"));
+        stockLedgerService.applyFertilizer(stock.getFertilizerType().getId(), stock.getBagSizeKg(),
+                StockLedgerService.period(stock.getYear(), stock.getMonth()),
+                stock.getStockAddedKg().negate(), BigDecimal.ZERO, -stock.getBagsAdded(), 0);
+        stockRepository.delete(stock);
     }
 
     public Integer getAvailableBagsByTypeAndSize(Long typeId, BigDecimal bagSizeKg, Integer year, Integer month) {
-        Integer totalBags = stockRepository.getTotalBagsUpToMonth(typeId, bagSizeKg, year, month);
-        Integer suppliedBags = supplyRepository.getTotalBagsSuppliedUpToMonth(typeId, bagSizeKg, year, month);
-        return (totalBags != null ? totalBags : 0) - (suppliedBags != null ? suppliedBags : 0);
+        return stockLedgerService.getFertilizerAvailableBags(typeId, bagSizeKg, year, month);
     }
 
     // ============ Fertilizer Supply Methods ============
 
     public List<FertilizerSupply> getSuppliesByPeriod(Integer year, Integer month) {
-        return supplyRepository.findByYearAndMonth(year, month);
+        YearMonth period = YearMonth.of(year, month);
+        return supplyRepository.findByPeriod(period.atDay(1), period.plusMonths(1).atDay(1));
     }
 
     public List<FertilizerSupply> getSuppliesByCustomer(Long customerId) {
@@ -153,11 +162,20 @@ public class FertilizerService {
         supply.setBagSizeKg(bagSizeKg);
         supply.setNotes(notes);
 
+        // Throws before anything is saved if the bags are no longer in stock
+        stockLedgerService.reserveFertilizer(typeId, bagSizeKg, StockLedgerService.period(supplyDate),
+                supply.getQuantityKg(), bagsCount);
         return supplyRepository.save(supply);
     }
 
+    @Transactional
     public void deleteSupply(Long id) {
-        supplyRepository.deleteById(id);
+        FertilizerSupply supply = supplyRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Fertilizer supply not found"));
+        stockLedgerService.applyFertilizer(supply.getFertilizerType().getId(), supply.getBagSizeKg(),
+                StockLedgerService.period(supply.getSupplyDate()), BigDecimal.ZERO, supply.getQuantityKg().negate(),
+                0, supply.getBagsCount() != null ? -supply.getBagsCount() : 0);
+        supplyRepository.delete(supply);
     }
 
     public BigDecimal getTotalSuppliedToCustomer(Long customerId, Long typeId) {
@@ -1,7 +1,5 @@
 package com.teadealer.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.itextpdf.text.Document;
 import com.itextpdf.text.Image;
 import com.itextpdf.text.PageSize;
@@ -9,6 +7,7 @@ import com.itextpdf.text.Rectangle;
 import com.itextpdf.text.pdf.BaseFont;
 import com.itextpdf.text.pdf.PdfContentByte;
 import com.itextpdf.text.pdf.PdfWriter;
+import com.teadealer.model.AppSettingBlob;
 import com.teadealer.model.Collection;
 import com.teadealer.model.Invoice;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,8 +17,6 @@ import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,17 +24,7 @@ import java.util.Map;
 @Service
 public class InvoicePdfService {
 
-    private static final String SETTING_KEY_INCLUDE_GRAPHICS = "invoice_include_graphics";
-    private static final String SETTING_KEY_PAGE_SIZE = "invoice_page_size";
     private static final String SETTING_KEY_TEMPLATE_IMAGE = "invoice_template_image";
-    private static final String SETTING_KEY_TEMPLATE_FIELDS = "invoice_template_fields";
-    private static final String SETTING_KEY_TEMPLATE_SIZE = "invoice_template_size";
-    private static final String SETTING_KEY_TEMPLATE_FONT_SIZE = "invoice_template_font_size";
-    private static final String SETTING_KEY_TEMPLATE_FONT_FAMILY = "invoice_template_font_family";
-    private static final String SETTING_KEY_SPECIAL_NOTE_1_ENABLED = "special_note_1_enabled";
-    private static final String SETTING_KEY_SPECIAL_NOTE_1_TEXT = "special_note_1_text";
-    private static final String SETTING_KEY_SPECIAL_NOTE_2_ENABLED = "special_note_2_enabled";
-    private static final String SETTING_KEY_SPECIAL_NOTE_2_TEXT = "special_note_2_text";
 
     // Months array
     private static final String[] MONTHS = {"January", "February", "March", "April", "May", "June",
@@ -49,11 +36,8 @@ public class InvoicePdfService {
     @Autowired
     private CollectionService collectionService;
 
-    private ObjectMapper objectMapper = new ObjectMapper();
-
     public byte[] generateInvoicePdf(Invoice invoice) throws Exception {
-        boolean includeGraphics = "true".equalsIgnoreCase(
-                appSettingsService.getSettingValue(SETTING_KEY_INCLUDE_GRAPHICS));
+        boolean includeGraphics = appSettingsService.get(SettingKey.INVOICE_INCLUDE_GRAPHICS);
 
         if (includeGraphics) {
             return generateTemplateBasedPdf(invoice);
@@ -67,37 +51,23 @@ public class InvoicePdfService {
      */
     private byte[] generateTemplateBasedPdf(Invoice invoice) throws Exception {
         // Load template configuration
-        String templateImageBase64 = appSettingsService.getSettingValue(SETTING_KEY_TEMPLATE_IMAGE);
-        String fieldsJson = appSettingsService.getSettingValue(SETTING_KEY_TEMPLATE_FIELDS);
-        String sizeJson = appSettingsService.getSettingValue(SETTING_KEY_TEMPLATE_SIZE);
-        String fontSizeStr = appSettingsService.getSettingValue(SETTING_KEY_TEMPLATE_FONT_SIZE);
+        byte[] templateImageBytes = appSettingsService.getBlob(SETTING_KEY_TEMPLATE_IMAGE)
+                .map(AppSettingBlob::getContent)
+                .orElse(null);
+        List<Map<String, Object>> fields = appSettingsService.get(SettingKey.INVOICE_TEMPLATE_FIELDS);
+        SettingKey.TemplateSize templateSize = appSettingsService.get(SettingKey.INVOICE_TEMPLATE_SIZE);
+        int fontSize = appSettingsService.get(SettingKey.INVOICE_TEMPLATE_FONT_SIZE);
 
         // If no template configured, fall back to text-only
-        if (templateImageBase64 == null || templateImageBase64.isEmpty()) {
+        if (templateImageBytes == null || templateImageBytes.length == 0) {
             return generateTextOnlyPdf(invoice);
         }
 
-        // Parse fields
-        List<Map<String, Object>> fields = new ArrayList<>();
-        if (fieldsJson != null && !fieldsJson.isEmpty()) {
-            fields = objectMapper.readValue(fieldsJson, new TypeReference<List<Map<String, Object>>>() {});
-        }
-
-        // Parse template size
-        int templateWidth = 800;
-        int templateHeight = 1000;
-        if (sizeJson != null && !sizeJson.isEmpty()) {
-            Map<String, Object> size = objectMapper.readValue(sizeJson, new TypeReference<Map<String, Object>>() {});
-            templateWidth = ((Number) size.getOrDefault("width", 800)).intValue();
-            templateHeight = ((Number) size.getOrDefault("height", 1000)).intValue();
-        }
-
-        // Font size
-        int fontSize = fontSizeStr != null ? Integer.parseInt(fontSizeStr) : 12;
+        int templateWidth = templateSize.getWidth();
+        int templateHeight = templateSize.getHeight();
 
         // Get page size setting - auto-rotate to landscape if template image is wider than tall
-        String pageSizeSetting = appSettingsService.getSettingValue(SETTING_KEY_PAGE_SIZE);
-        Rectangle pageSize = getPageSize(pageSizeSetting);
+        Rectangle pageSize = getPageSize(appSettingsService.get(SettingKey.INVOICE_PAGE_SIZE));
         if (templateWidth > templateHeight) {
             pageSize = pageSize.rotate();
         }
@@ -112,10 +82,7 @@ public class InvoicePdfService {
         document.open();
 
         // Load and add template image as background
-        byte[] imageBytes = Base64.getDecoder().decode(
-                templateImageBase64.contains(",") ?
-                        templateImageBase64.split(",")[1] : templateImageBase64);
-        Image templateImage = Image.getInstance(imageBytes);
+        Image templateImage = Image.getInstance(templateImageBytes);
 
         // Scale to fit page
         templateImage.scaleToFit(pageSize.getWidth(), pageSize.getHeight());
@@ -188,31 +155,15 @@ public class InvoicePdfService {
      */
     private byte[] generateTextOnlyPdf(Invoice invoice) throws Exception {
         // Load template configuration (same as graphics version)
-        String fieldsJson = appSettingsService.getSettingValue(SETTING_KEY_TEMPLATE_FIELDS);
-        String sizeJson = appSettingsService.getSettingValue(SETTING_KEY_TEMPLATE_SIZE);
-        String fontSizeStr = appSettingsService.getSettingValue(SETTING_KEY_TEMPLATE_FONT_SIZE);
-
-        // Parse fields
-        List<Map<String, Object>> fields = new ArrayList<>();
-        if (fieldsJson != null && !fieldsJson.isEmpty()) {
-            fields = objectMapper.readValue(fieldsJson, new TypeReference<List<Map<String, Object>>>() {});
-        }
-
-        // Parse template size
-        int templateWidth = 800;
-        int templateHeight = 1000;
-        if (sizeJson != null && !sizeJson.isEmpty()) {
-            Map<String, Object> size = objectMapper.readValue(sizeJson, new TypeReference<Map<String, Object>>() {});
-            templateWidth = ((Number) size.getOrDefault("width", 800)).intValue();
-            templateHeight = ((Number) size.getOrDefault("height", 1000)).intValue();
-        }
+        List<Map<String, Object>> fields = appSettingsService.get(SettingKey.INVOICE_TEMPLATE_FIELDS);
+        SettingKey.TemplateSize templateSize = appSettingsService.get(SettingKey.INVOICE_TEMPLATE_SIZE);
+        int fontSize = appSettingsService.get(SettingKey.INVOICE_TEMPLATE_FONT_SIZE);
 
-        // Font size
-        int fontSize = fontSizeStr != null ? Integer.parseInt(fontSizeStr) : 12;
+        int templateWidth = templateSize.getWidth();
+        int templateHeight = templateSize.getHeight();
 
         // Get page size setting - auto-rotate to landscape if template is wider than tall
-        String pageSizeSetting = appSettingsService.getSettingValue(SETTING_KEY_PAGE_SIZE);
-        Rectangle pageSize = getPageSize(pageSizeSetting);
+        Rectangle pageSize = getPageSize(appSettingsService.get(SettingKey.INVOICE_PAGE_SIZE));
         if (templateWidth > templateHeight) {
             pageSize = pageSize.rotate();
         }
@@ -377,13 +328,10 @@ public class InvoicePdfService {
         }
 
         // Special notes
-        String note1Enabled = appSettingsService.getSettingValue(SETTING_KEY_SPECIAL_NOTE_1_ENABLED);
-        String note1Text = appSettingsService.getSettingValue(SETTING_KEY_SPECIAL_NOTE_1_TEXT);
-        String note2Enabled = appSettingsService.getSettingValue(SETTING_KEY_SPECIAL_NOTE_2_ENABLED);
-        String note2Text = appSettingsService.getSettingValue(SETTING_KEY_SPECIAL_NOTE_2_TEXT);
-
-        values.put("specialNote1", "true".equalsIgnoreCase(note1Enabled) && note1Text != null ? note1Text : "");
-        values.put("specialNote2", "true".equalsIgnoreCase(note2Enabled) && note2Text != null ? note2Text : "");
+        values.put("specialNote1", appSettingsService.get(SettingKey.SPECIAL_NOTE_1_ENABLED)
+                ? appSettingsService.get(SettingKey.SPECIAL_NOTE_1_TEXT) : "");
+        values.put("specialNote2", appSettingsService.get(SettingKey.SPECIAL_NOTE_2_ENABLED)
+                ? appSettingsService.get(SettingKey.SPECIAL_NOTE_2_TEXT) : "");
 
         return values;
     }
@@ -1,21 +1,25 @@
 package com.teadealer.service;
 
+import com.teadealer.dto.InvoiceCascadeResult;
+import com.teadealer.dto.SupplyTotals;
 import com.teadealer.model.Collection;
 import com.teadealer.model.Customer;
 import com.teadealer.model.Deduction;
 import com.teadealer.model.Invoice;
-import com.teadealer.model.MonthlyRate;
-import com.teadealer.model.TeaGrade;
 import com.teadealer.repository.InvoiceRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -30,47 +34,41 @@ public class InvoiceService {
     @Autowired
     private CollectionService collectionService;
 
-    @Autowired
-    private MonthlyRateService monthlyRateService;
-
     @Autowired
     private DeductionService deductionService;
 
     @Autowired
     private AppSettingsService appSettingsService;
 
-    private static final String AUTO_ARREARS_SETTING_KEY = "auto_arrears_carry_forward";
-    private static final String STAMP_FEE_MODE_KEY = "stamp_fee_mode";
-    private static final String STAMP_FEE_NET_PAY_THRESHOLD_KEY = "stamp_fee_net_pay_threshold";
-    private static final String STAMP_FEE_SUPPLY_KG_THRESHOLD_KEY = "stamp_fee_supply_kg_threshold";
-    private static final String DEDUCTION_ROUNDING_MODE_KEY = "deduction_rounding_mode";
+    @Autowired
+    private ArchiveService archiveService;
 
-    // Stamp fee modes
-    private static final String STAMP_FEE_MODE_INCLUDE_ALL = "include_all";
-    private static final String STAMP_FEE_MODE_EXCLUDE_NO_SUPPLY = "exclude_no_supply";
-    private static final String STAMP_FEE_MODE_EXCLUDE_NET_PAY_ABOVE = "exclude_net_pay_above";
-    private static final String STAMP_FEE_MODE_EXCLUDE_SUPPLY_MORE_THAN = "exclude_supply_more_than";
+    @Autowired
+    private SupplyCalculator supplyCalculator;
 
-    // Deduction rounding modes
-    private static final String ROUNDING_MODE_HALF_UP = "half_up";
-    private static final String ROUNDING_MODE_INCLUDE_DECIMALS = "include_decimals";
-    private static final String ROUNDING_MODE_CEILING = "ceiling";
-    private static final String ROUNDING_MODE_FLOOR = "floor";
+    @Autowired
+    private TransactionTemplate transactionTemplate;
 
     public Optional<Invoice> getInvoiceById(Long id) {
         return invoiceRepository.findById(id);
     }
 
     public Optional<Invoice> getInvoiceByCustomerAndPeriod(Long customerId, Integer year, Integer month) {
-        return invoiceRepository.findByCustomerIdAndYearAndMonth(customerId, year, month);
+        return invoiceRepository.findByCustomerIdAndYearAndMonth(customerId, year, month)
+                .or(() -> archiveService.findInvoices(customerId, year, month).stream().findFirst());
     }
 
     public List<Invoice> getInvoicesByPeriod(Integer year, Integer month) {
+        if (archiveService.isArchived(year)) {
+            return archiveService.findInvoices(null, year, month);
+        }
         return invoiceRepository.findByYearAndMonth(year, month);
     }
 
     public List<Invoice> getInvoicesByCustomer(Long customerId) {
-        return invoiceRepository.findByCustomerId(customerId);
+        List<Invoice> invoices = new ArrayList<>(archiveService.findInvoices(customerId, null, null));
+        invoices.addAll(invoiceRepository.findByCustomerId(customerId));
+        return invoices;
     }
 
     public long getInvoiceCountByPeriod(Integer year, Integer month) {
@@ -83,13 +81,24 @@ public class InvoiceService {
 
     @Transactional
     public Invoice generateInvoice(Long customerId, Integer year, Integer month) {
+        if (archiveService.isArchived(year)) {
+            throw new RuntimeException("Invoices for " + year + " are archived and cannot be regenerated");
+        }
         Customer customer = customerService.getCustomerById(customerId)
                 .orElseThrow(() -> new RuntimeException("Customer not found"));
+        Invoice invoice = invoiceRepository.findByCustomerIdAndYearAndMonth(customerId, year, month)
+                .orElse(new Invoice());
+        LocalDate startDate = LocalDate.of(year, month, 1);
+        List<Collection> collections = collectionService.getCollectionsByBookNumberAndDateRange(
+                customer.getBookNumber(), startDate, startDate.withDayOfMonth(startDate.lengthOfMonth()));
+        Deduction deduction = deductionService.getDeductionByCustomerAndPeriod(customerId, year, month).orElse(null);
+        return generateInvoice(invoice, customer, year, month, getAutoArrears(customerId, year, month), collections, deduction);
+    }
 
-        // Check if invoice already exists
-        Optional<Invoice> existingInvoice = invoiceRepository.findByCustomerIdAndYearAndMonth(customerId, year, month);
-
-        Invoice invoice = existingInvoice.orElse(new Invoice());
+    // Fills and saves invoice (the existing one for the period, or a new one) for the customer from the
+    // month's collections (kept on the invoice as its detail lines) and deduction, which may be null
+    private Invoice generateInvoice(Invoice invoice, Customer customer, Integer year, Integer month, BigDecimal autoArrears,
+                                    List<Collection> collections, Deduction deduction) {
 
         // Set customer info
         invoice.setCustomer(customer);
@@ -99,20 +108,6 @@ public class InvoiceService {
         invoice.setYear(year);
         invoice.setMonth(month);
 
-        // Get monthly rate
-        MonthlyRate monthlyRate = monthlyRateService.getRateByYearAndMonth(year, month)
-                .orElse(new MonthlyRate());
-
-        // Get collections for the month
-        LocalDate startDate = LocalDate.of(year, month, 1);
-        LocalDate endDate = startDate.withDayOfMonth(startDate.lengthOfMonth());
-        List<Collection> collections = collectionService.getCollectionsByBookNumberAndDateRange(
-                customer.getBookNumber(), startDate, endDate);
-
-        // Calculate grade totals
-        BigDecimal grade1Kg = BigDecimal.ZERO;
-        BigDecimal grade2Kg = BigDecimal.ZERO;
-
         // Build collection details for storage as simple JSON array
         StringBuilder detailsBuilder = new StringBuilder("[");
         boolean first = true;
@@ -130,81 +125,35 @@ public class InvoiceService {
                     .append("\",\"weightKg\":")
                     .append(col.getWeightKg() != null ? col.getWeightKg().toString() : "0")
                     .append("}");
-
-            if (col.getGrade() == TeaGrade.GRADE_1) {
-                grade1Kg = grade1Kg.add(col.getWeightKg() != null ? col.getWeightKg() : BigDecimal.ZERO);
-            } else if (col.getGrade() == TeaGrade.GRADE_2) {
-                grade2Kg = grade2Kg.add(col.getWeightKg() != null ? col.getWeightKg() : BigDecimal.ZERO);
-            }
         }
         detailsBuilder.append("]");
 
         // Store collection details
         invoice.setCollectionDetails(detailsBuilder.toString());
 
-        // Round kg totals to integers (collection inputs are always whole numbers)
-        grade1Kg = grade1Kg.setScale(0, RoundingMode.HALF_UP);
-        grade2Kg = grade2Kg.setScale(0, RoundingMode.HALF_UP);
-        invoice.setGrade1Kg(grade1Kg);
-        invoice.setGrade2Kg(grade2Kg);
-        BigDecimal totalKg = grade1Kg.add(grade2Kg);
-
-        // Get supply deduction percentage (default 4% if not set)
-        BigDecimal supplyDeductionPercentage = monthlyRate.getSupplyDeductionPercentage() != null ?
-                monthlyRate.getSupplyDeductionPercentage() : new BigDecimal("4.00");
-        invoice.setSupplyDeductionPercentage(supplyDeductionPercentage);
-
-        // Apply deduction percentage directly to each grade using the configured rounding mode.
-        // grade deduction = gradeKg × pct / 100, rounded to integer.
-        // This is simpler and more correct than a global ratio — each grade's deduction
-        // is independent, and since kg is always an integer the net kg is also always exact.
-        BigDecimal grade1DeductionKg = applyDeductionRounding(
-                grade1Kg.multiply(supplyDeductionPercentage).divide(BigDecimal.valueOf(100), 4, RoundingMode.HALF_UP));
-        BigDecimal grade2DeductionKg = applyDeductionRounding(
-                grade2Kg.multiply(supplyDeductionPercentage).divide(BigDecimal.valueOf(100), 4, RoundingMode.HALF_UP));
-
-        // Net kg per grade — exact integer subtraction, no rounding needed
-        BigDecimal grade1NetKg = grade1Kg.subtract(grade1DeductionKg);
-        BigDecimal grade2NetKg = grade2Kg.subtract(grade2DeductionKg);
-
-        // Total supply deduction and payable kg
-        BigDecimal supplyDeductionKg = grade1DeductionKg.add(grade2DeductionKg);
-        BigDecimal payableKg = totalKg.subtract(supplyDeductionKg);
-
-        invoice.setGrade1DeductionKg(grade1DeductionKg);
-        invoice.setGrade2DeductionKg(grade2DeductionKg);
-        invoice.setSupplyDeductionKg(supplyDeductionKg);
-        invoice.setPayableKg(payableKg);
-
-        // Set rates
-        BigDecimal grade1Rate = monthlyRate.getGrade1Rate() != null ? monthlyRate.getGrade1Rate() : BigDecimal.ZERO;
-        BigDecimal grade2Rate = monthlyRate.getGrade2Rate() != null ? monthlyRate.getGrade2Rate() : BigDecimal.ZERO;
-        invoice.setGrade1Rate(grade1Rate);
-        invoice.setGrade2Rate(grade2Rate);
-
-        // Amount = net kg × rate  (net kg is an exact integer so this always tallies with display)
-        BigDecimal grade1Amount = grade1NetKg.multiply(grade1Rate).setScale(2, RoundingMode.HALF_UP);
-        BigDecimal grade2Amount = grade2NetKg.multiply(grade2Rate).setScale(2, RoundingMode.HALF_UP);
-        BigDecimal totalAmount = grade1Amount.add(grade2Amount);
-
-        invoice.setGrade1Amount(grade1Amount);
-        invoice.setGrade2Amount(grade2Amount);
+        // Supply figures come from the same calculator as the deduction preview
+        SupplyTotals totals = supplyCalculator.calculate(customer, year, month);
+        BigDecimal totalKg = totals.getTotalKg();
+        BigDecimal totalAmount = totals.getTotalAmount();
+        BigDecimal transportDeduction = totals.getTransportDeduction();
+
+        invoice.setGrade1Kg(totals.getGrade1Kg());
+        invoice.setGrade2Kg(totals.getGrade2Kg());
+        invoice.setSupplyDeductionPercentage(totals.getSupplyDeductionPercentage());
+        invoice.setGrade1DeductionKg(totals.getGrade1DeductionKg());
+        invoice.setGrade2DeductionKg(totals.getGrade2DeductionKg());
+        invoice.setSupplyDeductionKg(totals.getSupplyDeductionKg());
+        invoice.setPayableKg(totals.getPayableKg());
+        invoice.setGrade1Rate(totals.getGrade1Rate());
+        invoice.setGrade2Rate(totals.getGrade2Rate());
+        invoice.setGrade1Amount(totals.getGrade1Amount());
+        invoice.setGrade2Amount(totals.getGrade2Amount());
         invoice.setTotalAmount(totalAmount);
-
-        // Calculate transport deduction (per kg based on payable kg)
-        // Skip transport deduction if customer is transport exempt
-        BigDecimal transportRatePerKg = monthlyRate.getTransportRatePerKg() != null ?
-                monthlyRate.getTransportRatePerKg() : BigDecimal.ZERO;
-        Boolean isTransportExempt = customer.getTransportExempt() != null && customer.getTransportExempt();
-        BigDecimal transportDeduction = isTransportExempt ? BigDecimal.ZERO :
-                payableKg.multiply(transportRatePerKg).setScale(2, RoundingMode.HALF_UP);
-
-        invoice.setTransportRatePerKg(transportRatePerKg);
+        invoice.setTransportRatePerKg(totals.getTransportRatePerKg());
         invoice.setTransportDeduction(transportDeduction);
-        invoice.setTransportExempt(isTransportExempt);
+        invoice.setTransportExempt(totals.getTransportExempt());
 
-        // Get deductions first (needed for stamp fee calculation)
-        Optional<Deduction> deductionOpt = deductionService.getDeductionByCustomerAndPeriod(customerId, year, month);
+        // Deductions are needed for the stamp fee calculation
         BigDecimal manualArrears = BigDecimal.ZERO;
         BigDecimal advanceAmount = BigDecimal.ZERO;
         BigDecimal loanAmount = BigDecimal.ZERO;
@@ -214,8 +163,7 @@ public class InvoiceService {
         BigDecimal agrochemicalsAmount = BigDecimal.ZERO;
         BigDecimal otherDeductions = BigDecimal.ZERO;
 
-        if (deductionOpt.isPresent()) {
-            Deduction deduction = deductionOpt.get();
+        if (deduction != null) {
             manualArrears = deduction.getLastMonthArrears() != null ? deduction.getLastMonthArrears() : BigDecimal.ZERO;
             advanceAmount = deduction.getAdvanceAmount() != null ? deduction.getAdvanceAmount() : BigDecimal.ZERO;
             loanAmount = deduction.getLoanAmount() != null ? deduction.getLoanAmount() : BigDecimal.ZERO;
@@ -236,62 +184,27 @@ public class InvoiceService {
             invoice.setOtherDeductionsNote(deduction.getOtherDeductionsNote());
         }
 
-        // Check for automatic arrears carry-forward from previous month's negative net pay
-        BigDecimal autoArrears = BigDecimal.ZERO;
-        String autoArrearsSetting = appSettingsService.getSettingValue(AUTO_ARREARS_SETTING_KEY);
-        boolean autoArrearsEnabled = "true".equalsIgnoreCase(autoArrearsSetting);
-
-        if (autoArrearsEnabled) {
-            // Calculate previous month
-            int prevMonth = month - 1;
-            int prevYear = year;
-            if (prevMonth < 1) {
-                prevMonth = 12;
-                prevYear = year - 1;
-            }
-
-            // Get previous month's invoice
-            Optional<Invoice> prevInvoiceOpt = invoiceRepository.findByCustomerIdAndYearAndMonth(customerId, prevYear, prevMonth);
-            if (prevInvoiceOpt.isPresent()) {
-                Invoice prevInvoice = prevInvoiceOpt.get();
-                BigDecimal prevNetAmount = prevInvoice.getNetAmount();
-                // If previous net amount is negative, it becomes arrears (as positive amount)
-                if (prevNetAmount != null && prevNetAmount.compareTo(BigDecimal.ZERO) < 0) {
-                    autoArrears = prevNetAmount.abs();
-                }
-            }
-        }
-
         // Set total arrears (manual + auto)
         BigDecimal totalArrears = manualArrears.add(autoArrears);
         invoice.setLastMonthArrears(totalArrears.compareTo(BigDecimal.ZERO) > 0 ? totalArrears : null);
 
         // Get stamp fee settings and apply conditionally
-        BigDecimal stampFee = monthlyRate.getStampFee() != null ? monthlyRate.getStampFee() : BigDecimal.ZERO;
-        String stampFeeMode = appSettingsService.getSettingValue(STAMP_FEE_MODE_KEY);
-        if (stampFeeMode == null) {
-            stampFeeMode = STAMP_FEE_MODE_INCLUDE_ALL;
-        }
+        BigDecimal stampFee = totals.getStampFee();
+        String stampFeeMode = appSettingsService.get(SettingKey.STAMP_FEE_MODE);
 
         boolean applyStampFee = true;
 
         switch (stampFeeMode) {
-            case STAMP_FEE_MODE_EXCLUDE_NO_SUPPLY:
+            case SettingKey.STAMP_FEE_MODE_EXCLUDE_NO_SUPPLY:
                 // Exclude stamp fee if no supply (totalKg is 0)
                 if (totalKg.compareTo(BigDecimal.ZERO) == 0) {
                     applyStampFee = false;
                 }
                 break;
 
-            case STAMP_FEE_MODE_EXCLUDE_NET_PAY_ABOVE:
+            case SettingKey.STAMP_FEE_MODE_EXCLUDE_NET_PAY_ABOVE:
                 // Exclude stamp fee if net pay (before stamp fee) exceeds threshold
-                String netPayThresholdStr = appSettingsService.getSettingValue(STAMP_FEE_NET_PAY_THRESHOLD_KEY);
-                BigDecimal netPayThreshold = BigDecimal.ZERO;
-                if (netPayThresholdStr != null && !netPayThresholdStr.isEmpty()) {
-                    try {
-                        netPayThreshold = new BigDecimal(netPayThresholdStr);
-                    } catch (NumberFormatException ignored) {}
-                }
+                BigDecimal netPayThreshold = appSettingsService.get(SettingKey.STAMP_FEE_NET_PAY_THRESHOLD);
                 // Calculate preliminary net pay without stamp fee (include all other deductions)
                 BigDecimal preliminaryDeductions = BigDecimal.ZERO;
                 preliminaryDeductions = preliminaryDeductions.add(totalArrears);
@@ -309,21 +222,15 @@ public class InvoiceService {
                 }
                 break;
 
-            case STAMP_FEE_MODE_EXCLUDE_SUPPLY_MORE_THAN:
+            case SettingKey.STAMP_FEE_MODE_EXCLUDE_SUPPLY_MORE_THAN:
                 // Exclude stamp fee if total supply exceeds threshold
-                String supplyThresholdStr = appSettingsService.getSettingValue(STAMP_FEE_SUPPLY_KG_THRESHOLD_KEY);
-                BigDecimal supplyThreshold = BigDecimal.ZERO;
-                if (supplyThresholdStr != null && !supplyThresholdStr.isEmpty()) {
-                    try {
-                        supplyThreshold = new BigDecimal(supplyThresholdStr);
-                    } catch (NumberFormatException ignored) {}
-                }
+                BigDecimal supplyThreshold = appSettingsService.get(SettingKey.STAMP_FEE_SUPPLY_KG_THRESHOLD);
                 if (totalKg.compareTo(supplyThreshold) > 0) {
                     applyStampFee = false;
                 }
                 break;
 
-            case STAMP_FEE_MODE_INCLUDE_ALL:
+            case SettingKey.STAMP_FEE_MODE_INCLUDE_ALL:
             default:
                 // Always apply stamp fee
                 applyStampFee = true;
@@ -344,9 +251,23 @@ public class InvoiceService {
         List<Customer> customers = customerService.getAllCustomers();
         List<Invoice> generatedInvoices = new ArrayList<>();
 
+        if (archiveService.isArchived(year)) {
+            throw new RuntimeException("Invoices for " + year + " are archived and cannot be regenerated");
+        }
+
+        // One grouped query fills the calculator cache for the whole period,
+        // and one query finds every customer carrying arrears from last month
+        supplyCalculator.calculatePeriod(customers, year, month);
+        Map<Long, BigDecimal> autoArrears = getAutoArrearsForPeriod(year, month);
+        Map<Long, Invoice> existing = invoicesByCustomerId(year, month);
+        Map<String, List<Collection>> collections = collectionsByBookNumber(year, month);
+        Map<Long, Deduction> deductions = deductionsByCustomerId(year, month);
+
         for (Customer customer : customers) {
             try {
-                Invoice invoice = generateInvoice(customer.getId(), year, month);
+                Invoice invoice = generateInvoice(existing.getOrDefault(customer.getId(), new Invoice()), customer,
+                        year, month, autoArrears.getOrDefault(customer.getId(), BigDecimal.ZERO),
+                        collections.getOrDefault(customer.getBookNumber(), List.of()), deductions.get(customer.getId()));
                 generatedInvoices.add(invoice);
             } catch (Exception e) {
                 // Log error but continue with other customers
@@ -357,6 +278,185 @@ public class InvoiceService {
         return generatedInvoices;
     }
 
+    /**
+     * Regenerates a period and then walks forward month by month, following the arrears chain.
+     *
+     * The starting month is regenerated for the customer (or every customer when customerId is
+     * null). A following month is only touched for customers whose net amount changed in the month
+     * before and was or became negative, i.e. whose auto-arrears actually moved, and only where
+     * that month was already invoiced. The walk stops as soon as no net amount changes, or when it
+     * reaches the current month. Each month is one transaction with one bulk read each of supply
+     * totals, collections, deductions, arrears and existing invoices.
+     */
+    public InvoiceCascadeResult cascadeRegenerate(Long customerId, Integer year, Integer month) {
+        if (archiveService.isArchived(year)) {
+            throw new RuntimeException("Invoices for " + year + " are archived and cannot be regenerated");
+        }
+        List<Customer> customers;
+        if (customerId != null) {
+            customers = List.of(customerService.getCustomerById(customerId)
+                    .orElseThrow(() -> new RuntimeException("Customer not found")));
+        } else {
+            customers = customerService.getAllCustomers();
+        }
+
+        InvoiceCascadeResult result = new InvoiceCascadeResult();
+        result.setCustomerId(customerId);
+        result.setStartYear(year);
+        result.setStartMonth(month);
+        YearMonth lastMonth = YearMonth.now();
+        YearMonth period = YearMonth.of(year, month);
+        boolean createMissing = true;
+        while (!customers.isEmpty()) {
+            YearMonth current = period;
+            boolean create = createMissing;
+            List<Customer> scope = customers;
+            Map<Long, BigDecimal[]> netAmounts = transactionTemplate.execute(status -> regeneratePeriod(scope, current, create));
+
+            List<Long> changed = new ArrayList<>();
+            List<Customer> next = new ArrayList<>();
+            for (Customer customer : customers) {
+                BigDecimal[] net = netAmounts.get(customer.getId());
+                if (net == null || compareAmounts(net[0], net[1]) == 0) {
+                    continue;
+                }
+                changed.add(customer.getId());
+                // Only a negative net amount carries into next month's arrears
+                if (isNegative(net[0]) || isNegative(net[1])) {
+                    next.add(customer);
+                }
+            }
+            result.getSteps().add(new InvoiceCascadeResult.Step(current.getYear(), current.getMonthValue(),
+                    netAmounts.size(), changed));
+            result.setRegenerated(result.getRegenerated() + netAmounts.size());
+
+            if (!isAutoArrearsEnabled() || !period.isBefore(lastMonth)) {
+                break;
+            }
+            customers = next;
+            period = period.plusMonths(1);
+            createMissing = false;
+        }
+        return result;
+    }
+
+    // [old net, new net] per regenerated customer; missing invoices are only created when asked to
+    private Map<Long, BigDecimal[]> regeneratePeriod(List<Customer> customers, YearMonth period, boolean createMissing) {
+        int year = period.getYear();
+        int month = period.getMonthValue();
+        Map<Long, Invoice> existing = invoicesByCustomerId(year, month);
+        List<Customer> scope = new ArrayList<>();
+        for (Customer customer : customers) {
+            if (createMissing || existing.containsKey(customer.getId())) {
+                scope.add(customer);
+            }
+        }
+        Map<Long, BigDecimal[]> netAmounts = new LinkedHashMap<>();
+        if (scope.isEmpty()) {
+            return netAmounts;
+        }
+        supplyCalculator.calculatePeriod(scope, year, month);
+        Map<Long, BigDecimal> autoArrears = getAutoArrearsForPeriod(year, month);
+        Map<String, List<Collection>> collections = collectionsByBookNumber(year, month);
+        Map<Long, Deduction> deductions = deductionsByCustomerId(year, month);
+        Map<Long, Invoice> saved = new HashMap<>();
+        for (Customer customer : scope) {
+            Invoice invoice = existing.get(customer.getId());
+            netAmounts.put(customer.getId(), new BigDecimal[]{invoice != null ? invoice.getNetAmount() : null, null});
+            saved.put(customer.getId(), generateInvoice(invoice != null ? invoice : new Invoice(), customer, year, month,
+                    autoArrears.getOrDefault(customer.getId(), BigDecimal.ZERO),
+                    collections.getOrDefault(customer.getBookNumber(), List.of()), deductions.get(customer.getId())));
+        }
+        // Totals are calculated in the entity callbacks, so flush before reading the new net amounts
+        invoiceRepository.flush();
+        for (Map.Entry<Long, BigDecimal[]> entry : netAmounts.entrySet()) {
+            entry.getValue()[1] = saved.get(entry.getKey()).getNetAmount();
+        }
+        return netAmounts;
+    }
+
+    private Map<Long, Invoice> invoicesByCustomerId(Integer year, Integer month) {
+        Map<Long, Invoice> invoices = new HashMap<>();
+        for (Invoice invoice : invoiceRepository.findByYearAndMonth(year, month)) {
+            invoices.put(invoice.getCustomer().getId(), invoice);
+        }
+        return invoices;
+    }
+
+    // The month's collections, archived years included, grouped by book number in one read
+    private Map<String, List<Collection>> collectionsByBookNumber(Integer year, Integer month) {
+        LocalDate startDate = LocalDate.of(year, month, 1);
+        Map<String, List<Collection>> collections = new HashMap<>();
+        for (Collection collection : collectionService.getCollectionsByDateRange(
+                startDate, startDate.withDayOfMonth(startDate.lengthOfMonth()))) {
+            collections.computeIfAbsent(collection.getBookNumber(), k -> new ArrayList<>()).add(collection);
+        }
+        return collections;
+    }
+
+    private Map<Long, Deduction> deductionsByCustomerId(Integer year, Integer month) {
+        Map<Long, Deduction> deductions = new HashMap<>();
+        for (Deduction deduction : deductionService.getDeductionsByPeriod(year, month)) {
+            deductions.put(deduction.getCustomer().getId(), deduction);
+        }
+        return deductions;
+    }
+
+    private static int compareAmounts(BigDecimal a, BigDecimal b) {
+        if (a == null || b == null) {
+            return a == b ? 0 : 1;
+        }
+        return a.compareTo(b);
+    }
+
+    private static boolean isNegative(BigDecimal amount) {
+        return amount != null && amount.signum() < 0;
+    }
+
+    public boolean isAutoArrearsEnabled() {
+        return appSettingsService.get(SettingKey.AUTO_ARREARS_CARRY_FORWARD);
+    }
+
+    /**
+     * Automatic arrears for one customer: the previous month's negative net pay as a positive amount,
+     * or zero when there is none or the feature is disabled.
+     */
+    public BigDecimal getAutoArrears(Long customerId, Integer year, Integer month) {
+        if (!isAutoArrearsEnabled()) {
+            return BigDecimal.ZERO;
+        }
+        YearMonth previous = YearMonth.of(year, month).minusMonths(1);
+        return getInvoiceByCustomerAndPeriod(customerId, previous.getYear(), previous.getMonthValue())
+                .map(Invoice::getNetAmount)
+                .filter(netAmount -> netAmount.compareTo(BigDecimal.ZERO) < 0)
+                .map(BigDecimal::abs)
+                .orElse(BigDecimal.ZERO);
+    }
+
+    /**
+     * Automatic arrears of every customer for a period from one query over the previous month's
+     * negative net pay. Only customers with arrears are present; empty when the feature is disabled.
+     */
+    public Map<Long, BigDecimal> getAutoArrearsForPeriod(Integer year, Integer month) {
+        Map<Long, BigDecimal> arrears = new LinkedHashMap<>();
+        if (!isAutoArrearsEnabled()) {
+            return arrears;
+        }
+        YearMonth previous = YearMonth.of(year, month).minusMonths(1);
+        if (archiveService.isArchived(previous.getYear())) {
+            for (Invoice invoice : archiveService.findInvoices(null, previous.getYear(), previous.getMonthValue())) {
+                if (invoice.getNetAmount() != null && invoice.getNetAmount().compareTo(BigDecimal.ZERO) < 0) {
+                    arrears.put(invoice.getCustomer().getId(), invoice.getNetAmount().abs());
+                }
+            }
+            return arrears;
+        }
+        for (Object[] row : invoiceRepository.findNegativeNetAmountsByPeriod(previous.getYear(), previous.getMonthValue())) {
+            arrears.put((Long) row[0], ((BigDecimal) row[1]).abs());
+        }
+        return arrears;
+    }
+
     @Transactional
     public Invoice regenerateInvoice(Long customerId, Integer year, Integer month) {
         // Simply call generateInvoice - it handles both create and update
@@ -374,35 +474,4 @@ public class InvoiceService {
         invoice.setStatus(status);
         return invoiceRepository.save(invoice);
     }
-
-    /**
-     * Apply rounding to supply deduction kg based on the configured rounding mode.
-     * Options:
-     * - half_up (default): Round to nearest integer, .5 rounds up
-     * - include_decimals: Keep 2 decimal places
-     * - ceiling: Always round up to next integer
-     * - floor: Always round down (truncate decimals)
-     */
-    private BigDecimal applyDeductionRounding(BigDecimal value) {
-        String roundingMode = appSettingsService.getSettingValue(DEDUCTION_ROUNDING_MODE_KEY);
-        if (roundingMode == null) {
-            roundingMode = ROUNDING_MODE_HALF_UP; // Default
-        }
-
-        switch (roundingMode) {
-            case ROUNDING_MODE_INCLUDE_DECIMALS:
-                // Keep 2 decimal places
-                return value.setScale(2, RoundingMode.HALF_UP);
-            case ROUNDING_MODE_CEILING:
-                // Round up to next integer
-                return value.setScale(0, RoundingMode.CEILING);
-            case ROUNDING_MODE_FLOOR:
-                // Round down (truncate decimals)
-                return value.setScale(0, RoundingMode.FLOOR);
-            case ROUNDING_MODE_HALF_UP:
-            default:
-                // Round to nearest integer, .5 rounds up
-                return value.setScale(0, RoundingMode.HALF_UP);
-        }
-    }
 }
@@ -14,6 +14,9 @@ public class MonthlyRateService {
     @Autowired
     private MonthlyRateRepository monthlyRateRepository;
 
+    @Autowired
+    private SupplyCalculator supplyCalculator;
+
     public List<MonthlyRate> getRatesByYear(Integer year) {
         return monthlyRateRepository.findByYearOrderByMonthAsc(year);
     }
@@ -23,11 +26,19 @@ public class MonthlyRateService {
     }
 
     public MonthlyRate saveRate(MonthlyRate rate) {
-        return monthlyRateRepository.save(rate);
+        // The rate may be moved to another period; the old one changes too
+        Optional<MonthlyRate> old = rate.getId() != null ? monthlyRateRepository.findById(rate.getId()) : Optional.empty();
+        // Periods are invalidated after the write, so no instance caches the old rate under the new version
+        MonthlyRate saved = monthlyRateRepository.save(rate);
+        old.ifPresent(previous -> supplyCalculator.invalidatePeriod(previous.getYear(), previous.getMonth()));
+        supplyCalculator.invalidatePeriod(saved.getYear(), saved.getMonth());
+        return saved;
     }
 
     public void deleteRate(Long id) {
+        Optional<MonthlyRate> rate = monthlyRateRepository.findById(id);
         monthlyRateRepository.deleteById(id);
+        rate.ifPresent(deleted -> supplyCalculator.invalidatePeriod(deleted.getYear(), deleted.getMonth()));
     }
 
     public Optional<MonthlyRate> getRateById(Long id) {
@@ -0,0 +1,168 @@
+package com.teadealer.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The settings the backend itself reads, each with its type, default and parser. Values are
+ * parsed by {@link AppSettingsService} when they are written or loaded, so reads get a ready
+ * object; a registered key that does not parse is rejected on save. A value stored before it was
+ * validated (or a missing or blank one) reads as the default.
+ *
+ * Parsed values are shared between callers and must not be modified.
+ */
+public final class SettingKey<T> {
+
+    private static final Map<String, SettingKey<?>> REGISTRY = new LinkedHashMap<>();
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    // Stamp fee modes
+    public static final String STAMP_FEE_MODE_INCLUDE_ALL = "include_all";
+    public static final String STAMP_FEE_MODE_EXCLUDE_NO_SUPPLY = "exclude_no_supply";
+    public static final String STAMP_FEE_MODE_EXCLUDE_NET_PAY_ABOVE = "exclude_net_pay_above";
+    public static final String STAMP_FEE_MODE_EXCLUDE_SUPPLY_MORE_THAN = "exclude_supply_more_than";
+
+    public static final SettingKey<Boolean> AUTO_ARREARS_CARRY_FORWARD = bool("auto_arrears_carry_forward");
+
+    public static final SettingKey<String> STAMP_FEE_MODE = choice("stamp_fee_mode", STAMP_FEE_MODE_INCLUDE_ALL,
+            STAMP_FEE_MODE_EXCLUDE_NO_SUPPLY, STAMP_FEE_MODE_EXCLUDE_NET_PAY_ABOVE, STAMP_FEE_MODE_EXCLUDE_SUPPLY_MORE_THAN);
+    public static final SettingKey<BigDecimal> STAMP_FEE_NET_PAY_THRESHOLD = decimal("stamp_fee_net_pay_threshold");
+    public static final SettingKey<BigDecimal> STAMP_FEE_SUPPLY_KG_THRESHOLD = decimal("stamp_fee_supply_kg_threshold");
+
+    public static final SettingKey<String> DEDUCTION_ROUNDING_MODE = choice("deduction_rounding_mode",
+            SupplyCalculator.ROUNDING_MODE_HALF_UP, SupplyCalculator.ROUNDING_MODE_INCLUDE_DECIMALS,
+            SupplyCalculator.ROUNDING_MODE_CEILING, SupplyCalculator.ROUNDING_MODE_FLOOR);
+
+    public static final SettingKey<Boolean> INVOICE_INCLUDE_GRAPHICS = bool("invoice_include_graphics");
+    public static final SettingKey<String> INVOICE_PAGE_SIZE = new SettingKey<>("invoice_page_size", "A5", raw -> {
+        String pageSize = raw.toUpperCase();
+        if (!Set.of("A4", "A5", "A6", "LETTER").contains(pageSize)) {
+            throw new IllegalArgumentException("expected A4, A5, A6 or LETTER");
+        }
+        return pageSize;
+    });
+    public static final SettingKey<List<Map<String, Object>>> INVOICE_TEMPLATE_FIELDS = new SettingKey<>(
+            "invoice_template_fields", List.of(),
+            raw -> Collections.unmodifiableList(json(raw, new TypeReference<List<Map<String, Object>>>() {})));
+    public static final SettingKey<TemplateSize> INVOICE_TEMPLATE_SIZE = new SettingKey<>(
+            "invoice_template_size", new TemplateSize(800, 1000), raw -> {
+                Map<String, Object> size = json(raw, new TypeReference<Map<String, Object>>() {});
+                return new TemplateSize(((Number) size.getOrDefault("width", 800)).intValue(),
+                        ((Number) size.getOrDefault("height", 1000)).intValue());
+            });
+    public static final SettingKey<Integer> INVOICE_TEMPLATE_FONT_SIZE = new SettingKey<>("invoice_template_font_size", 12, raw -> {
+        int fontSize = Integer.parseInt(raw.trim());
+        if (fontSize <= 0) {
+            throw new IllegalArgumentException("must be positive");
+        }
+        return fontSize;
+    });
+
+    public static final SettingKey<Boolean> SPECIAL_NOTE_1_ENABLED = bool("special_note_1_enabled");
+    public static final SettingKey<String> SPECIAL_NOTE_1_TEXT = text("special_note_1_text");
+    public static final SettingKey<Boolean> SPECIAL_NOTE_2_ENABLED = bool("special_note_2_enabled");
+    public static final SettingKey<String> SPECIAL_NOTE_2_TEXT = text("special_note_2_text");
+
+    private final String key;
+    private final T defaultValue;
+    private final Function<String, T> parser;
+
+    private SettingKey(String key, T defaultValue, Function<String, T> parser) {
+        this.key = key;
+        this.defaultValue = defaultValue;
+        this.parser = parser;
+        REGISTRY.put(key, this);
+    }
+
+    public static Optional<SettingKey<?>> forKey(String key) {
+        return Optional.ofNullable(REGISTRY.get(key));
+    }
+
+    public static Collection<SettingKey<?>> all() {
+        return Collections.unmodifiableCollection(REGISTRY.values());
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public T getDefaultValue() {
+        return defaultValue;
+    }
+
+    /** Parses a stored value; null or blank gives the default. Throws IllegalArgumentException if it does not parse. */
+    public T parse(String raw) {
+        if (raw == null || raw.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return parser.apply(raw);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid value for setting " + key + ": " + e.getMessage());
+        }
+    }
+
+    private static SettingKey<Boolean> bool(String key) {
+        return new SettingKey<>(key, false, raw -> {
+            if (!"true".equalsIgnoreCase(raw.trim()) && !"false".equalsIgnoreCase(raw.trim())) {
+                throw new IllegalArgumentException("expected true or false");
+            }
+            return "true".equalsIgnoreCase(raw.trim());
+        });
+    }
+
+    private static SettingKey<BigDecimal> decimal(String key) {
+        return new SettingKey<>(key, BigDecimal.ZERO, raw -> new BigDecimal(raw.trim()));
+    }
+
+    private static SettingKey<String> text(String key) {
+        return new SettingKey<>(key, "", raw -> raw);
+    }
+
+    // The first option is the default
+    private static SettingKey<String> choice(String key, String... options) {
+        return new SettingKey<>(key, options[0], raw -> {
+            if (!List.of(options).contains(raw)) {
+                throw new IllegalArgumentException("expected one of " + String.join(", ", options));
+            }
+            return raw;
+        });
+    }
+
+    private static <V> V json(String raw, TypeReference<V> type) {
+        try {
+            return OBJECT_MAPPER.readValue(raw, type);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("not valid JSON");
+        }
+    }
+
+    /** Width and height the invoice template fields were placed against. */
+    public static final class TemplateSize {
+        private final int width;
+        private final int height;
+
+        public TemplateSize(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.teadealer.service;
+
+import com.teadealer.dto.StockMovement;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Availability figures by (kind, type, size) and month. Stock and supply are recorded far less
+ * often than availability is read, so reads are served from memory until a {@link StockMovement}
+ * for the same key commits; that drops the key's figures from the movement's month onwards, plus
+ * the type-wide and overall totals the key contributes to. Earlier months are untouched.
+ *
+ * Each key carries a version that invalidation bumps. A figure loaded while a change was
+ * committing is returned but not cached, so a slow read can never park a stale value.
+ */
+@Service
+public class StockAvailabilityCache {
+
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, int period, Supplier<T> loader) {
+        Slot slot = slots.computeIfAbsent(key, k -> new Slot());
+        Object cached = slot.values.get(period);
+        if (cached != null) {
+            hits.increment();
+            return (T) cached;
+        }
+        misses.increment();
+        long version = slot.version;
+        T value = loader.get();
+        synchronized (slot) {
+            if (slot.version == version && value != null) {
+                slot.values.put(period, value);
+            }
+        }
+        return value;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStockMovement(StockMovement movement) {
+        String kind = movement.getKind();
+        if (kind == null) {
+            clear();
+            return;
+        }
+        invalidate(key(kind, movement.getTypeId(), movement.getSize()), movement.getPeriod());
+        invalidate(key(kind, movement.getTypeId(), null), movement.getPeriod());
+        invalidate(key(kind, null, null), movement.getPeriod());
+    }
+
+    public void clear() {
+        for (Slot slot : slots.values()) {
+            synchronized (slot) {
+                slot.version++;
+                slot.values.clear();
+            }
+        }
+        invalidations.increment();
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        int entries = 0;
+        for (Slot slot : slots.values()) {
+            entries += slot.values.size();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        stats.put("entries", entries);
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+
+    /** Cache key for one size of a type, every size of a type (size null), or every type (both null). */
+    public static String key(String kind, Long typeId, BigDecimal size) {
+        return kind + ":" + (typeId != null ? typeId : "*") + ":" + (size != null ? size.toPlainString() : "*");
+    }
+
+    private void invalidate(String key, int fromPeriod) {
+        Slot slot = slots.get(key);
+        if (slot == null) {
+            return;
+        }
+        synchronized (slot) {
+            slot.version++;
+            slot.values.tailMap(fromPeriod, true).clear();
+        }
+        invalidations.increment();
+    }
+
+    private static final class Slot {
+        private final NavigableMap<Integer, Object> values = new ConcurrentSkipListMap<>();
+        private volatile long version;
+    }
+}
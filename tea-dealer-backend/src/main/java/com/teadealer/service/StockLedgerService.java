@@ -0,0 +1,448 @@
+package com.teadealer.service;
+
+import com.teadealer.dto.StockAvailability;
+import com.teadealer.dto.StockMovement;
+import com.teadealer.model.FertilizerStockBalance;
+import com.teadealer.model.FertilizerType;
+import com.teadealer.model.TeaPacketStockBalance;
+import com.teadealer.model.TeaPacketType;
+import com.teadealer.repository.FertilizerStockBalanceRepository;
+import com.teadealer.repository.FertilizerStockRepository;
+import com.teadealer.repository.FertilizerSupplyRepository;
+import com.teadealer.repository.FertilizerTypeRepository;
+import com.teadealer.repository.TeaPacketStockBalanceRepository;
+import com.teadealer.repository.TeaPacketStockRepository;
+import com.teadealer.repository.TeaPacketSupplyRepository;
+import com.teadealer.repository.TeaPacketTypeRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Monthly closing-balance ledgers for fertilizer and tea packet stock.
+ *
+ * Every stock addition and supply (and their deletions) is applied to the row of its month and
+ * shifts the closing balance of that month and all later months, so "available in month M" is the
+ * closing balance of the latest row at or before M: one indexed lookup per bag size / packet
+ * weight, however many years of history there are. Later months rarely exist when stock moves,
+ * so the shift normally touches a single row.
+ *
+ * The ledgers are derived data. They are rebuilt from the stock and supply tables on startup when
+ * empty, and {@link #rebuild()} can be run again if they are ever suspected to have drifted.
+ */
+@Slf4j
+@Service
+public class StockLedgerService {
+
+    @Autowired
+    private FertilizerStockBalanceRepository fertilizerBalanceRepository;
+
+    @Autowired
+    private TeaPacketStockBalanceRepository teaPacketBalanceRepository;
+
+    @Autowired
+    private FertilizerStockRepository fertilizerStockRepository;
+
+    @Autowired
+    private FertilizerSupplyRepository fertilizerSupplyRepository;
+
+    @Autowired
+    private TeaPacketStockRepository teaPacketStockRepository;
+
+    @Autowired
+    private TeaPacketSupplyRepository teaPacketSupplyRepository;
+
+    @Autowired
+    private FertilizerTypeRepository fertilizerTypeRepository;
+
+    @Autowired
+    private StockAvailabilityCache availabilityCache;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private TeaPacketTypeRepository teaPacketTypeRepository;
+
+    public static int period(int year, int month) {
+        return year * 100 + month;
+    }
+
+    public static int period(LocalDate date) {
+        return period(date.getYear(), date.getMonthValue());
+    }
+
+    // ============ Movements ============
+
+    @Transactional
+    public void applyFertilizer(Long typeId, BigDecimal bagSizeKg, int period,
+                                BigDecimal addedKg, BigDecimal suppliedKg, int addedBags, int suppliedBags) {
+        BigDecimal size = key(bagSizeKg);
+        openFertilizerPeriod(typeId, size, period);
+        fertilizerBalanceRepository.addMovement(typeId, size, period, addedKg, suppliedKg, addedBags, suppliedBags);
+        fertilizerBalanceRepository.shiftClosing(typeId, size, period, addedKg.subtract(suppliedKg), addedBags - suppliedBags);
+        eventPublisher.publishEvent(new StockMovement(StockMovement.FERTILIZER, typeId, size, period));
+    }
+
+    @Transactional
+    public void applyTeaPackets(Long typeId, BigDecimal packetWeightGrams, int period, int added, int supplied) {
+        Long type = typeId != null ? typeId : 0L;
+        BigDecimal weight = key(packetWeightGrams);
+        openTeaPacketPeriod(type, weight, period);
+        teaPacketBalanceRepository.addMovement(type, weight, period, added, supplied);
+        teaPacketBalanceRepository.shiftClosing(type, weight, period, added - supplied, added);
+        eventPublisher.publishEvent(new StockMovement(StockMovement.TEA_PACKETS, type, weight, period));
+    }
+
+    /**
+     * Takes bags out of stock for a supply, or fails without changing anything if the month (or
+     * any later month that already has movements) does not have them. The check and the decrement
+     * are one guarded UPDATE on the balance row, so concurrent supplies of the same bag size queue
+     * on that row's lock and the loser sees the reduced balance; other sizes are not blocked.
+     */
+    @Transactional
+    public void reserveFertilizer(Long typeId, BigDecimal bagSizeKg, int period, BigDecimal kg, int bags) {
+        BigDecimal size = key(bagSizeKg);
+        openFertilizerPeriod(typeId, size, period);
+        if (fertilizerBalanceRepository.reserve(typeId, size, period, kg, bags) == 0) {
+            Integer available = fertilizerBalanceRepository
+                    .findFirstByFertilizerTypeIdAndBagSizeKgAndPeriodLessThanEqualOrderByPeriodDesc(typeId, size, period)
+                    .map(FertilizerStockBalance::getClosingBags)
+                    .orElse(0);
+            throw new RuntimeException("Insufficient stock: only " + Math.max(available, 0) + " bags of "
+                    + size.stripTrailingZeros().toPlainString() + "kg available, " + bags + " requested");
+        }
+        long later = fertilizerBalanceRepository.countByFertilizerTypeIdAndBagSizeKgAndPeriodGreaterThan(typeId, size, period);
+        if (later > 0 && fertilizerBalanceRepository.reserveAfter(typeId, size, period, kg, bags) != later) {
+            // Rolls back the month's decrement along with the partial carry-over
+            throw new RuntimeException("Insufficient stock: these bags are already supplied in a later month");
+        }
+        eventPublisher.publishEvent(new StockMovement(StockMovement.FERTILIZER, typeId, size, period));
+    }
+
+    @Transactional
+    public void reserveTeaPackets(Long typeId, BigDecimal packetWeightGrams, int period, int packets) {
+        BigDecimal weight = key(packetWeightGrams);
+        openTeaPacketPeriod(typeId, weight, period);
+        if (teaPacketBalanceRepository.reserve(typeId, weight, period, packets) == 0) {
+            Integer available = teaPacketBalanceRepository
+                    .findFirstByTeaPacketTypeIdAndPacketWeightGramsAndPeriodLessThanEqualOrderByPeriodDesc(typeId, weight, period)
+                    .map(TeaPacketStockBalance::getClosingPackets)
+                    .orElse(0);
+            throw new RuntimeException("Insufficient stock: only " + Math.max(available, 0) + " packets of "
+                    + weight.stripTrailingZeros().toPlainString() + "g available, " + packets + " requested");
+        }
+        long later = teaPacketBalanceRepository.countByTeaPacketTypeIdAndPacketWeightGramsAndPeriodGreaterThan(typeId, weight, period);
+        if (later > 0 && teaPacketBalanceRepository.reserveAfter(typeId, weight, period, packets) != later) {
+            throw new RuntimeException("Insufficient stock: these packets are already supplied in a later month");
+        }
+        eventPublisher.publishEvent(new StockMovement(StockMovement.TEA_PACKETS, typeId, weight, period));
+    }
+
+    /**
+     * Creates the month's row carrying the previous closing balance; concurrent creators collapse
+     * into one row. The row the balance comes from is read with a write lock, so a movement in an
+     * earlier month either commits before the balance is read or waits for this transaction and then
+     * shifts the new row along with the rest. With no earlier row, MySQL's gap lock on the empty
+     * range holds back a concurrent first month the same way.
+     */
+    private void openFertilizerPeriod(Long typeId, BigDecimal size, int period) {
+        if (fertilizerBalanceRepository.existsByFertilizerTypeIdAndBagSizeKgAndPeriod(typeId, size, period)) {
+            return;
+        }
+        Optional<FertilizerStockBalance> previous = fertilizerBalanceRepository
+                .findFirstByFertilizerTypeIdAndBagSizeKgAndPeriodLessThanOrderByPeriodDesc(typeId, size, period);
+        fertilizerBalanceRepository.openPeriod(typeId, size, period,
+                previous.map(FertilizerStockBalance::getClosingKg).orElse(BigDecimal.ZERO),
+                previous.map(FertilizerStockBalance::getClosingBags).orElse(0));
+    }
+
+    private void openTeaPacketPeriod(Long typeId, BigDecimal weight, int period) {
+        if (teaPacketBalanceRepository.existsByTeaPacketTypeIdAndPacketWeightGramsAndPeriod(typeId, weight, period)) {
+            return;
+        }
+        Optional<TeaPacketStockBalance> previous = teaPacketBalanceRepository
+                .findFirstByTeaPacketTypeIdAndPacketWeightGramsAndPeriodLessThanOrderByPeriodDesc(typeId, weight, period);
+        teaPacketBalanceRepository.openPeriod(typeId, weight, period,
+                previous.map(TeaPacketStockBalance::getClosingPackets).orElse(0),
+                previous.map(TeaPacketStockBalance::getReceivedPackets).orElse(0));
+    }
+
+    // ============ Balances ============
+
+    // Single-key reads go through the availability cache; see StockAvailabilityCache for invalidation
+
+    public BigDecimal getFertilizerAvailableKg(Long typeId, Integer year, Integer month) {
+        int period = period(year, month);
+        return availabilityCache.get(StockAvailabilityCache.key(StockMovement.FERTILIZER, typeId, null), period, () -> {
+            BigDecimal available = BigDecimal.ZERO;
+            for (FertilizerStockBalance row : fertilizerBalanceRepository.findLatestByType(typeId, period)) {
+                available = available.add(row.getClosingKg());
+            }
+            return available;
+        });
+    }
+
+    public Integer getFertilizerAvailableBags(Long typeId, BigDecimal bagSizeKg, Integer year, Integer month) {
+        BigDecimal size = key(bagSizeKg);
+        int period = period(year, month);
+        return availabilityCache.get(StockAvailabilityCache.key(StockMovement.FERTILIZER, typeId, size), period, () ->
+                fertilizerBalanceRepository.findFirstByFertilizerTypeIdAndBagSizeKgAndPeriodLessThanEqualOrderByPeriodDesc(
+                                typeId, size, period)
+                        .map(FertilizerStockBalance::getClosingBags)
+                        .orElse(0));
+    }
+
+    public Integer getTeaPacketsAvailable(Integer year, Integer month) {
+        int period = period(year, month);
+        return availabilityCache.get(StockAvailabilityCache.key(StockMovement.TEA_PACKETS, null, null), period, () -> {
+            int available = 0;
+            for (TeaPacketStockBalance row : teaPacketBalanceRepository.findLatest(period)) {
+                available += row.getClosingPackets();
+            }
+            return available;
+        });
+    }
+
+    // Every packet added up to and including the month, over all types and weights
+    public Integer getTeaPacketsReceived(Integer year, Integer month) {
+        int received = 0;
+        for (TeaPacketStockBalance row : teaPacketBalanceRepository.findLatest(period(year, month))) {
+            received += row.getReceivedPackets();
+        }
+        return received;
+    }
+
+    public Integer getTeaPacketsAvailable(Long typeId, BigDecimal packetWeightGrams, Integer year, Integer month) {
+        BigDecimal weight = key(packetWeightGrams);
+        int period = period(year, month);
+        return availabilityCache.get(StockAvailabilityCache.key(StockMovement.TEA_PACKETS, typeId, weight), period, () ->
+                teaPacketBalanceRepository.findFirstByTeaPacketTypeIdAndPacketWeightGramsAndPeriodLessThanEqualOrderByPeriodDesc(
+                                typeId, weight, period)
+                        .map(TeaPacketStockBalance::getClosingPackets)
+                        .orElse(0));
+    }
+
+    /**
+     * Availability of every fertilizer type / bag size and tea packet type / weight for a month,
+     * in four statements whatever the number of types: both type lists and the latest ledger row
+     * per key at or before the month.
+     */
+    public StockAvailability getAvailability(Integer year, Integer month) {
+        int period = period(year, month);
+        Map<Long, List<FertilizerStockBalance>> fertilizerRows = new HashMap<>();
+        for (FertilizerStockBalance row : fertilizerBalanceRepository.findLatest(period)) {
+            fertilizerRows.computeIfAbsent(row.getFertilizerTypeId(), k -> new ArrayList<>()).add(row);
+        }
+        Map<Long, List<TeaPacketStockBalance>> teaPacketRows = new HashMap<>();
+        for (TeaPacketStockBalance row : teaPacketBalanceRepository.findLatest(period)) {
+            teaPacketRows.computeIfAbsent(row.getTeaPacketTypeId(), k -> new ArrayList<>()).add(row);
+        }
+
+        StockAvailability availability = new StockAvailability();
+        availability.setYear(year);
+        availability.setMonth(month);
+        for (FertilizerType type : fertilizerTypeRepository.findAll(Sort.by("name"))) {
+            Map<BigDecimal, StockAvailability.BagSize> sizes = new LinkedHashMap<>();
+            for (BigDecimal size : parseSizes(type.getBagSizes())) {
+                StockAvailability.BagSize bagSize = new StockAvailability.BagSize();
+                bagSize.setBagSizeKg(size);
+                sizes.put(size, bagSize);
+            }
+            StockAvailability.Fertilizer entry = new StockAvailability.Fertilizer();
+            entry.setTypeId(type.getId());
+            entry.setTypeName(type.getName());
+            entry.setActive(type.getActive());
+            for (FertilizerStockBalance row : fertilizerRows.getOrDefault(type.getId(), List.of())) {
+                StockAvailability.BagSize bagSize = sizes.computeIfAbsent(row.getBagSizeKg(), size -> {
+                    StockAvailability.BagSize extra = new StockAvailability.BagSize();
+                    extra.setBagSizeKg(size);
+                    return extra;
+                });
+                bagSize.setAvailableBags(row.getClosingBags());
+                bagSize.setAvailableKg(row.getClosingKg());
+                entry.setAvailableKg(entry.getAvailableKg().add(row.getClosingKg()));
+            }
+            entry.setBagSizes(new ArrayList<>(sizes.values()));
+            availability.getFertilizer().add(entry);
+        }
+        for (TeaPacketType type : teaPacketTypeRepository.findAll(Sort.by("name"))) {
+            Map<BigDecimal, StockAvailability.PacketWeight> weights = new LinkedHashMap<>();
+            for (BigDecimal weight : parseSizes(type.getPacketWeights())) {
+                StockAvailability.PacketWeight packetWeight = new StockAvailability.PacketWeight();
+                packetWeight.setPacketWeightGrams(weight);
+                weights.put(weight, packetWeight);
+            }
+            StockAvailability.TeaPackets entry = new StockAvailability.TeaPackets();
+            entry.setTypeId(type.getId());
+            entry.setTypeName(type.getName());
+            entry.setActive(type.getActive());
+            for (TeaPacketStockBalance row : teaPacketRows.getOrDefault(type.getId(), List.of())) {
+                StockAvailability.PacketWeight packetWeight = weights.computeIfAbsent(row.getPacketWeightGrams(), weight -> {
+                    StockAvailability.PacketWeight extra = new StockAvailability.PacketWeight();
+                    extra.setPacketWeightGrams(weight);
+                    return extra;
+                });
+                packetWeight.setAvailablePackets(row.getClosingPackets());
+                entry.setAvailablePackets(entry.getAvailablePackets() + row.getClosingPackets());
+            }
+            entry.setPacketWeights(new ArrayList<>(weights.values()));
+            availability.getTeaPackets().add(entry);
+        }
+        return availability;
+    }
+
+    // Comma-separated sizes as configured on a type ("25, 50"), normalised like the ledger keys
+    private static List<BigDecimal> parseSizes(String configured) {
+        List<BigDecimal> sizes = new ArrayList<>();
+        if (configured == null) {
+            return sizes;
+        }
+        for (String part : configured.split(",")) {
+            try {
+                BigDecimal size = key(new BigDecimal(part.trim()));
+                if (!sizes.contains(size)) {
+                    sizes.add(size);
+                }
+            } catch (NumberFormatException e) {
+                // Free-text entries in the type configuration are not stock keys
+            }
+        }
+        return sizes;
+    }
+
+    // ============ Backfill ============
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        boolean fertilizerMissing = fertilizerBalanceRepository.count() == 0
+                && (fertilizerStockRepository.count() > 0 || fertilizerSupplyRepository.count() > 0);
+        boolean teaPacketsMissing = (teaPacketBalanceRepository.count() == 0
+                && (teaPacketStockRepository.count() > 0 || teaPacketSupplyRepository.count() > 0))
+                || teaPacketBalanceRepository.existsByReceivedPacketsIsNull();
+        if (fertilizerMissing || teaPacketsMissing) {
+            log.info("Stock balance ledgers are empty or incomplete; building them from stock and supply history");
+            rebuild();
+        }
+    }
+
+    /**
+     * Recomputes both ledgers from the stock and supply tables with one grouped query per table.
+     */
+    @Transactional
+    public void rebuild() {
+        Map<String, FertilizerStockBalance> fertilizer = new TreeMap<>();
+        for (Object[] row : fertilizerStockRepository.sumByTypeSizeAndPeriod()) {
+            FertilizerStockBalance balance = fertilizerRow(fertilizer, (Long) row[0], (BigDecimal) row[1],
+                    period(intValue(row[2]), intValue(row[3])));
+            balance.setAddedKg(balance.getAddedKg().add(amount(row[4])));
+            balance.setAddedBags(balance.getAddedBags() + intValue(row[5]));
+        }
+        for (Object[] row : fertilizerSupplyRepository.sumByTypeSizeAndMonth()) {
+            FertilizerStockBalance balance = fertilizerRow(fertilizer, (Long) row[0], (BigDecimal) row[1],
+                    period(intValue(row[2]), intValue(row[3])));
+            balance.setSuppliedKg(balance.getSuppliedKg().add(amount(row[4])));
+            balance.setSuppliedBags(balance.getSuppliedBags() + intValue(row[5]));
+        }
+        // Keys sort by type, bag size, then period, so closings accumulate in order within each group
+        List<FertilizerStockBalance> fertilizerRows = new ArrayList<>(fertilizer.values());
+        for (int i = 0; i < fertilizerRows.size(); i++) {
+            FertilizerStockBalance row = fertilizerRows.get(i);
+            FertilizerStockBalance previous = i > 0 ? fertilizerRows.get(i - 1) : null;
+            boolean sameKey = previous != null && previous.getFertilizerTypeId().equals(row.getFertilizerTypeId())
+                    && previous.getBagSizeKg().compareTo(row.getBagSizeKg()) == 0;
+            row.setClosingKg((sameKey ? previous.getClosingKg() : BigDecimal.ZERO)
+                    .add(row.getAddedKg()).subtract(row.getSuppliedKg()));
+            row.setClosingBags((sameKey ? previous.getClosingBags() : 0) + row.getAddedBags() - row.getSuppliedBags());
+        }
+
+        Map<String, TeaPacketStockBalance> teaPackets = new TreeMap<>();
+        for (Object[] row : teaPacketStockRepository.sumByTypeWeightAndPeriod()) {
+            TeaPacketStockBalance balance = teaPacketRow(teaPackets, (Long) row[0], (BigDecimal) row[1],
+                    period(intValue(row[2]), intValue(row[3])));
+            balance.setPacketsAdded(balance.getPacketsAdded() + intValue(row[4]));
+        }
+        for (Object[] row : teaPacketSupplyRepository.sumByTypeWeightAndMonth()) {
+            TeaPacketStockBalance balance = teaPacketRow(teaPackets, (Long) row[0], (BigDecimal) row[1],
+                    period(intValue(row[2]), intValue(row[3])));
+            balance.setPacketsSupplied(balance.getPacketsSupplied() + intValue(row[4]));
+        }
+        List<TeaPacketStockBalance> teaPacketRows = new ArrayList<>(teaPackets.values());
+        for (int i = 0; i < teaPacketRows.size(); i++) {
+            TeaPacketStockBalance row = teaPacketRows.get(i);
+            TeaPacketStockBalance previous = i > 0 ? teaPacketRows.get(i - 1) : null;
+            boolean sameKey = previous != null && previous.getTeaPacketTypeId().equals(row.getTeaPacketTypeId())
+                    && previous.getPacketWeightGrams().compareTo(row.getPacketWeightGrams()) == 0;
+            row.setClosingPackets((sameKey ? previous.getClosingPackets() : 0) + row.getPacketsAdded() - row.getPacketsSupplied());
+            row.setReceivedPackets((sameKey ? previous.getReceivedPackets() : 0) + row.getPacketsAdded());
+        }
+
+        fertilizerBalanceRepository.deleteAllInBatch();
+        teaPacketBalanceRepository.deleteAllInBatch();
+        fertilizerBalanceRepository.saveAll(fertilizerRows);
+        teaPacketBalanceRepository.saveAll(teaPacketRows);
+        eventPublisher.publishEvent(StockMovement.all());
+        log.info("Rebuilt stock balance ledgers: {} fertilizer rows, {} tea packet rows",
+                fertilizerRows.size(), teaPacketRows.size());
+    }
+
+    private static FertilizerStockBalance fertilizerRow(Map<String, FertilizerStockBalance> rows,
+                                                        Long typeId, BigDecimal bagSizeKg, int period) {
+        BigDecimal size = key(bagSizeKg);
+        return rows.computeIfAbsent(sortKey(typeId, size, period), k -> {
+            FertilizerStockBalance row = new FertilizerStockBalance();
+            row.setFertilizerTypeId(typeId);
+            row.setBagSizeKg(size);
+            row.setPeriod(period);
+            return row;
+        });
+    }
+
+    private static TeaPacketStockBalance teaPacketRow(Map<String, TeaPacketStockBalance> rows,
+                                                      Long typeId, BigDecimal packetWeightGrams, int period) {
+        Long type = typeId != null ? typeId : 0L;
+        BigDecimal weight = key(packetWeightGrams);
+        return rows.computeIfAbsent(sortKey(type, weight, period), k -> {
+            TeaPacketStockBalance row = new TeaPacketStockBalance();
+            row.setTeaPacketTypeId(type);
+            row.setPacketWeightGrams(weight);
+            row.setPeriod(period);
+            return row;
+        });
+    }
+
+    // Zero-padded so string order is (type, size, period) order
+    private static String sortKey(Long typeId, BigDecimal size, int period) {
+        return String.format("%019d|%015d|%06d", typeId, size.movePointRight(2).longValueExact(), period);
+    }
+
+    // Bag sizes and packet weights are stored with 2 decimals, 0 standing in for "not recorded"
+    private static BigDecimal key(BigDecimal value) {
+        return Objects.requireNonNullElse(value, BigDecimal.ZERO).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static BigDecimal amount(Object value) {
+        return value != null ? (BigDecimal) value : BigDecimal.ZERO;
+    }
+
+    private static int intValue(Object value) {
+        return value != null ? ((Number) value).intValue() : 0;
+    }
+}
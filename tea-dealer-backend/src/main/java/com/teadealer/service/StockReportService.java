@@ -0,0 +1,208 @@
+package com.teadealer.service;
+
+import com.teadealer.dto.StockMovement;
+import com.teadealer.dto.StockMovementReport;
+import com.teadealer.model.FertilizerStockBalance;
+import com.teadealer.model.FertilizerType;
+import com.teadealer.model.TeaPacketStockBalance;
+import com.teadealer.model.TeaPacketType;
+import com.teadealer.repository.FertilizerStockBalanceRepository;
+import com.teadealer.repository.FertilizerTypeRepository;
+import com.teadealer.repository.TeaPacketStockBalanceRepository;
+import com.teadealer.repository.TeaPacketTypeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Yearly stock movement report for reconciliation, built from the monthly ledgers kept by
+ * {@link StockLedgerService}. Each kind costs three statements whatever the number of types and
+ * sizes: the type names, the latest ledger row per key before the year (opening balances), and the
+ * year's ledger rows ordered by key and month, which are then walked once alongside the openings.
+ */
+@Service
+public class StockReportService {
+
+    private static final String[] CSV_COLUMNS = {"kind", "type_id", "type", "size", "month", "opening", "received",
+            "supplied", "closing", "opening_kg", "received_kg", "supplied_kg", "closing_kg"};
+
+    // Same scale as the ledger's kg columns, so untouched months print like the others
+    private static final BigDecimal NO_KG = BigDecimal.ZERO.setScale(2);
+
+    private static final Comparator<FertilizerStockBalance> FERTILIZER_ORDER = Comparator
+            .comparing(FertilizerStockBalance::getFertilizerTypeId)
+            .thenComparing(FertilizerStockBalance::getBagSizeKg);
+
+    private static final Comparator<TeaPacketStockBalance> TEA_PACKET_ORDER = Comparator
+            .comparing(TeaPacketStockBalance::getTeaPacketTypeId)
+            .thenComparing(TeaPacketStockBalance::getPacketWeightGrams);
+
+    @Autowired
+    private FertilizerStockBalanceRepository fertilizerBalanceRepository;
+
+    @Autowired
+    private TeaPacketStockBalanceRepository teaPacketBalanceRepository;
+
+    @Autowired
+    private FertilizerTypeRepository fertilizerTypeRepository;
+
+    @Autowired
+    private TeaPacketTypeRepository teaPacketTypeRepository;
+
+    @Transactional(readOnly = true)
+    public StockMovementReport getMovementReport(Integer year) {
+        if (year == null || year < 1 || year > 9999) {
+            throw new IllegalArgumentException("Invalid year: " + year);
+        }
+        StockMovementReport report = new StockMovementReport();
+        report.setYear(year);
+        addFertilizerRows(report, year);
+        addTeaPacketRows(report, year);
+        return report;
+    }
+
+    public String toCsv(StockMovementReport report) {
+        StringBuilder csv = new StringBuilder(String.join(",", CSV_COLUMNS)).append("\r\n");
+        for (StockMovementReport.Row row : report.getRows()) {
+            Object[] values = {row.getKind(), row.getTypeId(), row.getTypeName(), row.getSize(), row.getMonth(),
+                    row.getOpening(), row.getReceived(), row.getSupplied(), row.getClosing(),
+                    row.getOpeningKg(), row.getReceivedKg(), row.getSuppliedKg(), row.getClosingKg()};
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    csv.append(',');
+                }
+                csv.append(csvField(values[i]));
+            }
+            csv.append("\r\n");
+        }
+        return csv.toString();
+    }
+
+    private void addFertilizerRows(StockMovementReport report, int year) {
+        int first = StockLedgerService.period(year, 1);
+        Map<Long, String> names = new HashMap<>();
+        for (FertilizerType type : fertilizerTypeRepository.findAll()) {
+            names.put(type.getId(), type.getName());
+        }
+        List<FertilizerStockBalance> openings = new ArrayList<>(fertilizerBalanceRepository.findLatest(first - 1));
+        openings.sort(FERTILIZER_ORDER);
+        List<FertilizerStockBalance> movements = fertilizerBalanceRepository
+                .findByPeriodBetweenOrderByFertilizerTypeIdAscBagSizeKgAscPeriodAsc(first, StockLedgerService.period(year, 12));
+
+        int o = 0;
+        int m = 0;
+        while (o < openings.size() || m < movements.size()) {
+            int order = o == openings.size() ? 1
+                    : m == movements.size() ? -1
+                    : FERTILIZER_ORDER.compare(openings.get(o), movements.get(m));
+            FertilizerStockBalance key = order <= 0 ? openings.get(o) : movements.get(m);
+            int closing = 0;
+            BigDecimal closingKg = NO_KG;
+            if (order <= 0) {
+                closing = key.getClosingBags();
+                closingKg = key.getClosingKg();
+                o++;
+                // Sold out before the year and untouched during it
+                if (order < 0 && closing == 0 && closingKg.signum() == 0) {
+                    continue;
+                }
+            }
+            for (int month = 1; month <= 12; month++) {
+                StockMovementReport.Row row = new StockMovementReport.Row();
+                row.setKind(StockMovement.FERTILIZER);
+                row.setTypeId(key.getFertilizerTypeId());
+                row.setTypeName(names.get(key.getFertilizerTypeId()));
+                row.setSize(key.getBagSizeKg());
+                row.setMonth(month);
+                row.setOpening(closing);
+                row.setOpeningKg(closingKg);
+                if (m < movements.size() && FERTILIZER_ORDER.compare(movements.get(m), key) == 0
+                        && movements.get(m).getPeriod() == StockLedgerService.period(year, month)) {
+                    FertilizerStockBalance balance = movements.get(m++);
+                    row.setReceived(balance.getAddedBags());
+                    row.setReceivedKg(balance.getAddedKg());
+                    row.setSupplied(balance.getSuppliedBags());
+                    row.setSuppliedKg(balance.getSuppliedKg());
+                    closing = balance.getClosingBags();
+                    closingKg = balance.getClosingKg();
+                } else {
+                    row.setReceived(0);
+                    row.setReceivedKg(NO_KG);
+                    row.setSupplied(0);
+                    row.setSuppliedKg(NO_KG);
+                }
+                row.setClosing(closing);
+                row.setClosingKg(closingKg);
+                report.getRows().add(row);
+            }
+        }
+    }
+
+    private void addTeaPacketRows(StockMovementReport report, int year) {
+        int first = StockLedgerService.period(year, 1);
+        Map<Long, String> names = new HashMap<>();
+        for (TeaPacketType type : teaPacketTypeRepository.findAll()) {
+            names.put(type.getId(), type.getName());
+        }
+        List<TeaPacketStockBalance> openings = new ArrayList<>(teaPacketBalanceRepository.findLatest(first - 1));
+        openings.sort(TEA_PACKET_ORDER);
+        List<TeaPacketStockBalance> movements = teaPacketBalanceRepository
+                .findByPeriodBetweenOrderByTeaPacketTypeIdAscPacketWeightGramsAscPeriodAsc(first, StockLedgerService.period(year, 12));
+
+        int o = 0;
+        int m = 0;
+        while (o < openings.size() || m < movements.size()) {
+            int order = o == openings.size() ? 1
+                    : m == movements.size() ? -1
+                    : TEA_PACKET_ORDER.compare(openings.get(o), movements.get(m));
+            TeaPacketStockBalance key = order <= 0 ? openings.get(o) : movements.get(m);
+            int closing = 0;
+            if (order <= 0) {
+                closing = key.getClosingPackets();
+                o++;
+                if (order < 0 && closing == 0) {
+                    continue;
+                }
+            }
+            for (int month = 1; month <= 12; month++) {
+                StockMovementReport.Row row = new StockMovementReport.Row();
+                row.setKind(StockMovement.TEA_PACKETS);
+                row.setTypeId(key.getTeaPacketTypeId());
+                row.setTypeName(names.get(key.getTeaPacketTypeId()));
+                row.setSize(key.getPacketWeightGrams());
+                row.setMonth(month);
+                row.setOpening(closing);
+                if (m < movements.size() && TEA_PACKET_ORDER.compare(movements.get(m), key) == 0
+                        && movements.get(m).getPeriod() == StockLedgerService.period(year, month)) {
+                    TeaPacketStockBalance balance = movements.get(m++);
+                    row.setReceived(balance.getPacketsAdded());
+                    row.setSupplied(balance.getPacketsSupplied());
+                    closing = balance.getClosingPackets();
+                } else {
+                    row.setReceived(0);
+                    row.setSupplied(0);
+                }
+                row.setClosing(closing);
+                report.getRows().add(row);
+            }
+        }
+    }
+
+    private static String csvField(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value.toString();
+        if (text.contains(",") || text.contains("\"") || text.contains("\n") || text.contains("\r")) {
+            return "\"" + text.replace("\"", "\"\"") + "\"";
+        }
+        return text;
+    }
+}
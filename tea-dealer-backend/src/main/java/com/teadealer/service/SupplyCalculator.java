@@ -0,0 +1,309 @@
+package com.teadealer.service;
+
+import com.teadealer.dto.CollectionDelta;
+import com.teadealer.dto.SupplyTotals;
+import com.teadealer.model.Customer;
+import com.teadealer.model.MonthlyRate;
+import com.teadealer.model.SupplyInputVersion;
+import com.teadealer.repository.MonthlyRateRepository;
+import com.teadealer.repository.SupplyInputVersionRepository;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Supply deduction, payable kg, grade amounts and transport deduction for a customer and period.
+ * Shared by the deduction preview and invoice generation so both always show the same figures.
+ *
+ * Results are cached per (customer, period) together with the version of their inputs: the
+ * customer's collections for the month, the period as a whole (monthly rate, bulk imports), the
+ * customer's book number and transport exemption, and the deduction rounding mode. A cached
+ * result is reused only while all of them are unchanged. The collection and period versions are
+ * the {@link SupplyInputVersion} rows, read on every call, so a change committed by any backend
+ * instance is seen by all of them. Collection changes bump them from {@link CollectionDelta}
+ * events inside the writing transaction; rate changes call {@link #invalidatePeriod}.
+ *
+ * Callers get their own copy of the cached totals.
+ */
+@Service
+public class SupplyCalculator {
+
+    // Deduction rounding modes
+    public static final String ROUNDING_MODE_HALF_UP = "half_up";
+    public static final String ROUNDING_MODE_INCLUDE_DECIMALS = "include_decimals";
+    public static final String ROUNDING_MODE_CEILING = "ceiling";
+    public static final String ROUNDING_MODE_FLOOR = "floor";
+
+    private static final int MAX_CACHED_RESULTS = 20000;
+    private static final long PERIOD_WIDE = 0L;
+
+    @Autowired
+    private CollectionService collectionService;
+
+    @Autowired
+    private MonthlyRateRepository monthlyRateRepository;
+
+    @Autowired
+    private AppSettingsService appSettingsService;
+
+    @Autowired
+    private SupplyInputVersionRepository supplyInputVersionRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final Map<String, CachedTotals> cache = Collections.synchronizedMap(
+            new LinkedHashMap<String, CachedTotals>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedTotals> eldest) {
+                    return size() > MAX_CACHED_RESULTS;
+                }
+            });
+
+    public SupplyTotals calculate(Customer customer, Integer year, Integer month) {
+        YearMonth period = YearMonth.of(year, month);
+        String roundingMode = getRoundingMode();
+        String key = cacheKey(customer.getId(), period);
+        // Versions are read before the data, so a concurrent change marks this entry stale
+        Map<Long, Long> versions = toMap(supplyInputVersionRepository.findVersions(
+                periodNumber(period), List.of(PERIOD_WIDE, customer.getId())));
+        InputVersion inputs = new InputVersion(customer, versions, roundingMode);
+        CachedTotals cached = cache.get(key);
+        if (cached != null && cached.inputs.equals(inputs)) {
+            return copyOf(cached.totals);
+        }
+
+        BigDecimal[] gradeTotals = collectionService.getGradeTotals(
+                customer.getBookNumber(), period.atDay(1), period.plusMonths(1).atDay(1));
+        SupplyTotals totals = compute(customer, getRate(period), gradeTotals[0], gradeTotals[1], roundingMode);
+        cache.put(key, new CachedTotals(inputs, totals));
+        return copyOf(totals);
+    }
+
+    /**
+     * Totals for many customers of one period from a single grouped collection query. Results are
+     * cached, so invoice generation for the same period afterwards reuses them.
+     */
+    public Map<Long, SupplyTotals> calculatePeriod(List<Customer> customers, Integer year, Integer month) {
+        YearMonth period = YearMonth.of(year, month);
+        String roundingMode = getRoundingMode();
+        MonthlyRate rate = null;
+        Map<String, BigDecimal[]> gradeTotals = null;
+
+        // Versions are read before the data, so a concurrent change marks this entry stale
+        Map<Long, Long> versions = toMap(supplyInputVersionRepository.findVersionsByPeriod(periodNumber(period)));
+        Map<Long, SupplyTotals> result = new LinkedHashMap<>();
+        for (Customer customer : customers) {
+            String key = cacheKey(customer.getId(), period);
+            InputVersion inputs = new InputVersion(customer, versions, roundingMode);
+            CachedTotals cached = cache.get(key);
+            if (cached != null && cached.inputs.equals(inputs)) {
+                result.put(customer.getId(), copyOf(cached.totals));
+                continue;
+            }
+            if (gradeTotals == null) {
+                rate = getRate(period);
+                gradeTotals = collectionService.getGradeTotalsByBookNumber(period.atDay(1), period.plusMonths(1).atDay(1));
+            }
+            BigDecimal[] totals = gradeTotals.getOrDefault(customer.getBookNumber(),
+                    new BigDecimal[]{BigDecimal.ZERO, BigDecimal.ZERO});
+            SupplyTotals computed = compute(customer, rate, totals[0], totals[1], roundingMode);
+            cache.put(key, new CachedTotals(inputs, computed));
+            result.put(customer.getId(), copyOf(computed));
+        }
+        return result;
+    }
+
+    /** Call after anything period-wide has changed and been committed, e.g. the period's monthly rate. */
+    public void invalidatePeriod(Integer year, Integer month) {
+        bump(YearMonth.of(year, month), PERIOD_WIDE);
+    }
+
+    // Before commit, so the version moves in the same transaction as the collection it describes
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onCollectionDelta(CollectionDelta delta) {
+        YearMonth period = YearMonth.from(delta.getDate());
+        if (CollectionDelta.RELOAD.equals(delta.getType()) || delta.getCustomerId() == null) {
+            bump(period, PERIOD_WIDE);
+        } else {
+            bump(period, delta.getCustomerId());
+        }
+    }
+
+    private void bump(YearMonth period, Long customerId) {
+        transactionTemplate.executeWithoutResult(status -> supplyInputVersionRepository.bump(periodNumber(period), customerId));
+    }
+
+    public String getRoundingMode() {
+        return appSettingsService.get(SettingKey.DEDUCTION_ROUNDING_MODE);
+    }
+
+    public static SupplyTotals compute(Customer customer, MonthlyRate monthlyRate,
+                                       BigDecimal grade1Total, BigDecimal grade2Total, String roundingMode) {
+        SupplyTotals totals = new SupplyTotals();
+
+        // Round kg totals to integers (collection inputs are always whole numbers)
+        BigDecimal grade1Kg = grade1Total.setScale(0, RoundingMode.HALF_UP);
+        BigDecimal grade2Kg = grade2Total.setScale(0, RoundingMode.HALF_UP);
+        BigDecimal totalKg = grade1Kg.add(grade2Kg);
+        totals.setGrade1Kg(grade1Kg);
+        totals.setGrade2Kg(grade2Kg);
+        totals.setTotalKg(totalKg);
+
+        // Get supply deduction percentage (default 4% if not set)
+        BigDecimal supplyDeductionPercentage = monthlyRate.getSupplyDeductionPercentage() != null ?
+                monthlyRate.getSupplyDeductionPercentage() : new BigDecimal("4.00");
+        totals.setSupplyDeductionPercentage(supplyDeductionPercentage);
+
+        // Apply deduction percentage directly to each grade using the configured rounding mode.
+        // grade deduction = gradeKg × pct / 100, rounded to integer.
+        // Each grade's deduction is independent, and since kg is always an integer the net kg is also exact.
+        BigDecimal grade1DeductionKg = applyDeductionRounding(
+                grade1Kg.multiply(supplyDeductionPercentage).divide(BigDecimal.valueOf(100), 4, RoundingMode.HALF_UP), roundingMode);
+        BigDecimal grade2DeductionKg = applyDeductionRounding(
+                grade2Kg.multiply(supplyDeductionPercentage).divide(BigDecimal.valueOf(100), 4, RoundingMode.HALF_UP), roundingMode);
+
+        // Net kg per grade — exact subtraction, no rounding needed
+        BigDecimal grade1NetKg = grade1Kg.subtract(grade1DeductionKg);
+        BigDecimal grade2NetKg = grade2Kg.subtract(grade2DeductionKg);
+
+        // Total supply deduction and payable kg
+        BigDecimal supplyDeductionKg = grade1DeductionKg.add(grade2DeductionKg);
+        BigDecimal payableKg = totalKg.subtract(supplyDeductionKg);
+        totals.setGrade1DeductionKg(grade1DeductionKg);
+        totals.setGrade2DeductionKg(grade2DeductionKg);
+        totals.setSupplyDeductionKg(supplyDeductionKg);
+        totals.setPayableKg(payableKg);
+
+        BigDecimal grade1Rate = monthlyRate.getGrade1Rate() != null ? monthlyRate.getGrade1Rate() : BigDecimal.ZERO;
+        BigDecimal grade2Rate = monthlyRate.getGrade2Rate() != null ? monthlyRate.getGrade2Rate() : BigDecimal.ZERO;
+        totals.setGrade1Rate(grade1Rate);
+        totals.setGrade2Rate(grade2Rate);
+
+        // Amount = net kg × rate
+        BigDecimal grade1Amount = grade1NetKg.multiply(grade1Rate).setScale(2, RoundingMode.HALF_UP);
+        BigDecimal grade2Amount = grade2NetKg.multiply(grade2Rate).setScale(2, RoundingMode.HALF_UP);
+        totals.setGrade1Amount(grade1Amount);
+        totals.setGrade2Amount(grade2Amount);
+        totals.setTotalAmount(grade1Amount.add(grade2Amount));
+
+        // Transport deduction per payable kg, skipped for transport exempt customers
+        BigDecimal transportRatePerKg = monthlyRate.getTransportRatePerKg() != null ?
+                monthlyRate.getTransportRatePerKg() : BigDecimal.ZERO;
+        boolean transportExempt = customer.getTransportExempt() != null && customer.getTransportExempt();
+        totals.setTransportRatePerKg(transportRatePerKg);
+        totals.setTransportExempt(transportExempt);
+        totals.setTransportDeduction(transportExempt ? BigDecimal.ZERO :
+                payableKg.multiply(transportRatePerKg).setScale(2, RoundingMode.HALF_UP));
+
+        totals.setStampFee(monthlyRate.getStampFee() != null ? monthlyRate.getStampFee() : BigDecimal.ZERO);
+        totals.setTeaPacketPrice(monthlyRate.getTeaPacketPrice() != null ? monthlyRate.getTeaPacketPrice() : BigDecimal.ZERO);
+        return totals;
+    }
+
+    /**
+     * Apply rounding to supply deduction kg based on the configured rounding mode.
+     * Options:
+     * - half_up (default): Round to nearest integer, .5 rounds up
+     * - include_decimals: Keep 2 decimal places
+     * - ceiling: Always round up to next integer
+     * - floor: Always round down (truncate decimals)
+     */
+    public static BigDecimal applyDeductionRounding(BigDecimal value, String roundingMode) {
+        switch (roundingMode != null ? roundingMode : ROUNDING_MODE_HALF_UP) {
+            case ROUNDING_MODE_INCLUDE_DECIMALS:
+                return value.setScale(2, RoundingMode.HALF_UP);
+            case ROUNDING_MODE_CEILING:
+                return value.setScale(0, RoundingMode.CEILING);
+            case ROUNDING_MODE_FLOOR:
+                return value.setScale(0, RoundingMode.FLOOR);
+            case ROUNDING_MODE_HALF_UP:
+            default:
+                return value.setScale(0, RoundingMode.HALF_UP);
+        }
+    }
+
+    private MonthlyRate getRate(YearMonth period) {
+        return monthlyRateRepository.findByYearAndMonth(period.getYear(), period.getMonthValue())
+                .orElse(new MonthlyRate());
+    }
+
+    private static String cacheKey(Long customerId, YearMonth period) {
+        return customerId + ":" + period;
+    }
+
+    private static int periodNumber(YearMonth period) {
+        return period.getYear() * 100 + period.getMonthValue();
+    }
+
+    private static Map<Long, Long> toMap(List<Object[]> versions) {
+        Map<Long, Long> map = new HashMap<>();
+        for (Object[] row : versions) {
+            map.put((Long) row[0], (Long) row[1]);
+        }
+        return map;
+    }
+
+    private static SupplyTotals copyOf(SupplyTotals totals) {
+        SupplyTotals copy = new SupplyTotals();
+        BeanUtils.copyProperties(totals, copy);
+        return copy;
+    }
+
+    private static final class InputVersion {
+        private final long collections;
+        private final long period;
+        private final String bookNumber;
+        private final Boolean transportExempt;
+        private final String roundingMode;
+
+        private InputVersion(Customer customer, Map<Long, Long> versions, String roundingMode) {
+            this.collections = versions.getOrDefault(customer.getId(), 0L);
+            this.period = versions.getOrDefault(PERIOD_WIDE, 0L);
+            this.bookNumber = customer.getBookNumber();
+            this.transportExempt = customer.getTransportExempt();
+            this.roundingMode = roundingMode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof InputVersion)) {
+                return false;
+            }
+            InputVersion other = (InputVersion) o;
+            return collections == other.collections && period == other.period
+                    && Objects.equals(bookNumber, other.bookNumber)
+                    && Objects.equals(transportExempt, other.transportExempt)
+                    && Objects.equals(roundingMode, other.roundingMode);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(collections, period, bookNumber, transportExempt, roundingMode);
+        }
+    }
+
+    private static final class CachedTotals {
+        private final InputVersion inputs;
+        private final SupplyTotals totals;
+
+        private CachedTotals(InputVersion inputs, SupplyTotals totals) {
+            this.inputs = inputs;
+            this.totals = totals;
+        }
+    }
+}
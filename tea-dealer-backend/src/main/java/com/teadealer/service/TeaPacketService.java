@@ -13,6 +13,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +34,9 @@ public class TeaPacketService {
     @Autowired
     private CustomerService customerService;
 
+    @Autowired
+    private StockLedgerService stockLedgerService;
+
     // ============ Tea Packet Type Methods ============
 
     public List<TeaPacketType> getAllTeaPacketTypes() {
@@ -69,13 +73,11 @@ public class TeaPacketService {
     // ============ Stock Methods ============
 
     public Map<String, Object> getStockSummary(Integer year, Integer month) {
-        Integer totalStock = stockRepository.getTotalStockUpToMonth(year, month);
-        Integer totalSupplied = supplyRepository.getTotalSuppliedUpToMonth(year, month);
         List<TeaPacketStock> stockList = stockRepository.findByYearAndMonth(year, month);
 
         Map<String, Object> summary = new HashMap<>();
-        summary.put("totalPackets", totalStock != null ? totalStock : 0);
-        summary.put("availablePackets", (totalStock != null ? totalStock : 0) - (totalSupplied != null ? totalSupplied : 0));
+        summary.put("totalPackets", stockLedgerService.getTeaPacketsReceived(year, month));
+        summary.put("availablePackets", stockLedgerService.getTeaPacketsAvailable(year, month));
         summary.put("stockList", stockList);
         return summary;
     }
@@ -106,29 +108,32 @@ public class TeaPacketService {
             stock.setNotes(notes);
         }
 
+        stockLedgerService.applyTeaPackets(typeId, packetWeightGrams, StockLedgerService.period(year, month), packetsCount, 0);
         return stockRepository.save(stock);
     }
 
     public Integer getAvailableStock(Integer year, Integer month) {
-        Integer totalStock = stockRepository.getTotalStockUpToMonth(year, month);
-        Integer totalSupplied = supplyRepository.getTotalSuppliedUpToMonth(year, month);
-        return (totalStock != null ? totalStock : 0) - (totalSupplied != null ? totalSupplied : 0);
+        return stockLedgerService.getTeaPacketsAvailable(year, month);
     }
 
+    @Transactional
     public void deleteStock(Long id) {
-        stockRepository.deleteById(id);
+        TeaPacketStock stock = stockRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Tea packet stock not found"));
+        stockLedgerService.applyTeaPackets(stock.getTeaPacketType().getId(), stock.getPacketWeightGrams(),
+                StockLedgerService.period(stock.getYear(), stock.getMonth()), -stock.getPacketsAdded(), 0);
+        stockRepository.delete(stock);
     }
 
     public Integer getAvailablePacketsByTypeAndWeight(Long typeId, BigDecimal packetWeightGrams, Integer year, Integer month) {
-        Integer totalPackets = stockRepository.getTotalPacketsByTypeAndWeightUpToMonth(typeId, packetWeightGrams, year, month);
-        Integer suppliedPackets = supplyRepository.getTotalSuppliedByTypeAndWeightUpToMonth(typeId, packetWeightGrams, year, month);
-        return (totalPackets != null ? totalPackets : 0) - (suppliedPackets != null ? suppliedPackets : 0);
+        return stockLedgerService.getTeaPacketsAvailable(typeId, packetWeightGrams, year, month);
     }
 
     // ============ Supply Methods ============
 
     public List<TeaPacketSupply> getSuppliesByPeriod(Integer year, Integer month) {
-        return supplyRepository.findByYearAndMonth(year, month);
+        YearMonth period = YearMonth.of(year, month);
+        return supplyRepository.findByPeriod(period.atDay(1), period.plusMonths(1).atDay(1));
     }
 
     public List<TeaPacketSupply> getSuppliesByCustomer(Long customerId) {
@@ -163,15 +168,28 @@ public class TeaPacketService {
             supply.setTotalWeightGrams(packetWeightGrams.multiply(BigDecimal.valueOf(packetsCount)));
         }
 
+        if (typeId != null && packetWeightGrams != null) {
+            // Throws before anything is saved if the packets are no longer in stock
+            stockLedgerService.reserveTeaPackets(typeId, packetWeightGrams, StockLedgerService.period(supplyDate), packetsCount);
+        } else {
+            // Untyped supplies predate per-type stock and have no balance to check against
+            stockLedgerService.applyTeaPackets(typeId, packetWeightGrams, StockLedgerService.period(supplyDate), 0, packetsCount);
+        }
         return supplyRepository.save(supply);
     }
 
+    @Transactional
     public void deleteSupply(Long id) {
-        supplyRepository.deleteById(id);
+        TeaPacketSupply supply = supplyRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Tea packet supply not found"));
+        stockLedgerService.applyTeaPackets(supply.getTeaPacketType() != null ? supply.getTeaPacketType().getId() : null,
+                supply.getPacketWeightGrams(), StockLedgerService.period(supply.getSupplyDate()), 0, -supply.getPacketsCount());
+        supplyRepository.delete(supply);
     }
 
     public Integer getTotalSuppliedToCustomerInMonth(Long customerId, Integer year, Integer month) {
-        Integer total = supplyRepository.getTotalSuppliedToCustomerInMonth(customerId, year, month);
+        YearMonth period = YearMonth.of(year, month);
+        Integer total = supplyRepository.getTotalSuppliedToCustomerInPeriod(customerId, period.atDay(1), period.plusMonths(1).atDay(1));
         return total != null ? total : 0;
     }
 }
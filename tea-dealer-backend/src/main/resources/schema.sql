@@ -14,8 +14,13 @@ CREATE TABLE IF NOT EXISTS collections (
     updated_at          DATETIME(6),
 
     PRIMARY KEY (id),
-    UNIQUE KEY UK_collection_book_date_grade (book_number, collection_date, grade)
+    UNIQUE KEY UK_collection_book_date_grade (book_number, collection_date, grade),
+    KEY idx_collection_date (collection_date),
+    KEY idx_collection_customer_date (customer_id, collection_date)
 );
+-- No foreign key to customers: with app.collections.partitioning.enabled=true the table is
+-- converted to PRIMARY KEY (id, collection_date) and PARTITION BY RANGE COLUMNS (collection_date),
+-- one partition per month (see CollectionPartitionService).
 
 -- Create invoices table
 CREATE TABLE IF NOT EXISTS invoices (
@@ -79,7 +84,9 @@ CREATE TABLE IF NOT EXISTS invoices (
     updated_at                  DATETIME(6),
 
     PRIMARY KEY (id),
-    UNIQUE KEY UK_invoice_customer_period (customer_id, year, month)
+    UNIQUE KEY UK_invoice_customer_period (customer_id, year, month),
+    KEY idx_invoice_period_status (year, month, status),
+    KEY idx_invoice_book_period (book_number, year, month)
 );
 
 -- Migrate existing columns to correct types
@@ -94,3 +101,7 @@ ALTER TABLE invoices MODIFY COLUMN payable_kg INT;
 
 -- Add per-grade deduction columns if not already present (Hibernate will add via ddl-auto if missing)
 -- These are added by Hibernate ddl-auto=update when the Invoice entity is updated
+
+-- Query indexes for the remaining tables are declared on the JPA entities (@Table(indexes = ...))
+-- and created by Hibernate ddl-auto=update, which skips any index whose name already exists.
+-- RepositoryQueryPlanTest checks every repository query against them.
@@ -0,0 +1,429 @@
+package com.teadealer.repository;
+
+import com.teadealer.model.Invoice;
+import com.teadealer.model.TeaGrade;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.type.filter.AssignableTypeFilter;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Calls every repository query method against an H2 database in MySQL mode, with the schema
+ * generated from the entity mappings, and runs EXPLAIN on the SQL Hibernate actually sent (captured
+ * with its bound parameters by a recording DataSource). Fails if any access path is a full table
+ * scan, or if a repository method has no entry here, so new and changed queries are checked too.
+ *
+ * FULL_READS are the methods that read a whole table by design (ledger backfills, the customer
+ * directory and settings loads) or filter on a column with a handful of values (user role, invoice
+ * status), where an index would not beat the scan; they are called but their plans are not checked.
+ */
+@DataJpaTest(properties = "h2.database=queryplans")
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(RepositoryQueryPlanTest.RecordingDataSourceConfig.class)
+class RepositoryQueryPlanTest {
+
+    private static final Set<String> FULL_READS = new HashSet<>(Arrays.asList(
+            "Customer.findAllBookNumbersAndIds",
+            "Customer.findCountAndLastUpdate",
+            "User.countByRole",
+            "Invoice.findByStatus",
+            "AppSettings.findAllKeys",
+            "FertilizerStock.sumByTypeSizeAndPeriod",
+            "FertilizerSupply.sumByTypeSizeAndMonth",
+            "TeaPacketStock.sumByTypeWeightAndPeriod",
+            "TeaPacketStockBalance.existsByReceivedPacketsIsNull",
+            "TeaPacketSupply.sumByTypeWeightAndMonth"
+    ));
+
+    // Supply queries that used to filter on YEAR()/MONTH(); the index condition must bound supply_date
+    private static final List<String> SUPPLY_DATE_RANGES = Arrays.asList(
+            "FertilizerSupply.findByPeriod",
+            "TeaPacketSupply.findByPeriod",
+            "TeaPacketSupply.getTotalSuppliedToCustomerInPeriod"
+    );
+
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 1);
+    private static final LocalDate MONTH_END = LocalDate.of(2024, 4, 1);
+    private static final BigDecimal SIZE = new BigDecimal("50.00");
+    private static final Pageable PAGE = PageRequest.of(0, 101);
+
+    // Statements sent while a query is being called: [sql, parameters by index]
+    private static final List<Object[]> recorded = new ArrayList<>();
+    private static volatile boolean recording;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired private CollectionRepository collections;
+    @Autowired private CustomerRepository customers;
+    @Autowired private DeductionRepository deductions;
+    @Autowired private InvoiceRepository invoices;
+    @Autowired private MonthlyRateRepository monthlyRates;
+    @Autowired private FertilizerTypeRepository fertilizerTypes;
+    @Autowired private TeaPacketTypeRepository teaPacketTypes;
+    @Autowired private FertilizerStockRepository fertilizerStock;
+    @Autowired private FertilizerSupplyRepository fertilizerSupply;
+    @Autowired private TeaPacketStockRepository teaPacketStock;
+    @Autowired private TeaPacketSupplyRepository teaPacketSupply;
+    @Autowired private FertilizerStockBalanceRepository fertilizerBalances;
+    @Autowired private TeaPacketStockBalanceRepository teaPacketBalances;
+    @Autowired private AppSettingsRepository appSettings;
+    @Autowired private AppSettingBlobRepository appSettingBlobs;
+    @Autowired private AppSettingsVersionRepository appSettingsVersion;
+    @Autowired private UserRepository users;
+    @Autowired private SupplyInputVersionRepository supplyInputVersions;
+
+    private Map<String, Runnable> repositoryQueries() {
+        Map<String, Runnable> q = new LinkedHashMap<>();
+
+        // CollectionRepository
+        q.put("Collection.findByCollectionDate", () -> collections.findByCollectionDate(DAY));
+        q.put("Collection.findByCollectionDateBetween", () -> collections.findByCollectionDateBetween(DAY, MONTH_END));
+        q.put("Collection.findByCustomerId", () -> collections.findByCustomerId(1L));
+        q.put("Collection.existsByCustomerId", () -> collections.existsByCustomerId(1L));
+        q.put("Collection.findByCustomerIdAndCollectionDate", () -> collections.findByCustomerIdAndCollectionDate(1L, DAY));
+        q.put("Collection.findByCustomerIdAndCollectionDateAndGrade",
+                () -> collections.findByCustomerIdAndCollectionDateAndGrade(1L, DAY, TeaGrade.GRADE_1));
+        q.put("Collection.findByCustomerIdAndCollectionDateBetween",
+                () -> collections.findByCustomerIdAndCollectionDateBetween(1L, DAY, MONTH_END));
+        q.put("Collection.findByBookNumber", () -> collections.findByBookNumber("TB001"));
+        q.put("Collection.findByBookNumberAndCollectionDate", () -> collections.findByBookNumberAndCollectionDate("TB001", DAY));
+        q.put("Collection.findByBookNumberAndCollectionDateAndGrade",
+                () -> collections.findByBookNumberAndCollectionDateAndGrade("TB001", DAY, TeaGrade.GRADE_1));
+        q.put("Collection.findByBookNumberAndCollectionDateBetween",
+                () -> collections.findByBookNumberAndCollectionDateBetween("TB001", DAY, MONTH_END));
+        q.put("Collection.findByCustomerIdOrderByCollectionDateAscIdAsc",
+                () -> collections.findByCustomerIdOrderByCollectionDateAscIdAsc(1L, PAGE));
+        q.put("Collection.findCustomerPageAfter", () -> collections.findCustomerPageAfter(1L, DAY, 500L, PAGE));
+        q.put("Collection.findByBookNumberOrderByCollectionDateAscIdAsc",
+                () -> collections.findByBookNumberOrderByCollectionDateAscIdAsc("TB001", PAGE));
+        q.put("Collection.findBookNumberPageAfter", () -> collections.findBookNumberPageAfter("TB001", DAY, 500L, PAGE));
+        q.put("Collection.findByCollectionDateBetweenOrderByCollectionDateAscIdAsc",
+                () -> collections.findByCollectionDateBetweenOrderByCollectionDateAscIdAsc(DAY, MONTH_END, PAGE));
+        q.put("Collection.findDateRangePageAfter", () -> collections.findDateRangePageAfter(DAY, 500L, MONTH_END, PAGE));
+        q.put("Collection.sumMonthlyWeightByCustomers",
+                () -> collections.sumMonthlyWeightByCustomers(List.of(1L, 2L), DAY, MONTH_END));
+        q.put("Collection.sumMonthlyWeight", () -> collections.sumMonthlyWeight(DAY, MONTH_END));
+        q.put("Collection.sumWeightByBookNumberAndGrade", () -> collections.sumWeightByBookNumberAndGrade(DAY, MONTH_END));
+        q.put("Collection.sumWeightByGradeForBookNumber",
+                () -> collections.sumWeightByGradeForBookNumber("TB001", DAY, MONTH_END));
+
+        // CustomerRepository
+        q.put("Customer.findByBookNumber", () -> customers.findByBookNumber("TB001"));
+        q.put("Customer.findByBookNumberIn", () -> customers.findByBookNumberIn(List.of("TB001", "TB002", "TB003")));
+        q.put("Customer.findByRoute", () -> customers.findByRoute("Route A"));
+        q.put("Customer.findAllBookNumbersAndIds", () -> customers.findAllBookNumbersAndIds());
+        q.put("Customer.findCountAndLastUpdate", () -> customers.findCountAndLastUpdate());
+
+        // DeductionRepository
+        q.put("Deduction.findByCustomerIdAndYearAndMonth", () -> deductions.findByCustomerIdAndYearAndMonth(1L, 2024, 3));
+        q.put("Deduction.findByBookNumberAndYearAndMonth", () -> deductions.findByBookNumberAndYearAndMonth("TB001", 2024, 3));
+        q.put("Deduction.findByCustomerId", () -> deductions.findByCustomerId(1L));
+        q.put("Deduction.findByBookNumber", () -> deductions.findByBookNumber("TB001"));
+        q.put("Deduction.findByYearAndMonth", () -> deductions.findByYearAndMonth(2024, 3));
+        q.put("Deduction.findByYear", () -> deductions.findByYear(2024));
+        q.put("Deduction.findByYearAndMonthAndCustomerIdIn",
+                () -> deductions.findByYearAndMonthAndCustomerIdIn(2024, 3, List.of(1L, 2L, 3L)));
+
+        // InvoiceRepository
+        q.put("Invoice.findNegativeNetAmountsByPeriod", () -> invoices.findNegativeNetAmountsByPeriod(2024, 3));
+        q.put("Invoice.findByCustomerIdAndYearAndMonth", () -> invoices.findByCustomerIdAndYearAndMonth(1L, 2024, 3));
+        q.put("Invoice.findByBookNumberAndYearAndMonth", () -> invoices.findByBookNumberAndYearAndMonth("TB001", 2024, 3));
+        q.put("Invoice.findByYearAndMonth", () -> invoices.findByYearAndMonth(2024, 3));
+        q.put("Invoice.findByCustomerId", () -> invoices.findByCustomerId(1L));
+        q.put("Invoice.findByBookNumber", () -> invoices.findByBookNumber("TB001"));
+        q.put("Invoice.findByYear", () -> invoices.findByYear(2024));
+        q.put("Invoice.findByStatus", () -> invoices.findByStatus(Invoice.InvoiceStatus.PAID));
+        q.put("Invoice.findByYearAndMonthAndStatus",
+                () -> invoices.findByYearAndMonthAndStatus(2024, 3, Invoice.InvoiceStatus.PAID));
+        q.put("Invoice.existsByCustomerIdAndYearAndMonth", () -> invoices.existsByCustomerIdAndYearAndMonth(1L, 2024, 3));
+        q.put("Invoice.countByYearAndMonth", () -> invoices.countByYearAndMonth(2024, 3));
+
+        // MonthlyRateRepository
+        q.put("MonthlyRate.findByYear", () -> monthlyRates.findByYear(2024));
+        q.put("MonthlyRate.findByYearAndMonth", () -> monthlyRates.findByYearAndMonth(2024, 3));
+        q.put("MonthlyRate.findByYearOrderByMonthAsc", () -> monthlyRates.findByYearOrderByMonthAsc(2024));
+
+        // FertilizerTypeRepository / TeaPacketTypeRepository
+        q.put("FertilizerType.findByActiveTrue", () -> fertilizerTypes.findByActiveTrue());
+        q.put("FertilizerType.findByActiveTrueOrderByNameAsc", () -> fertilizerTypes.findByActiveTrueOrderByNameAsc());
+        q.put("TeaPacketType.findByActiveTrue", () -> teaPacketTypes.findByActiveTrue());
+        q.put("TeaPacketType.findByActiveTrueOrderByNameAsc", () -> teaPacketTypes.findByActiveTrueOrderByNameAsc());
+
+        // FertilizerStockRepository
+        q.put("FertilizerStock.findByYearAndMonth", () -> fertilizerStock.findByYearAndMonth(2024, 3));
+        q.put("FertilizerStock.findByFertilizerTypeIdAndYearAndMonth",
+                () -> fertilizerStock.findByFertilizerTypeIdAndYearAndMonth(1L, 2024, 3));
+        q.put("FertilizerStock.findByFertilizerTypeIdAndYearAndMonthAndBagSizeKg",
+                () -> fertilizerStock.findByFertilizerTypeIdAndYearAndMonthAndBagSizeKg(1L, 2024, 3, SIZE));
+        q.put("FertilizerStock.findByFertilizerTypeIdOrderByYearDescMonthDesc",
+                () -> fertilizerStock.findByFertilizerTypeIdOrderByYearDescMonthDesc(1L));
+        q.put("FertilizerStock.sumByTypeSizeAndPeriod", () -> fertilizerStock.sumByTypeSizeAndPeriod());
+
+        // FertilizerSupplyRepository
+        q.put("FertilizerSupply.findByCustomerIdOrderBySupplyDateDesc",
+                () -> fertilizerSupply.findByCustomerIdOrderBySupplyDateDesc(1L));
+        q.put("FertilizerSupply.findByFertilizerTypeIdOrderBySupplyDateDesc",
+                () -> fertilizerSupply.findByFertilizerTypeIdOrderBySupplyDateDesc(1L));
+        q.put("FertilizerSupply.findBySupplyDateBetweenOrderBySupplyDateDesc",
+                () -> fertilizerSupply.findBySupplyDateBetweenOrderBySupplyDateDesc(DAY, MONTH_END));
+        q.put("FertilizerSupply.findByPeriod", () -> fertilizerSupply.findByPeriod(DAY, MONTH_END));
+        q.put("FertilizerSupply.getTotalSuppliedToCustomer", () -> fertilizerSupply.getTotalSuppliedToCustomer(1L, 1L));
+        q.put("FertilizerSupply.sumQuantityByCustomer", () -> fertilizerSupply.sumQuantityByCustomer(DAY, MONTH_END));
+        q.put("FertilizerSupply.sumByTypeSizeAndMonth", () -> fertilizerSupply.sumByTypeSizeAndMonth());
+
+        // TeaPacketStockRepository
+        q.put("TeaPacketStock.findByYearAndMonthAndTeaPacketTypeIdAndPacketWeightGrams",
+                () -> teaPacketStock.findByYearAndMonthAndTeaPacketTypeIdAndPacketWeightGrams(2024, 3, 1L, SIZE));
+        q.put("TeaPacketStock.findByYearAndMonth", () -> teaPacketStock.findByYearAndMonth(2024, 3));
+        q.put("TeaPacketStock.sumByTypeWeightAndPeriod", () -> teaPacketStock.sumByTypeWeightAndPeriod());
+
+        // TeaPacketSupplyRepository
+        q.put("TeaPacketSupply.findByCustomerIdOrderBySupplyDateDesc",
+                () -> teaPacketSupply.findByCustomerIdOrderBySupplyDateDesc(1L));
+        q.put("TeaPacketSupply.findByPeriod", () -> teaPacketSupply.findByPeriod(DAY, MONTH_END));
+        q.put("TeaPacketSupply.getTotalSuppliedToCustomerInPeriod",
+                () -> teaPacketSupply.getTotalSuppliedToCustomerInPeriod(1L, DAY, MONTH_END));
+        q.put("TeaPacketSupply.sumPacketsByCustomer", () -> teaPacketSupply.sumPacketsByCustomer(DAY, MONTH_END));
+        q.put("TeaPacketSupply.sumByTypeWeightAndMonth", () -> teaPacketSupply.sumByTypeWeightAndMonth());
+
+        // FertilizerStockBalanceRepository
+        q.put("FertilizerStockBalance.existsByFertilizerTypeIdAndBagSizeKgAndPeriod",
+                () -> fertilizerBalances.existsByFertilizerTypeIdAndBagSizeKgAndPeriod(1L, SIZE, 202403));
+        q.put("FertilizerStockBalance.findFirstByFertilizerTypeIdAndBagSizeKgAndPeriodLessThanEqualOrderByPeriodDesc",
+                () -> fertilizerBalances.findFirstByFertilizerTypeIdAndBagSizeKgAndPeriodLessThanEqualOrderByPeriodDesc(1L, SIZE, 202403));
+        q.put("FertilizerStockBalance.findFirstByFertilizerTypeIdAndBagSizeKgAndPeriodLessThanOrderByPeriodDesc",
+                () -> fertilizerBalances.findFirstByFertilizerTypeIdAndBagSizeKgAndPeriodLessThanOrderByPeriodDesc(1L, SIZE, 202403));
+        q.put("FertilizerStockBalance.findLatestByType", () -> fertilizerBalances.findLatestByType(1L, 202403));
+        q.put("FertilizerStockBalance.findLatest", () -> fertilizerBalances.findLatest(202403));
+        q.put("FertilizerStockBalance.findByPeriodBetweenOrderByFertilizerTypeIdAscBagSizeKgAscPeriodAsc",
+                () -> fertilizerBalances.findByPeriodBetweenOrderByFertilizerTypeIdAscBagSizeKgAscPeriodAsc(202401, 202412));
+        q.put("FertilizerStockBalance.openPeriod",
+                () -> fertilizerBalances.openPeriod(1L, SIZE, 202403, BigDecimal.ZERO, 0));
+        q.put("FertilizerStockBalance.addMovement",
+                () -> fertilizerBalances.addMovement(1L, SIZE, 202403, SIZE, BigDecimal.ZERO, 1, 0));
+        q.put("FertilizerStockBalance.reserve", () -> fertilizerBalances.reserve(1L, SIZE, 202403, SIZE, 1));
+        q.put("FertilizerStockBalance.reserveAfter", () -> fertilizerBalances.reserveAfter(1L, SIZE, 202403, SIZE, 1));
+        q.put("FertilizerStockBalance.countByFertilizerTypeIdAndBagSizeKgAndPeriodGreaterThan",
+                () -> fertilizerBalances.countByFertilizerTypeIdAndBagSizeKgAndPeriodGreaterThan(1L, SIZE, 202403));
+        q.put("FertilizerStockBalance.shiftClosing", () -> fertilizerBalances.shiftClosing(1L, SIZE, 202403, SIZE, 1));
+
+        // TeaPacketStockBalanceRepository
+        q.put("TeaPacketStockBalance.existsByTeaPacketTypeIdAndPacketWeightGramsAndPeriod",
+                () -> teaPacketBalances.existsByTeaPacketTypeIdAndPacketWeightGramsAndPeriod(1L, SIZE, 202403));
+        q.put("TeaPacketStockBalance.findFirstByTeaPacketTypeIdAndPacketWeightGramsAndPeriodLessThanEqualOrderByPeriodDesc",
+                () -> teaPacketBalances.findFirstByTeaPacketTypeIdAndPacketWeightGramsAndPeriodLessThanEqualOrderByPeriodDesc(1L, SIZE, 202403));
+        q.put("TeaPacketStockBalance.findFirstByTeaPacketTypeIdAndPacketWeightGramsAndPeriodLessThanOrderByPeriodDesc",
+                () -> teaPacketBalances.findFirstByTeaPacketTypeIdAndPacketWeightGramsAndPeriodLessThanOrderByPeriodDesc(1L, SIZE, 202403));
+        q.put("TeaPacketStockBalance.findLatest", () -> teaPacketBalances.findLatest(202403));
+        q.put("TeaPacketStockBalance.findByPeriodBetweenOrderByTeaPacketTypeIdAscPacketWeightGramsAscPeriodAsc",
+                () -> teaPacketBalances.findByPeriodBetweenOrderByTeaPacketTypeIdAscPacketWeightGramsAscPeriodAsc(202401, 202412));
+        q.put("TeaPacketStockBalance.openPeriod", () -> teaPacketBalances.openPeriod(1L, SIZE, 202403, 0, 0));
+        q.put("TeaPacketStockBalance.addMovement", () -> teaPacketBalances.addMovement(1L, SIZE, 202403, 1, 0));
+        q.put("TeaPacketStockBalance.reserve", () -> teaPacketBalances.reserve(1L, SIZE, 202403, 1));
+        q.put("TeaPacketStockBalance.reserveAfter", () -> teaPacketBalances.reserveAfter(1L, SIZE, 202403, 1));
+        q.put("TeaPacketStockBalance.countByTeaPacketTypeIdAndPacketWeightGramsAndPeriodGreaterThan",
+                () -> teaPacketBalances.countByTeaPacketTypeIdAndPacketWeightGramsAndPeriodGreaterThan(1L, SIZE, 202403));
+        q.put("TeaPacketStockBalance.shiftClosing", () -> teaPacketBalances.shiftClosing(1L, SIZE, 202403, 1, 1));
+        q.put("TeaPacketStockBalance.existsByReceivedPacketsIsNull", () -> teaPacketBalances.existsByReceivedPacketsIsNull());
+
+        // Settings / UserRepository
+        q.put("AppSettings.findBySettingKey", () -> appSettings.findBySettingKey("stamp_fee_mode"));
+        q.put("AppSettings.findBySyncVersionGreaterThan", () -> appSettings.findBySyncVersionGreaterThan(41L));
+        q.put("AppSettings.findAllKeys", () -> appSettings.findAllKeys());
+        q.put("AppSettingBlob.findBySettingKey", () -> appSettingBlobs.findBySettingKey("login_background"));
+        q.put("AppSettingsVersion.findCurrentVersion", () -> appSettingsVersion.findCurrentVersion());
+        q.put("AppSettingsVersion.createIfMissing", () -> appSettingsVersion.createIfMissing());
+        q.put("AppSettingsVersion.bump", () -> appSettingsVersion.bump());
+        q.put("User.findByUsername", () -> users.findByUsername("admin"));
+        q.put("User.countByRole", () -> users.countByRole("ADMIN"));
+
+        // SupplyInputVersionRepository
+        q.put("SupplyInputVersion.findVersions", () -> supplyInputVersions.findVersions(202403, List.of(0L, 1L)));
+        q.put("SupplyInputVersion.findVersionsByPeriod", () -> supplyInputVersions.findVersionsByPeriod(202403));
+        q.put("SupplyInputVersion.bump", () -> supplyInputVersions.bump(202403, 1L));
+        return q;
+    }
+
+    @Test
+    void everyRepositoryMethodIsListed() throws ClassNotFoundException {
+        Set<String> listed = repositoryQueries().keySet();
+        List<String> missing = new ArrayList<>();
+        for (Class<?> repository : repositoryInterfaces()) {
+            String entity = repository.getSimpleName().replace("Repository", "");
+            for (Method method : repository.getDeclaredMethods()) {
+                if (!method.isDefault() && !Modifier.isStatic(method.getModifiers()) && !method.isSynthetic()
+                        && !listed.contains(entity + "." + method.getName())) {
+                    missing.add(entity + "." + method.getName());
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            fail("Repository methods missing from repositoryQueries():\n" + String.join("\n", missing));
+        }
+    }
+
+    @Test
+    void everyRepositoryQueryUsesAnIndex() {
+        List<String> fullScans = new ArrayList<>();
+        for (Map.Entry<String, Runnable> query : repositoryQueries().entrySet()) {
+            if (FULL_READS.contains(query.getKey())) {
+                continue;
+            }
+            for (String plan : explain(query.getKey(), query.getValue())) {
+                if (plan.contains("tableScan")) {
+                    fullScans.add(query.getKey() + "\n    " + plan.replace("\n", "\n    "));
+                }
+            }
+        }
+        if (!fullScans.isEmpty()) {
+            fail("Queries falling back to a full table scan:\n" + String.join("\n", fullScans));
+        }
+    }
+
+    @Test
+    void supplyDateFiltersAreRangeScans() {
+        Map<String, Runnable> queries = repositoryQueries();
+        for (String name : SUPPLY_DATE_RANGES) {
+            String plan = String.join("\n", explain(name, queries.get(name)));
+            int start = plan.indexOf("/* public.idx_");
+            String indexCondition = start < 0 ? "" : plan.substring(start, plan.indexOf("*/", start));
+            assertTrue(indexCondition.contains("supply_date <"),
+                    name + " does not bound supply_date in its index condition\n" + plan);
+        }
+    }
+
+    // Calls the query, then EXPLAINs each SELECT, UPDATE or DELETE it sent with the same parameters
+    private List<String> explain(String name, Runnable query) {
+        List<Object[]> statements;
+        synchronized (recorded) {
+            recorded.clear();
+            recording = true;
+            try {
+                query.run();
+            } finally {
+                recording = false;
+            }
+            statements = new ArrayList<>(recorded);
+        }
+        List<String> plans = new ArrayList<>();
+        for (Object[] statement : statements) {
+            String sql = (String) statement[0];
+            if (sql.trim().toLowerCase().startsWith("insert")) {
+                continue;
+            }
+            plans.add(jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class, (Object[]) statement[1]));
+        }
+        if (plans.isEmpty() && !name.endsWith("openPeriod") && !name.endsWith("createIfMissing")
+                && !name.equals("SupplyInputVersion.bump")) {
+            fail(name + " sent no query");
+        }
+        return plans;
+    }
+
+    private static List<Class<?>> repositoryInterfaces() throws ClassNotFoundException {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false) {
+            @Override
+            protected boolean isCandidateComponent(AnnotatedBeanDefinition definition) {
+                return definition.getMetadata().isInterface();
+            }
+        };
+        scanner.addIncludeFilter(new AssignableTypeFilter(org.springframework.data.repository.Repository.class));
+        List<Class<?>> interfaces = new ArrayList<>();
+        for (BeanDefinition definition : scanner.findCandidateComponents(RepositoryQueryPlanTest.class.getPackageName())) {
+            interfaces.add(Class.forName(definition.getBeanClassName()));
+        }
+        return interfaces;
+    }
+
+    /** Wraps the DataSource so prepared statements record their SQL and parameters while {@link #recording}. */
+    @TestConfiguration
+    static class RecordingDataSourceConfig {
+
+        @Bean
+        static BeanPostProcessor recordingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource ? proxy(DataSource.class, bean, RecordingDataSourceConfig::onDataSource) : bean;
+                }
+            };
+        }
+
+        private static Object onDataSource(Object target, Method method, Object[] args) throws Throwable {
+            Object result = invoke(target, method, args);
+            return result instanceof Connection ? proxy(Connection.class, result, RecordingDataSourceConfig::onConnection) : result;
+        }
+
+        private static Object onConnection(Object target, Method method, Object[] args) throws Throwable {
+            Object result = invoke(target, method, args);
+            if (method.getName().equals("prepareStatement") && result instanceof PreparedStatement) {
+                String sql = (String) args[0];
+                Map<Integer, Object> parameters = new TreeMap<>();
+                return proxy(PreparedStatement.class, result, (statement, m, a) -> {
+                    if (m.getName().startsWith("set") && a != null && a.length >= 2 && a[0] instanceof Integer) {
+                        parameters.put((Integer) a[0], m.getName().equals("setNull") ? null : a[1]);
+                    } else if (m.getName().startsWith("execute") && recording) {
+                        synchronized (recorded) {
+                            recorded.add(new Object[]{sql, parameters.values().toArray()});
+                        }
+                    }
+                    return invoke(statement, m, a);
+                });
+            }
+            return result;
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private static Object proxy(Class<?> type, Object target, Handler handler) {
+            InvocationHandler invocationHandler = (p, method, args) -> handler.handle(target, method, args);
+            return Proxy.newProxyInstance(RepositoryQueryPlanTest.class.getClassLoader(), new Class<?>[]{type}, invocationHandler);
+        }
+
+        private interface Handler {
+            Object handle(Object target, Method method, Object[] args) throws Throwable;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.teadealer.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * YEAR()/MONTH() filters vs. half-open supply_date ranges on a synthetic supply table with
+ * ten years of history. Both forms must return the same rows; only the range form may be a range
+ * scan. Timings are logged for comparison, not asserted. Needs a scratch MySQL database, so it only
+ * runs when {@code benchmark.mysql.url} is set:
+ *
+ * <pre>
+ * mvn test -Dtest=SupplyDateRangeBenchmarkTest \
+ *     -Dbenchmark.mysql.url="jdbc:mysql://localhost:3306/bench?createDatabaseIfNotExist=true&amp;rewriteBatchedStatements=true" \
+ *     -Dbenchmark.mysql.user=root -Dbenchmark.mysql.password=root
+ * </pre>
+ */
+@Slf4j
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@EnabledIfSystemProperty(named = "benchmark.mysql.url", matches = ".+")
+class SupplyDateRangeBenchmarkTest {
+
+    private static final int YEARS = 10;
+    private static final int GROWERS = 400;
+    private static final int SUPPLIES_PER_DAY = 60;
+    private static final int RUNS = 25;
+    private static final LocalDate FIRST_DAY = LocalDate.of(2015, 1, 1);
+    private static final LocalDate MONTH_START = FIRST_DAY.plusYears(YEARS).minusMonths(1);
+    private static final LocalDate MONTH_END = MONTH_START.plusMonths(1);
+
+    // Same indexes as FertilizerSupply
+    private static final String TABLE = "CREATE TABLE bench_fertilizer_supply (id BIGINT NOT NULL AUTO_INCREMENT,"
+            + " customer_id BIGINT NOT NULL, fertilizer_type_id BIGINT NOT NULL, supply_date DATE NOT NULL,"
+            + " quantity_kg DECIMAL(10,2) NOT NULL, bags_count INT, bag_size_kg DECIMAL(10,2), PRIMARY KEY (id),"
+            + " KEY idx_date (supply_date), KEY idx_customer_date (customer_id, supply_date),"
+            + " KEY idx_type_date (fertilizer_type_id, supply_date),"
+            + " KEY idx_type_size_date (fertilizer_type_id, bag_size_kg, supply_date))";
+
+    private Connection connection;
+
+    @BeforeAll
+    void loadSupplies() throws SQLException {
+        connection = DriverManager.getConnection(System.getProperty("benchmark.mysql.url"),
+                System.getProperty("benchmark.mysql.user", "root"), System.getProperty("benchmark.mysql.password", ""));
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS bench_fertilizer_supply");
+            st.execute(TABLE);
+        }
+        String sql = "INSERT INTO bench_fertilizer_supply (customer_id, fertilizer_type_id, supply_date, quantity_kg,"
+                + " bags_count, bag_size_kg) VALUES (?, ?, ?, ?, ?, ?)";
+        connection.setAutoCommit(false);
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            int n = 0;
+            for (LocalDate day = FIRST_DAY; day.isBefore(MONTH_END); day = day.plusDays(1)) {
+                for (int i = 0; i < SUPPLIES_PER_DAY; i++, n++) {
+                    int bags = 1 + n % 4;
+                    int bagSize = n % 2 == 0 ? 25 : 50;
+                    ps.setLong(1, 1 + (n * 7L) % GROWERS);
+                    ps.setLong(2, 1 + n % 3);
+                    ps.setDate(3, Date.valueOf(day));
+                    ps.setInt(4, bags * bagSize);
+                    ps.setInt(5, bags);
+                    ps.setInt(6, bagSize);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+        try (Statement st = connection.createStatement()) {
+            st.execute("ANALYZE TABLE bench_fertilizer_supply");
+        }
+    }
+
+    @AfterAll
+    void dropTable() throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS bench_fertilizer_supply");
+        }
+        connection.close();
+    }
+
+    @Test
+    void dateRangesScanOnlyTheMonth() throws SQLException {
+        int year = MONTH_START.getYear();
+        int month = MONTH_START.getMonthValue();
+        String[][] cases = {
+                {"month listing",
+                        "SELECT * FROM bench_fertilizer_supply WHERE YEAR(supply_date) = " + year
+                                + " AND MONTH(supply_date) = " + month,
+                        "SELECT * FROM bench_fertilizer_supply WHERE supply_date >= '" + MONTH_START
+                                + "' AND supply_date < '" + MONTH_END + "'"},
+                {"customer month total",
+                        "SELECT COALESCE(SUM(quantity_kg), 0) FROM bench_fertilizer_supply WHERE customer_id = 42"
+                                + " AND YEAR(supply_date) = " + year + " AND MONTH(supply_date) = " + month,
+                        "SELECT COALESCE(SUM(quantity_kg), 0) FROM bench_fertilizer_supply WHERE customer_id = 42"
+                                + " AND supply_date >= '" + MONTH_START + "' AND supply_date < '" + MONTH_END + "'"}
+        };
+
+        log.info("query                 | YEAR()/MONTH() ms | access | date range ms | access");
+        for (String[] c : cases) {
+            assertEquals(fingerprint(c[1]), fingerprint(c[2]), c[0] + ": rewritten query returns a different result");
+            String functionAccess = accessType(c[1]);
+            String rangeAccess = accessType(c[2]);
+            // YEAR()/MONTH() hide supply_date from the optimizer; the half-open range does not
+            assertNotEquals("range", functionAccess, c[0] + ": YEAR()/MONTH() query is already a range scan");
+            assertEquals("range", rangeAccess, c[0] + ": date range query is not a range scan");
+            log.info(String.format("%-21s | %17.2f | %6s | %13.2f | %s",
+                    c[0], medianMillis(c[1]), functionAccess, medianMillis(c[2]), rangeAccess));
+        }
+    }
+
+    // Row count and the sum of the first column, enough to tell the two forms apart if they disagree
+    private String fingerprint(String sql) throws SQLException {
+        try (Statement st = connection.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            int count = 0;
+            BigDecimal sum = BigDecimal.ZERO;
+            while (rs.next()) {
+                count++;
+                sum = sum.add(rs.getBigDecimal(1));
+            }
+            return count + ":" + sum;
+        }
+    }
+
+    private String accessType(String sql) throws SQLException {
+        try (Statement st = connection.createStatement(); ResultSet rs = st.executeQuery("EXPLAIN " + sql)) {
+            rs.next();
+            return rs.getString("type");
+        }
+    }
+
+    private double medianMillis(String sql) throws SQLException {
+        double[] times = new double[RUNS];
+        try (Statement st = connection.createStatement()) {
+            for (int i = 0; i < RUNS; i++) {
+                long start = System.nanoTime();
+                try (ResultSet rs = st.executeQuery(sql)) {
+                    while (rs.next()) {
+                        rs.getString(1);
+                    }
+                }
+                times[i] = (System.nanoTime() - start) / 1_000_000.0;
+            }
+        }
+        Arrays.sort(times);
+        return times[RUNS / 2];
+    }
+}
@@ -0,0 +1,223 @@
+package com.teadealer.service;
+
+import com.teadealer.dto.KeysetPage;
+import com.teadealer.model.Collection;
+import com.teadealer.model.Customer;
+import com.teadealer.model.Deduction;
+import com.teadealer.model.Invoice;
+import com.teadealer.model.TeaGrade;
+import com.teadealer.repository.CustomerRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Archiving a year end to end against H2 (no test transaction, so the archive transaction really
+ * commits): the rows leave the database, come back unchanged from the files, the collection pages
+ * run through them into the live rows, and neither they nor the customer they belong to can be deleted.
+ */
+@DataJpaTest(properties = "h2.database=archive")
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ArchiveService.class, CollectionService.class, CustomerService.class, JacksonAutoConfiguration.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ArchiveServiceTest {
+
+    private static final int YEAR = 2020;
+    private static final LocalDateTime GENERATED_AT = LocalDateTime.of(YEAR, 2, 3, 8, 15, 30);
+
+    @TempDir
+    static Path archiveDir;
+
+    @DynamicPropertySource
+    static void archiveDirectory(DynamicPropertyRegistry registry) {
+        registry.add("app.archive.dir", () -> archiveDir.toString());
+    }
+
+    @Autowired
+    private ArchiveService archiveService;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private CollectionService collectionService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void archivedYearReadsBackUnchanged() throws Exception {
+        Customer customer = customer("TB-0042", "කේ. ඒ. පෙරේරා");
+        Customer other = customer("TB-0043", "නිමල් සිල්වා");
+        insertCollection(customer, LocalDate.of(YEAR, 1, 3), "GRADE_1", 12, "නිවාඩු දිනය");
+        insertCollection(customer, LocalDate.of(YEAR, 1, 3), "GRADE_2", 30, null);
+        insertCollection(other, LocalDate.of(YEAR, 2, 29), "GRADE_2", 7, "late");
+        insertCollection(customer, LocalDate.of(YEAR, 12, 31), "GRADE_2", 5, null);
+        // Outside the year: stays in the database
+        insertCollection(customer, LocalDate.of(YEAR + 1, 1, 1), "GRADE_2", 9, null);
+        jdbcTemplate.update("INSERT INTO deductions (customer_id, book_number, year, month, advance_amount, advance_date,"
+                        + " other_deductions_note, net_amount) VALUES (?, ?, ?, 1, 1500.00, ?, ?, -250.75)",
+                customer.getId(), customer.getBookNumber(), YEAR, Date.valueOf(LocalDate.of(YEAR, 1, 15)), "පොහොර");
+        jdbcTemplate.update("INSERT INTO invoices (customer_id, book_number, customer_name, customer_name_sinhala, year,"
+                        + " month, grade1_kg, total_amount, net_amount, status, generated_at)"
+                        + " VALUES (?, ?, ?, ?, ?, 1, 12, 1234.50, -88.20, 'PAID', ?)",
+                customer.getId(), customer.getBookNumber(), "K. A. Perera", customer.getGrowerNameSinhala(), YEAR,
+                Timestamp.valueOf(GENERATED_AT));
+        List<Collection> before = sorted(jdbcTemplate.query("SELECT id FROM collections WHERE collection_date < ?",
+                (rs, i) -> rs.getLong(1), Date.valueOf(LocalDate.of(YEAR + 1, 1, 1))).stream()
+                .map(this::collectionFromDatabase).collect(Collectors.toList()));
+
+        assertEquals(4, archiveService.archiveYear(YEAR).get("collections"));
+
+        assertTrue(archiveService.isArchived(YEAR));
+        assertEquals(1, count("collections"));
+        assertEquals(0, count("deductions"));
+        assertEquals(0, count("invoices"));
+        try (Stream<Path> files = Files.list(archiveDir)) {
+            assertFalse(files.anyMatch(path -> path.toString().endsWith(".tmp")));
+        }
+
+        List<Collection> archived = sorted(archiveService.findCollections(null, null, null, LocalDate.of(YEAR, 12, 31)));
+        assertEquals(before.size(), archived.size());
+        for (int i = 0; i < before.size(); i++) {
+            Collection expected = before.get(i);
+            Collection actual = archived.get(i);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getBookNumber(), actual.getBookNumber());
+            assertEquals(expected.getCollectionDate(), actual.getCollectionDate());
+            assertEquals(expected.getGrade(), actual.getGrade());
+            assertEquals(0, expected.getWeightKg().compareTo(actual.getWeightKg()));
+            assertEquals(expected.getNotes(), actual.getNotes());
+            assertEquals(expected.getCustomer().getId(), actual.getCustomer().getId());
+        }
+        assertEquals("කේ. ඒ. පෙරේරා", archived.get(0).getCustomer().getGrowerNameSinhala());
+
+        // Filtered reads and the monthly totals see the same rows
+        assertEquals(3, archiveService.findCollections(customer.getId(), null, null, null).size());
+        assertEquals(1, archiveService.findCollections(null, "TB-0043", LocalDate.of(YEAR, 2, 1), LocalDate.of(YEAR, 2, 29)).size());
+        List<Object[]> totals = archiveService.sumMonthlyWeight(List.of(customer.getId()),
+                LocalDate.of(YEAR, 1, 1), LocalDate.of(YEAR, 2, 1));
+        assertEquals(2, totals.size());
+        assertEquals(42, totals.stream().mapToInt(t -> ((BigDecimal) t[4]).intValue()).sum());
+
+        Deduction deduction = archiveService.findDeductions(customer.getId(), null, YEAR, 1).get(0);
+        assertEquals(0, new BigDecimal("-250.75").compareTo(deduction.getNetAmount()));
+        assertEquals(0, new BigDecimal("1500.00").compareTo(deduction.getAdvanceAmount()));
+        assertEquals(LocalDate.of(YEAR, 1, 15), deduction.getAdvanceDate());
+        assertEquals("පොහොර", deduction.getOtherDeductionsNote());
+        assertNull(deduction.getLoanAmount());
+
+        Invoice invoice = archiveService.findInvoices(customer.getId(), YEAR, 1).get(0);
+        assertEquals(0, new BigDecimal("-88.20").compareTo(invoice.getNetAmount()));
+        assertEquals(0, new BigDecimal("1234.50").compareTo(invoice.getTotalAmount()));
+        assertEquals("කේ. ඒ. පෙරේරා", invoice.getCustomerNameSinhala());
+        assertEquals(Invoice.InvoiceStatus.PAID, invoice.getStatus());
+        assertEquals(GENERATED_AT, invoice.getGeneratedAt());
+
+        // Archived rows have no foreign key, so the service has to refuse the delete
+        Customer archivedOnly = customer("TB-0044", "සුනිල්");
+        insertCollection(archivedOnly, LocalDate.of(YEAR - 1, 6, 1), "GRADE_2", 3, null);
+        archiveService.archiveYear(YEAR - 1);
+        RuntimeException refused = assertThrows(RuntimeException.class, () -> customerService.deleteCustomer(archivedOnly.getId()));
+        assertTrue(refused.getMessage().contains("archived"));
+        assertThrows(RuntimeException.class, () -> archiveService.archiveYear(YEAR));
+        assertThrows(RuntimeException.class, () -> archiveService.archiveYear(LocalDate.now().getYear()));
+
+        // Collection reads and pages merge the archived rows into (collection_date, id) order
+        Long live = jdbcTemplate.queryForObject("SELECT id FROM collections WHERE customer_id = ?", Long.class, customer.getId());
+        List<Long> customerIds = new ArrayList<>();
+        before.stream().filter(c -> c.getCustomer().getId().equals(customer.getId()))
+                .sorted(Comparator.comparing(Collection::getCollectionDate).thenComparing(Collection::getId))
+                .forEach(c -> customerIds.add(c.getId()));
+        customerIds.add(live);
+        List<Long> paged = new ArrayList<>();
+        String cursor = null;
+        do {
+            KeysetPage<Collection> page = collectionService.getCollectionPageByCustomer(customer.getId(), cursor, 2);
+            page.getItems().forEach(c -> paged.add(c.getId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        assertEquals(customerIds, paged);
+        KeysetPage<Collection> first = collectionService.getCollectionPageByDateRange(
+                LocalDate.of(YEAR, 12, 1), LocalDate.of(YEAR + 1, 1, 31), null, 1);
+        assertEquals(customerIds.subList(2, 3), ids(first.getItems()));
+        assertEquals(List.of(live), ids(collectionService.getCollectionPageByDateRange(
+                LocalDate.of(YEAR, 12, 1), LocalDate.of(YEAR + 1, 1, 31), first.getNextCursor(), 1).getItems()));
+        assertEquals(2, collectionService.getCollectionsByDate(LocalDate.of(YEAR, 1, 3)).size());
+
+        RuntimeException notDeleted = assertThrows(RuntimeException.class, () -> collectionService.deleteCollection(customerIds.get(0)));
+        assertTrue(notDeleted.getMessage().contains("archived"));
+    }
+
+    private Customer customer(String bookNumber, String sinhalaName) {
+        Customer customer = new Customer();
+        customer.setBookNumber(bookNumber);
+        customer.setGrowerNameSinhala(sinhalaName);
+        customer.setGrowerNameEnglish(bookNumber);
+        return customerService.createCustomer(customer);
+    }
+
+    private void insertCollection(Customer customer, LocalDate date, String grade, int weight, String notes) {
+        jdbcTemplate.update("INSERT INTO collections (customer_id, book_number, collection_date, grade, weight_kg, notes)"
+                + " VALUES (?, ?, ?, ?, ?, ?)", customer.getId(), customer.getBookNumber(), Date.valueOf(date), grade, weight, notes);
+    }
+
+    private Collection collectionFromDatabase(Long id) {
+        return jdbcTemplate.queryForObject("SELECT * FROM collections WHERE id = ?", (rs, i) -> {
+            Collection collection = new Collection();
+            collection.setId(rs.getLong("id"));
+            collection.setBookNumber(rs.getString("book_number"));
+            collection.setCollectionDate(rs.getDate("collection_date").toLocalDate());
+            collection.setGrade(TeaGrade.valueOf(rs.getString("grade")));
+            collection.setWeightKg(rs.getBigDecimal("weight_kg"));
+            collection.setNotes(rs.getString("notes"));
+            collection.setCustomer(customerRepository.findById(rs.getLong("customer_id")).orElseThrow());
+            return collection;
+        }, id);
+    }
+
+    private int count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+    }
+
+    private static List<Long> ids(List<Collection> collections) {
+        return collections.stream().map(Collection::getId).collect(Collectors.toList());
+    }
+
+    private static List<Collection> sorted(List<Collection> collections) {
+        return collections.stream().sorted(Comparator.comparing(Collection::getId)).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,168 @@
+package com.teadealer.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Month-query latency on a flat vs. month-partitioned copy of the collections table while the
+ * history grows from 1 to 12 years. Needs a scratch MySQL database, so it only runs when
+ * {@code benchmark.mysql.url} is set:
+ *
+ * <pre>
+ * mvn test -Dtest=CollectionPartitionBenchmarkTest \
+ *     -Dbenchmark.mysql.url="jdbc:mysql://localhost:3306/bench?createDatabaseIfNotExist=true&amp;rewriteBatchedStatements=true" \
+ *     -Dbenchmark.mysql.user=root -Dbenchmark.mysql.password=root
+ * </pre>
+ */
+@Slf4j
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@EnabledIfSystemProperty(named = "benchmark.mysql.url", matches = ".+")
+class CollectionPartitionBenchmarkTest {
+
+    private static final int YEARS = 12;
+    private static final int GROWERS = 200;
+    private static final int RUNS = 25;
+    private static final LocalDate FIRST_DAY = LocalDate.of(2014, 1, 1);
+    private static final List<Integer> CHECKPOINTS = Arrays.asList(1, 3, 6, 12);
+
+    private static final String COLUMNS = "(id BIGINT NOT NULL AUTO_INCREMENT, book_number VARCHAR(255) NOT NULL,"
+            + " customer_id BIGINT NOT NULL, collection_date DATE NOT NULL, grade VARCHAR(20) NOT NULL,"
+            + " weight_kg INT NOT NULL, PRIMARY KEY (id, collection_date),"
+            + " UNIQUE KEY uk_book_date_grade (book_number, collection_date, grade),"
+            + " KEY idx_date (collection_date), KEY idx_customer_date (customer_id, collection_date))";
+
+    private Connection connection;
+
+    @BeforeAll
+    void createTables() throws SQLException {
+        connection = DriverManager.getConnection(System.getProperty("benchmark.mysql.url"),
+                System.getProperty("benchmark.mysql.user", "root"), System.getProperty("benchmark.mysql.password", ""));
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS bench_collections_flat");
+            st.execute("DROP TABLE IF EXISTS bench_collections_part");
+            st.execute("CREATE TABLE bench_collections_flat " + COLUMNS);
+            st.execute("CREATE TABLE bench_collections_part " + COLUMNS + " "
+                    + CollectionPartitionService.partitionByClause(YearMonth.from(FIRST_DAY),
+                    YearMonth.from(FIRST_DAY.plusYears(YEARS))));
+        }
+    }
+
+    @AfterAll
+    void dropTables() throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS bench_collections_flat");
+            st.execute("DROP TABLE IF EXISTS bench_collections_part");
+        }
+        connection.close();
+    }
+
+    @Test
+    void monthQueriesStayFlatAsHistoryGrows() throws SQLException {
+        List<double[]> results = new ArrayList<>();
+        for (int year = 1; year <= YEARS; year++) {
+            loadYear(FIRST_DAY.plusYears(year - 1));
+            if (!CHECKPOINTS.contains(year)) {
+                continue;
+            }
+            // Always query the newest complete month, the common case for invoicing
+            LocalDate monthStart = FIRST_DAY.plusYears(year).minusMonths(1);
+            LocalDate monthEnd = monthStart.plusMonths(1).minusDays(1);
+            String dateRange = "SELECT * FROM %s WHERE collection_date BETWEEN ? AND ?";
+            String bookMonth = "SELECT * FROM %s WHERE book_number = 'B0042' AND collection_date BETWEEN ? AND ?";
+
+            assertEquals(1, prunedPartitions(String.format(dateRange, "bench_collections_part"), monthStart, monthEnd),
+                    "month query must be pruned to one partition");
+            results.add(new double[]{year,
+                    medianMillis(String.format(dateRange, "bench_collections_flat"), monthStart, monthEnd),
+                    medianMillis(String.format(dateRange, "bench_collections_part"), monthStart, monthEnd),
+                    medianMillis(String.format(bookMonth, "bench_collections_flat"), monthStart, monthEnd),
+                    medianMillis(String.format(bookMonth, "bench_collections_part"), monthStart, monthEnd)});
+        }
+
+        log.info("years | month flat ms | month partitioned ms | book-month flat ms | book-month partitioned ms");
+        for (double[] r : results) {
+            log.info(String.format("%5d | %13.2f | %20.2f | %18.2f | %25.2f", (int) r[0], r[1], r[2], r[3], r[4]));
+        }
+
+        // Generous bound: a month of partitioned data costs about the same at 12 years as at 1 year
+        double first = results.get(0)[2];
+        double last = results.get(results.size() - 1)[2];
+        assertTrue(last <= first * 3 + 5, "partitioned month query grew from " + first + "ms to " + last + "ms");
+    }
+
+    private void loadYear(LocalDate start) throws SQLException {
+        String sql = "INSERT INTO %s (book_number, customer_id, collection_date, grade, weight_kg) VALUES (?, ?, ?, ?, ?)";
+        for (String table : Arrays.asList("bench_collections_flat", "bench_collections_part")) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement ps = connection.prepareStatement(String.format(sql, table))) {
+                for (LocalDate day = start; day.isBefore(start.plusYears(1)); day = day.plusDays(1)) {
+                    for (int grower = 1; grower <= GROWERS; grower++) {
+                        ps.setString(1, String.format("B%04d", grower));
+                        ps.setLong(2, grower);
+                        ps.setDate(3, Date.valueOf(day));
+                        ps.setString(4, grower % 3 == 0 ? "GRADE_1" : "GRADE_2");
+                        ps.setInt(5, 5 + (grower * day.getDayOfYear()) % 40);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+            connection.commit();
+            connection.setAutoCommit(true);
+        }
+        try (Statement st = connection.createStatement()) {
+            st.execute("ANALYZE TABLE bench_collections_flat, bench_collections_part");
+        }
+    }
+
+    private double medianMillis(String sql, LocalDate from, LocalDate to) throws SQLException {
+        double[] times = new double[RUNS];
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setDate(1, Date.valueOf(from));
+            ps.setDate(2, Date.valueOf(to));
+            for (int i = 0; i < RUNS; i++) {
+                long start = System.nanoTime();
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        rs.getLong(1);
+                    }
+                }
+                times[i] = (System.nanoTime() - start) / 1_000_000.0;
+            }
+        }
+        Arrays.sort(times);
+        return times[RUNS / 2];
+    }
+
+    private int prunedPartitions(String sql, LocalDate from, LocalDate to) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("EXPLAIN " + sql)) {
+            ps.setDate(1, Date.valueOf(from));
+            ps.setDate(2, Date.valueOf(to));
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                String partitions = rs.getString("partitions");
+                return partitions == null ? 0 : partitions.split(",").length;
+            }
+        }
+    }
+}
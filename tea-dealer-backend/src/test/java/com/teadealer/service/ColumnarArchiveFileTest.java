@@ -0,0 +1,82 @@
+package com.teadealer.service;
+
+import com.teadealer.service.ColumnarArchiveFile.ColumnType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Write/read round trips of {@link ColumnarArchiveFile} for every column type, including NULLs,
+ * negative and extreme values, decimals kept as text and Sinhala strings.
+ */
+class ColumnarArchiveFileTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void longColumnsRoundTrip() throws IOException {
+        Object[] values = {1L, null, -5L, 0L, Long.MAX_VALUE, Long.MIN_VALUE, null, 42L, -42L};
+        assertArrayEquals(values, roundTrip(ColumnType.LONG, values));
+    }
+
+    @Test
+    void dateColumnsRoundTrip() throws IOException {
+        Object[] values = {LocalDate.of(2020, 1, 1), null, LocalDate.of(1969, 12, 31), LocalDate.of(2020, 12, 31),
+                LocalDate.of(2020, 1, 1), null};
+        assertArrayEquals(values, roundTrip(ColumnType.DATE, values));
+    }
+
+    @Test
+    void stringColumnsRoundTrip() throws IOException {
+        Object[] values = {"TB-0042", null, "", "කේ. ඒ. පෙරේරා", "සුනිල් ප්‍රනාන්දු", "-1234.50", "0.00",
+                "2020-03-01T08:15:30", null};
+        assertArrayEquals(values, roundTrip(ColumnType.STRING, values));
+    }
+
+    @Test
+    void columnsAreReadIndependently() throws IOException {
+        Path path = dir.resolve("mixed.tdca");
+        List<Object[]> rows = Arrays.asList(
+                new Object[]{7L, LocalDate.of(2020, 5, 1), "නිමල්"},
+                new Object[]{null, null, null},
+                new Object[]{-3L, LocalDate.of(2020, 4, 30), "-0.75"});
+        ColumnarArchiveFile.write(path, Arrays.asList("id", "day", "note"),
+                Arrays.asList(ColumnType.LONG, ColumnType.DATE, ColumnType.STRING), rows);
+
+        ColumnarArchiveFile file = ColumnarArchiveFile.open(path);
+        assertEquals(3, file.getRowCount());
+        assertEquals(Arrays.asList("id", "day", "note"), file.getColumnNames());
+        assertArrayEquals(new Object[]{"නිමල්", null, "-0.75"}, file.readColumn("note"));
+        assertArrayEquals(new Object[]{7L, null, -3L}, file.readColumn("id"));
+        assertArrayEquals(new Object[]{LocalDate.of(2020, 5, 1), null, LocalDate.of(2020, 4, 30)}, file.readColumn("day"));
+        assertThrows(IOException.class, () -> file.readColumn("missing"));
+    }
+
+    @Test
+    void emptyTablesRoundTrip() throws IOException {
+        Path path = dir.resolve("empty.tdca");
+        ColumnarArchiveFile.write(path, Arrays.asList("id"), Arrays.asList(ColumnType.LONG), Arrays.asList());
+
+        ColumnarArchiveFile file = ColumnarArchiveFile.open(path);
+        assertEquals(0, file.getRowCount());
+        assertEquals(0, file.readColumn("id").length);
+    }
+
+    private Object[] roundTrip(ColumnType type, Object[] values) throws IOException {
+        Path path = dir.resolve(type + ".tdca");
+        ColumnarArchiveFile.write(path, Arrays.asList("value"), Arrays.asList(type),
+                Arrays.stream(values).map(value -> new Object[]{value}).collect(Collectors.toList()));
+        return ColumnarArchiveFile.open(path).readColumn("value");
+    }
+}
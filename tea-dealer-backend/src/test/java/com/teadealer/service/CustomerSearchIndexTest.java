@@ -0,0 +1,113 @@
+package com.teadealer.service;
+
+import com.teadealer.model.Customer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Matching, ranking and incremental updates of {@link CustomerSearchIndex}, including a
+ * directory of 5,000 growers sharing a handful of names, so short prefixes match hundreds of them.
+ */
+class CustomerSearchIndexTest {
+
+    private static final String[] SURNAMES = {"Perera", "Silva", "Fernando", "Jayasinghe", "Bandara",
+            "Wickramasinghe", "Gunawardena", "Rajapaksa", "Dissanayake", "Kumara", "Herath", "Senanayake"};
+    private static final String[] GIVEN = {"Nimal", "Sunil", "Kamala", "Saman", "Chandra", "Ruwan", "Anura",
+            "Kusum", "Lalith", "Priyantha", "Sriyani", "Tharanga"};
+
+    @Test
+    void matchesPrefixesTyposAndBothScripts() {
+        CustomerSearchIndex index = new CustomerSearchIndex();
+        index.add(customer(1L, "TB-0042", "K. A. Perera", "කේ. ඒ. පෙරේරා", "901234567V"));
+        index.add(customer(2L, "TB-0043", "Nimal Silva", "නිමල් සිල්වා", "199012345678"));
+        index.add(customer(3L, "TB-0420", "Sunil Fernando", "සුනිල් ප්‍රනාන්දු", null));
+
+        assertEquals(List.of(1L), ids(index.search("per", 10)));
+        assertEquals(List.of(1L), ids(index.search("prera", 10)));
+        assertEquals(List.of(3L), ids(index.search("fernnado", 10)));
+        assertEquals(List.of(2L), ids(index.search("සිල්", 10)));
+        // Typed without the zero-width joiner of the stored name
+        assertEquals(List.of(3L), ids(index.search("ප්රනාන්දු", 10)));
+        assertEquals(List.of(2L), ids(index.search("nimal silva", 10)));
+        assertEquals(List.of(), ids(index.search("nimal perera", 10)));
+        assertEquals(List.of(1L), ids(index.search("901234567v", 10)));
+        assertEquals(List.of(2L), ids(index.search("1990 1234 5678", 10)));
+    }
+
+    @Test
+    void ranksExactBookNumbersFirst() {
+        CustomerSearchIndex index = new CustomerSearchIndex();
+        index.add(customer(1L, "TB-0042", "Perera", "පෙරේරා", null));
+        index.add(customer(2L, "TB-0420", "Silva", "සිල්වා", null));
+        index.add(customer(3L, "TB-4200", "Fernando", "ප්‍රනාන්දු", null));
+
+        // Exact digits, then the shorter number the digits start
+        assertEquals(List.of(1L, 2L, 3L), ids(index.search("42", 10)));
+        assertEquals(List.of(1L), ids(index.search("TB-0042", 1)));
+        assertEquals(1L, ids(index.search("tb0042", 10)).get(0));
+    }
+
+    @Test
+    void followsUpdatesAndRemovals() {
+        CustomerSearchIndex index = new CustomerSearchIndex();
+        index.add(customer(1L, "TB-0042", "Perera", "පෙරේරා", null));
+        index.add(customer(1L, "TB-0042", "Bandara", "බණ්ඩාර", null));
+
+        assertEquals(List.of(), ids(index.search("perera", 10)));
+        assertEquals(List.of(1L), ids(index.search("banda", 10)));
+
+        index.remove(1L);
+        assertEquals(List.of(), ids(index.search("banda", 10)));
+        assertEquals(List.of(), ids(index.search("42", 10)));
+    }
+
+    @Test
+    void prefixDistanceCountsSwapsAsOneEdit() {
+        assertEquals(0, CustomerSearchIndex.prefixDistance("pere", "perera", 1));
+        assertEquals(1, CustomerSearchIndex.prefixDistance("pree", "perera", 1));
+        assertEquals(1, CustomerSearchIndex.prefixDistance("pexe", "perera", 1));
+        assertEquals(2, CustomerSearchIndex.prefixDistance("bandara", "perera", 1));
+    }
+
+    @Test
+    void shortPrefixesOnALargeDirectoryKeepTheBestMatches() {
+        CustomerSearchIndex index = new CustomerSearchIndex();
+        Random random = new Random(42);
+        int pereras = 0;
+        for (long id = 1; id <= 5_000; id++) {
+            String surname = SURNAMES[random.nextInt(SURNAMES.length)];
+            pereras += surname.equals("Perera") ? 1 : 0;
+            String name = GIVEN[random.nextInt(GIVEN.length)] + " " + surname;
+            index.add(customer(id, String.format("TB-%05d", id), name, "ගොවියා " + id, String.valueOf(900_000_000L + id)));
+        }
+
+        // Hundreds match a one-letter query; only the limit comes back
+        assertEquals(50, index.search("p", 50).size());
+        List<Customer> perera = index.search("perera", Integer.MAX_VALUE);
+        assertEquals(pereras, perera.size());
+        assertTrue(perera.stream().allMatch(customer -> customer.getGrowerNameEnglish().endsWith("Perera")));
+        // Exact book number ahead of the longer numbers its digits start
+        assertEquals("TB-00421", index.search("TB-00421", 5).get(0).getBookNumber());
+        assertEquals(List.of(), index.search("perera", 0));
+    }
+
+    private static Customer customer(Long id, String bookNumber, String english, String sinhala, String nic) {
+        Customer customer = new Customer();
+        customer.setId(id);
+        customer.setBookNumber(bookNumber);
+        customer.setGrowerNameEnglish(english);
+        customer.setGrowerNameSinhala(sinhala);
+        customer.setNic(nic);
+        return customer;
+    }
+
+    private static List<Long> ids(List<Customer> customers) {
+        return customers.stream().map(Customer::getId).collect(Collectors.toList());
+    }
+}
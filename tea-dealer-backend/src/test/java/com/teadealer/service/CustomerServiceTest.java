@@ -0,0 +1,97 @@
+package com.teadealer.service;
+
+import com.teadealer.model.Customer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The customer directory: rows written around the service are found before the periodic check
+ * reloads, and what callers get back are copies they can change without affecting anyone else.
+ */
+@DataJpaTest(properties = {
+        "h2.database=customers",
+        "app.archive.dir=target/customer-archive"
+})
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({CustomerService.class, ArchiveService.class, JacksonAutoConfiguration.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CustomerServiceTest {
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void customersWrittenElsewhereAreFoundBeforeTheNextReload() {
+        Customer known = customer("TB-0300", "Kamal Perera");
+        customerService.reload();
+        // Another backend instance adds two customers; no sync has run since
+        insertCustomer("TB-0301", "Nimal Silva");
+        insertCustomer("TB-0302", "Sunil Fernando");
+        Long nimalId = jdbcTemplate.queryForObject("SELECT id FROM customers WHERE book_number = 'TB-0301'", Long.class);
+
+        assertEquals("Nimal Silva", customerService.getCustomerById(nimalId).orElseThrow().getGrowerNameEnglish());
+        assertEquals("Sunil Fernando", customerService.getCustomerByBookNumber("TB-0302").orElseThrow().getGrowerNameEnglish());
+        assertEquals(List.of("TB-0300", "TB-0301"), bookNumbers(customerService.getCustomersById(List.of(known.getId(), nimalId, -1L))));
+        assertEquals(List.of("TB-0300", "TB-0302"),
+                bookNumbers(customerService.getCustomersByBookNumber(List.of("TB-0300", "TB-0302", "TB-9999"))));
+        assertTrue(customerService.getCustomerById(-1L).isEmpty());
+        assertTrue(customerService.getCustomerByBookNumber("TB-9999").isEmpty());
+
+        // Found rows joined the directory
+        assertEquals(List.of("TB-0300", "TB-0301", "TB-0302"), bookNumbers(customerService.getAllCustomers()).stream()
+                .filter(bookNumber -> bookNumber.startsWith("TB-030")).collect(Collectors.toList()));
+    }
+
+    @Test
+    void callersGetTheirOwnCopies() {
+        Customer saved = customer("TB-0310", "Ruwan Jayasinghe");
+
+        customerService.getCustomerById(saved.getId()).orElseThrow().setBookNumber("CHANGED");
+        customerService.getCustomersById(List.of(saved.getId())).get(0).setGrowerNameEnglish("CHANGED");
+        customerService.getAllCustomers().forEach(customer -> customer.setRoute("CHANGED"));
+        saved.setGrowerNameSinhala("CHANGED");
+
+        Customer read = customerService.getCustomerByBookNumber("TB-0310").orElseThrow();
+        assertEquals("TB-0310", read.getBookNumber());
+        assertEquals("Ruwan Jayasinghe", read.getGrowerNameEnglish());
+        assertEquals("රුවන්", read.getGrowerNameSinhala());
+        assertNull(read.getRoute());
+        assertTrue(customerService.getCustomersByRoute("CHANGED").isEmpty());
+    }
+
+    private Customer customer(String bookNumber, String name) {
+        Customer customer = new Customer();
+        customer.setBookNumber(bookNumber);
+        customer.setGrowerNameEnglish(name);
+        customer.setGrowerNameSinhala("රුවන්");
+        return customerService.createCustomer(customer);
+    }
+
+    private void insertCustomer(String bookNumber, String name) {
+        jdbcTemplate.update("INSERT INTO customers (book_number, grower_name_sinhala, grower_name_english, transport_exempt,"
+                + " created_at, updated_at) VALUES (?, ?, ?, FALSE, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)", bookNumber, "නම", name);
+    }
+
+    private static List<String> bookNumbers(List<Customer> customers) {
+        return customers.stream().map(Customer::getBookNumber).sorted().collect(Collectors.toList());
+    }
+}
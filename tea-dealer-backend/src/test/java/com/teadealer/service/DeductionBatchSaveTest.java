@@ -0,0 +1,94 @@
+package com.teadealer.service;
+
+import com.teadealer.dto.DeductionBatchRequest;
+import com.teadealer.dto.DeductionBatchResult;
+import com.teadealer.model.Customer;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The batch deduction save writes each row once, through its JDBC upsert. The request runs with an
+ * open entity manager like a web request does (open-in-view), so if the service edited the rows it
+ * loaded, Hibernate would flush them again when the batch transaction commits.
+ */
+@DataJpaTest(properties = {
+        "h2.database=deductionbatch",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "app.archive.dir=target/deduction-batch-archive"
+})
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({DeductionService.class, ArchiveService.class, CustomerService.class, JacksonAutoConfiguration.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class DeductionBatchSaveTest {
+
+    @Autowired
+    private DeductionService deductionService;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void existingDeductionsAreWrittenOnlyByTheBatch() {
+        Customer customer = new Customer();
+        customer.setBookNumber("TB-0101");
+        customer.setGrowerNameSinhala("නිමල් සිල්වා");
+        customer.setGrowerNameEnglish("Nimal Silva");
+        customer = customerService.createCustomer(customer);
+        jdbcTemplate.update("INSERT INTO deductions (customer_id, book_number, year, month, advance_amount,"
+                + " total_deductions, net_amount) VALUES (?, ?, 2024, 3, 100.00, 100.00, -100.00)",
+                customer.getId(), customer.getBookNumber());
+
+        DeductionBatchRequest.Entry entry = new DeductionBatchRequest.Entry();
+        entry.setCustomerId(customer.getId());
+        entry.setAdvanceAmount(new BigDecimal("250.00"));
+        DeductionBatchRequest request = new DeductionBatchRequest();
+        request.setYear(2024);
+        request.setMonth(3);
+        request.setDeductions(List.of(entry));
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        TransactionSynchronizationManager.bindResource(entityManagerFactory, new EntityManagerHolder(entityManager));
+        DeductionBatchResult result;
+        try {
+            result = deductionService.saveDeductionsBatch(request);
+        } finally {
+            TransactionSynchronizationManager.unbindResource(entityManagerFactory);
+            entityManager.close();
+        }
+
+        assertEquals(1, result.getSaved());
+        assertEquals(0, statistics.getEntityUpdateCount());
+        assertEquals(0, statistics.getEntityInsertCount());
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM deductions", Integer.class));
+        assertEquals(0, new BigDecimal("250.00").compareTo(jdbcTemplate.queryForObject(
+                "SELECT advance_amount FROM deductions WHERE customer_id = ?", BigDecimal.class, customer.getId())));
+    }
+}
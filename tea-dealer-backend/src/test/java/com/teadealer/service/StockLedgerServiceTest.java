@@ -0,0 +1,203 @@
+package com.teadealer.service;
+
+import com.teadealer.model.Customer;
+import com.teadealer.model.FertilizerStock;
+import com.teadealer.model.FertilizerSupply;
+import com.teadealer.model.FertilizerType;
+import com.teadealer.model.TeaPacketStock;
+import com.teadealer.model.TeaPacketSupply;
+import com.teadealer.model.TeaPacketType;
+import com.teadealer.repository.FertilizerStockBalanceRepository;
+import com.teadealer.repository.TeaPacketStockBalanceRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The stock ledgers as the fertilizer and tea packet services drive them: stock in, supplies out,
+ * adding to a month's stock, deleting either side, and a rebuild from the stock and supply tables
+ * landing on the same balances the movements produced. Runs without a test transaction so the
+ * availability cache sees real commits.
+ */
+@DataJpaTest(properties = {
+        "h2.database=stockledger",
+        "app.archive.dir=target/stock-ledger-archive"
+})
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({FertilizerService.class, TeaPacketService.class, StockLedgerService.class, StockAvailabilityCache.class,
+        CustomerService.class, ArchiveService.class, JacksonAutoConfiguration.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StockLedgerServiceTest {
+
+    private static final BigDecimal BAG_SIZE = new BigDecimal("50");
+    private static final BigDecimal PACKET_WEIGHT = new BigDecimal("100");
+
+    @Autowired
+    private FertilizerService fertilizerService;
+
+    @Autowired
+    private TeaPacketService teaPacketService;
+
+    @Autowired
+    private StockLedgerService stockLedgerService;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private FertilizerStockBalanceRepository fertilizerBalanceRepository;
+
+    @Autowired
+    private TeaPacketStockBalanceRepository teaPacketBalanceRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Customer customer;
+
+    @BeforeEach
+    void customer() {
+        jdbcTemplate.update("DELETE FROM fertilizer_supply");
+        jdbcTemplate.update("DELETE FROM tea_packet_supply");
+        jdbcTemplate.update("DELETE FROM fertilizer_stock");
+        jdbcTemplate.update("DELETE FROM tea_packet_stock");
+        stockLedgerService.rebuild();
+        customer = customerService.getCustomerByBookNumber("TB-0200").orElseGet(() -> {
+            Customer created = new Customer();
+            created.setBookNumber("TB-0200");
+            created.setGrowerNameSinhala("සුනිල් ප්‍රනාන්දු");
+            created.setGrowerNameEnglish("Sunil Fernando");
+            return customerService.createCustomer(created);
+        });
+    }
+
+    @Test
+    void fertilizerMovementsCarryForwardAndRebuildMatches() {
+        FertilizerType type = new FertilizerType();
+        type.setName("Urea " + System.nanoTime());
+        type.setBagSizes("50");
+        Long typeId = fertilizerService.createFertilizerType(type).getId();
+
+        // Stock in: January's bags are available in every later month, not before
+        FertilizerStock january = fertilizerService.addStock(typeId, 2024, 1, BAG_SIZE, 10, null);
+        assertEquals(10, bags(typeId, 2024, 1));
+        assertEquals(10, bags(typeId, 2024, 6));
+        assertEquals(0, bags(typeId, 2023, 12));
+
+        // Supply out in February
+        FertilizerSupply supply = fertilizerService.recordSupply(customer.getId(), typeId, LocalDate.of(2024, 2, 10), BAG_SIZE, 3, null);
+        assertEquals(10, bags(typeId, 2024, 1));
+        assertEquals(7, bags(typeId, 2024, 2));
+        assertEquals(0, new BigDecimal("350").compareTo(fertilizerService.getAvailableStock(typeId, 2024, 2)));
+
+        // Adding to January's stock also moves February, which already has a row
+        fertilizerService.addStock(typeId, 2024, 1, BAG_SIZE, 2, "late delivery");
+        assertEquals(12, bags(typeId, 2024, 1));
+        assertEquals(9, bags(typeId, 2024, 2));
+
+        // A supply larger than the balance changes nothing
+        assertThrows(RuntimeException.class, () ->
+                fertilizerService.recordSupply(customer.getId(), typeId, LocalDate.of(2024, 2, 20), BAG_SIZE, 10, null));
+        assertEquals(9, bags(typeId, 2024, 2));
+        // January's bags are already partly supplied in February
+        assertThrows(RuntimeException.class, () ->
+                fertilizerService.recordSupply(customer.getId(), typeId, LocalDate.of(2024, 1, 20), BAG_SIZE, 10, null));
+        assertEquals(12, bags(typeId, 2024, 1));
+
+        fertilizerService.recordSupply(customer.getId(), typeId, LocalDate.of(2024, 3, 5), BAG_SIZE, 4, null);
+        assertEquals(5, bags(typeId, 2024, 3));
+
+        // Deleting the February supply puts its bags back from February on
+        fertilizerService.deleteSupply(supply.getId());
+        assertEquals(12, bags(typeId, 2024, 2));
+        assertEquals(8, bags(typeId, 2024, 3));
+
+        List<Integer> before = List.of(ledgerBags(typeId, 202401), ledgerBags(typeId, 202402), ledgerBags(typeId, 202403));
+        fertilizerBalanceRepository.deleteAllInBatch();
+        stockLedgerService.rebuild();
+        assertEquals(before, List.of(ledgerBags(typeId, 202401), ledgerBags(typeId, 202402), ledgerBags(typeId, 202403)));
+        assertEquals(8, bags(typeId, 2024, 3));
+
+        // Deleting the stock takes the month, and every later one, back down
+        fertilizerService.addStock(typeId, 2024, 4, BAG_SIZE, 6, null);
+        fertilizerService.deleteStock(january.getId());
+        assertEquals(0, bags(typeId, 2024, 1));
+        assertEquals(-4, bags(typeId, 2024, 3));
+        assertEquals(2, bags(typeId, 2024, 4));
+    }
+
+    @Test
+    void teaPacketMovementsCarryForwardAndRebuildMatches() {
+        TeaPacketType type = new TeaPacketType();
+        type.setName("Premium " + System.nanoTime());
+        type.setPacketWeights("100");
+        Long typeId = teaPacketService.createTeaPacketType(type).getId();
+
+        TeaPacketStock stock = teaPacketService.addStock(typeId, 2024, 5, PACKET_WEIGHT, 40, null);
+        assertEquals(40, packets(typeId, 2024, 5));
+        assertEquals(0, packets(typeId, 2024, 4));
+
+        TeaPacketSupply supply = teaPacketService.recordSupply(customer.getId(), typeId, LocalDate.of(2024, 6, 1), 15, PACKET_WEIGHT, null);
+        assertEquals(25, packets(typeId, 2024, 6));
+        assertThrows(RuntimeException.class, () ->
+                teaPacketService.recordSupply(customer.getId(), typeId, LocalDate.of(2024, 6, 2), 26, PACKET_WEIGHT, null));
+
+        teaPacketService.addStock(typeId, 2024, 5, PACKET_WEIGHT, 5, null);
+        assertEquals(45, packets(typeId, 2024, 5));
+        assertEquals(30, packets(typeId, 2024, 6));
+        // The summary's total is everything received so far, from the ledger's running total
+        assertEquals(45, teaPacketService.getStockSummary(2024, 6).get("totalPackets"));
+        assertEquals(0, teaPacketService.getStockSummary(2024, 4).get("totalPackets"));
+        // Untyped supplies are recorded without a stock check and count in the all-type total
+        teaPacketService.recordSupply(customer.getId(), LocalDate.of(2024, 6, 3), 2, null);
+        assertEquals(28, teaPacketService.getAvailableStock(2024, 6));
+
+        teaPacketService.deleteSupply(supply.getId());
+        assertEquals(45, packets(typeId, 2024, 6));
+
+        int before = teaPacketBalanceRepository
+                .findFirstByTeaPacketTypeIdAndPacketWeightGramsAndPeriodLessThanEqualOrderByPeriodDesc(typeId, new BigDecimal("100.00"), 202406)
+                .orElseThrow().getClosingPackets();
+        teaPacketBalanceRepository.deleteAllInBatch();
+        stockLedgerService.rebuild();
+        assertEquals(before, teaPacketBalanceRepository
+                .findFirstByTeaPacketTypeIdAndPacketWeightGramsAndPeriodLessThanEqualOrderByPeriodDesc(typeId, new BigDecimal("100.00"), 202406)
+                .orElseThrow().getClosingPackets());
+        assertEquals(43, teaPacketService.getAvailableStock(2024, 6));
+        assertEquals(45, teaPacketService.getStockSummary(2024, 6).get("totalPackets"));
+
+        teaPacketService.deleteStock(stock.getId());
+        assertEquals(0, packets(typeId, 2024, 6));
+    }
+
+    private int bags(Long typeId, int year, int month) {
+        return fertilizerService.getAvailableBagsByTypeAndSize(typeId, BAG_SIZE, year, month);
+    }
+
+    private int packets(Long typeId, int year, int month) {
+        return teaPacketService.getAvailablePacketsByTypeAndWeight(typeId, PACKET_WEIGHT, year, month);
+    }
+
+    // Straight from the table, past the availability cache
+    private int ledgerBags(Long typeId, int period) {
+        return fertilizerBalanceRepository
+                .findFirstByFertilizerTypeIdAndBagSizeKgAndPeriodLessThanEqualOrderByPeriodDesc(typeId, new BigDecimal("50.00"), period)
+                .orElseThrow().getClosingBags();
+    }
+}
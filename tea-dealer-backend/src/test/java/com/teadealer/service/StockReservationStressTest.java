@@ -0,0 +1,222 @@
+package com.teadealer.service;
+
+import com.teadealer.model.FertilizerStockBalance;
+import com.teadealer.model.TeaPacketStockBalance;
+import com.teadealer.repository.FertilizerStockBalanceRepository;
+import com.teadealer.repository.TeaPacketStockBalanceRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Many clerks supplying the same bag size / packet weight at once, against an H2 database with
+ * real row locks (no test transaction). More is requested than is in stock; every reservation
+ * must either fully succeed or be rejected, and no balance may go negative. A month opened while
+ * the month before has an uncommitted movement must carry the balance that movement leaves.
+ */
+@DataJpaTest(properties = {
+        "h2.database=stockreservation",
+        "h2.options=;LOCK_TIMEOUT=10000",
+        "spring.datasource.hikari.maximum-pool-size=" + StockReservationStressTest.CLERKS
+})
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({StockLedgerService.class, StockAvailabilityCache.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StockReservationStressTest {
+
+    static final int CLERKS = 16;
+    private static final int ATTEMPTS_PER_CLERK = 50;
+    private static final int STOCK = 500;
+    private static final int PERIOD = 202403;
+    private static final int NEXT_PERIOD = 202404;
+    private static final BigDecimal BAG_SIZE = new BigDecimal("50.00");
+    private static final BigDecimal PACKET_WEIGHT = new BigDecimal("100.00");
+
+    @Autowired
+    private StockLedgerService stockLedgerService;
+
+    @Autowired
+    private FertilizerStockBalanceRepository fertilizerBalanceRepository;
+
+    @Autowired
+    private TeaPacketStockBalanceRepository teaPacketBalanceRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void concurrentFertilizerSuppliesNeverOverdraw() throws Exception {
+        long typeId = 1L;
+        stockLedgerService.applyFertilizer(typeId, BAG_SIZE, PERIOD,
+                BAG_SIZE.multiply(BigDecimal.valueOf(STOCK)), BigDecimal.ZERO, STOCK, 0);
+        // A later month with its own movement, so reservations also have to carry forward
+        stockLedgerService.applyFertilizer(typeId, BAG_SIZE, NEXT_PERIOD, BAG_SIZE, BigDecimal.ZERO, 1, 0);
+
+        int reserved = runClerks("fertilizer", bags -> stockLedgerService.reserveFertilizer(typeId, BAG_SIZE, PERIOD,
+                BAG_SIZE.multiply(BigDecimal.valueOf(bags)), bags));
+
+        FertilizerStockBalance month = fertilizerBalance(typeId, PERIOD);
+        FertilizerStockBalance next = fertilizerBalance(typeId, NEXT_PERIOD);
+        assertEquals(reserved, month.getSuppliedBags());
+        assertEquals(STOCK - reserved, month.getClosingBags());
+        assertEquals(0, BAG_SIZE.multiply(BigDecimal.valueOf(STOCK - reserved)).compareTo(month.getClosingKg()));
+        assertEquals(STOCK + 1 - reserved, next.getClosingBags());
+        assertTrue(month.getClosingBags() >= 0 && month.getClosingBags() < 3,
+                "stock should be drained to less than the largest request, was " + month.getClosingBags());
+    }
+
+    @Test
+    void concurrentTeaPacketSuppliesNeverOverdraw() throws Exception {
+        long typeId = 1L;
+        stockLedgerService.applyTeaPackets(typeId, PACKET_WEIGHT, PERIOD, STOCK, 0);
+
+        int reserved = runClerks("tea packets",
+                packets -> stockLedgerService.reserveTeaPackets(typeId, PACKET_WEIGHT, PERIOD, packets));
+
+        TeaPacketStockBalance month = teaPacketBalanceRepository
+                .findFirstByTeaPacketTypeIdAndPacketWeightGramsAndPeriodLessThanEqualOrderByPeriodDesc(typeId, PACKET_WEIGHT, PERIOD)
+                .orElseThrow();
+        assertEquals(reserved, month.getPacketsSupplied());
+        assertEquals(STOCK - reserved, month.getClosingPackets());
+        assertTrue(month.getClosingPackets() >= 0 && month.getClosingPackets() < 3,
+                "stock should be drained to less than the largest request, was " + month.getClosingPackets());
+    }
+
+    @Test
+    void openingAMonthWaitsForAMovementInTheMonthBefore() throws Exception {
+        long typeId = 2L;
+        stockLedgerService.applyFertilizer(typeId, BAG_SIZE, PERIOD, BAG_SIZE.multiply(BigDecimal.valueOf(10)), BigDecimal.ZERO, 10, 0);
+
+        // March gains 5 bags in a transaction that stays open while April is opened from another thread
+        int april = raceWithMonthBefore(
+                () -> stockLedgerService.applyFertilizer(typeId, BAG_SIZE, PERIOD,
+                        BAG_SIZE.multiply(BigDecimal.valueOf(5)), BigDecimal.ZERO, 5, 0),
+                () -> stockLedgerService.applyFertilizer(typeId, BAG_SIZE, NEXT_PERIOD, BAG_SIZE, BigDecimal.ZERO, 1, 0),
+                () -> fertilizerBalance(typeId, NEXT_PERIOD).getClosingBags());
+
+        assertEquals(15, fertilizerBalance(typeId, PERIOD).getClosingBags());
+        assertEquals(16, april);
+        assertEquals(0, BAG_SIZE.multiply(BigDecimal.valueOf(16)).compareTo(fertilizerBalance(typeId, NEXT_PERIOD).getClosingKg()));
+    }
+
+    @Test
+    void openingATeaPacketMonthWaitsForAMovementInTheMonthBefore() throws Exception {
+        long typeId = 2L;
+        stockLedgerService.applyTeaPackets(typeId, PACKET_WEIGHT, PERIOD, 10, 0);
+
+        int april = raceWithMonthBefore(
+                () -> stockLedgerService.applyTeaPackets(typeId, PACKET_WEIGHT, PERIOD, 5, 0),
+                () -> stockLedgerService.applyTeaPackets(typeId, PACKET_WEIGHT, NEXT_PERIOD, 1, 0),
+                () -> teaPacketBalanceRepository
+                        .findFirstByTeaPacketTypeIdAndPacketWeightGramsAndPeriodLessThanEqualOrderByPeriodDesc(typeId, PACKET_WEIGHT, NEXT_PERIOD)
+                        .orElseThrow().getClosingPackets());
+
+        assertEquals(16, april);
+    }
+
+    /**
+     * Runs the earlier month's movement in a transaction held open until the later month's opener,
+     * on another thread, is either blocked on a lock (H2 reports a blocker for its session) or done,
+     * then commits it; returns the later month's closing balance. If the opener does not wait for
+     * the earlier row, it finishes first, carrying the balance from before the movement, and the
+     * later month comes out short.
+     */
+    private int raceWithMonthBefore(Runnable earlierMovement, Runnable laterMovement, Callable<Integer> laterClosing)
+            throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> opener = transactionTemplate.execute(status -> {
+                earlierMovement.run();
+                Future<?> submitted = pool.submit(laterMovement);
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (!submitted.isDone() && !sessionBlocked()) {
+                    assertTrue(System.nanoTime() < deadline, "the later month's opener neither blocked nor finished");
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                return submitted;
+            });
+            opener.get(30, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdown();
+        }
+        return laterClosing.call();
+    }
+
+    private boolean sessionBlocked() {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM INFORMATION_SCHEMA.SESSIONS WHERE BLOCKER_ID IS NOT NULL", Integer.class) > 0;
+    }
+
+    /** Runs the clerks against one key; returns the units successfully reserved. */
+    private int runClerks(String label, Reservation reservation) throws Exception {
+        AtomicInteger reserved = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(CLERKS);
+        List<Callable<Void>> clerks = new ArrayList<>();
+        for (int c = 0; c < CLERKS; c++) {
+            int clerk = c;
+            clerks.add(() -> {
+                for (int i = 0; i < ATTEMPTS_PER_CLERK; i++) {
+                    int units = 1 + (clerk + i) % 3;
+                    try {
+                        reservation.reserve(units);
+                        reserved.addAndGet(units);
+                    } catch (RuntimeException e) {
+                        assertTrue(e.getMessage().startsWith("Insufficient stock"), e.getMessage());
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> result : pool.invokeAll(clerks)) {
+                result.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue(reserved.get() <= STOCK, label + ": reserved " + reserved.get() + " of " + STOCK);
+        assertTrue(rejected.get() > 0, "demand should exceed stock");
+        return reserved.get();
+    }
+
+    private FertilizerStockBalance fertilizerBalance(long typeId, int period) {
+        return fertilizerBalanceRepository
+                .findFirstByFertilizerTypeIdAndBagSizeKgAndPeriodLessThanEqualOrderByPeriodDesc(typeId, BAG_SIZE, period)
+                .orElseThrow();
+    }
+
+    private interface Reservation {
+        void reserve(int units);
+    }
+}
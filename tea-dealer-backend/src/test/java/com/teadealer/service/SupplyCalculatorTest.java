@@ -0,0 +1,96 @@
+package com.teadealer.service;
+
+import com.teadealer.dto.SupplyTotals;
+import com.teadealer.model.Customer;
+import com.teadealer.repository.SupplyInputVersionRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Cache coherence of {@link SupplyCalculator}: a version bump committed by another backend instance
+ * (written straight to supply_input_versions here) makes this instance recompute, and callers never
+ * share the cached totals object.
+ */
+@DataJpaTest(properties = "h2.database=supplycalculator")
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(SupplyCalculator.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class SupplyCalculatorTest {
+
+    private static final LocalDate START = LocalDate.of(2024, 3, 1);
+    private static final LocalDate END = LocalDate.of(2024, 4, 1);
+
+    @Autowired
+    private SupplyCalculator supplyCalculator;
+
+    @Autowired
+    private SupplyInputVersionRepository versionRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @MockBean
+    private CollectionService collectionService;
+
+    @MockBean
+    private AppSettingsService appSettingsService;
+
+    @Test
+    void changesCommittedElsewhereInvalidateCachedTotals() {
+        Customer customer = customer(7L, "TB-0007");
+        when(appSettingsService.get(SettingKey.DEDUCTION_ROUNDING_MODE)).thenReturn(SupplyCalculator.ROUNDING_MODE_HALF_UP);
+        when(collectionService.getGradeTotals("TB-0007", START, END))
+                .thenReturn(new BigDecimal[]{new BigDecimal("100"), new BigDecimal("50")});
+
+        assertEquals(0, new BigDecimal("150").compareTo(supplyCalculator.calculate(customer, 2024, 3).getTotalKg()));
+        // Served from the cache
+        SupplyTotals cached = supplyCalculator.calculate(customer, 2024, 3);
+        verify(collectionService, times(1)).getGradeTotals(any(), eq(START), eq(END));
+
+        // Callers get copies
+        cached.setTotalKg(BigDecimal.ZERO);
+        assertEquals(0, new BigDecimal("150").compareTo(supplyCalculator.calculate(customer, 2024, 3).getTotalKg()));
+
+        // Another instance saves a collection for this customer and month
+        when(collectionService.getGradeTotals("TB-0007", START, END))
+                .thenReturn(new BigDecimal[]{new BigDecimal("120"), new BigDecimal("50")});
+        transactionTemplate.executeWithoutResult(status -> versionRepository.bump(202403, 7L));
+        assertEquals(0, new BigDecimal("170").compareTo(supplyCalculator.calculate(customer, 2024, 3).getTotalKg()));
+
+        // ...or a bulk import touches the whole month
+        when(collectionService.getGradeTotalsByBookNumber(START, END))
+                .thenReturn(Map.of("TB-0007", new BigDecimal[]{new BigDecimal("130"), new BigDecimal("50")}));
+        transactionTemplate.executeWithoutResult(status -> versionRepository.bump(202403, 0L));
+        assertEquals(0, new BigDecimal("180").compareTo(
+                supplyCalculator.calculatePeriod(List.of(customer), 2024, 3).get(7L).getTotalKg()));
+        verify(collectionService, times(2)).getGradeTotals(any(), eq(START), eq(END));
+    }
+
+    private static Customer customer(Long id, String bookNumber) {
+        Customer customer = new Customer();
+        customer.setId(id);
+        customer.setBookNumber(bookNumber);
+        return customer;
+    }
+}
@@ -34,6 +34,32 @@ const RateForm = ({ formData, onChange, onSave, saving, isEditing }) => {
           </div>
         </div>
 
+        {/* Fertilizer Price per kg */}
+        <div>
+          <label className="block text-xs font-medium text-gray-700 mb-1">
+            {t('rates.fertilizerPricePerKgRs')}
+          </label>
+          <div className="relative">
+            <input
+              type="number"
+              step="0.01"
+              value={formData.fertilizerPricePerKg || ''}
+              onChange={(e) => onChange({ ...formData, fertilizerPricePerKg: e.target.value })}
+              className="w-full px-3 py-1.5 pr-8 border border-gray-300 rounded-md focus:ring-1 focus:ring-green-500 outline-none text-sm"
+              placeholder="0.00"
+            />
+            {formData.fertilizerPricePerKg && (
+              <button
+                onClick={() => onChange({ ...formData, fertilizerPricePerKg: '' })}
+                className="absolute right-1.5 top-1/2 -translate-y-1/2 p-1 text-red-500 hover:bg-red-50 rounded transition-colors"
+                title={t('rates.clearField')}
+              >
+                <Trash2 className="w-3.5 h-3.5" />
+              </button>
+            )}
+          </div>
+        </div>
+
         {/* Supply Deduction Percentage */}
         <div>
           <label className="block text-xs font-medium text-gray-700 mb-1">
@@ -1,5 +1,5 @@
-import { useState } from 'react';
-import { getCollectionsByDate, saveCollection, deleteCollection } from '../services/collectionService';
+import { useState, useEffect } from 'react';
+import { getCollectionsByDate, saveCollection, deleteCollection, subscribeToCollectionDate } from '../services/collectionService';
 
 export const useCollections = (initialDate = new Date().toISOString().split('T')[0]) => {
   const [collections, setCollections] = useState({});
@@ -34,6 +34,38 @@ export const useCollections = (initialDate = new Date().toISOString().split('T')
     }
   };
 
+  // Apply other clerks' changes for the selected date as they are committed
+  useEffect(() => {
+    const unsubscribe = subscribeToCollectionDate(selectedDate, (delta) => {
+      if (delta.type === 'reload') {
+        fetchCollections(selectedDate);
+        return;
+      }
+      setCollections(prev => {
+        const updated = { ...prev };
+        const customerCollections = { ...(updated[delta.customerId] || {}) };
+        if (delta.type === 'delete') {
+          delete customerCollections[delta.grade];
+        } else {
+          customerCollections[delta.grade] = {
+            ...customerCollections[delta.grade],
+            id: delta.id,
+            weightKg: delta.weightKg,
+            grade: delta.grade
+          };
+        }
+        if (Object.keys(customerCollections).length === 0) {
+          delete updated[delta.customerId];
+        } else {
+          updated[delta.customerId] = customerCollections;
+        }
+        return updated;
+      });
+    });
+    return unsubscribe;
+    // eslint-disable-next-line react-hooks/exhaustive-deps
+  }, [selectedDate]);
+
   const saveCollectionEntry = async (customerId, weight, grade = 'GRADE_2', date = selectedDate) => {
     const savingKey = `${customerId}_${grade}`;
 
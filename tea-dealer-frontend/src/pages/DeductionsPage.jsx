@@ -2,7 +2,7 @@ import React, { useState, useEffect, useMemo } from 'react';
 import { ChevronLeft, ChevronRight, Save, Search, Plus, Trash2, Calendar } from 'lucide-react';
 import { useTranslation } from 'react-i18next';
 import { useCustomerContext } from '../contexts/CustomerContext';
-import { getDeductionByCustomerAndPeriod, calculateMonthlyTotals, saveDeduction, getAutoArrears } from '../services/deductionService';
+import { calculateMonthlyTotals, calculatePeriodTotals, saveDeduction, getAutoArrearsForPeriod, getDeductionsByPeriod } from '../services/deductionService';
 import { useToast } from '../hooks/useToast';
 import Toast from '../components/common/Toast';
 
@@ -22,6 +22,8 @@ const DeductionsPage = () => {
   const [showCustomerDropdown, setShowCustomerDropdown] = useState(false);
   const [monthlyTotals, setMonthlyTotals] = useState(null);
   const [autoArrearsInfo, setAutoArrearsInfo] = useState(null);
+  // Totals, arrears and saved deductions of every customer for the selected month, fetched once per month
+  const [periodData, setPeriodData] = useState(null);
   const [loading, setLoading] = useState(false);
   const [saving, setSaving] = useState(false);
 
@@ -99,80 +101,104 @@ const DeductionsPage = () => {
   };
 
   useEffect(() => {
-    if (selectedCustomer) {
-      loadData();
+    loadPeriod();
+  }, [selectedYear, selectedMonth]);
+
+  useEffect(() => {
+    if (selectedCustomer && periodData) {
+      applyCustomer();
     } else {
       // Reset form when no customer is selected
       resetDeductionsForm();
       setMonthlyTotals(null);
       setAutoArrearsInfo(null);
     }
-  }, [selectedCustomer, selectedYear, selectedMonth]);
+  }, [selectedCustomer, periodData]);
 
-  const loadData = async () => {
+  const loadPeriod = async () => {
     setLoading(true);
-    // Reset form immediately when switching customers to prevent stale data
-    resetDeductionsForm();
-    setAutoArrearsInfo(null);
-
+    setPeriodData(null);
     try {
-      // Calculate monthly totals and fetch auto-arrears in parallel
-      const [totals, autoArrears] = await Promise.all([
-        calculateMonthlyTotals(selectedCustomer.id, selectedYear, selectedMonth),
-        getAutoArrears(selectedCustomer.id, selectedYear, selectedMonth)
+      const [totals, arrears, saved] = await Promise.all([
+        calculatePeriodTotals(selectedYear, selectedMonth),
+        getAutoArrearsForPeriod(selectedYear, selectedMonth),
+        getDeductionsByPeriod(selectedYear, selectedMonth)
       ]);
-      setMonthlyTotals(totals);
-      setAutoArrearsInfo(autoArrears);
-
-      // Load existing deductions (returns null if not found)
-      const existingDeduction = await getDeductionByCustomerAndPeriod(
-        selectedCustomer.id,
-        selectedYear,
-        selectedMonth
-      );
-
-      if (existingDeduction) {
-        // Parse advance entries from JSON
-        let advanceEntries = [];
-        try {
-          if (existingDeduction.advanceEntries) {
-            advanceEntries = typeof existingDeduction.advanceEntries === 'string'
-              ? JSON.parse(existingDeduction.advanceEntries)
-              : existingDeduction.advanceEntries;
-          }
-        } catch (e) {
-          console.error('Error parsing advance entries:', e);
-          advanceEntries = [];
-        }
-
-        setDeductions({
-          lastMonthArrears: existingDeduction.lastMonthArrears || '',
-          advanceEntries: advanceEntries,
-          loanAmount: existingDeduction.loanAmount || '',
-          loanDate: existingDeduction.loanDate || '',
-          fertilizer1Amount: existingDeduction.fertilizer1Amount || '',
-          fertilizer1Date: existingDeduction.fertilizer1Date || '',
-          fertilizer2Amount: existingDeduction.fertilizer2Amount || '',
-          fertilizer2Date: existingDeduction.fertilizer2Date || '',
-          teaPacketsCount: existingDeduction.teaPacketsCount || '',
-          agrochemicalsAmount: existingDeduction.agrochemicalsAmount || '',
-          agrochemicalsDate: existingDeduction.agrochemicalsDate || '',
-          otherDeductions: existingDeduction.otherDeductions || '',
-          otherDeductionsNote: existingDeduction.otherDeductionsNote || '',
-        });
-      }
-      // If no existing deduction, form is already reset above
+      const { customers: customerTotals, ...periodValues } = totals;
+      const totalsByCustomer = {};
+      customerTotals.forEach(entry => { totalsByCustomer[entry.customerId] = entry; });
+      const deductionsByCustomer = {};
+      saved.forEach(deduction => { deductionsByCustomer[deduction.customer?.id] = deduction; });
+      setPeriodData({ periodValues, totalsByCustomer, arrears, deductionsByCustomer });
     } catch (error) {
       console.error('Error loading data:', error);
-      // Don't show error toast for normal "not found" cases
-      if (!error.message?.includes('404') && !error.message?.includes('Not Found')) {
-        showToast(t('toast.errorLoadingData'), 'error');
-      }
+      showToast(t('toast.errorLoadingData'), 'error');
     } finally {
       setLoading(false);
     }
   };
 
+  const applyCustomer = async () => {
+    // Reset form immediately when switching customers to prevent stale data
+    resetDeductionsForm();
+
+    const { periodValues, totalsByCustomer, arrears, deductionsByCustomer } = periodData;
+    let totals = totalsByCustomer[selectedCustomer.id];
+    if (!totals) {
+      // Customer added after the month was loaded
+      try {
+        totals = await calculateMonthlyTotals(selectedCustomer.id, selectedYear, selectedMonth);
+      } catch (error) {
+        console.error('Error loading data:', error);
+        showToast(t('toast.errorLoadingData'), 'error');
+        return;
+      }
+    }
+    setMonthlyTotals({ ...periodValues, ...totals });
+
+    const arrearsAmount = arrears.arrears?.[selectedCustomer.id];
+    setAutoArrearsInfo({
+      autoArrearsEnabled: arrears.autoArrearsEnabled,
+      autoArrearsAmount: arrearsAmount || 0,
+      previousYear: arrears.previousYear,
+      previousMonth: arrears.previousMonth,
+      previousNetAmount: arrearsAmount ? -arrearsAmount : null,
+    });
+
+    const existingDeduction = deductionsByCustomer[selectedCustomer.id];
+    if (existingDeduction) {
+      // Parse advance entries from JSON
+      let advanceEntries = [];
+      try {
+        if (existingDeduction.advanceEntries) {
+          advanceEntries = typeof existingDeduction.advanceEntries === 'string'
+            ? JSON.parse(existingDeduction.advanceEntries)
+            : existingDeduction.advanceEntries;
+        }
+      } catch (e) {
+        console.error('Error parsing advance entries:', e);
+        advanceEntries = [];
+      }
+
+      setDeductions({
+        lastMonthArrears: existingDeduction.lastMonthArrears || '',
+        advanceEntries: advanceEntries,
+        loanAmount: existingDeduction.loanAmount || '',
+        loanDate: existingDeduction.loanDate || '',
+        fertilizer1Amount: existingDeduction.fertilizer1Amount || '',
+        fertilizer1Date: existingDeduction.fertilizer1Date || '',
+        fertilizer2Amount: existingDeduction.fertilizer2Amount || '',
+        fertilizer2Date: existingDeduction.fertilizer2Date || '',
+        teaPacketsCount: existingDeduction.teaPacketsCount || '',
+        agrochemicalsAmount: existingDeduction.agrochemicalsAmount || '',
+        agrochemicalsDate: existingDeduction.agrochemicalsDate || '',
+        otherDeductions: existingDeduction.otherDeductions || '',
+        otherDeductionsNote: existingDeduction.otherDeductionsNote || '',
+      });
+    }
+    // If no existing deduction, form is already reset above
+  };
+
   const handleYearChange = (increment) => {
     setSelectedYear(prev => prev + increment);
   };
@@ -284,7 +310,12 @@ const DeductionsPage = () => {
 
       console.log('Saving deduction data:', deductionData);
       console.log('advanceEntries being saved:', deductions.advanceEntries, '-> stringified:', JSON.stringify(deductions.advanceEntries));
-      await saveDeduction(deductionData);
+      const saved = await saveDeduction(deductionData);
+      // Keep the month's cached deductions current, so switching back to this customer shows the saved values
+      setPeriodData(prev => prev && {
+        ...prev,
+        deductionsByCustomer: { ...prev.deductionsByCustomer, [selectedCustomer.id]: saved },
+      });
       showToast(t('toast.deductionsSavedSuccess'), 'success');
     } catch (error) {
       console.error('Error saving deductions:', error);
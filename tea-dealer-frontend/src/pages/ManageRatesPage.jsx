@@ -35,6 +35,7 @@ const ManageRatesPage = () => {
     year: selectedYear,
     month: selectedMonth,
     teaPacketPrice: '',
+    fertilizerPricePerKg: '',
     supplyDeductionPercentage: '',
     transportRatePerKg: '',
     stampFee: '',
@@ -55,6 +56,7 @@ const ManageRatesPage = () => {
         year: selectedYear,
         month: selectedMonth,
         teaPacketPrice: currentRate.teaPacketPrice || '',
+        fertilizerPricePerKg: currentRate.fertilizerPricePerKg || '',
         supplyDeductionPercentage: currentRate.supplyDeductionPercentage || '',
         transportRatePerKg: currentRate.transportRatePerKg || '',
         stampFee: currentRate.stampFee || '',
@@ -66,6 +68,7 @@ const ManageRatesPage = () => {
         year: selectedYear,
         month: selectedMonth,
         teaPacketPrice: '',
+        fertilizerPricePerKg: '',
         supplyDeductionPercentage: '',
         transportRatePerKg: '',
         stampFee: '',
@@ -93,6 +96,9 @@ const ManageRatesPage = () => {
     if (formData.teaPacketPrice && formData.teaPacketPrice !== '') {
       cleanData.teaPacketPrice = parseFloat(formData.teaPacketPrice);
     }
+    if (formData.fertilizerPricePerKg && formData.fertilizerPricePerKg !== '') {
+      cleanData.fertilizerPricePerKg = parseFloat(formData.fertilizerPricePerKg);
+    }
     if (formData.supplyDeductionPercentage && formData.supplyDeductionPercentage !== '') {
       cleanData.supplyDeductionPercentage = parseFloat(formData.supplyDeductionPercentage);
     }
@@ -6,8 +6,6 @@ import {
   getStockByPeriod,
   addStock,
   deleteStock,
-  getAvailableStock,
-  getAvailableBagsByTypeAndSize,
   getSuppliesByPeriod,
   recordSupply,
   deleteSupply
@@ -19,9 +17,9 @@ import {
   getTeaPacketSupplies,
   recordTeaPacketSupply,
   deleteTeaPacketSupply,
-  getActiveTeaPacketTypes,
-  getAvailablePacketsByTypeAndWeight
+  getActiveTeaPacketTypes
 } from '../services/teaPacketService';
+import { getStockAvailability } from '../services/stockService';
 import { getPageVisibilitySettings } from '../services/settingsService';
 import { useToast } from '../hooks/useToast';
 import Toast from '../components/common/Toast';
@@ -141,7 +139,6 @@ const StockManagementPage = () => {
   useEffect(() => {
     if (fertilizerTypes.length > 0 && mainTab === 'fertilizer') {
       loadAvailableStock();
-      loadAvailableBagsBySize();
     }
   }, [fertilizerTypes, selectedYear, selectedMonth, supplies, stockData, mainTab]);
 
@@ -170,32 +167,30 @@ const StockManagementPage = () => {
     }
   };
 
+  // Available kg per type and bags per type/bag size, from one availability call
   const loadAvailableStock = async () => {
     const stockMap = {};
-    for (const type of fertilizerTypes) {
-      try {
-        const result = await getAvailableStock(type.id, selectedYear, selectedMonth);
-        stockMap[type.id] = result.availableKg;
-      } catch (error) {
-        stockMap[type.id] = 0;
-      }
-    }
-    setAvailableStock(stockMap);
-  };
-
-  const loadAvailableBagsBySize = async () => {
     const bagsMap = {};
-    for (const type of fertilizerTypes) {
-      const bagSizes = type.bagSizes?.split(',').map(s => s.trim()) || [];
-      for (const size of bagSizes) {
-        try {
-          const result = await getAvailableBagsByTypeAndSize(type.id, size, selectedYear, selectedMonth);
-          bagsMap[`${type.id}-${size}`] = result.availableBags;
-        } catch (error) {
-          bagsMap[`${type.id}-${size}`] = 0;
+    try {
+      const availability = await getStockAvailability(selectedYear, selectedMonth);
+      const bagsByKey = {};
+      for (const entry of availability?.fertilizer || []) {
+        stockMap[entry.typeId] = Number(entry.availableKg) || 0;
+        for (const bagSize of entry.bagSizes) {
+          bagsByKey[`${entry.typeId}-${parseFloat(bagSize.bagSizeKg)}`] = bagSize.availableBags;
         }
       }
+      // Keyed by the sizes exactly as configured on the type, which is what the forms use
+      for (const type of fertilizerTypes) {
+        const bagSizes = type.bagSizes?.split(',').map(s => s.trim()) || [];
+        for (const size of bagSizes) {
+          bagsMap[`${type.id}-${size}`] = bagsByKey[`${type.id}-${parseFloat(size)}`] || 0;
+        }
+      }
+    } catch (error) {
+      console.error('Error loading stock availability:', error);
     }
+    setAvailableStock(stockMap);
     setAvailableBagsBySize(bagsMap);
   };
 
@@ -233,16 +228,22 @@ const StockManagementPage = () => {
 
   const loadAvailablePacketsByWeight = async () => {
     const packetsMap = {};
-    for (const type of teaPacketTypes) {
-      const weights = type.packetWeights?.split(',').map(w => w.trim()) || [];
-      for (const weight of weights) {
-        try {
-          const result = await getAvailablePacketsByTypeAndWeight(type.id, weight, selectedYear, selectedMonth);
-          packetsMap[`${type.id}-${weight}`] = result.availablePackets;
-        } catch (error) {
-          packetsMap[`${type.id}-${weight}`] = 0;
+    try {
+      const availability = await getStockAvailability(selectedYear, selectedMonth);
+      const packetsByKey = {};
+      for (const entry of availability?.teaPackets || []) {
+        for (const packetWeight of entry.packetWeights) {
+          packetsByKey[`${entry.typeId}-${parseFloat(packetWeight.packetWeightGrams)}`] = packetWeight.availablePackets;
+        }
+      }
+      for (const type of teaPacketTypes) {
+        const weights = type.packetWeights?.split(',').map(w => w.trim()) || [];
+        for (const weight of weights) {
+          packetsMap[`${type.id}-${weight}`] = packetsByKey[`${type.id}-${parseFloat(weight)}`] || 0;
         }
       }
+    } catch (error) {
+      console.error('Error loading stock availability:', error);
     }
     setAvailablePacketsByWeight(packetsMap);
   };
@@ -314,7 +315,13 @@ const StockManagementPage = () => {
       setTeaCustomerSearch('');
       loadTeaPacketData();
     } catch (error) {
-      showToast('Error recording tea packet supply', 'error');
+      // Another clerk may have taken the last stock since availability was loaded
+      if (error.message?.includes('Insufficient stock')) {
+        showToast(error.message.replace(/^API Error \(\d+\): /, ''), 'warning');
+        loadAvailablePacketsByWeight();
+      } else {
+        showToast('Error recording tea packet supply', 'error');
+      }
     }
   };
 
@@ -441,7 +448,13 @@ const StockManagementPage = () => {
       loadSupplies();
       loadAvailableStock();
     } catch (error) {
-      showToast('Error recording supply', 'error');
+      // Another clerk may have taken the last stock since availability was loaded
+      if (error.message?.includes('Insufficient stock')) {
+        showToast(error.message.replace(/^API Error \(\d+\): /, ''), 'warning');
+        loadAvailableStock();
+      } else {
+        showToast('Error recording supply', 'error');
+      }
     }
   };
 
@@ -2,6 +2,9 @@
 // Falls back to current hostname:8080 for local network access.
 const API_BASE = process.env.REACT_APP_API_URL || `http://${window.location.hostname}:8080/api`;
 
+// Absolute URL for an API path, for resources loaded by the browser itself (images)
+export const apiUrl = (endpoint) => `${API_BASE}${endpoint}`;
+
 export const apiCall = async (endpoint, options = {}) => {
   try {
     const response = await fetch(`${API_BASE}${endpoint}`, {
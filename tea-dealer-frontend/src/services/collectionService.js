@@ -23,4 +23,49 @@ export const getCollectionsByCustomer = async (customerId) => {
 
 export const getCollectionsByDateRange = async (startDate, endDate) => {
   return await apiCall(`/collections/date-range?startDate=${startDate}&endDate=${endDate}`);
-};
\ No newline at end of file
+};
+
+// Keyset-paginated history. Pass the previous page's nextCursor to continue; nextCursor is null on the last page.
+const pageQuery = (cursor, size) => {
+  const params = new URLSearchParams();
+  if (cursor) params.append('cursor', cursor);
+  if (size) params.append('size', size);
+  const query = params.toString();
+  return query ? `?${query}` : '';
+};
+
+export const getCollectionPageByCustomer = async (customerId, cursor = null, size = null) => {
+  return await apiCall(`/collections/customer/${customerId}/page${pageQuery(cursor, size)}`);
+};
+
+export const getCollectionPageByBookNumber = async (bookNumber, cursor = null, size = null) => {
+  return await apiCall(`/collections/book-number/${encodeURIComponent(bookNumber)}/page${pageQuery(cursor, size)}`);
+};
+
+export const getCollectionPageByDateRange = async (startDate, endDate, cursor = null, size = null) => {
+  const rest = pageQuery(cursor, size).replace('?', '&');
+  return await apiCall(`/collections/date-range/page?startDate=${startDate}&endDate=${endDate}${rest}`);
+};
+
+// Per-month, per-grade supply totals. customerIds may be empty for all customers; toYear defaults to fromYear.
+export const getYearlySupplySummary = async (customerIds = [], fromYear, toYear = fromYear) => {
+  const params = new URLSearchParams({ fromYear, toYear });
+  if (customerIds.length > 0) params.append('customerIds', customerIds.join(','));
+  return await apiCall(`/collections/summary/yearly?${params.toString()}`);
+};
+
+// Live upsert/delete/reload deltas for one collection date. Returns an unsubscribe function.
+// EventSource reconnects on its own after network drops.
+const STREAM_BASE = process.env.REACT_APP_API_URL || `http://${window.location.hostname}:8080/api`;
+
+export const subscribeToCollectionDate = (date, onDelta) => {
+  const source = new EventSource(`${STREAM_BASE}/collections/stream/${date}`);
+  source.addEventListener('collection', (event) => {
+    try {
+      onDelta(JSON.parse(event.data));
+    } catch (error) {
+      console.error('Invalid collection delta:', error);
+    }
+  });
+  return () => source.close();
+};
@@ -16,6 +16,11 @@ export const calculateMonthlyTotals = async (customerId, year, month) => {
   return await apiCall(`/deductions/calculate/${customerId}/${year}/${month}`);
 };
 
+// Totals for every customer in one request: period-wide rates at the top, per-customer values in `customers`
+export const calculatePeriodTotals = async (year, month) => {
+  return await apiCall(`/deductions/calculate/period/${year}/${month}`);
+};
+
 export const saveDeduction = async (deductionData) => {
   console.log('Saving deduction:', deductionData);
   const result = await apiCall('/deductions', {
@@ -26,6 +31,22 @@ export const saveDeduction = async (deductionData) => {
   return result;
 };
 
+// Saves { year, month, deductions: [{ customerId | bookNumber, ...amounts }] } in one request.
+// Returns per-row results: { saved, failed, rows: [{ index, customerId, status, error }] }
+export const saveDeductionsBatch = async (batch) => {
+  return await apiCall('/deductions/batch', {
+    method: 'POST',
+    body: JSON.stringify(batch),
+  });
+};
+
+// Fills fertilizer and tea packet deductions for the period from the supply ledgers
+export const populateDeductionsFromSupplies = async (year, month) => {
+  return await apiCall(`/deductions/populate-from-supplies/${year}/${month}`, {
+    method: 'POST',
+  });
+};
+
 export const deleteDeduction = async (id) => {
   return await apiCall(`/deductions/${id}`, {
     method: 'DELETE',
@@ -39,3 +60,8 @@ export const getDeductionsByPeriod = async (year, month) => {
 export const getAutoArrears = async (customerId, year, month) => {
   return await apiCall(`/deductions/auto-arrears/${customerId}/${year}/${month}`);
 };
+
+// { autoArrearsEnabled, previousYear, previousMonth, arrears: { [customerId]: amount } } for the whole period
+export const getAutoArrearsForPeriod = async (year, month) => {
+  return await apiCall(`/deductions/auto-arrears/period/${year}/${month}`);
+};
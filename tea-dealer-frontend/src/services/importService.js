@@ -0,0 +1,36 @@
+const API_BASE = process.env.REACT_APP_API_URL || `http://${window.location.hostname}:8080/api`;
+
+// Uploads a CSV file for server-side import and returns the created job.
+// type: 'collections' or 'customers'. The browser sets the multipart boundary, so no Content-Type header here.
+export const startImport = async (type, file) => {
+  const formData = new FormData();
+  formData.append('file', file);
+  const response = await fetch(`${API_BASE}/import/${type}`, {
+    method: 'POST',
+    body: formData,
+  });
+  const body = await response.json();
+  if (!response.ok) {
+    throw new Error(`API Error (${response.status}): ${body.error || response.statusText}`);
+  }
+  return body;
+};
+
+// Job progress: { status, rowsRead, rowsImported, rowsFailed, errors: [{row, error}], finished }
+export const getImportJob = async (jobId) => {
+  const response = await fetch(`${API_BASE}/import/jobs/${jobId}`);
+  if (!response.ok) {
+    throw new Error(`API Error (${response.status}): ${response.statusText}`);
+  }
+  return await response.json();
+};
+
+// Polls until the job finishes, reporting progress along the way.
+export const waitForImport = async (jobId, onProgress, intervalMs = 1000) => {
+  for (;;) {
+    const job = await getImportJob(jobId);
+    if (onProgress) onProgress(job);
+    if (job.finished) return job;
+    await new Promise((resolve) => setTimeout(resolve, intervalMs));
+  }
+};
@@ -38,6 +38,14 @@ export const generateAllInvoices = async (year, month) => {
   });
 };
 
+// Regenerates a period (one customer, or all when customerId is omitted) and follows the arrears chain forward
+export const cascadeRegenerateInvoices = async (year, month, customerId) => {
+  const query = customerId ? `?customerId=${customerId}` : '';
+  return await apiCall(`/invoices/cascade/${year}/${month}${query}`, {
+    method: 'POST',
+  });
+};
+
 export const regenerateInvoice = async (customerId, year, month) => {
   return await apiCall(`/invoices/regenerate/${customerId}/${year}/${month}`, {
     method: 'POST',
@@ -1,4 +1,4 @@
-import { apiCall } from './api';
+import { apiCall, apiUrl } from './api';
 
 export const getAllSettings = async () => {
   return await apiCall('/settings');
@@ -93,8 +93,13 @@ export const STAMP_FEE_MODES = {
   EXCLUDE_SUPPLY_MORE_THAN: 'exclude_supply_more_than',
 };
 
+// Image settings come back as a reference to /settings/blobs/{key}; saving the reference back keeps the image
+const resolveSettingBlob = (value) => {
+  return value && value.startsWith('/settings/blobs/') ? apiUrl(value) : value;
+};
+
 export const getLoginBackground = async () => {
-  return await getSettingValue(SETTING_KEYS.LOGIN_BACKGROUND);
+  return resolveSettingBlob(await getSettingValue(SETTING_KEYS.LOGIN_BACKGROUND));
 };
 
 export const saveLoginBackground = async (base64Image) => {
@@ -192,7 +197,7 @@ export const getInvoiceTemplateConfig = async () => {
   ]);
 
   return {
-    templateImage: templateImage || null,
+    templateImage: resolveSettingBlob(templateImage) || null,
     fields: fieldsJson ? JSON.parse(fieldsJson) : [],
     templateSize: sizeJson ? JSON.parse(sizeJson) : { width: 800, height: 1000 },
     globalFontSize: fontSize ? parseInt(fontSize) : 12,
@@ -0,0 +1,39 @@
+import { apiCall } from './api';
+
+// Availability of every fertilizer type/bag size and tea packet type/weight for a month in one call
+export const getStockAvailability = async (year, month) => {
+  return await apiCall(`/stock/availability/${year}/${month}`);
+};
+
+// Month-by-month opening, received, supplied and closing stock for a year
+export const getStockMovementReport = async (year) => {
+  return await apiCall(`/stock/report/${year}`);
+};
+
+export const downloadStockMovementCsv = async (year) => {
+  const token = localStorage.getItem('token');
+  const response = await fetch(`http://${window.location.hostname}:8080/api/stock/report/${year}/csv`, {
+    headers: {
+      'Authorization': `Bearer ${token}`,
+    },
+  });
+
+  if (!response.ok) {
+    const contentType = response.headers.get('content-type');
+    if (contentType && contentType.includes('application/json')) {
+      const errorData = await response.json();
+      throw new Error(errorData.error || 'Failed to download stock report');
+    }
+    throw new Error(`Failed to download stock report: ${response.status} ${response.statusText}`);
+  }
+
+  const blob = await response.blob();
+  const url = window.URL.createObjectURL(blob);
+  const a = document.createElement('a');
+  a.href = url;
+  a.download = `stock_movements_${year}.csv`;
+  document.body.appendChild(a);
+  a.click();
+  window.URL.revokeObjectURL(url);
+  document.body.removeChild(a);
+};